@@ -7,8 +7,11 @@ import com.example.m1nd.model.MotivationTopic;
 import com.example.m1nd.model.Task;
 import com.example.m1nd.service.AdminService;
 import com.example.m1nd.service.AssistantService;
+import com.example.m1nd.service.BroadcastService;
+import com.example.m1nd.service.ConversationService;
 import com.example.m1nd.service.FeedbackService;
 import com.example.m1nd.service.StatisticsService;
+import com.example.m1nd.service.SummaryExportService;
 import com.example.m1nd.service.SummaryService;
 import com.example.m1nd.service.TaskService;
 import com.example.m1nd.service.UserService;
@@ -17,16 +20,30 @@ import com.example.m1nd.service.FactTopicService;
 import com.example.m1nd.service.IdeaTopicService;
 import com.example.m1nd.service.GameService;
 import com.example.m1nd.service.MotivationTopicService;
+import com.example.m1nd.service.llm.LlmAdmissionService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +55,9 @@ public class AdminMenuService {
 
     private static final Logger log = LoggerFactory.getLogger(AdminMenuService.class);
 
+    private static final String FEEDBACK_PAGE_PREFIX = "feedbacks_page:";
+    private static final String FEEDBACK_EXPORT_CALLBACK = "feedbacks_export";
+
     private final AdminService adminService;
     private final AssistantService assistantService;
     private final PaidServiceService paidServiceService;
@@ -50,6 +70,15 @@ public class AdminMenuService {
     private final MotivationTopicService motivationTopicService;
     private final GameService gameService;
     private final TaskService taskService;
+    private final LlmAdmissionService llmAdmissionService;
+    private final ConversationService conversationService;
+    private final BroadcastService broadcastService;
+    private final SummaryExportService summaryExportService;
+    private final TelegramBulkSender bulkSender;
+    private final Scheduler blockingScheduler;
+
+    @Value("${app.feedback.page-size:5}")
+    private int feedbackPageSize;
 
     private final Map<Long, Boolean> waitingForAdminUsername = new ConcurrentHashMap<>();
     private final Map<Long, Boolean> waitingForRemoveAdminUsername = new ConcurrentHashMap<>();
@@ -63,7 +92,9 @@ public class AdminMenuService {
         ADD_MOTIVATION_TOPIC,
         ADD_GAME,
         ADD_TASK,
-        SET_PAID_SERVICE_PRICE
+        SET_PAID_SERVICE_PRICE,
+        BROADCAST_TEXT,
+        SUMMARY_EXPORT_RANGE
     }
 
     private final Map<Long, AdminEditorState> adminEditorState = new ConcurrentHashMap<>();
@@ -133,6 +164,10 @@ public class AdminMenuService {
         paidServicesButton.setText("💰 Платные услуги");
         paidServicesButton.setCallbackData("paid_services");
 
+        InlineKeyboardButton broadcastButton = new InlineKeyboardButton();
+        broadcastButton.setText("📣 Рассылка всем");
+        broadcastButton.setCallbackData("broadcast_prompt");
+
         InlineKeyboardButton backButton = new InlineKeyboardButton();
         backButton.setText("◀️ Назад");
         backButton.setCallbackData("back_to_main");
@@ -167,6 +202,9 @@ public class AdminMenuService {
         List<InlineKeyboardButton> row11 = new ArrayList<>();
         row11.add(paidServicesButton);
 
+        List<InlineKeyboardButton> row12 = new ArrayList<>();
+        row12.add(broadcastButton);
+
         List<InlineKeyboardButton> row7 = new ArrayList<>();
         row7.add(backButton);
 
@@ -181,6 +219,7 @@ public class AdminMenuService {
         keyboard.add(row9);
         keyboard.add(row10);
         keyboard.add(row11);
+        keyboard.add(row12);
         keyboard.add(row7);
 
         markup.setKeyboard(keyboard);
@@ -271,9 +310,15 @@ public class AdminMenuService {
                 || "add_admin_prompt".equals(data)
                 || "list_admins".equals(data)
                 || "view_feedbacks".equals(data)
+                || data.startsWith(FEEDBACK_PAGE_PREFIX)
+                || FEEDBACK_EXPORT_CALLBACK.equals(data)
                 || "admin_activity".equals(data)
                 || data.startsWith("activity_date:")
                 || data.startsWith("activity_user:")
+                || "summary_export_menu".equals(data)
+                || data.startsWith("summary_export:")
+                || "summary_export_custom".equals(data)
+                || data.startsWith(SummaryExportService.RESUME_CALLBACK_PREFIX)
                 || "remove_admin_prompt".equals(data)
                 || data.startsWith("add_admin:")
                 || "admin_menu_editor".equals(data)
@@ -297,6 +342,10 @@ public class AdminMenuService {
                 || "remove_business_assistant_prompt".equals(data)
                 || "paid_services".equals(data)
                 || (data != null && data.startsWith("paid_service_set_price:"))
+                || "broadcast_prompt".equals(data)
+                || data.startsWith("broadcast_confirm:")
+                || data.startsWith("broadcast_cancel:")
+                || data.startsWith(BroadcastService.STOP_CALLBACK_PREFIX)
         );
     }
 
@@ -347,8 +396,13 @@ public class AdminMenuService {
             messages.add(buildListAdminsMessage(chatId));
             callbackAnswer = "✅ Список отправлен";
         } else if ("view_feedbacks".equals(data)) {
-            messages.addAll(buildFeedbacksMessages(chatId));
+            messages.add(buildFeedbacksMessage(chatId));
             callbackAnswer = "✅ Опросы отправлены";
+        } else if (data.startsWith(FEEDBACK_PAGE_PREFIX)) {
+            showFeedbackPage(callbackQuery, data);
+        } else if (FEEDBACK_EXPORT_CALLBACK.equals(data)) {
+            blockingScheduler.schedule(() -> exportFeedbacks(chatId));
+            callbackAnswer = "⏳ Готовлю выгрузку…";
         } else if ("admin_activity".equals(data)) {
             messages.add(buildActivityDateSelectionMessage(chatId));
             callbackAnswer = "✅ Выберите дату";
@@ -364,6 +418,35 @@ public class AdminMenuService {
                 messages.addAll(buildActivityUserSummariesMessages(chatId, dateStr, targetUserId));
                 callbackAnswer = "✅";
             }
+        } else if ("summary_export_menu".equals(data)) {
+            messages.add(buildSummaryExportMenuMessage(chatId));
+            callbackAnswer = "✅ Выберите период";
+        } else if (data.startsWith("summary_export:")) {
+            LocalDate today = LocalDate.now();
+            LocalDate[] range = switch (data.substring("summary_export:".length())) {
+                case "7d" -> new LocalDate[]{today.minusDays(6), today};
+                case "30d" -> new LocalDate[]{today.minusDays(29), today};
+                case "prev_month" -> new LocalDate[]{today.withDayOfMonth(1).minusMonths(1), today.withDayOfMonth(1).minusDays(1)};
+                default -> null;
+            };
+            if (range != null) {
+                messages.add(startSummaryExport(chatId, range[0], range[1]));
+                callbackAnswer = "⏳ Выгрузка запущена";
+            }
+        } else if ("summary_export_custom".equals(data)) {
+            adminEditorState.put(userId, AdminEditorState.SUMMARY_EXPORT_RANGE);
+
+            SendMessage msg = new SendMessage();
+            msg.setChatId(chatId.toString());
+            msg.setText("📦 Отправьте период двумя датами через пробел, обе включительно.\n\n" +
+                "Пример: 2025-01-01 2025-03-31");
+            messages.add(msg);
+            callbackAnswer = "✅ Введите период";
+        } else if (data.startsWith(SummaryExportService.RESUME_CALLBACK_PREFIX)) {
+            long jobId = Long.parseLong(data.substring(SummaryExportService.RESUME_CALLBACK_PREFIX.length()));
+            callbackAnswer = summaryExportService.resume(jobId)
+                ? "🔁 Продолжаю выгрузку #" + jobId
+                : "❌ Выгрузка #" + jobId + " уже идёт или завершена";
         } else if ("remove_admin_prompt".equals(data)) {
             waitingForRemoveAdminUsername.put(userId, true);
 
@@ -414,6 +497,31 @@ public class AdminMenuService {
             msg.setReplyMarkup(createAdminMenuKeyboard());
             messages.add(msg);
             callbackAnswer = "✅ Введите цену";
+        } else if ("broadcast_prompt".equals(data)) {
+            adminEditorState.put(userId, AdminEditorState.BROADCAST_TEXT);
+
+            SendMessage msg = new SendMessage();
+            msg.setChatId(chatId.toString());
+            msg.setText("📣 Отправьте текст рассылки одним сообщением.\n\n" +
+                "Его получат все пользователи, кроме заблокировавших бота. Перед отправкой покажу предпросмотр.");
+            messages.add(msg);
+            callbackAnswer = "✅ Введите текст рассылки";
+        } else if (data.startsWith("broadcast_confirm:")) {
+            long broadcastId = Long.parseLong(data.substring("broadcast_confirm:".length()));
+            int total = broadcastService.start(broadcastId);
+            callbackAnswer = total >= 0
+                ? "🚀 Рассылка запущена: " + total + " получателей"
+                : "❌ Рассылка уже запущена или отменена";
+        } else if (data.startsWith("broadcast_cancel:")) {
+            long broadcastId = Long.parseLong(data.substring("broadcast_cancel:".length()));
+            callbackAnswer = broadcastService.cancelDraft(broadcastId)
+                ? "✅ Рассылка отменена"
+                : "❌ Рассылка уже запущена или отменена";
+        } else if (data.startsWith(BroadcastService.STOP_CALLBACK_PREFIX)) {
+            long broadcastId = Long.parseLong(data.substring(BroadcastService.STOP_CALLBACK_PREFIX.length()));
+            callbackAnswer = broadcastService.stop(broadcastId)
+                ? "⏹ Рассылка остановлена"
+                : "❌ Рассылка уже завершена";
         } else if (data != null && data.startsWith("add_admin:")) {
             String targetUsername = data.substring("add_admin:".length());
             messages.add(buildAddAdminCallbackMessage(chatId, username, targetUsername));
@@ -634,6 +742,56 @@ public class AdminMenuService {
                     msg.setReplyMarkup(createAdminMenuKeyboard());
                     messages.add(msg);
                 }
+                case BROADCAST_TEXT -> {
+                    adminEditorState.remove(userId);
+                    String text = messageText.trim();
+                    if (text.isEmpty() || text.length() > 4000) {
+                        SendMessage msg = new SendMessage();
+                        msg.setChatId(chatId.toString());
+                        msg.setText("❌ Текст рассылки должен быть от 1 до 4000 символов.");
+                        msg.setReplyMarkup(createAdminMenuKeyboard());
+                        messages.add(msg);
+                        return AdminTextResult.handled(messages);
+                    }
+                    long broadcastId = broadcastService.createDraft(text, username, chatId);
+
+                    InlineKeyboardButton confirmButton = new InlineKeyboardButton();
+                    confirmButton.setText("✅ Отправить всем");
+                    confirmButton.setCallbackData("broadcast_confirm:" + broadcastId);
+                    InlineKeyboardButton cancelButton = new InlineKeyboardButton();
+                    cancelButton.setText("❌ Отмена");
+                    cancelButton.setCallbackData("broadcast_cancel:" + broadcastId);
+                    InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+                    markup.setKeyboard(List.of(List.of(confirmButton, cancelButton)));
+
+                    SendMessage msg = new SendMessage();
+                    msg.setChatId(chatId.toString());
+                    msg.setText("📣 Предпросмотр рассылки #" + broadcastId + ":\n\n" + text);
+                    msg.setReplyMarkup(markup);
+                    messages.add(msg);
+                }
+                case SUMMARY_EXPORT_RANGE -> {
+                    adminEditorState.remove(userId);
+                    String[] parts = messageText.trim().split("\\s+");
+                    LocalDate dateFrom;
+                    LocalDate dateTo;
+                    try {
+                        dateFrom = LocalDate.parse(parts[0]);
+                        dateTo = LocalDate.parse(parts.length > 1 ? parts[1] : parts[0]);
+                    } catch (DateTimeParseException e) {
+                        dateFrom = null;
+                        dateTo = null;
+                    }
+                    if (dateFrom == null || dateTo.isBefore(dateFrom)) {
+                        SendMessage msg = new SendMessage();
+                        msg.setChatId(chatId.toString());
+                        msg.setText("❌ Не понял период. Нужно две даты ГГГГ-ММ-ДД через пробел, например 2025-01-01 2025-03-31.");
+                        msg.setReplyMarkup(createAdminMenuKeyboard());
+                        messages.add(msg);
+                        return AdminTextResult.handled(messages);
+                    }
+                    messages.add(startSummaryExport(chatId, dateFrom, dateTo));
+                }
                 case SET_PAID_SERVICE_PRICE -> {
                     String code = waitingForPaidServiceCode.remove(userId);
                     adminEditorState.remove(userId);
@@ -691,7 +849,8 @@ public class AdminMenuService {
     }
 
     public List<SendMessage> buildStatisticsMessages(Long chatId) {
-        String statistics = statisticsService.formatStatistics();
+        String statistics = statisticsService.formatStatistics() + "\n" + llmAdmissionService.formatMetrics()
+            + "\n" + conversationService.formatMemoryMetrics();
         final int MAX_LENGTH = 4000;
 
         List<SendMessage> result = new ArrayList<>();
@@ -835,23 +994,56 @@ public class AdminMenuService {
         return message;
     }
 
-    private List<SendMessage> buildFeedbacksMessages(Long chatId) {
-        List<com.example.m1nd.model.Feedback> feedbacks = feedbackService.getRecentFeedbacks(30);
-        List<SendMessage> result = new ArrayList<>();
+    private SendMessage buildFeedbacksMessage(Long chatId) {
+        FeedbackService.FeedbackPage page = feedbackService.findPage(null, null, true, feedbackPageSize);
 
-        if (feedbacks.isEmpty()) {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        if (page.items().isEmpty()) {
             message.setText("📝 Опросов пока нет.");
             message.setReplyMarkup(createAdminMenuKeyboard());
-            result.add(message);
-            return result;
+        } else {
+            message.setText(formatFeedbackPage(page));
+            message.setReplyMarkup(createFeedbackPageKeyboard(page));
+        }
+        return message;
+    }
+
+    /**
+     * Листание опросов: редактирует то же сообщение, а не шлёт новое.
+     * Формат callback: feedbacks_page:&lt;o|n&gt;:&lt;created_at в микросекундах&gt;:&lt;id&gt;
+     */
+    private void showFeedbackPage(CallbackQuery callbackQuery, String data) {
+        String[] parts = data.substring(FEEDBACK_PAGE_PREFIX.length()).split(":");
+        if (parts.length != 3) {
+            return;
+        }
+        boolean older = "o".equals(parts[0]);
+        LocalDateTime cursorAt = fromMicros(Long.parseLong(parts[1]));
+        long cursorId = Long.parseLong(parts[2]);
+
+        FeedbackService.FeedbackPage page = feedbackService.findPage(cursorAt, cursorId, older, feedbackPageSize);
+        if (page.items().isEmpty()) {
+            // Соседние опросы успели уйти в архив — возвращаемся к началу
+            page = feedbackService.findPage(null, null, true, feedbackPageSize);
+        }
+
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(callbackQuery.getMessage().getChatId().toString());
+        edit.setMessageId(callbackQuery.getMessage().getMessageId());
+        edit.setText(page.items().isEmpty() ? "📝 Опросов пока нет." : formatFeedbackPage(page));
+        edit.setReplyMarkup(createFeedbackPageKeyboard(page));
+        try {
+            bulkSender.execute(edit);
+        } catch (TelegramApiException e) {
+            log.warn("Не удалось показать страницу опросов: {}", e.getMessage());
         }
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("📝 Опросы пользователей (последние 30 дней):\n\n");
+    private String formatFeedbackPage(FeedbackService.FeedbackPage page) {
+        StringBuilder sb = new StringBuilder("📝 Опросы пользователей (новые сверху):\n\n");
 
-        for (com.example.m1nd.model.Feedback feedback : feedbacks) {
+        for (com.example.m1nd.model.Feedback feedback : page.items()) {
             sb.append("👤 ").append(feedback.getUsername() != null ? feedback.getUsername() : feedback.getFirstName())
               .append(" (").append(feedback.getUserId()).append(")\n");
 
@@ -864,26 +1056,108 @@ public class AdminMenuService {
             }
 
             if (feedback.getComment() != null && !feedback.getComment().isEmpty()) {
-                sb.append("💭 Комментарий: ").append(feedback.getComment()).append("\n");
+                sb.append("💭 Комментарий: ").append(preview(feedback.getComment(), 300)).append("\n");
             }
 
             if (feedback.getQuestion() != null && !feedback.getQuestion().isEmpty()) {
-                String questionPreview = feedback.getQuestion().length() > 50
-                    ? feedback.getQuestion().substring(0, 50) + "..."
-                    : feedback.getQuestion();
-                sb.append("❓ Вопрос: ").append(questionPreview).append("\n");
+                sb.append("❓ Вопрос: ").append(preview(feedback.getQuestion(), 50)).append("\n");
             }
 
             sb.append("📅 ").append(feedback.getCreatedAt().toLocalDate()).append("\n\n");
         }
 
-        SendMessage message = new SendMessage();
-        message.setChatId(chatId.toString());
-        message.setText(sb.toString());
-        message.setReplyMarkup(createAdminMenuKeyboard());
-        result.add(message);
+        return sb.toString();
+    }
 
-        return result;
+    private InlineKeyboardMarkup createFeedbackPageKeyboard(FeedbackService.FeedbackPage page) {
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+
+        List<InlineKeyboardButton> navRow = new ArrayList<>();
+        if (page.hasNewer() && !page.items().isEmpty()) {
+            InlineKeyboardButton newerButton = new InlineKeyboardButton();
+            newerButton.setText("◀️ Новее");
+            newerButton.setCallbackData(feedbackPageCallback("n", page.items().get(0)));
+            navRow.add(newerButton);
+        }
+        if (page.hasOlder() && !page.items().isEmpty()) {
+            InlineKeyboardButton olderButton = new InlineKeyboardButton();
+            olderButton.setText("Старее ▶️");
+            olderButton.setCallbackData(feedbackPageCallback("o", page.items().get(page.items().size() - 1)));
+            navRow.add(olderButton);
+        }
+        if (!navRow.isEmpty()) {
+            keyboard.add(navRow);
+        }
+
+        InlineKeyboardButton exportButton = new InlineKeyboardButton();
+        exportButton.setText("📤 Выгрузить все (CSV)");
+        exportButton.setCallbackData(FEEDBACK_EXPORT_CALLBACK);
+        List<InlineKeyboardButton> exportRow = new ArrayList<>();
+        exportRow.add(exportButton);
+        keyboard.add(exportRow);
+
+        InlineKeyboardButton backButton = new InlineKeyboardButton();
+        backButton.setText("◀️ Назад");
+        backButton.setCallbackData("admin_menu");
+        List<InlineKeyboardButton> backRow = new ArrayList<>();
+        backRow.add(backButton);
+        keyboard.add(backRow);
+
+        markup.setKeyboard(keyboard);
+        return markup;
+    }
+
+    /**
+     * Выгрузка всех опросов одним документом. Строки идут курсором во временный .csv.gz,
+     * поэтому память не зависит от числа опросов; работает на blocking-планировщике
+     */
+    private void exportFeedbacks(Long chatId) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("feedbacks-", ".csv.gz");
+            long rows = feedbackService.exportCsvGz(file);
+
+            SendDocument document = new SendDocument(chatId.toString(),
+                new InputFile(file.toFile(), "feedbacks-" + LocalDate.now() + ".csv.gz"));
+            document.setCaption("📤 Опросы пользователей: " + rows);
+            bulkSender.execute(document);
+        } catch (Exception e) {
+            log.error("Ошибка выгрузки опросов", e);
+            try {
+                bulkSender.execute(new SendMessage(chatId.toString(), "❌ Не удалось выгрузить опросы: " + e.getMessage()));
+            } catch (TelegramApiException sendError) {
+                log.error("Не удалось сообщить об ошибке выгрузки", sendError);
+            }
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить временный файл {}", file, e);
+                }
+            }
+        }
+    }
+
+    private static String feedbackPageCallback(String direction, com.example.m1nd.model.Feedback feedback) {
+        return FEEDBACK_PAGE_PREFIX + direction + ":" + toMicros(feedback.getCreatedAt()) + ":" + feedback.getId();
+    }
+
+    /**
+     * created_at в callback кодируется числом микросекунд: точность PostgreSQL, и курсор точно совпадает со строкой
+     */
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+            (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static String preview(String text, int maxLength) {
+        return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
     }
 
     private SendMessage buildActivityDateSelectionMessage(Long chatId) {
@@ -911,6 +1185,11 @@ public class AdminMenuService {
             keyboard.add(row);
         }
 
+        InlineKeyboardButton exportButton = new InlineKeyboardButton();
+        exportButton.setText("📦 Выгрузить сводки");
+        exportButton.setCallbackData("summary_export_menu");
+        keyboard.add(List.of(exportButton));
+
         InlineKeyboardButton backButton = new InlineKeyboardButton();
         backButton.setText("◀️ Назад");
         backButton.setCallbackData("admin_menu");
@@ -924,6 +1203,47 @@ public class AdminMenuService {
         return message;
     }
 
+    private SendMessage buildSummaryExportMenuMessage(Long chatId) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText("📦 Выгрузка сводок сессий с данными пользователей (NDJSON, gzip).\n\nЗа какой период?");
+
+        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+        String[][] presets = {
+            {"7 дней", "summary_export:7d"},
+            {"30 дней", "summary_export:30d"},
+            {"Прошлый месяц", "summary_export:prev_month"},
+            {"✏️ Свой период", "summary_export_custom"},
+            {"◀️ Назад", "admin_activity"}
+        };
+        for (String[] preset : presets) {
+            InlineKeyboardButton button = new InlineKeyboardButton();
+            button.setText(preset[0]);
+            button.setCallbackData(preset[1]);
+            keyboard.add(List.of(button));
+        }
+
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(keyboard);
+        message.setReplyMarkup(markup);
+        return message;
+    }
+
+    private SendMessage startSummaryExport(Long chatId, LocalDate dateFrom, LocalDate dateTo) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        try {
+            long jobId = summaryExportService.startSummaryExport(dateFrom, dateTo, chatId);
+            message.setText("⏳ Выгрузка #" + jobId + " за " + dateFrom + " — " + dateTo +
+                " запущена. Пришлю файл, когда будет готов.");
+        } catch (Exception e) {
+            log.error("Не удалось запустить выгрузку сводок за {} — {}", dateFrom, dateTo, e);
+            message.setText("❌ Не удалось запустить выгрузку: " + e.getMessage());
+        }
+        message.setReplyMarkup(createAdminMenuKeyboard());
+        return message;
+    }
+
     private List<SendMessage> buildActivityUsersForDateMessages(Long chatId, String dateStr) {
         List<SendMessage> result = new ArrayList<>();
         try {
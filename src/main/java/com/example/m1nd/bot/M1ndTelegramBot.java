@@ -5,11 +5,16 @@ import com.example.m1nd.service.AdminService;
 import com.example.m1nd.service.AssistantService;
 import com.example.m1nd.service.FeedbackService;
 import com.example.m1nd.service.LLMService;
+import com.example.m1nd.service.SummaryBatchWorker;
 import com.example.m1nd.service.SummaryService;
 import com.example.m1nd.service.BusinessQuestionService;
 import com.example.m1nd.service.PaidServiceService;
 import com.example.m1nd.service.UserService;
 import com.example.m1nd.service.WorkingApiService;
+import com.example.m1nd.service.journal.JournalKind;
+import com.example.m1nd.service.journal.StateCodec;
+import com.example.m1nd.service.journal.StateJournal;
+import com.example.m1nd.service.llm.LlmOverloadedException;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
@@ -35,6 +40,7 @@ import org.telegram.telegrambots.meta.api.objects.payments.PreCheckoutQuery;
 import org.telegram.telegrambots.meta.api.objects.payments.SuccessfulPayment;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -59,8 +65,11 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
     private final PaidServiceService paidServiceService;
     private final FeedbackService feedbackService;
     private final SummaryService summaryService;
+    private final SummaryBatchWorker summaryBatchWorker;
     private final MainMenuService mainMenuService;
     private final AdminMenuService adminMenuService;
+    private final StateJournal stateJournal;
+    private final Scheduler blockingScheduler;
     
     @Value("${llm.api.use-llm-service:true}")
     private boolean useLlmService;
@@ -112,6 +121,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         logger.info("Задержка перед отправкой опроса: {} минут", feedbackDelayMinutes);
         logger.info("Автоматическое создание сводки: {} (задержка: {} минут)", 
             autoSummaryEnabled ? "включено" : "выключено", summaryDelayMinutes);
+        restoreJournaledState();
         
         // Вебхук теперь удаляется в TelegramBotConfiguration перед регистрацией бота
         logger.info("Бот готов к получению обновлений. Ожидаю команды /start...");
@@ -155,6 +165,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
                 Long chatId = update.getMessage().getChatId();
                 Long userId = update.getMessage().getFrom().getId();
                 canAskBusinessQuestion.put(userId, true);
+                stateJournal.put(JournalKind.PAID_QUESTION, userId, StateCodec.EMPTY);
                 SendMessage msg = new SendMessage();
                 msg.setChatId(chatId.toString());
                 msg.setText("⭐ Оплата получена.\nНапишите свой вопрос бизнесмену одним сообщением.");
@@ -163,7 +174,6 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
                 } catch (TelegramApiException e) {
                     logger.error("Ошибка при отправке сообщения после успешной оплаты", e);
                 }
-                // здесь можно пометить userId как «оплатил вопрос» в Map/БД
             }
             return;
         }
@@ -241,13 +251,19 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
                     mainMenuService.handlePuzzleAnswer(chatId, userId, messageText);
 
                 if (puzzleResult.isHandled()) {
-                    for (SendMessage msg : puzzleResult.getMessages()) {
-                        try {
-                            execute(msg);
-                        } catch (TelegramApiException e) {
-                            logger.error("Ошибка при отправке ответа на загадку", e);
-                        }
-                    }
+                    puzzleResult.getMessages()
+                        .publishOn(blockingScheduler)
+                        .subscribe(
+                            messages -> {
+                                for (SendMessage msg : messages) {
+                                    try {
+                                        execute(msg);
+                                    } catch (TelegramApiException e) {
+                                        logger.error("Ошибка при отправке ответа на загадку", e);
+                                    }
+                                }
+                            },
+                            error -> logger.error("Ошибка при проверке ответа на загадку", error));
                 } else {
                     MainMenuService.GameAnswerResult gameResult =
                         mainMenuService.handleGameAnswer(chatId, userId, messageText);
@@ -341,14 +357,17 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
             answerMono = llmService.getAnswer(messageText, userId);
         } else {
             logger.info("Используется WorkingApiService для пользователя {}", userId);
-            answerMono = workingApiService.getAnswer(messageText);
+            answerMono = workingApiService.getAnswer(messageText, userId);
         }
         
         // Получаем ответ от выбранного сервиса
         String username = update.getMessage().getFrom().getUserName();
         boolean isAdmin = username != null && adminService.isAdmin(username);
         
-        answerMono.subscribe(
+        // Отправка в Telegram и запись в БД блокируют поток — уходим с event loop
+        answerMono
+            .publishOn(blockingScheduler)
+            .subscribe(
             answer -> {
                 logger.info("Получен ответ, длина: {} символов", answer.length());
                 sendLongMessage(chatId, answer, isAdmin);
@@ -375,10 +394,16 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
                 logger.info("Ответ отправлен пользователю {}: {}", userId, answer.substring(0, Math.min(50, answer.length())));
             },
             error -> {
-                logger.error("Ошибка при получении ответа", error);
                 SendMessage errorMessage = new SendMessage();
                 errorMessage.setChatId(chatId.toString());
-                errorMessage.setText("Извините, произошла ошибка. Попробуйте позже.");
+                if (error instanceof LlmOverloadedException overloaded) {
+                    logger.warn("Запрос пользователя {} отклонён контролем нагрузки: {}", userId, overloaded.getMessage());
+                    errorMessage.setText("⏳ Сейчас много запросов. Попробуйте ещё раз через "
+                        + overloaded.getRetryAfterSeconds() + " с.");
+                } else {
+                    logger.error("Ошибка при получении ответа", error);
+                    errorMessage.setText("Извините, произошла ошибка. Попробуйте позже.");
+                }
                 
                 try {
                     execute(errorMessage);
@@ -598,6 +623,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         // Обработка главного меню и фактов (доступно всем пользователям)
         if (mainMenuService.canHandleCallback(data)) {
             mainMenuService.handleCallback(callbackQuery)
+                .publishOn(blockingScheduler)
                 .subscribe(
                     result -> {
                         for (SendMessage msg : result.getMessages()) {
@@ -763,6 +789,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         try {
             execute(message);
             waitingForFeedback.put(userId, "waiting");  // Устанавливаем флаг ожидания
+            journalFeedbackSurvey(userId);
             logger.info("Опрос отправлен пользователю {}", userId);
         } catch (TelegramApiException e) {
             logger.error("Ошибка при отправке опроса", e);
@@ -803,6 +830,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         Long chatId = update.getMessage().getChatId();
 
         canAskBusinessQuestion.remove(userId);
+        stateJournal.remove(JournalKind.PAID_QUESTION, userId);
 
         var assistantOpt = assistantService.findRandomActiveAssistant();
         if (assistantOpt.isEmpty()) {
@@ -972,10 +1000,12 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
                 waitingForFeedback.remove(userId);
                 pendingRatings.remove(userId);
                 lastUserQuestion.remove(userId);
+                journalFeedbackSurvey(userId);
             } else {
                 // Для любой оценки ниже 10 требуем комментарий
                 pendingRatings.put(userId, rating);
                 waitingForFeedback.put(userId, "comment");
+                journalFeedbackSurvey(userId);
                 
                 sendCallbackAnswer(callbackQuery.getId(), "✅ Оценка " + rating + "/10 получена");
                 
@@ -1017,29 +1047,54 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         waitingForFeedback.remove(userId);
         pendingRatings.remove(userId);
         lastUserQuestion.remove(userId);
+        journalFeedbackSurvey(userId);
     }
 
     /**
-     * Отправляет напоминание пользователю
+     * Записывает состояние опроса пользователя в журнал (или удаляет, если опроса нет)
      */
-    public void sendReminderMessage(Long userId, String message) {
-        try {
-            SendMessage sendMessage = new SendMessage();
-            sendMessage.setChatId(userId.toString());
-            sendMessage.setText(message);
-            
-            execute(sendMessage);
-            logger.info("Напоминание отправлено пользователю {}", userId);
-        } catch (TelegramApiException e) {
-            // Если пользователь заблокировал бота, это нормально
-            if (e.getMessage() != null && e.getMessage().contains("blocked")) {
-                logger.debug("Пользователь {} заблокировал бота", userId);
-            } else {
-                logger.error("Ошибка при отправке напоминания пользователю {}", userId, e);
+    private void journalFeedbackSurvey(Long userId) {
+        String state = waitingForFeedback.get(userId);
+        if (state == null) {
+            stateJournal.remove(JournalKind.FEEDBACK_SURVEY, userId);
+            return;
+        }
+        stateJournal.put(JournalKind.FEEDBACK_SURVEY, userId, StateCodec.writer()
+            .putString(state)
+            .putNullableInt(pendingRatings.get(userId))
+            .putString(lastUserQuestion.get(userId))
+            .toBytes());
+    }
+
+    /**
+     * Поднимает из журнала оплаченные вопросы и незавершённые опросы, пережившие рестарт
+     */
+    private void restoreJournaledState() {
+        stateJournal.restored(JournalKind.PAID_QUESTION).keySet()
+            .forEach(userId -> canAskBusinessQuestion.put(userId, true));
+        java.util.Map<Long, byte[]> surveys = stateJournal.restored(JournalKind.FEEDBACK_SURVEY);
+        surveys.forEach((userId, value) -> {
+            try {
+                StateCodec.Reader reader = StateCodec.reader(value);
+                waitingForFeedback.put(userId, reader.getString());
+                Integer rating = reader.getNullableInt();
+                if (rating != null) {
+                    pendingRatings.put(userId, rating);
+                }
+                String question = reader.getString();
+                if (question != null) {
+                    lastUserQuestion.putIfAbsent(userId, question);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Не удалось восстановить опрос пользователя {} из журнала", userId, e);
             }
+        });
+        if (!canAskBusinessQuestion.isEmpty() || !surveys.isEmpty()) {
+            logger.info("Из журнала восстановлено: оплаченных вопросов {}, опросов {}",
+                canAskBusinessQuestion.size(), surveys.size());
         }
     }
-    
+
     /**
      * Отправляет ответ на callback query
      */
@@ -1081,6 +1136,7 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
         
         // Создаём сводку
         summaryService.createAndSaveSummary(userId, username)
+            .publishOn(blockingScheduler)
             .subscribe(
                 result -> {
                     SendMessage resultMessage = new SendMessage();
@@ -1146,23 +1202,11 @@ public class M1ndTelegramBot extends TelegramLongPollingBot {
     }
     
     /**
-     * Создает сводку без отправки сообщений пользователю (тихий режим)
+     * Ставит сессию в очередь фоновой пакетной свёртки (без уведомления пользователя)
      */
     private void createSummarySilently(Long userId, String username) {
-        // Проверяем, есть ли история диалога через SummaryService
-        // SummaryService использует ConversationService внутри, так что проверка будет там
-        logger.info("Начинаем автоматическое создание сводки для пользователя {} (без уведомления)", userId);
-        
-        // Создаём сводку без отправки сообщений пользователю
-        summaryService.createAndSaveSummary(userId, username)
-            .subscribe(
-                result -> {
-                    logger.info("Автоматическая сводка успешно создана для пользователя {}: {}", userId, result);
-                },
-                error -> {
-                    logger.error("Ошибка при автоматическом создании сводки для пользователя {}", userId, error);
-                }
-            );
+        logger.info("Ставлю сессию пользователя {} в очередь автоматической сводки", userId);
+        summaryBatchWorker.enqueue(userId, username);
     }
 }
 
@@ -1,16 +1,31 @@
 package com.example.m1nd.bot;
 
 import com.example.m1nd.model.FactTopic;
+import com.example.m1nd.model.AnswerEvaluation;
 import com.example.m1nd.model.Game;
 import com.example.m1nd.model.IdeaTopic;
 import com.example.m1nd.model.MotivationTopic;
+import com.example.m1nd.model.UserProgressSnapshot;
+import com.example.m1nd.repository.PuzzleBankJdbcRepository.BankItem;
+import com.example.m1nd.service.CatalogCache;
 import com.example.m1nd.service.FactTopicService;
 import com.example.m1nd.service.GameService;
 import com.example.m1nd.service.IdeaTopicService;
 import com.example.m1nd.service.LLMService;
 import com.example.m1nd.service.MotivationTopicService;
+import com.example.m1nd.service.PuzzleBankService;
 import com.example.m1nd.service.TaskService;
 import com.example.m1nd.service.UserProgressService;
+import com.example.m1nd.service.game.AnswerEvaluator;
+import com.example.m1nd.service.game.GuessNumberEngine;
+import com.example.m1nd.service.journal.JournalKind;
+import com.example.m1nd.service.journal.StateCodec;
+import com.example.m1nd.service.journal.StateJournal;
+import com.example.m1nd.service.llm.LlmLane;
+import com.example.m1nd.service.llm.ModelRoute;
+import com.example.m1nd.service.llm.ModelTierRouter;
+import com.example.m1nd.util.Prefetched;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,12 +38,19 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKe
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -42,7 +64,14 @@ public class MainMenuService {
     private final MotivationTopicService motivationTopicService;
     private final GameService gameService;
     private final TaskService taskService;
+    private final CatalogCache catalogCache;
+    private final PuzzleBankService puzzleBankService;
+    private final AnswerEvaluator answerEvaluator;
+    private final GuessNumberEngine guessNumberEngine;
     private final UserProgressService userProgressService;
+    private final ModelTierRouter modelTierRouter;
+    private final StateJournal stateJournal;
+    private final Scheduler blockingScheduler;
 
     private enum PuzzleCategory {
         RIDDLE,
@@ -58,6 +87,15 @@ public class MainMenuService {
         private String explanation;
         private int iqIndex;
         private int iqTotal;
+        /** Вопросы IQ-теста наперёд; в журнал не пишется */
+        private QuestionPipeline pipeline;
+
+        private void cancelPipeline() {
+            if (pipeline != null) {
+                pipeline.cancel();
+                pipeline = null;
+            }
+        }
     }
 
     private final Map<Long, PuzzleSession> puzzleSessions = new ConcurrentHashMap<>();
@@ -73,9 +111,191 @@ public class MainMenuService {
         private String answer;
         private String explanation;
         private String options;
+        /** Вопросы викторины наперёд; в журнал не пишется */
+        private QuestionPipeline pipeline;
+
+        private void cancelPipeline() {
+            if (pipeline != null) {
+                pipeline.cancel();
+                pipeline = null;
+            }
+        }
     }
     private final Map<Long, GameSession> gameSessions = new ConcurrentHashMap<>();
 
+    /**
+     * Вопросы многошаговой сессии (IQ-тест, викторина), готовые раньше, чем пользователь до них дойдёт:
+     * набор из банка, взятый при старте, и один вопрос, который генерируется, пока отвечают на текущий.
+     * После рестарта пайплайна нет — он заводится заново пустым и дальше снова работает на опережение
+     */
+    static final class QuestionPipeline {
+        private final Deque<ParsedPuzzle> upcoming = new ConcurrentLinkedDeque<>();
+        /** Предзагрузка и флаг отмены меняются вместе под монитором пайплайна, иначе cancel() может её пропустить */
+        private Prefetched<ParsedPuzzle> prefetch;
+        private boolean cancelled;
+
+        QuestionPipeline(List<ParsedPuzzle> fromBank) {
+            upcoming.addAll(fromBank);
+        }
+
+        /**
+         * Вопрос номер current (с 1): из очереди, из предзагрузки или, если готового нет, генерируется сейчас.
+         * Вместе с ним запускается генерация следующего, когда очередь кончилась.
+         * generate — вопрос, которого пользователь ждёт; lookahead — заготовка наперёд, она идёт фоном
+         */
+        Mono<ParsedPuzzle> take(int current, int total, IntFunction<Mono<ParsedPuzzle>> generate,
+                                IntFunction<Mono<ParsedPuzzle>> lookahead) {
+            ParsedPuzzle ready = upcoming.poll();
+            Prefetched<ParsedPuzzle> pending = ready == null ? takePrefetch() : null;
+            Mono<ParsedPuzzle> question;
+            if (ready != null) {
+                question = Mono.just(ready);
+            } else if (pending != null) {
+                // Предзагрузка упала — не страшно, пробуем ещё раз уже на глазах у пользователя
+                question = pending.get()
+                    .onErrorResume(error -> generate.apply(current))
+                    .switchIfEmpty(Mono.defer(() -> generate.apply(current)));
+            } else {
+                question = generate.apply(current);
+            }
+            return question.doOnNext(ignored -> {
+                if (current < total && upcoming.isEmpty()) {
+                    startPrefetch(() -> lookahead.apply(current + 1));
+                }
+            });
+        }
+
+        void cancel() {
+            Prefetched<ParsedPuzzle> pending;
+            synchronized (this) {
+                cancelled = true;
+                pending = prefetch;
+                prefetch = null;
+            }
+            if (pending != null) {
+                pending.cancel();
+            }
+            upcoming.clear();
+        }
+
+        private synchronized Prefetched<ParsedPuzzle> takePrefetch() {
+            Prefetched<ParsedPuzzle> pending = prefetch;
+            prefetch = null;
+            return pending;
+        }
+
+        /**
+         * Запуск под тем же монитором, что и cancel(): после отмены предзагрузка уже не стартует,
+         * а уже запущенную не затирает вторая
+         */
+        private synchronized void startPrefetch(Supplier<Mono<ParsedPuzzle>> next) {
+            if (!cancelled && prefetch == null) {
+                prefetch = Prefetched.start(next.get());
+            }
+        }
+    }
+
+    /**
+     * Пайплайн с набором вопросов из банка на всю сессию — одним обращением к БД
+     */
+    private Mono<QuestionPipeline> startPipeline(Long userId, PuzzleBankService.Category category, int total) {
+        return puzzleBankService.nextSet(userId, category, total)
+            .map(items -> new QuestionPipeline(items.stream().map(MainMenuService::toParsedPuzzle).toList()));
+    }
+
+    /**
+     * Поднимает из журнала загадки и игры, начатые до рестарта
+     */
+    @PostConstruct
+    public void restoreSessions() {
+        stateJournal.restored(JournalKind.PUZZLE_SESSION).forEach((userId, value) -> {
+            try {
+                puzzleSessions.put(userId, decodePuzzleSession(value));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось восстановить загадку пользователя {} из журнала", userId, e);
+            }
+        });
+        stateJournal.restored(JournalKind.GAME_SESSION).forEach((userId, value) -> {
+            try {
+                gameSessions.put(userId, decodeGameSession(value));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось восстановить игру пользователя {} из журнала", userId, e);
+            }
+        });
+        if (!puzzleSessions.isEmpty() || !gameSessions.isEmpty()) {
+            log.info("Из журнала восстановлено: загадок {}, игр {}", puzzleSessions.size(), gameSessions.size());
+        }
+    }
+
+    private void savePuzzleSession(Long userId, PuzzleSession session) {
+        stateJournal.put(JournalKind.PUZZLE_SESSION, userId, StateCodec.writer()
+            .putString(session.category != null ? session.category.name() : null)
+            .putString(session.question)
+            .putString(session.answer)
+            .putString(session.explanation)
+            .putInt(session.iqIndex)
+            .putInt(session.iqTotal)
+            .toBytes());
+    }
+
+    private static PuzzleSession decodePuzzleSession(byte[] value) {
+        StateCodec.Reader reader = StateCodec.reader(value);
+        PuzzleSession session = new PuzzleSession();
+        String category = reader.getString();
+        session.category = category != null ? PuzzleCategory.valueOf(category) : null;
+        session.question = reader.getString();
+        session.answer = reader.getString();
+        session.explanation = reader.getString();
+        session.iqIndex = reader.getInt();
+        session.iqTotal = reader.getInt();
+        return session;
+    }
+
+    private void removePuzzleSession(Long userId) {
+        PuzzleSession session = puzzleSessions.remove(userId);
+        if (session != null) {
+            session.cancelPipeline();
+        }
+        stateJournal.remove(JournalKind.PUZZLE_SESSION, userId);
+    }
+
+    private void saveGameSession(Long userId, GameSession session) {
+        stateJournal.put(JournalKind.GAME_SESSION, userId, StateCodec.writer()
+            .putString(session.gameCode)
+            .putNullableInt(session.secretNumber)
+            .putString(session.messageToUser)
+            .putInt(session.quizIndex)
+            .putInt(session.quizTotal)
+            .putString(session.question)
+            .putString(session.answer)
+            .putString(session.explanation)
+            .putString(session.options)
+            .toBytes());
+    }
+
+    private static GameSession decodeGameSession(byte[] value) {
+        StateCodec.Reader reader = StateCodec.reader(value);
+        GameSession session = new GameSession();
+        session.gameCode = reader.getString();
+        session.secretNumber = reader.getNullableInt();
+        session.messageToUser = reader.getString();
+        session.quizIndex = reader.getInt();
+        session.quizTotal = reader.getInt();
+        session.question = reader.getString();
+        session.answer = reader.getString();
+        session.explanation = reader.getString();
+        session.options = reader.getString();
+        return session;
+    }
+
+    private void removeGameSession(Long userId) {
+        GameSession session = gameSessions.remove(userId);
+        if (session != null) {
+            session.cancelPipeline();
+        }
+        stateJournal.remove(JournalKind.GAME_SESSION, userId);
+    }
+
     public ReplyKeyboardMarkup createMainReplyKeyboard() {
         ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
         keyboardMarkup.setResizeKeyboard(true);
@@ -176,6 +396,20 @@ public class MainMenuService {
         Long chatId = callbackQuery.getMessage().getChatId();
         Long userId = callbackQuery.getFrom().getId();
 
+        // Ушёл из IQ-теста или викторины — вопросы, готовившиеся наперёд, больше не нужны
+        if (!data.startsWith("puzzle_iq_") && !"puzzle_show_answer".equals(data)) {
+            PuzzleSession puzzleSession = puzzleSessions.get(userId);
+            if (puzzleSession != null) {
+                puzzleSession.cancelPipeline();
+            }
+        }
+        if (!data.startsWith("game_quiz_")) {
+            GameSession gameSession = gameSessions.get(userId);
+            if (gameSession != null) {
+                gameSession.cancelPipeline();
+            }
+        }
+
         // Главное меню "Факты" — показываем выбор тем
         if ("main_facts".equals(data)) {
             SendMessage message = new SendMessage();
@@ -234,22 +468,17 @@ public class MainMenuService {
 
         // Мой прогресс
         if ("main_progress".equals(data)) {
-            int riddles = userProgressService.getRiddlesSolved(userId);
-            int tasks = userProgressService.getTasksCompleted(userId);
-            int facts = userProgressService.getFactsViewed(userId);
-            int ideas = userProgressService.getIdeasViewed(userId);
-            int motiv = userProgressService.getMotivationsViewed(userId);
-            int games = userProgressService.getGamesPlayed(userId);
+            UserProgressSnapshot progress = userProgressService.getProgress(userId);
             SendMessage message = new SendMessage();
             message.setChatId(chatId.toString());
             message.setText(
                 "📊 Мой прогресс\n\n" +
-                    "Решено загадок: " + riddles + "\n" +
-                    "Выполнено заданий: " + tasks + "\n" +
-                    "Посмотрено фактов: " + facts + "\n" +
-                    "Посмотрено идей: " + ideas + "\n" +
-                    "Получено мотиваций: " + motiv + "\n" +
-                    "Сыграно игр: " + games
+                    "Решено загадок: " + progress.getRiddlesSolved() + "\n" +
+                    "Выполнено заданий: " + progress.getTasksCompleted() + "\n" +
+                    "Посмотрено фактов: " + progress.getFactsViewed() + "\n" +
+                    "Посмотрено идей: " + progress.getIdeasViewed() + "\n" +
+                    "Получено мотиваций: " + progress.getMotivationsViewed() + "\n" +
+                    "Сыграно игр: " + progress.getGamesPlayed()
             );
             message.setReplyMarkup(createProgressBackKeyboard());
             return Mono.just(MainMenuResult.single(message, "✅"));
@@ -319,26 +548,32 @@ public class MainMenuService {
         }
 
         if ("puzzle_iq_start".equals(data) || "puzzle_iq_next".equals(data)) {
-            PuzzleSession session = puzzleSessions.computeIfAbsent(userId, id -> {
-                PuzzleSession s = new PuzzleSession();
-                s.category = PuzzleCategory.IQ;
-                s.iqIndex = 0;
-                s.iqTotal = 5;
-                return s;
-            });
+            PuzzleSession session = puzzleSessions.get(userId);
 
-            if (session.category != PuzzleCategory.IQ) {
-                session.category = PuzzleCategory.IQ;
-                session.iqIndex = 0;
-                session.iqTotal = 5;
+            // Новый тест, в том числе «Пройти ещё раз» после завершённого
+            if ("puzzle_iq_start".equals(data) || session == null || session.category != PuzzleCategory.IQ) {
+                if (session != null) {
+                    session.cancelPipeline();
+                }
+                PuzzleSession started = new PuzzleSession();
+                started.category = PuzzleCategory.IQ;
+                started.iqIndex = 0;
+                started.iqTotal = 5;
+                puzzleSessions.put(userId, started);
+                return startPipeline(userId, PuzzleBankService.Category.IQ, started.iqTotal)
+                    .flatMap(pipeline -> {
+                        started.pipeline = pipeline;
+                        return buildIqQuestionMessage(chatId, userId, started);
+                    })
+                    .map(msg -> MainMenuResult.single(msg, "✅"));
             }
 
-            if ("puzzle_iq_next".equals(data) && session.iqIndex >= session.iqTotal) {
+            if (session.iqIndex >= session.iqTotal) {
                 SendMessage finished = new SendMessage();
                 finished.setChatId(chatId.toString());
                 finished.setText("🧠 IQ-мини-тест завершён! Спасибо, что прошли тест.");
                 finished.setReplyMarkup(createPuzzlesMenuKeyboard());
-                puzzleSessions.remove(userId);
+                removePuzzleSession(userId);
                 return Mono.just(MainMenuResult.single(finished, "✅ Тест завершён"));
             }
 
@@ -365,6 +600,9 @@ public class MainMenuService {
             }
             msg.setText(sb.toString());
             msg.setReplyMarkup(createAfterAnswerKeyboard(session.category, session));
+            if (session.category != PuzzleCategory.IQ) {
+                removePuzzleSession(userId);
+            }
 
             return Mono.just(MainMenuResult.single(msg, "✅ Ответ показан"));
         }
@@ -496,11 +734,20 @@ public class MainMenuService {
             }
             if ("quiz".equals(gameCode)) {
                 userProgressService.incrementGamesPlayed(userId);
-                GameSession session = gameSessions.computeIfAbsent(userId, id -> new GameSession());
+                GameSession previous = gameSessions.get(userId);
+                if (previous != null) {
+                    previous.cancelPipeline();
+                }
+                GameSession session = new GameSession();
                 session.gameCode = "quiz";
                 session.quizIndex = 0;
                 session.quizTotal = 5;
-                return buildQuizQuestionMessage(chatId, userId, session)
+                gameSessions.put(userId, session);
+                return startPipeline(userId, PuzzleBankService.Category.QUIZ, session.quizTotal)
+                    .flatMap(pipeline -> {
+                        session.pipeline = pipeline;
+                        return buildQuizQuestionMessage(chatId, userId, session);
+                    })
                     .map(msg -> MainMenuResult.single(msg, "✅"))
                     .onErrorResume(error -> {
                         log.error("Ошибка при старте викторины", error);
@@ -520,7 +767,7 @@ public class MainMenuService {
             return Mono.just(MainMenuResult.single(msg, "✅"));
         }
 
-        // Угадай число — попробовать ещё раз (новый запрос к агенту)
+        // Угадай число — попробовать ещё раз с новым числом
         if ("game_guess_again".equals(data)) {
             return buildGuessNumberMessage(chatId, userId)
                 .map(msg -> MainMenuResult.single(msg, "✅"))
@@ -539,7 +786,7 @@ public class MainMenuService {
             }
             session.quizIndex++;
             if (session.quizIndex >= session.quizTotal) {
-                gameSessions.remove(userId);
+                removeGameSession(userId);
                 SendMessage finished = new SendMessage();
                 finished.setChatId(chatId.toString());
                 finished.setText("❓ Викторина завершена! Спасибо, что прошли тест.");
@@ -582,16 +829,23 @@ public class MainMenuService {
     }
 
     private InlineKeyboardMarkup createFactsTopicsKeyboard() {
+        return catalogCache.snapshot().keyboard("facts", snapshot ->
+            buildCatalogKeyboard(snapshot.facts().values(), FactTopic::getTitle, topic -> "facts_" + topic.getCode()));
+    }
+
+    /**
+     * Клавиатура справочника: по 2 кнопки в ряд и возврат в главное меню.
+     * Строится один раз на версию снимка CatalogCache
+     */
+    private <T> InlineKeyboardMarkup buildCatalogKeyboard(Collection<T> items,
+                                                          Function<T, String> title,
+                                                          Function<T, String> callbackData) {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
-
-        List<FactTopic> topics = factTopicService.findAll();
         List<InlineKeyboardButton> currentRow = new ArrayList<>();
 
-        for (FactTopic topic : topics) {
-            String title = topic.getTitle();
-            String code = topic.getCode();
-            currentRow.add(button(title, "facts_" + code));
+        for (T item : items) {
+            currentRow.add(button(title.apply(item), callbackData.apply(item)));
 
             // Раскладываем по 2 кнопки в ряд, как раньше
             if (currentRow.size() == 2) {
@@ -629,7 +883,11 @@ public class MainMenuService {
             nextCategory = category != null ? category : "default";
         }
 
-        return llmService.getAnswer(prompt, userId)
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.MENU_CONTENT, prompt,
+            topicOpt.map(FactTopic::getModelTier).orElse(null), topicOpt.map(FactTopic::getMaxTokens).orElse(null));
+
+        return llmService.generate(prompt, userId, route, LlmLane.MENU)
+            .publishOn(blockingScheduler)
             .map(answer -> {
                 userProgressService.incrementFactsViewed(userId);
                 SendMessage factMessage = new SendMessage();
@@ -656,28 +914,8 @@ public class MainMenuService {
     }
 
     private InlineKeyboardMarkup createIdeasTopicsKeyboard() {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
-
-        List<IdeaTopic> topics = ideaTopicService.findAll();
-        List<InlineKeyboardButton> currentRow = new ArrayList<>();
-
-        for (IdeaTopic topic : topics) {
-            currentRow.add(button(topic.getTitle(), "ideas_" + topic.getCode()));
-            if (currentRow.size() == 2) {
-                keyboard.add(currentRow);
-                currentRow = new ArrayList<>();
-            }
-        }
-        if (!currentRow.isEmpty()) {
-            keyboard.add(currentRow);
-        }
-
-        List<InlineKeyboardButton> rowBack = new ArrayList<>();
-        rowBack.add(button("◀️ Возврат в главное меню", "main_menu_back"));
-        keyboard.add(rowBack);
-        markup.setKeyboard(keyboard);
-        return markup;
+        return catalogCache.snapshot().keyboard("ideas", snapshot ->
+            buildCatalogKeyboard(snapshot.ideas().values(), IdeaTopic::getTitle, topic -> "ideas_" + topic.getCode()));
     }
 
     private Mono<SendMessage> buildIdeaMessage(Long chatId, Long userId, String category) {
@@ -695,7 +933,11 @@ public class MainMenuService {
             nextCategory = category != null ? category : "default";
         }
 
-        return llmService.getAnswer(prompt, userId)
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.MENU_CONTENT, prompt,
+            topicOpt.map(IdeaTopic::getModelTier).orElse(null), topicOpt.map(IdeaTopic::getMaxTokens).orElse(null));
+
+        return llmService.generate(prompt, userId, route, LlmLane.MENU)
+            .publishOn(blockingScheduler)
             .map(answer -> {
                 userProgressService.incrementIdeasViewed(userId);
                 SendMessage ideaMessage = new SendMessage();
@@ -721,28 +963,8 @@ public class MainMenuService {
     }
 
     private InlineKeyboardMarkup createMotivationTopicsKeyboard() {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
-
-        List<MotivationTopic> topics = motivationTopicService.findAll();
-        List<InlineKeyboardButton> currentRow = new ArrayList<>();
-
-        for (MotivationTopic topic : topics) {
-            currentRow.add(button(topic.getTitle(), "motiv_" + topic.getCode()));
-            if (currentRow.size() == 2) {
-                keyboard.add(currentRow);
-                currentRow = new ArrayList<>();
-            }
-        }
-        if (!currentRow.isEmpty()) {
-            keyboard.add(currentRow);
-        }
-
-        List<InlineKeyboardButton> rowBack = new ArrayList<>();
-        rowBack.add(button("◀️ Возврат в главное меню", "main_menu_back"));
-        keyboard.add(rowBack);
-        markup.setKeyboard(keyboard);
-        return markup;
+        return catalogCache.snapshot().keyboard("motivations", snapshot ->
+            buildCatalogKeyboard(snapshot.motivations().values(), MotivationTopic::getTitle, topic -> "motiv_" + topic.getCode()));
     }
 
     private Mono<SendMessage> buildMotivationMessage(Long chatId, Long userId, String category) {
@@ -760,7 +982,11 @@ public class MainMenuService {
             nextCategory = category != null ? category : "default";
         }
 
-        return llmService.getAnswer(prompt, userId)
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.MENU_CONTENT, prompt,
+            topicOpt.map(MotivationTopic::getModelTier).orElse(null), topicOpt.map(MotivationTopic::getMaxTokens).orElse(null));
+
+        return llmService.generate(prompt, userId, route, LlmLane.MENU)
+            .publishOn(blockingScheduler)
             .map(answer -> {
                 userProgressService.incrementMotivationsViewed(userId);
                 SendMessage msg = new SendMessage();
@@ -786,25 +1012,8 @@ public class MainMenuService {
     }
 
     private InlineKeyboardMarkup createGamesKeyboard() {
-        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
-        List<Game> games = gameService.findAll();
-        List<InlineKeyboardButton> currentRow = new ArrayList<>();
-        for (Game game : games) {
-            currentRow.add(button(game.getTitle(), "games_" + game.getCode()));
-            if (currentRow.size() == 2) {
-                keyboard.add(currentRow);
-                currentRow = new ArrayList<>();
-            }
-        }
-        if (!currentRow.isEmpty()) {
-            keyboard.add(currentRow);
-        }
-        List<InlineKeyboardButton> rowBack = new ArrayList<>();
-        rowBack.add(button("◀️ Возврат в главное меню", "main_menu_back"));
-        keyboard.add(rowBack);
-        markup.setKeyboard(keyboard);
-        return markup;
+        return catalogCache.snapshot().keyboard("games", snapshot ->
+            buildCatalogKeyboard(snapshot.games().values(), Game::getTitle, game -> "games_" + game.getCode()));
     }
 
     private InlineKeyboardMarkup createGameBackKeyboard() {
@@ -882,65 +1091,62 @@ public class MainMenuService {
         return msg;
     }
 
-    private Mono<SendMessage> buildGuessNumberMessage(Long chatId, Long userId) {
-        String prompt = gameService.findByCode("guess_number")
+    /**
+     * Вопрос викторины; lane — MENU для вопроса, которого ждут, BACKGROUND для заготовки наперёд
+     * (фоновая полоса не списывает лимит пользователя и уступает контенту меню)
+     */
+    private Mono<ParsedPuzzle> quizQuestion(Long userId, Optional<Game> gameOpt, int number, int total, LlmLane lane) {
+        String prompt = gameOpt
             .map(Game::getPrompt)
-            .orElse("Загадай число от 1 до 10. Ответь в формате: первая строка NUMBER: цифра. Вторая строка MESSAGE: приветственное сообщение пользователю.");
-        return llmService.getAnswer(prompt, userId)
-            .map(raw -> {
-                int secret = 5;
-                String messageToUser = "Я загадал число от 1 до 10. Попробуй угадать.";
-                if (raw != null && !raw.isBlank()) {
-                    String[] lines = raw.split("\\r?\\n");
-                    for (String line : lines) {
-                        String t = line.trim();
-                        if (t.toUpperCase().startsWith("NUMBER:")) {
-                            String numStr = t.substring(7).trim().replaceAll("[^0-9]", "");
-                            if (!numStr.isEmpty()) {
-                                try {
-                                    int n = Integer.parseInt(numStr);
-                                    if (n >= 1 && n <= 10) {
-                                        secret = n;
-                                    }
-                                } catch (NumberFormatException ignored) {
-                                }
-                            }
-                        } else if (t.toUpperCase().startsWith("MESSAGE:")) {
-                            messageToUser = t.substring(8).trim();
-                            if (messageToUser.isEmpty()) {
-                                messageToUser = "Я загадал число от 1 до 10. Попробуй угадать.";
-                            }
-                        }
-                    }
-                }
-                GameSession session = gameSessions.computeIfAbsent(userId, id -> new GameSession());
-                session.gameCode = "guess_number";
-                session.secretNumber = secret;
-                session.messageToUser = messageToUser;
+            .orElse("Сгенерируй один вопрос викторины. Формат: QUESTION: ... OPTIONS: a) ... b) ... c) ... d) ... ANSWER: a|b|c|d EXPLANATION: ...");
+        String promptWithNum = "Вопрос " + number + " из " + total + ".\n" + prompt;
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.GENERATOR, promptWithNum,
+            gameOpt.map(Game::getModelTier).orElse(null), gameOpt.map(Game::getMaxTokens).orElse(null));
+
+        Mono<ParsedPuzzle> generated = Mono.defer(() -> llmService.generate(promptWithNum, userId, route, lane))
+            .publishOn(blockingScheduler)
+            .map(this::parsePuzzle);
+        return fromBankOr(userId, PuzzleBankService.Category.QUIZ, generated);
+    }
 
-                SendMessage msg = new SendMessage();
-                msg.setChatId(chatId.toString());
-                msg.setText("🎮 Игра\n\n" + messageToUser);
-                msg.setReplyMarkup(createGuessNumberKeyboard());
-                return msg;
-            });
+    /**
+     * Число загадывается на месте, без запроса к модели
+     */
+    private Mono<SendMessage> buildGuessNumberMessage(Long chatId, Long userId) {
+        return Mono.fromCallable(() -> {
+            GuessNumberEngine.Round round = guessNumberEngine.start();
+            String messageToUser = round.intro();
+            GameSession session = gameSessions.computeIfAbsent(userId, id -> new GameSession());
+            session.gameCode = "guess_number";
+            session.secretNumber = round.secret();
+            session.messageToUser = messageToUser;
+            saveGameSession(userId, session);
+
+            SendMessage msg = new SendMessage();
+            msg.setChatId(chatId.toString());
+            msg.setText("🎮 Игра\n\n" + messageToUser);
+            msg.setReplyMarkup(createGuessNumberKeyboard());
+            return msg;
+        });
     }
 
     private Mono<SendMessage> buildQuizQuestionMessage(Long chatId, Long userId, GameSession session) {
         int current = session.quizIndex + 1;
         int total = session.quizTotal;
-        String prompt = gameService.findByCode("quiz")
-            .map(Game::getPrompt)
-            .orElse("Сгенерируй один вопрос викторины. Формат: QUESTION: ... OPTIONS: a) ... b) ... c) ... d) ... ANSWER: a|b|c|d EXPLANATION: ...");
-        String promptWithNum = "Вопрос " + current + " из " + total + ".\n" + prompt;
+        Optional<Game> gameOpt = gameService.findByCode("quiz");
+        if (session.pipeline == null) {
+            session.pipeline = new QuestionPipeline(List.of());
+        }
 
-        return llmService.getAnswer(promptWithNum, userId)
-            .map(raw -> {
-                ParsedPuzzle parsed = parsePuzzle(raw);
+        return session.pipeline.take(current, total,
+                number -> quizQuestion(userId, gameOpt, number, total, LlmLane.MENU),
+                number -> quizQuestion(userId, gameOpt, number, total, LlmLane.BACKGROUND))
+            .map(parsed -> {
                 session.question = parsed.question;
                 session.answer = parsed.answer;
                 session.explanation = parsed.explanation;
                 session.options = parsed.options;
+                saveGameSession(userId, session);
 
                 StringBuilder text = new StringBuilder();
                 text.append("❓ Викторина. Вопрос ").append(current).append(" из ").append(total).append(":\n\n");
@@ -972,6 +1178,7 @@ public class MainMenuService {
 
     private Mono<SendMessage> buildTaskMessage(Long chatId, Long userId) {
         return Mono.fromSupplier(() -> taskService.findRandom())
+            .subscribeOn(blockingScheduler)
             .map(opt -> {
                 SendMessage msg = new SendMessage();
                 msg.setChatId(chatId.toString());
@@ -1006,32 +1213,27 @@ public class MainMenuService {
                 return GameAnswerResult.notHandled();
             }
             int secret = gameSession.secretNumber != null ? gameSession.secretNumber : 5;
-            gameSessions.remove(userId);
+            removeGameSession(userId);
 
-            String reply;
-            if (guessed == secret) {
-                reply = "✅ Вы угадали! Загаданное число было " + secret + ".";
-            } else {
-                reply = "❌ Не угадали. Загаданное число было " + secret + ".";
-            }
+            AnswerEvaluation evaluation = guessNumberEngine.check(secret, guessed);
             SendMessage msg = new SendMessage();
             msg.setChatId(chatId.toString());
-            msg.setText(reply);
+            msg.setText(evaluation.getFeedback());
             msg.setReplyMarkup(createGuessNumberKeyboard());
             return GameAnswerResult.handled(List.of(msg));
         }
         if ("quiz".equals(gameSession.gameCode) && gameSession.question != null && gameSession.answer != null) {
-            String userNormalized = extractFirstLetter(normalizeAnswer(messageText));
-            String correctNormalized = extractFirstLetter(normalizeAnswer(gameSession.answer));
-            boolean correct = !userNormalized.isEmpty() && !correctNormalized.isEmpty()
-                && userNormalized.charAt(0) == correctNormalized.charAt(0);
+            AnswerEvaluation evaluation = answerEvaluator.evaluateChoice(messageText, gameSession.answer, gameSession.options);
 
             StringBuilder sb = new StringBuilder();
-            if (correct) {
+            if (evaluation.isPassed()) {
                 sb.append("✅ Верно!\n\n");
             } else {
                 sb.append("❌ Неверно.\n\n");
             }
+            if (evaluation.hasFeedback()) {
+                sb.append(evaluation.getFeedback()).append("\n\n");
+            }
             sb.append("❓ Вопрос:\n").append(gameSession.question).append("\n\n");
             sb.append("✅ Правильный ответ: ").append(gameSession.answer).append("\n");
             if (gameSession.explanation != null && !gameSession.explanation.isBlank()) {
@@ -1046,74 +1248,62 @@ public class MainMenuService {
         return GameAnswerResult.notHandled();
     }
 
+    /**
+     * Ответ на загадку проверяется на месте; модель спрашивается, только если свободный ответ
+     * не удалось однозначно ни принять, ни отклонить — тогда сообщение приходит чуть позже
+     */
     public PuzzleAnswerResult handlePuzzleAnswer(Long chatId, Long userId, String messageText) {
         PuzzleSession session = puzzleSessions.get(userId);
         if (session == null || session.category == null || session.question == null || session.answer == null) {
             return PuzzleAnswerResult.notHandled();
         }
 
-        String userNormalized = normalizeAnswer(messageText);
-        String correctNormalized = normalizeAnswer(session.answer);
-
-        boolean correct;
-        if (session.category == PuzzleCategory.IQ) {
-            // Для IQ ожидаем букву a/b/c/d
-            String userLetter = extractFirstLetter(userNormalized);
-            String correctLetter = extractFirstLetter(correctNormalized);
-            correct = !userLetter.isEmpty() && !correctLetter.isEmpty()
-                && userLetter.charAt(0) == Character.toLowerCase(correctLetter.charAt(0));
-        } else {
-            correct = !userNormalized.isEmpty()
-                && !correctNormalized.isEmpty()
-                && userNormalized.equals(correctNormalized);
-        }
-
-        if (correct) {
-            userProgressService.incrementRiddlesSolved(userId);
-        }
-
-        StringBuilder sb = new StringBuilder();
-        if (correct) {
-            sb.append("✅ Вы абсолютно правы!\n\n");
-        } else {
-            sb.append("❌ Ответ не верен.\n\n");
-        }
-        sb.append("❓ Вопрос:\n").append(session.question).append("\n\n");
-        sb.append("✅ Правильный ответ: ").append(session.answer).append("\n");
-        if (session.explanation != null && !session.explanation.isBlank()) {
-            sb.append("\n💡 Объяснение:\n").append(session.explanation);
-        }
-
-        SendMessage msg = new SendMessage();
-        msg.setChatId(chatId.toString());
-        msg.setText(sb.toString());
-        msg.setReplyMarkup(createAfterAnswerKeyboard(session.category, session));
-
-        List<SendMessage> messages = new ArrayList<>();
-        messages.add(msg);
-        return PuzzleAnswerResult.handled(messages);
-    }
+        // Пока модель думает, пользователь может перейти к следующему вопросу — запоминаем текущий
+        PuzzleCategory category = session.category;
+        String question = session.question;
+        String answer = session.answer;
+        String explanation = session.explanation;
+        if (category != PuzzleCategory.IQ) {
+            // Ответ на загадку один: следующее сообщение — уже обычный вопрос к модели, а не к этой загадке
+            removePuzzleSession(userId);
+        }
+
+        // Для IQ ожидаем букву a/b/c/d
+        AnswerEvaluation local = category == PuzzleCategory.IQ
+            ? answerEvaluator.evaluateChoice(messageText, answer, null)
+            : answerEvaluator.evaluateFreeText(messageText, answer);
+        Mono<AnswerEvaluation> evaluation = answerEvaluator.needsReview(local)
+            ? answerEvaluator.review(question, answer, messageText, userId, local)
+            : Mono.just(local);
+
+        return PuzzleAnswerResult.handled(evaluation
+            .publishOn(blockingScheduler)
+            .map(result -> {
+                if (result.isPassed()) {
+                    userProgressService.incrementRiddlesSolved(userId);
+                }
 
-    private String normalizeAnswer(String text) {
-        if (text == null) {
-            return "";
-        }
-        String lower = text.trim().toLowerCase();
-        // Убираем все кроме букв и цифр
-        return lower.replaceAll("[^a-zа-я0-9]+", "");
-    }
+                StringBuilder sb = new StringBuilder();
+                if (result.isPassed()) {
+                    sb.append("✅ Вы абсолютно правы!\n\n");
+                } else {
+                    sb.append("❌ Ответ не верен.\n\n");
+                }
+                if (result.hasFeedback()) {
+                    sb.append(result.getFeedback()).append("\n\n");
+                }
+                sb.append("❓ Вопрос:\n").append(question).append("\n\n");
+                sb.append("✅ Правильный ответ: ").append(answer).append("\n");
+                if (explanation != null && !explanation.isBlank()) {
+                    sb.append("\n💡 Объяснение:\n").append(explanation);
+                }
 
-    private String extractFirstLetter(String text) {
-        if (text == null) {
-            return "";
-        }
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            if (Character.isLetter(c)) {
-                return String.valueOf(Character.toLowerCase(c));
-            }
-        }
-        return "";
+                SendMessage msg = new SendMessage();
+                msg.setChatId(chatId.toString());
+                msg.setText(sb.toString());
+                msg.setReplyMarkup(createAfterAnswerKeyboard(category, session));
+                return List.of(msg);
+            }));
     }
 
     private SendMessage buildPuzzlesMenuMessage(Long chatId) {
@@ -1211,14 +1401,20 @@ public class MainMenuService {
                     "QUESTION: ...\nANSWER: ...\nEXPLANATION: ...";
         }
 
-        return llmService.getAnswer(prompt, userId)
-            .map(raw -> {
-                ParsedPuzzle parsed = parsePuzzle(raw);
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.GENERATOR, prompt, null, null);
+
+        Mono<ParsedPuzzle> generated = Mono.defer(() -> llmService.generate(prompt, userId, route, LlmLane.MENU))
+            .publishOn(blockingScheduler)
+            .map(this::parsePuzzle);
+
+        return fromBankOr(userId, PuzzleBankService.Category.valueOf(category.name()), generated)
+            .map(parsed -> {
                 PuzzleSession session = puzzleSessions.computeIfAbsent(userId, id -> new PuzzleSession());
                 session.category = category;
                 session.question = parsed.question;
                 session.answer = parsed.answer;
                 session.explanation = parsed.explanation;
+                savePuzzleSession(userId, session);
 
                 SendMessage msg = new SendMessage();
                 msg.setChatId(chatId.toString());
@@ -1264,22 +1460,18 @@ public class MainMenuService {
 
         int current = session.iqIndex;
         int total = session.iqTotal;
+        if (session.pipeline == null) {
+            session.pipeline = new QuestionPipeline(List.of());
+        }
 
-        String prompt =
-            "Сгенерируй один вопрос мини IQ-теста на русском языке (вопрос № " + current + " из " + total + ").\n" +
-                "Дай ровно 4 варианта ответов (a, b, c, d), ровно один из них должен быть правильным.\n" +
-                "Формат ответа СТРОГО такой (без лишнего текста до и после):\n" +
-                "QUESTION: <текст вопроса>\n" +
-                "OPTIONS: a) <вариант>; b) <вариант>; c) <вариант>; d) <вариант>\n" +
-                "ANSWER: a|b|c|d\n" +
-                "EXPLANATION: <краткое объяснение правильного ответа>";
-
-        return llmService.getAnswer(prompt, userId)
-            .map(raw -> {
-                ParsedPuzzle parsed = parsePuzzle(raw);
+        return session.pipeline.take(current, total,
+                number -> iqQuestion(userId, number, total, LlmLane.MENU),
+                number -> iqQuestion(userId, number, total, LlmLane.BACKGROUND))
+            .map(parsed -> {
                 session.question = parsed.question;
                 session.answer = parsed.answer;
                 session.explanation = parsed.explanation;
+                savePuzzleSession(userId, session);
 
                 String optionsLine = parsed.options != null ? parsed.options : "";
 
@@ -1315,6 +1507,28 @@ public class MainMenuService {
             });
     }
 
+    /**
+     * Вопрос IQ-теста; lane — как в {@link #quizQuestion}
+     */
+    private Mono<ParsedPuzzle> iqQuestion(Long userId, int number, int total, LlmLane lane) {
+        String prompt =
+            "Сгенерируй один вопрос мини IQ-теста на русском языке (вопрос № " + number + " из " + total + ").\n" +
+                "Дай ровно 4 варианта ответов (a, b, c, d), ровно один из них должен быть правильным.\n" +
+                "Формат ответа СТРОГО такой (без лишнего текста до и после):\n" +
+                "QUESTION: <текст вопроса>\n" +
+                "OPTIONS: a) <вариант>; b) <вариант>; c) <вариант>; d) <вариант>\n" +
+                "ANSWER: a|b|c|d\n" +
+                "EXPLANATION: <краткое объяснение правильного ответа>";
+
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.GENERATOR, prompt, null, null);
+
+        Mono<ParsedPuzzle> generated = Mono.defer(() -> llmService.generate(prompt, userId, route, lane))
+            .publishOn(blockingScheduler)
+            .map(this::parsePuzzle);
+
+        return fromBankOr(userId, PuzzleBankService.Category.IQ, generated);
+    }
+
     private ParsedPuzzle parsePuzzle(String raw) {
         ParsedPuzzle result = new ParsedPuzzle();
         if (raw == null || raw.isBlank()) {
@@ -1387,13 +1601,30 @@ public class MainMenuService {
         return result;
     }
 
-    private static class ParsedPuzzle {
+    static class ParsedPuzzle {
         String question;
         String answer;
         String explanation;
         String options;
     }
 
+    /**
+     * Вопрос из банка, а если непросмотренных там нет — сгенерированный напрямую
+     */
+    private Mono<ParsedPuzzle> fromBankOr(Long userId, PuzzleBankService.Category category, Mono<ParsedPuzzle> generated) {
+        return puzzleBankService.next(userId, category)
+            .flatMap(banked -> banked.map(item -> Mono.just(toParsedPuzzle(item))).orElse(generated));
+    }
+
+    private static ParsedPuzzle toParsedPuzzle(BankItem item) {
+        ParsedPuzzle parsed = new ParsedPuzzle();
+        parsed.question = item.question();
+        parsed.answer = item.answer();
+        parsed.explanation = item.explanation() != null ? item.explanation() : "";
+        parsed.options = item.options() != null ? item.options() : "";
+        return parsed;
+    }
+
     private InlineKeyboardButton button(String text, String data) {
         InlineKeyboardButton b = new InlineKeyboardButton();
         b.setText(text);
@@ -1429,26 +1660,27 @@ public class MainMenuService {
 
     public static class PuzzleAnswerResult {
         private final boolean handled;
-        private final List<SendMessage> messages;
+        private final Mono<List<SendMessage>> messages;
 
-        private PuzzleAnswerResult(boolean handled, List<SendMessage> messages) {
+        private PuzzleAnswerResult(boolean handled, Mono<List<SendMessage>> messages) {
             this.handled = handled;
             this.messages = messages;
         }
 
-        public static PuzzleAnswerResult handled(List<SendMessage> messages) {
+        public static PuzzleAnswerResult handled(Mono<List<SendMessage>> messages) {
             return new PuzzleAnswerResult(true, messages);
         }
 
         public static PuzzleAnswerResult notHandled() {
-            return new PuzzleAnswerResult(false, List.of());
+            return new PuzzleAnswerResult(false, Mono.just(List.of()));
         }
 
         public boolean isHandled() {
             return handled;
         }
 
-        public List<SendMessage> getMessages() {
+        /** Сообщения готовы сразу, кроме спорного ответа, который перепроверяет модель */
+        public Mono<List<SendMessage>> getMessages() {
             return messages;
         }
     }
@@ -0,0 +1,105 @@
+package com.example.m1nd.bot;
+
+import com.example.m1nd.config.TelegramBotConfig;
+import com.example.m1nd.util.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправитель массовых сообщений (напоминания, рассылки) от имени бота.
+ * Отдельный от M1ndTelegramBot клиент: его можно внедрять в сервисы меню без циклической зависимости.
+ * Общий token bucket держит суммарный темп всех рассылок ниже лимита Telegram,
+ * а ответ 429 приостанавливает все потоки на retry_after.
+ * Методы блокирующие — вызывать с потоков blocking-io или собственных воркеров.
+ */
+@Slf4j
+@Component
+public class TelegramBulkSender extends DefaultAbsSender {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final TokenBucket rateLimiter;
+
+    /** Момент (System.nanoTime), до которого Telegram попросил не отправлять; 0 — паузы нет */
+    private volatile long pausedUntilNanos;
+
+    public TelegramBulkSender(TelegramBotConfig botConfig,
+                              @Value("${app.telegram.bulk.rate-per-second:25}") double ratePerSecond) {
+        super(new DefaultBotOptions(), botConfig.getToken());
+        this.rateLimiter = new TokenBucket(Math.max(1d, ratePerSecond), ratePerSecond);
+        log.info("Массовая отправка: не более {} сообщений в секунду", ratePerSecond);
+    }
+
+    /**
+     * Отправляет сообщение с учётом общего лимита и повторяет его после 429
+     */
+    public Delivery send(SendMessage message) throws InterruptedException {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            acquirePermit();
+            try {
+                execute(message);
+                return Delivery.SENT;
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (retryAfter != null) {
+                    log.warn("Telegram ограничил отправку, пауза {} с", retryAfter);
+                    pausedUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                    continue;
+                }
+                if (isUnreachable(e)) {
+                    log.debug("Чат {} недоступен: {}", message.getChatId(), e.getApiResponse());
+                    return Delivery.BLOCKED;
+                }
+                log.warn("Не удалось отправить сообщение в чат {}: {}", message.getChatId(), e.getMessage());
+                return Delivery.FAILED;
+            } catch (TelegramApiException e) {
+                log.warn("Ошибка отправки в чат {}: {}", message.getChatId(), e.getMessage());
+                return Delivery.FAILED;
+            }
+        }
+        return Delivery.FAILED;
+    }
+
+    private void acquirePermit() throws InterruptedException {
+        while (true) {
+            long pausedUntil = pausedUntilNanos;
+            long pause = pausedUntil == 0 ? 0 : pausedUntil - System.nanoTime();
+            if (pause > 0) {
+                TimeUnit.NANOSECONDS.sleep(pause);
+                continue;
+            }
+            long wait = rateLimiter.tryConsume();
+            if (wait == 0) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * 403 — бот заблокирован или аккаунт удалён; 400 «chat not found» — чата больше нет
+     */
+    private static boolean isUnreachable(TelegramApiRequestException e) {
+        Integer code = e.getErrorCode();
+        if (code != null && code == 403) {
+            return true;
+        }
+        String response = e.getApiResponse();
+        return code != null && code == 400 && response != null && response.contains("chat not found");
+    }
+
+    public enum Delivery {
+        SENT,
+        /** Пользователь заблокировал бота или удалил аккаунт — повторять бессмысленно */
+        BLOCKED,
+        FAILED
+    }
+}
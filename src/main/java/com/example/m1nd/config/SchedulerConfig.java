@@ -0,0 +1,22 @@
+package com.example.m1nd.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class SchedulerConfig {
+
+    /**
+     * Планировщик для блокирующих вызовов (JPA, Telegram API, Thread.sleep) внутри реактивных цепочек.
+     * Ответы WebClient приходят на потоках event loop reactor-netty, блокировать их нельзя.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(
+            @Value("${app.blocking-scheduler.thread-cap:32}") int threadCap,
+            @Value("${app.blocking-scheduler.queue-cap:10000}") int queueCap) {
+        return Schedulers.newBoundedElastic(threadCap, queueCap, "blocking-io");
+    }
+}
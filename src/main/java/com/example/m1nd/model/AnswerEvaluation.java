@@ -4,6 +4,9 @@ package com.example.m1nd.model;
  * Результат оценки ответа пользователя
  */
 public class AnswerEvaluation {
+    /** С какого балла (из 100) ответ засчитывается */
+    public static final int PASS_SCORE = 80;
+
     private final int score;
     private final String feedback;
     
@@ -23,5 +26,9 @@ public class AnswerEvaluation {
     public boolean hasFeedback() {
         return feedback != null && !feedback.trim().isEmpty();
     }
+    
+    public boolean isPassed() {
+        return score >= PASS_SCORE;
+    }
 }
 
@@ -30,4 +30,12 @@ public class IdeaTopic {
 
     @Column(name = "prompt", nullable = false, columnDefinition = "TEXT")
     private String prompt;
+
+    /** Уровень модели: FAST или STRONG. NULL — решает роутер */
+    @Column(name = "model_tier")
+    private String modelTier;
+
+    /** Лимит токенов ответа. NULL — значение по умолчанию для типа запроса */
+    @Column(name = "max_tokens")
+    private Integer maxTokens;
 }
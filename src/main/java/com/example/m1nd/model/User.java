@@ -62,5 +62,8 @@ public class User {
     @Column(name = "last_reminder_sent_at")
     @JsonProperty("lastReminderSentAt")
     private LocalDateTime lastReminderSentAt;  // Дата последнего отправленного напоминания
+    
+    @Column(name = "bot_blocked_at")
+    @JsonProperty("botBlockedAt")
+    private LocalDateTime botBlockedAt;  // Когда пользователь заблокировал бота (null — доступен)
 }
-
@@ -0,0 +1,50 @@
+package com.example.m1nd.model;
+
+/**
+ * Неизменяемый срез прогресса пользователя для экрана «📊 Мой прогресс»
+ */
+public class UserProgressSnapshot {
+
+    public static final UserProgressSnapshot EMPTY = new UserProgressSnapshot(0, 0, 0, 0, 0, 0);
+
+    private final int riddlesSolved;
+    private final int tasksCompleted;
+    private final int factsViewed;
+    private final int ideasViewed;
+    private final int motivationsViewed;
+    private final int gamesPlayed;
+
+    public UserProgressSnapshot(int riddlesSolved, int tasksCompleted, int factsViewed,
+                                int ideasViewed, int motivationsViewed, int gamesPlayed) {
+        this.riddlesSolved = riddlesSolved;
+        this.tasksCompleted = tasksCompleted;
+        this.factsViewed = factsViewed;
+        this.ideasViewed = ideasViewed;
+        this.motivationsViewed = motivationsViewed;
+        this.gamesPlayed = gamesPlayed;
+    }
+
+    public int getRiddlesSolved() {
+        return riddlesSolved;
+    }
+
+    public int getTasksCompleted() {
+        return tasksCompleted;
+    }
+
+    public int getFactsViewed() {
+        return factsViewed;
+    }
+
+    public int getIdeasViewed() {
+        return ideasViewed;
+    }
+
+    public int getMotivationsViewed() {
+        return motivationsViewed;
+    }
+
+    public int getGamesPlayed() {
+        return gamesPlayed;
+    }
+}
@@ -9,5 +9,6 @@ import java.util.Optional;
 @Repository
 public interface AdminRepository extends JpaRepository<Admin, Long> {
     Optional<Admin> findByUsername(String username);
+    Optional<Admin> findFirstByUsernameIgnoreCase(String username);
     boolean existsByUsername(String username);
 }
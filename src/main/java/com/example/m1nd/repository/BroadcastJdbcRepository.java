@@ -0,0 +1,158 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Рассылки и состояние доставки по получателям (broadcasts, broadcast_deliveries)
+ */
+@Repository
+@RequiredArgsConstructor
+public class BroadcastJdbcRepository {
+
+    public enum BroadcastStatus { DRAFT, RUNNING, DONE, CANCELLED }
+
+    public enum DeliveryStatus { PENDING, SENT, BLOCKED, FAILED }
+
+    private static final RowMapper<Broadcast> BROADCAST_MAPPER = (rs, rowNum) -> new Broadcast(
+        rs.getLong("id"),
+        rs.getString("text"),
+        BroadcastStatus.valueOf(rs.getString("status")),
+        rs.getLong("admin_chat_id"),
+        (Integer) rs.getObject("progress_message_id"),
+        rs.getInt("total"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long createDraft(String text, String createdBy, long adminChatId) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO broadcasts (text, status, created_by, admin_chat_id, created_at) " +
+                "VALUES (?, 'DRAFT', ?, ?, ?)", new String[]{"id"});
+            ps.setString(1, text);
+            ps.setString(2, createdBy);
+            ps.setLong(3, adminChatId);
+            ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    public Optional<Broadcast> findById(long id) {
+        return jdbcTemplate.query("SELECT * FROM broadcasts WHERE id = ?", BROADCAST_MAPPER, id)
+            .stream().findFirst();
+    }
+
+    public List<Broadcast> findRunning() {
+        return jdbcTemplate.query("SELECT * FROM broadcasts WHERE status = 'RUNNING' ORDER BY id", BROADCAST_MAPPER);
+    }
+
+    /**
+     * Фиксирует список получателей (все, кто не заблокировал бота) и переводит черновик в RUNNING.
+     * Повторный вызов ничего не добавляет: ON CONFLICT DO NOTHING по (broadcast_id, user_id)
+     * @return число получателей или -1, если рассылка уже не черновик
+     */
+    public int startDraft(long id, int shards) {
+        int updated = jdbcTemplate.update(
+            "UPDATE broadcasts SET status = 'RUNNING', started_at = ? WHERE id = ? AND status = 'DRAFT'",
+            Timestamp.valueOf(LocalDateTime.now()), id);
+        if (updated == 0) {
+            return -1;
+        }
+        int total = jdbcTemplate.update(
+            "INSERT INTO broadcast_deliveries (broadcast_id, user_id, shard, status) " +
+            "SELECT ?, user_id, mod(user_id, ?), 'PENDING' FROM users WHERE bot_blocked_at IS NULL " +
+            "ON CONFLICT (broadcast_id, user_id) DO NOTHING",
+            id, shards);
+        jdbcTemplate.update("UPDATE broadcasts SET total = ? WHERE id = ?", total, id);
+        return total;
+    }
+
+    public void setProgressMessageId(long id, int messageId) {
+        jdbcTemplate.update("UPDATE broadcasts SET progress_message_id = ? WHERE id = ?", messageId, id);
+    }
+
+    /**
+     * Меняет статус, если рассылка ещё в одном из ожидаемых состояний
+     */
+    public boolean updateStatus(long id, BroadcastStatus from, BroadcastStatus to) {
+        return jdbcTemplate.update(
+            "UPDATE broadcasts SET status = ?, finished_at = CASE WHEN ? THEN ? ELSE finished_at END " +
+            "WHERE id = ? AND status = ?",
+            to.name(), to == BroadcastStatus.DONE || to == BroadcastStatus.CANCELLED,
+            Timestamp.valueOf(LocalDateTime.now()), id, from.name()) > 0;
+    }
+
+    /**
+     * Следующие ожидающие получатели шарда (keyset по user_id, частичный индекс по PENDING)
+     */
+    public List<Long> findPendingPage(long broadcastId, int shard, long afterUserId, int limit) {
+        return jdbcTemplate.queryForList(
+            "SELECT user_id FROM broadcast_deliveries " +
+            "WHERE broadcast_id = ? AND shard = ? AND status = 'PENDING' AND user_id > ? " +
+            "ORDER BY user_id LIMIT ?",
+            Long.class, broadcastId, shard, afterUserId, limit);
+    }
+
+    public void markDeliveries(long broadcastId, List<Long> userIds, DeliveryStatus status, LocalDateTime processedAt) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "UPDATE broadcast_deliveries SET status = ?, processed_at = ? " +
+                "WHERE broadcast_id = ? AND user_id = ANY(?) AND status = 'PENDING'");
+            ps.setString(1, status.name());
+            ps.setTimestamp(2, Timestamp.valueOf(processedAt));
+            ps.setLong(3, broadcastId);
+            ps.setArray(4, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Возвращает в очередь получателей, которым отправка не удалась, пока у них остаются попытки
+     * @return сколько получателей снова ждут отправки
+     */
+    public int requeueFailed(long broadcastId, int maxAttempts) {
+        return jdbcTemplate.update(
+            "UPDATE broadcast_deliveries SET status = 'PENDING', attempts = attempts + 1, processed_at = NULL " +
+            "WHERE broadcast_id = ? AND status = 'FAILED' AND attempts < ?",
+            broadcastId, maxAttempts);
+    }
+
+    public Map<DeliveryStatus, Long> countByStatus(long broadcastId) {
+        Map<DeliveryStatus, Long> counts = new EnumMap<>(DeliveryStatus.class);
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            counts.put(status, 0L);
+        }
+        jdbcTemplate.query(
+            "SELECT status, COUNT(*) AS cnt FROM broadcast_deliveries WHERE broadcast_id = ? GROUP BY status",
+            rs -> {
+                counts.put(DeliveryStatus.valueOf(rs.getString("status")), rs.getLong("cnt"));
+            },
+            broadcastId);
+        return counts;
+    }
+
+    public record Broadcast(long id,
+                            String text,
+                            BroadcastStatus status,
+                            long adminChatId,
+                            Integer progressMessageId,
+                            int total) {
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * История диалогов с LLM (conversation_messages) и их состояние (conversation_state).
+ * Пишется только пачками из фонового флашера, читается при загрузке диалога в память.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ConversationJdbcRepository {
+
+    /** Повтор пачки после сбоя не дублирует сообщения */
+    private static final String INSERT_MESSAGE_SQL = """
+        INSERT INTO conversation_messages (user_id, seq, role, content, created_at)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (user_id, seq) DO NOTHING
+        """;
+
+    private static final String UPSERT_STATE_SQL = """
+        INSERT INTO conversation_state (user_id, last_response_id, summarized_seq, cleared_seq, updated_at)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (user_id) DO UPDATE SET
+            last_response_id = excluded.last_response_id,
+            summarized_seq = GREATEST(conversation_state.summarized_seq, excluded.summarized_seq),
+            cleared_seq = GREATEST(conversation_state.cleared_seq, excluded.cleared_seq),
+            updated_at = excluded.updated_at
+        """;
+
+    private static final RowMapper<StoredMessage> MESSAGE_MAPPER = (rs, rowNum) -> new StoredMessage(
+        rs.getLong("user_id"),
+        rs.getLong("seq"),
+        rs.getString("role"),
+        rs.getString("content"),
+        rs.getTimestamp("created_at").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertMessages(List<StoredMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messages, messages.size(), (ps, message) -> {
+            ps.setLong(1, message.userId());
+            ps.setLong(2, message.seq());
+            ps.setString(3, message.role());
+            ps.setString(4, message.content());
+            ps.setTimestamp(5, Timestamp.valueOf(message.createdAt()));
+        });
+    }
+
+    public void upsertStates(List<ConversationState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_STATE_SQL, states, states.size(), (ps, state) -> {
+            ps.setLong(1, state.userId());
+            ps.setString(2, state.lastResponseId());
+            ps.setLong(3, state.summarizedSeq());
+            ps.setLong(4, state.clearedSeq());
+            ps.setTimestamp(5, now);
+        });
+    }
+
+    /**
+     * Последние limit сообщений пользователя с номером больше afterSeq, по возрастанию номера
+     */
+    public List<StoredMessage> findRecent(long userId, long afterSeq, int limit) {
+        return jdbcTemplate.query(
+            "SELECT * FROM (SELECT user_id, seq, role, content, created_at FROM conversation_messages " +
+            "WHERE user_id = ? AND seq > ? ORDER BY seq DESC LIMIT ?) recent ORDER BY seq",
+            MESSAGE_MAPPER, userId, afterSeq, limit);
+    }
+
+    public long findLastSeq(long userId) {
+        Long seq = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(MAX(seq), 0) FROM conversation_messages WHERE user_id = ?", Long.class, userId);
+        return seq != null ? seq : 0;
+    }
+
+    public Optional<ConversationState> findState(long userId) {
+        return jdbcTemplate.query(
+            "SELECT user_id, last_response_id, summarized_seq, cleared_seq FROM conversation_state WHERE user_id = ?",
+            (rs, rowNum) -> new ConversationState(
+                rs.getLong("user_id"),
+                rs.getString("last_response_id"),
+                rs.getLong("summarized_seq"),
+                rs.getLong("cleared_seq")),
+            userId).stream().findFirst();
+    }
+
+    /**
+     * Удаляет сообщения старше срока хранения
+     * @return число удалённых строк
+     */
+    public int deleteOlderThan(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM conversation_messages WHERE created_at < ?", Timestamp.valueOf(cutoff));
+    }
+
+    public record StoredMessage(long userId, long seq, String role, String content, LocalDateTime createdAt) {
+    }
+
+    public record ConversationState(long userId, String lastResponseId, long summarizedSeq, long clearedSeq) {
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Задания выгрузки (export_jobs) и потоковое чтение данных для них
+ */
+@Repository
+@RequiredArgsConstructor
+public class ExportJobJdbcRepository {
+
+    public enum ExportStatus { RUNNING, FAILED, DONE }
+
+    /** Начальное значение курсора: раньше любой реальной записи */
+    public static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final RowMapper<ExportJob> JOB_MAPPER = (rs, rowNum) -> new ExportJob(
+        rs.getLong("id"),
+        rs.getString("kind"),
+        ExportStatus.valueOf(rs.getString("status")),
+        rs.getDate("date_from").toLocalDate(),
+        rs.getDate("date_to").toLocalDate(),
+        rs.getLong("admin_chat_id"),
+        rs.getString("file_path"),
+        rs.getLong("file_bytes"),
+        rs.getTimestamp("cursor_created_at") != null
+            ? rs.getTimestamp("cursor_created_at").toLocalDateTime() : CURSOR_START,
+        rs.getLong("cursor_id"),
+        rs.getLong("rows_written"));
+
+    private static final RowMapper<SummaryExportRow> SUMMARY_MAPPER = (rs, rowNum) -> new SummaryExportRow(
+        rs.getLong("id"),
+        rs.getTimestamp("created_at").toLocalDateTime(),
+        rs.getLong("user_id"),
+        rs.getString("username"),
+        rs.getString("first_name"),
+        rs.getString("last_name"),
+        rs.getTimestamp("session_start_at") != null ? rs.getTimestamp("session_start_at").toLocalDateTime() : null,
+        rs.getTimestamp("session_end_at") != null ? rs.getTimestamp("session_end_at").toLocalDateTime() : null,
+        rs.getString("summary_question"),
+        rs.getString("summary_answer"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Создаёт задание; путь к файлу строится по id, поэтому id берётся из последовательности заранее
+     */
+    public ExportJob create(String kind, LocalDate dateFrom, LocalDate dateTo, long adminChatId, String fileNamePattern) {
+        Long id = jdbcTemplate.queryForObject("SELECT nextval('export_jobs_id_seq')", Long.class);
+        String filePath = fileNamePattern.formatted(id);
+        jdbcTemplate.update(
+            "INSERT INTO export_jobs (id, kind, status, date_from, date_to, admin_chat_id, file_path, created_at) " +
+            "VALUES (?, ?, 'RUNNING', ?, ?, ?, ?, ?)",
+            id, kind, Date.valueOf(dateFrom), Date.valueOf(dateTo), adminChatId, filePath,
+            Timestamp.valueOf(LocalDateTime.now()));
+        return new ExportJob(id, kind, ExportStatus.RUNNING, dateFrom, dateTo, adminChatId, filePath,
+            0L, CURSOR_START, 0L, 0L);
+    }
+
+    public Optional<ExportJob> findById(long id) {
+        return jdbcTemplate.query("SELECT * FROM export_jobs WHERE id = ?", JOB_MAPPER, id).stream().findFirst();
+    }
+
+    public List<ExportJob> findRunning() {
+        return jdbcTemplate.query("SELECT * FROM export_jobs WHERE status = 'RUNNING' ORDER BY id", JOB_MAPPER);
+    }
+
+    /**
+     * Сохраняет контрольную точку: всё до курсора уже лежит в первых fileBytes байтах файла
+     */
+    public void checkpoint(ExportJob job) {
+        jdbcTemplate.update(
+            "UPDATE export_jobs SET cursor_created_at = ?, cursor_id = ?, rows_written = ?, file_bytes = ? WHERE id = ?",
+            Timestamp.valueOf(job.cursorCreatedAt()), job.cursorId(), job.rowsWritten(), job.fileBytes(), job.id());
+    }
+
+    /**
+     * Меняет статус, если задание ещё в ожидаемом состоянии
+     */
+    public boolean updateStatus(long id, ExportStatus from, ExportStatus to, String error) {
+        return jdbcTemplate.update(
+            "UPDATE export_jobs SET status = ?, error = ?, finished_at = CASE WHEN ? THEN ? ELSE NULL END " +
+            "WHERE id = ? AND status = ?",
+            to.name(), error, to != ExportStatus.RUNNING, Timestamp.valueOf(LocalDateTime.now()), id, from.name()) > 0;
+    }
+
+    /**
+     * Следующая порция сводок периода после курсора (created_at, id) вместе с данными пользователя.
+     * Читается серверным курсором порциями по FETCH_SIZE; вызывать внутри транзакции,
+     * иначе драйвер PostgreSQL загрузит весь результат в память
+     */
+    public void streamSummaries(LocalDate dateFrom, LocalDate dateTo, LocalDateTime cursorCreatedAt, long cursorId,
+                                int limit, Consumer<SummaryExportRow> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "SELECT s.id, s.created_at, s.user_id, COALESCE(s.username, u.username) AS username, " +
+                "u.first_name, u.last_name, s.session_start_at, s.session_end_at, s.summary_question, s.summary_answer " +
+                "FROM user_session_summaries s LEFT JOIN users u ON u.user_id = s.user_id " +
+                "WHERE s.created_at >= ? AND s.created_at < ? AND (s.created_at, s.id) > (?, ?) " +
+                "ORDER BY s.created_at, s.id LIMIT ?");
+            ps.setTimestamp(1, Timestamp.valueOf(dateFrom.atStartOfDay()));
+            ps.setTimestamp(2, Timestamp.valueOf(dateTo.atStartOfDay()));
+            ps.setTimestamp(3, Timestamp.valueOf(cursorCreatedAt));
+            ps.setLong(4, cursorId);
+            ps.setInt(5, limit);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(SUMMARY_MAPPER.mapRow(rs, 0)));
+    }
+
+    public record ExportJob(long id,
+                            String kind,
+                            ExportStatus status,
+                            LocalDate dateFrom,
+                            LocalDate dateTo,
+                            long adminChatId,
+                            String filePath,
+                            long fileBytes,
+                            LocalDateTime cursorCreatedAt,
+                            long cursorId,
+                            long rowsWritten) {
+
+        public ExportJob advance(LocalDateTime lastCreatedAt, long lastId, long rows, long bytes) {
+            return new ExportJob(id, kind, status, dateFrom, dateTo, adminChatId, filePath,
+                bytes, lastCreatedAt, lastId, rowsWritten + rows);
+        }
+
+        /**
+         * Файл потерян — начинаем с начала периода
+         */
+        public ExportJob restart() {
+            return new ExportJob(id, kind, status, dateFrom, dateTo, adminChatId, filePath, 0L, CURSOR_START, 0L, 0L);
+        }
+    }
+
+    public record SummaryExportRow(long id,
+                                   LocalDateTime createdAt,
+                                   long userId,
+                                   String username,
+                                   String firstName,
+                                   String lastName,
+                                   LocalDateTime sessionStartAt,
+                                   LocalDateTime sessionEndAt,
+                                   String question,
+                                   String answer) {
+    }
+}
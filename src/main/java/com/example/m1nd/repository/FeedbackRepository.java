@@ -1,15 +1,51 @@
 package com.example.m1nd.repository;
 
 import com.example.m1nd.model.Feedback;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface FeedbackRepository extends JpaRepository<Feedback, Long> {
-    List<Feedback> findByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime date);
+    
+    /**
+     * Keyset-страница: опросы старше курсора (created_at, id), новые первыми — индекс idx_feedbacks_created_at_id
+     */
+    @Query(value = "SELECT * FROM feedbacks WHERE (created_at, id) < (:createdAt, :id) " +
+                   "ORDER BY created_at DESC, id DESC LIMIT :limit",
+           nativeQuery = true)
+    List<Feedback> findOlderThan(@Param("createdAt") LocalDateTime createdAt,
+                                 @Param("id") long id,
+                                 @Param("limit") int limit);
+    
+    /**
+     * Keyset-страница: опросы новее курсора (created_at, id), старые первыми
+     */
+    @Query(value = "SELECT * FROM feedbacks WHERE (created_at, id) > (:createdAt, :id) " +
+                   "ORDER BY created_at, id LIMIT :limit",
+           nativeQuery = true)
+    List<Feedback> findNewerThan(@Param("createdAt") LocalDateTime createdAt,
+                                 @Param("id") long id,
+                                 @Param("limit") int limit);
+    
+    /**
+     * Все опросы курсором БД, новые первыми. Вызывать внутри транзакции и закрывать поток
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Feedback f ORDER BY f.createdAt DESC, f.id DESC")
+    Stream<Feedback> streamAllNewestFirst();
+    
     Optional<Feedback> findByFeedbackId(String feedbackId);
 }
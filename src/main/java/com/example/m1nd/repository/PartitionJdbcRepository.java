@@ -0,0 +1,112 @@
+package com.example.m1nd.repository;
+
+import com.example.m1nd.util.CsvWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Помесячные секции таблиц (см. 020_partition_summaries_and_feedbacks.xml): создание, поиск, отсоединение,
+ * выгрузка и удаление. Имена секций всегда вида &lt;таблица&gt;_pYYYY_MM.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PartitionJdbcRepository {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("^([a-z_]+)_p(\\d{4})_(\\d{2})$");
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Создаёт секцию месяца, если её ещё нет
+     * @return имя секции
+     */
+    public String ensureMonthlyPartition(String parent, LocalDate month) {
+        return jdbcTemplate.queryForObject("SELECT ensure_monthly_partition(?, ?)", String.class,
+            parent, Date.valueOf(month.withDayOfMonth(1)));
+    }
+
+    /**
+     * Секции таблицы — и подключённые, и уже отсоединённые (но ещё не удалённые), по возрастанию месяца
+     */
+    public List<Partition> findPartitions(String parent) {
+        return jdbcTemplate.query(
+            "SELECT c.relname, EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid) AS attached " +
+            "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "WHERE n.nspname = current_schema() AND c.relkind = 'r' AND c.relname ~ ? " +
+            "ORDER BY c.relname",
+            (rs, rowNum) -> {
+                String name = rs.getString("relname");
+                Matcher matcher = PARTITION_NAME.matcher(name);
+                matcher.matches();
+                LocalDate month = LocalDate.of(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)), 1);
+                return new Partition(parent, name, month, rs.getBoolean("attached"));
+            },
+            "^" + parent + "_p[0-9]{4}_[0-9]{2}$");
+    }
+
+    public void detach(Partition partition) {
+        jdbcTemplate.execute("ALTER TABLE " + quote(partition.parent()) + " DETACH PARTITION " + quote(partition.name()));
+    }
+
+    /**
+     * Потоково пишет содержимое секции в CSV (с заголовком). Вызывать внутри транзакции:
+     * без неё драйвер PostgreSQL игнорирует fetchSize и читает таблицу в память целиком
+     * @return число выгруженных строк
+     */
+    public long exportCsv(Partition partition, Writer out) {
+        CsvWriter csv = new CsvWriter(out);
+        long[] rows = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT * FROM " + quote(partition.name()) + " ORDER BY created_at");
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                ResultSetMetaData meta = rs.getMetaData();
+                Object[] values = new Object[meta.getColumnCount()];
+                if (rows[0] == 0) {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = meta.getColumnName(i + 1);
+                    }
+                    csv.row(values);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = rs.getString(i + 1);
+                }
+                csv.row(values);
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return rows[0];
+    }
+
+    public void drop(Partition partition) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + quote(partition.name()));
+    }
+
+    /**
+     * Имена приходят из каталога и проверены шаблоном, но в DDL всё равно идут в кавычках
+     */
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    public record Partition(String parent, String name, LocalDate month, boolean attached) {
+    }
+}
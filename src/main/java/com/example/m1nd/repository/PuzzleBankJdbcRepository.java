@@ -0,0 +1,154 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Банк загадок и вопросов (puzzle_bank) и отметки «уже видел» по пользователям (puzzle_seen).
+ * Выдача вопроса — чтение по первичному ключу (category, seq).
+ */
+@Repository
+@RequiredArgsConstructor
+public class PuzzleBankJdbcRepository {
+
+    /**
+     * Номер берётся в момент вставки, поэтому пропущенный вопрос (уже есть в банке или проигранная гонка
+     * двух пополнений за номер) не оставляет дыры: номера остаются плотными
+     */
+    private static final String INSERT_ITEM_SQL = """
+        INSERT INTO puzzle_bank (category, seq, question, options, answer, explanation, question_hash)
+        SELECT ?, COALESCE(MAX(seq) + 1, 0), ?, ?, ?, ?, ? FROM puzzle_bank WHERE category = ?
+        ON CONFLICT DO NOTHING
+        """;
+
+    /** Пустая маска, чтобы первой выдаче пользователю было что заблокировать */
+    private static final String ENSURE_SEEN_SQL = """
+        INSERT INTO puzzle_seen (user_id, category, seen, updated_at)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT (user_id, category) DO NOTHING
+        """;
+
+    private static final RowMapper<BankItem> ITEM_MAPPER = (rs, rowNum) -> new BankItem(
+        rs.getString("category"),
+        rs.getInt("seq"),
+        rs.getString("question"),
+        rs.getString("options"),
+        rs.getString("answer"),
+        rs.getString("explanation"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Номер для следующего вопроса категории; он же — размер категории (номера плотные, с 0)
+     */
+    public int nextSeq(String category) {
+        Integer next = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(MAX(seq) + 1, 0) FROM puzzle_bank WHERE category = ?", Integer.class, category);
+        return next != null ? next : 0;
+    }
+
+    public Optional<BankItem> find(String category, int seq) {
+        return jdbcTemplate.query(
+            "SELECT category, seq, question, options, answer, explanation FROM puzzle_bank WHERE category = ? AND seq = ?",
+            ITEM_MAPPER, category, seq).stream().findFirst();
+    }
+
+    public List<BankItem> findAll(String category, Collection<Integer> seqs) {
+        if (seqs.isEmpty()) {
+            return List.of();
+        }
+        List<Object> args = new ArrayList<>(seqs.size() + 1);
+        args.add(category);
+        args.addAll(seqs);
+        String placeholders = String.join(", ", Collections.nCopies(seqs.size(), "?"));
+        return jdbcTemplate.query(
+            "SELECT category, seq, question, options, answer, explanation FROM puzzle_bank " +
+            "WHERE category = ? AND seq IN (" + placeholders + ")",
+            ITEM_MAPPER, args.toArray());
+    }
+
+    /**
+     * Последние вопросы категории — подсказка модели, чего не повторять
+     */
+    public List<String> findRecentQuestions(String category, int limit) {
+        return jdbcTemplate.queryForList(
+            "SELECT question FROM puzzle_bank WHERE category = ? ORDER BY seq DESC LIMIT ?",
+            String.class, category, limit);
+    }
+
+    public Set<String> findExistingHashes(String category, Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Set.of();
+        }
+        List<Object> args = new ArrayList<>(hashes.size() + 1);
+        args.add(category);
+        args.addAll(hashes);
+        String placeholders = String.join(", ", Collections.nCopies(hashes.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+            "SELECT question_hash FROM puzzle_bank WHERE category = ? AND question_hash IN (" + placeholders + ")",
+            String.class, args.toArray()));
+    }
+
+    /**
+     * Добавляет вопросы в конец категории. Операторы пачки выполняются по очереди, и каждый
+     * получает номер после уже вставленных
+     * @return сколько реально добавлено
+     */
+    public int insertAll(String category, List<NewItem> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, items, items.size(), (ps, item) -> {
+            ps.setString(1, category);
+            ps.setString(2, item.question());
+            ps.setString(3, item.options());
+            ps.setString(4, item.answer());
+            ps.setString(5, item.explanation());
+            ps.setString(6, item.questionHash());
+            ps.setString(7, category);
+        });
+        int inserted = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                // Драйвер может не сообщать число строк для пачки — считаем такую вставку успешной
+                inserted += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Маска просмотренных с блокировкой строки до конца транзакции: параллельные выдачи тому же
+     * пользователю ждут друг друга, а не затирают отметки. Вызывать внутри транзакции
+     */
+    public byte[] lockSeen(long userId, String category) {
+        jdbcTemplate.update(ENSURE_SEEN_SQL, userId, category, new byte[0], Timestamp.valueOf(LocalDateTime.now()));
+        return jdbcTemplate.queryForObject(
+            "SELECT seen FROM puzzle_seen WHERE user_id = ? AND category = ? FOR UPDATE",
+            (rs, rowNum) -> rs.getBytes("seen"), userId, category);
+    }
+
+    public void updateSeen(long userId, String category, byte[] seen) {
+        jdbcTemplate.update("UPDATE puzzle_seen SET seen = ?, updated_at = ? WHERE user_id = ? AND category = ?",
+            seen, Timestamp.valueOf(LocalDateTime.now()), userId, category);
+    }
+
+    public record BankItem(String category, int seq, String question, String options, String answer, String explanation) {
+    }
+
+    public record NewItem(String question, String options, String answer, String explanation, String questionHash) {
+    }
+}
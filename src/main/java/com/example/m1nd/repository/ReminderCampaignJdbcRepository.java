@@ -0,0 +1,145 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Кампании напоминаний и keyset-выборка получателей по индексу idx_users_reminder_keyset
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReminderCampaignJdbcRepository {
+
+    /** Начальное значение курсора: раньше любой реальной активности */
+    public static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String ELIGIBLE_CONDITION =
+        "last_activity_at < ? " +
+        "AND (last_reminder_sent_at IS NULL OR last_reminder_sent_at < ?) " +
+        "AND bot_blocked_at IS NULL " +
+        "AND (last_activity_at, user_id) > (?, ?)";
+
+    private static final RowMapper<ReminderCampaign> CAMPAIGN_MAPPER = (rs, rowNum) -> new ReminderCampaign(
+        rs.getLong("id"),
+        rs.getTimestamp("window_ends_at").toLocalDateTime(),
+        rs.getTimestamp("inactive_before").toLocalDateTime(),
+        rs.getTimestamp("reminded_before").toLocalDateTime(),
+        rs.getTimestamp("cursor_last_activity_at") != null
+            ? rs.getTimestamp("cursor_last_activity_at").toLocalDateTime() : CURSOR_START,
+        rs.getLong("cursor_user_id"),
+        rs.getInt("sent_count"),
+        rs.getInt("blocked_count"),
+        rs.getInt("failed_count"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Optional<ReminderCampaign> findRunning() {
+        return jdbcTemplate.query(
+            "SELECT * FROM reminder_campaigns WHERE status = 'RUNNING' ORDER BY id DESC LIMIT 1",
+            CAMPAIGN_MAPPER).stream().findFirst();
+    }
+
+    public ReminderCampaign create(LocalDateTime startedAt, LocalDateTime windowEndsAt,
+                                   LocalDateTime inactiveBefore, LocalDateTime remindedBefore) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO reminder_campaigns (status, started_at, window_ends_at, inactive_before, reminded_before) " +
+                "VALUES ('RUNNING', ?, ?, ?, ?)", new String[]{"id"});
+            ps.setTimestamp(1, Timestamp.valueOf(startedAt));
+            ps.setTimestamp(2, Timestamp.valueOf(windowEndsAt));
+            ps.setTimestamp(3, Timestamp.valueOf(inactiveBefore));
+            ps.setTimestamp(4, Timestamp.valueOf(remindedBefore));
+            return ps;
+        }, keyHolder);
+        long id = keyHolder.getKey().longValue();
+        return new ReminderCampaign(id, windowEndsAt, inactiveBefore, remindedBefore, CURSOR_START, 0L, 0, 0, 0);
+    }
+
+    /**
+     * Сколько получателей осталось после курсора — для расчёта темпа отправки
+     */
+    public long countRemaining(ReminderCampaign campaign) {
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM users WHERE " + ELIGIBLE_CONDITION, Long.class,
+            Timestamp.valueOf(campaign.inactiveBefore()), Timestamp.valueOf(campaign.remindedBefore()),
+            Timestamp.valueOf(campaign.cursorLastActivityAt()), campaign.cursorUserId());
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Следующая страница получателей после курсора (last_activity_at, user_id)
+     */
+    public List<ReminderRecipient> findPage(ReminderCampaign campaign, int pageSize) {
+        return jdbcTemplate.query(
+            "SELECT user_id, username, first_name, last_activity_at FROM users WHERE " + ELIGIBLE_CONDITION +
+            " ORDER BY last_activity_at, user_id LIMIT ?",
+            (rs, rowNum) -> new ReminderRecipient(
+                rs.getLong("user_id"),
+                rs.getString("username"),
+                rs.getString("first_name"),
+                rs.getTimestamp("last_activity_at").toLocalDateTime()),
+            Timestamp.valueOf(campaign.inactiveBefore()), Timestamp.valueOf(campaign.remindedBefore()),
+            Timestamp.valueOf(campaign.cursorLastActivityAt()), campaign.cursorUserId(), pageSize);
+    }
+
+    /**
+     * Отмечает время напоминания одним UPDATE на всю страницу
+     */
+    public void markReminded(List<Long> userIds, LocalDateTime sentAt) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "UPDATE users SET last_reminder_sent_at = ? WHERE user_id = ANY(?)");
+            ps.setTimestamp(1, Timestamp.valueOf(sentAt));
+            ps.setArray(2, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        });
+    }
+
+    public void saveProgress(ReminderCampaign campaign) {
+        jdbcTemplate.update(
+            "UPDATE reminder_campaigns SET cursor_last_activity_at = ?, cursor_user_id = ?, " +
+            "sent_count = ?, blocked_count = ?, failed_count = ? WHERE id = ?",
+            Timestamp.valueOf(campaign.cursorLastActivityAt()), campaign.cursorUserId(),
+            campaign.sent(), campaign.blocked(), campaign.failed(), campaign.id());
+    }
+
+    public void finish(long campaignId, LocalDateTime finishedAt) {
+        jdbcTemplate.update(
+            "UPDATE reminder_campaigns SET status = 'DONE', finished_at = ? WHERE id = ?",
+            Timestamp.valueOf(finishedAt), campaignId);
+    }
+
+    public record ReminderCampaign(long id,
+                                   LocalDateTime windowEndsAt,
+                                   LocalDateTime inactiveBefore,
+                                   LocalDateTime remindedBefore,
+                                   LocalDateTime cursorLastActivityAt,
+                                   long cursorUserId,
+                                   int sent,
+                                   int blocked,
+                                   int failed) {
+
+        public ReminderCampaign advance(ReminderRecipient last, int sentDelta, int blockedDelta, int failedDelta) {
+            return new ReminderCampaign(id, windowEndsAt, inactiveBefore, remindedBefore,
+                last.lastActivityAt(), last.userId(),
+                sent + sentDelta, blocked + blockedDelta, failed + failedDelta);
+        }
+    }
+
+    public record ReminderRecipient(long userId, String username, String firstName, LocalDateTime lastActivityAt) {
+    }
+}
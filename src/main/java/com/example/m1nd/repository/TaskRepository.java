@@ -2,9 +2,15 @@ package com.example.m1nd.repository;
 
 import com.example.m1nd.model.Task;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface TaskRepository extends JpaRepository<Task, Long> {
+
+    @Query("SELECT t.id FROM Task t ORDER BY t.id")
+    List<Long> findAllIds();
 }
 
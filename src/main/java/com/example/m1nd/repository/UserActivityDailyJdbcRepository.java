@@ -0,0 +1,84 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Скетчи активности в user_activity_daily. Слияние скетчей выполняется в Java,
+ * таблица хранит уже объединённый результат
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserActivityDailyJdbcRepository {
+
+    /** Значение hour для строки за весь день */
+    public static final int WHOLE_DAY = -1;
+
+    private static final RowMapper<SketchRow> ROW_MAPPER = (rs, rowNum) -> new SketchRow(
+        rs.getDate("day").toLocalDate(),
+        rs.getInt("hour"),
+        rs.getString("feature"),
+        rs.getBytes("sketch"),
+        rs.getLong("events"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Скетчи за диапазон дней (включительно) для одного вида активности и часа
+     */
+    public List<SketchRow> findSketches(String feature, int hour, LocalDate fromDay, LocalDate toDay) {
+        return jdbcTemplate.query(
+            "SELECT day, hour, feature, sketch, events FROM user_activity_daily " +
+            "WHERE feature = ? AND hour = ? AND day BETWEEN ? AND ?",
+            ROW_MAPPER, feature, hour, Date.valueOf(fromDay), Date.valueOf(toDay));
+    }
+
+    /**
+     * Часовые скетчи одного дня для вида активности
+     */
+    public List<SketchRow> findHourlySketches(String feature, LocalDate day) {
+        return jdbcTemplate.query(
+            "SELECT day, hour, feature, sketch, events FROM user_activity_daily " +
+            "WHERE feature = ? AND day = ? AND hour >= 0",
+            ROW_MAPPER, feature, Date.valueOf(day));
+    }
+
+    /**
+     * Все строки за диапазон дней с блокировкой — для слияния с накопленными в памяти скетчами
+     */
+    public List<SketchRow> findForUpdate(LocalDate fromDay, LocalDate toDay) {
+        return jdbcTemplate.query(
+            "SELECT day, hour, feature, sketch, events FROM user_activity_daily " +
+            "WHERE day BETWEEN ? AND ? FOR UPDATE",
+            ROW_MAPPER, Date.valueOf(fromDay), Date.valueOf(toDay));
+    }
+
+    /**
+     * Записывает объединённые скетчи; events — приращение числа событий
+     */
+    public void upsert(List<SketchRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO user_activity_daily (day, hour, feature, sketch, events) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (day, hour, feature) DO UPDATE SET sketch = excluded.sketch, " +
+            "events = user_activity_daily.events + excluded.events",
+            rows, rows.size(), (ps, row) -> {
+                ps.setDate(1, Date.valueOf(row.day()));
+                ps.setInt(2, row.hour());
+                ps.setString(3, row.feature());
+                ps.setBytes(4, row.sketch());
+                ps.setLong(5, row.events());
+            });
+    }
+
+    public record SketchRow(LocalDate day, int hour, String feature, byte[] sketch, long events) {
+    }
+}
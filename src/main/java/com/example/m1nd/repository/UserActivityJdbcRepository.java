@@ -0,0 +1,162 @@
+package com.example.m1nd.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Пакетная запись накопленной активности пользователей.
+ * Счётчики прибавляются к значениям в БД, поэтому параллельные обновления не теряются.
+ * Новую строку в users создаёт только регистрация (/start), активность остальных лишь обновляет существующие.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserActivityJdbcRepository {
+
+    /*
+     * Новая сессия определяется в самом запросе: если первая активность в пачке позже
+     * последней сохранённой активности больше чем на sessionGapMinutes.
+     */
+    private static final String UPSERT_SQL = """
+        INSERT INTO users (user_id, username, first_name, last_name, registered_at,
+                           first_activity_at, last_activity_at,
+                           questions_count, total_messages, sessions_count, is_returning_user)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 1, false)
+        ON CONFLICT (user_id) DO UPDATE SET
+            username = COALESCE(excluded.username, users.username),
+            first_name = COALESCE(excluded.first_name, users.first_name),
+            last_name = COALESCE(excluded.last_name, users.last_name),
+            first_activity_at = COALESCE(users.first_activity_at, excluded.first_activity_at),
+            last_activity_at = GREATEST(users.last_activity_at, excluded.last_activity_at),
+            bot_blocked_at = NULL,
+            questions_count = users.questions_count + excluded.questions_count,
+            total_messages = users.total_messages + excluded.total_messages,
+            sessions_count = CASE
+                WHEN users.last_activity_at IS NULL THEN 1
+                WHEN excluded.first_activity_at > users.last_activity_at + INTERVAL '1 minute' * ?
+                    THEN users.sessions_count + 1
+                ELSE users.sessions_count
+            END,
+            is_returning_user = users.is_returning_user
+                OR (users.last_activity_at IS NOT NULL
+                    AND excluded.first_activity_at > users.last_activity_at + INTERVAL '1 minute' * ?)
+        """;
+
+    /**
+     * То же без вставки: сообщения от тех, кто не нажимал /start, пользователя не создают
+     */
+    private static final String UPDATE_SQL = """
+        UPDATE users SET
+            first_activity_at = COALESCE(first_activity_at, ?),
+            last_activity_at = GREATEST(last_activity_at, ?),
+            bot_blocked_at = NULL,
+            questions_count = questions_count + ?,
+            total_messages = total_messages + ?,
+            sessions_count = CASE
+                WHEN last_activity_at IS NULL THEN 1
+                WHEN ? > last_activity_at + INTERVAL '1 minute' * ? THEN sessions_count + 1
+                ELSE sessions_count
+            END,
+            is_returning_user = is_returning_user
+                OR (last_activity_at IS NOT NULL AND ? > last_activity_at + INTERVAL '1 minute' * ?)
+        WHERE user_id = ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Записывает пачку накопленной активности: регистрации upsert'ом, остальное — обновлением
+     */
+    public void upsertActivity(List<ActivityDelta> deltas, int sessionGapMinutes) {
+        List<ActivityDelta> registrations = deltas.stream().filter(ActivityDelta::registration).toList();
+        List<ActivityDelta> updates = deltas.stream().filter(delta -> !delta.registration()).toList();
+        if (!registrations.isEmpty()) {
+            insertOrUpdate(registrations, sessionGapMinutes);
+        }
+        if (!updates.isEmpty()) {
+            updateExisting(updates, sessionGapMinutes);
+        }
+    }
+
+    private void insertOrUpdate(List<ActivityDelta> deltas, int sessionGapMinutes) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, deltas, deltas.size(), (ps, delta) -> {
+            ps.setLong(1, delta.userId());
+            setNullableString(ps, 2, delta.username());
+            setNullableString(ps, 3, delta.firstName());
+            setNullableString(ps, 4, delta.lastName());
+            ps.setTimestamp(5, Timestamp.valueOf(delta.firstActivityAt()));
+            ps.setTimestamp(6, Timestamp.valueOf(delta.firstActivityAt()));
+            ps.setTimestamp(7, Timestamp.valueOf(delta.lastActivityAt()));
+            ps.setInt(8, Math.toIntExact(delta.questions()));
+            ps.setInt(9, Math.toIntExact(delta.messages()));
+            ps.setInt(10, sessionGapMinutes);
+            ps.setInt(11, sessionGapMinutes);
+        });
+    }
+
+    private void updateExisting(List<ActivityDelta> deltas, int sessionGapMinutes) {
+        jdbcTemplate.batchUpdate(UPDATE_SQL, deltas, deltas.size(), (ps, delta) -> {
+            Timestamp firstActivity = Timestamp.valueOf(delta.firstActivityAt());
+            ps.setTimestamp(1, firstActivity);
+            ps.setTimestamp(2, Timestamp.valueOf(delta.lastActivityAt()));
+            ps.setInt(3, Math.toIntExact(delta.questions()));
+            ps.setInt(4, Math.toIntExact(delta.messages()));
+            ps.setTimestamp(5, firstActivity);
+            ps.setInt(6, sessionGapMinutes);
+            ps.setTimestamp(7, firstActivity);
+            ps.setInt(8, sessionGapMinutes);
+            ps.setLong(9, delta.userId());
+        });
+    }
+
+    /**
+     * Помечает пользователей, заблокировавших бота: их пропускают рассылки и напоминания.
+     * Пометка снимается при следующей активности пользователя (см. upsert выше)
+     */
+    public void markBotBlocked(List<Long> userIds, LocalDateTime blockedAt) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "UPDATE users SET bot_blocked_at = ? WHERE user_id = ANY(?)");
+            ps.setTimestamp(1, Timestamp.valueOf(blockedAt));
+            ps.setArray(2, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        });
+    }
+
+    private static void setNullableString(PreparedStatement ps, int index, String value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    /**
+     * Приращения активности пользователя за интервал между сбросами.
+     * Поля профиля null, если они не менялись (в БД остаются прежние значения).
+     * Профиль приходит только с /start, поэтому его наличие и означает регистрацию.
+     */
+    public record ActivityDelta(long userId,
+                                String username,
+                                String firstName,
+                                String lastName,
+                                LocalDateTime firstActivityAt,
+                                LocalDateTime lastActivityAt,
+                                long messages,
+                                long questions) {
+
+        public boolean registration() {
+            return username != null || firstName != null || lastName != null;
+        }
+    }
+}
@@ -1,9 +1,71 @@
 package com.example.m1nd.repository;
 
 import com.example.m1nd.model.UserProgress;
+import com.example.m1nd.model.UserProgressSnapshot;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
+
+/**
+ * Счётчики увеличиваются одним upsert'ом на стороне БД: без чтения строки и без потерянных
+ * обновлений при параллельных нажатиях. Остальные столбцы новой строки берут DEFAULT 0.
+ * Каждый инкремент — отдельная транзакция, чтобы кэш в UserProgressService сбрасывался после коммита.
+ */
 @Repository
 public interface UserProgressRepository extends JpaRepository<UserProgress, Long> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, riddles_solved) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET riddles_solved = user_progress.riddles_solved + 1",
+           nativeQuery = true)
+    void incrementRiddlesSolved(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, tasks_completed) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET tasks_completed = user_progress.tasks_completed + 1",
+           nativeQuery = true)
+    void incrementTasksCompleted(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, facts_viewed) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET facts_viewed = user_progress.facts_viewed + 1",
+           nativeQuery = true)
+    void incrementFactsViewed(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, ideas_viewed) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET ideas_viewed = user_progress.ideas_viewed + 1",
+           nativeQuery = true)
+    void incrementIdeasViewed(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, motivations_viewed) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET motivations_viewed = user_progress.motivations_viewed + 1",
+           nativeQuery = true)
+    void incrementMotivationsViewed(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_progress (user_id, games_played) VALUES (:userId, 1) " +
+                   "ON CONFLICT (user_id) DO UPDATE SET games_played = user_progress.games_played + 1",
+           nativeQuery = true)
+    void incrementGamesPlayed(@Param("userId") Long userId);
+
+    /**
+     * Весь прогресс пользователя одним запросом (пусто, если пользователь ещё ничего не делал)
+     */
+    @Query("SELECT new com.example.m1nd.model.UserProgressSnapshot(p.riddlesSolved, p.tasksCompleted, " +
+           "p.factsViewed, p.ideasViewed, p.motivationsViewed, p.gamesPlayed) " +
+           "FROM UserProgress p WHERE p.userId = :userId")
+    Optional<UserProgressSnapshot> findSnapshotByUserId(@Param("userId") Long userId);
 }
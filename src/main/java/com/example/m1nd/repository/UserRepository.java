@@ -1,12 +1,57 @@
 package com.example.m1nd.repository;
 
 import com.example.m1nd.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUserId(Long userId);
+    
+    /**
+     * Пользователь по username без учёта регистра (индекс idx_users_username_lower)
+     */
+    @Query(value = "SELECT * FROM users WHERE lower(username) = lower(:username) LIMIT 1", nativeQuery = true)
+    Optional<User> findByUsernameIgnoreCase(@Param("username") String username);
+    
+    /**
+     * Общая статистика одним проходом по таблице
+     */
+    @Query(value = "SELECT COUNT(*) AS \"totalUsers\", " +
+                   "COUNT(*) FILTER (WHERE registered_at > :todayStart) AS \"newUsersToday\", " +
+                   "COUNT(*) FILTER (WHERE last_activity_at > :todayStart) AS \"activeUsersToday\", " +
+                   "COUNT(*) FILTER (WHERE last_activity_at > :weekStart) AS \"activeUsersWeek\", " +
+                   "COUNT(*) FILTER (WHERE last_activity_at > :monthStart) AS \"activeUsersMonth\", " +
+                   "COUNT(*) FILTER (WHERE is_returning_user) AS \"returningUsers\", " +
+                   "COALESCE(SUM(questions_count), 0) AS \"totalQuestions\", " +
+                   "COALESCE(SUM(total_messages), 0) AS \"totalMessages\", " +
+                   "COALESCE(SUM(sessions_count), 0) AS \"totalSessions\" " +
+                   "FROM users",
+           nativeQuery = true)
+    UserStatisticsView aggregateStatistics(@Param("todayStart") LocalDateTime todayStart,
+                                           @Param("weekStart") LocalDateTime weekStart,
+                                           @Param("monthStart") LocalDateTime monthStart);
+    
+    List<User> findAllByOrderByTotalMessagesDesc(Pageable pageable);
+    
+    List<User> findAllByOrderByQuestionsCountDesc(Pageable pageable);
+    
+    interface UserStatisticsView {
+        long getTotalUsers();
+        long getNewUsersToday();
+        long getActiveUsersToday();
+        long getActiveUsersWeek();
+        long getActiveUsersMonth();
+        long getReturningUsers();
+        long getTotalQuestions();
+        long getTotalMessages();
+        long getTotalSessions();
+    }
 }
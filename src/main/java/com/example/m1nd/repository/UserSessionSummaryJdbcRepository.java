@@ -0,0 +1,51 @@
+package com.example.m1nd.repository;
+
+import com.example.m1nd.model.UserSessionSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Пакетная вставка сводок сессий. У сущности IDENTITY-ключ, поэтому Hibernate
+ * не батчит её вставки — пачка от фоновой свёртки пишется одним JDBC-батчем.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserSessionSummaryJdbcRepository {
+
+    private static final String INSERT_SQL = """
+        INSERT INTO user_session_summaries (user_id, username, summary_question, summary_answer,
+                                            session_start_at, session_end_at, created_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<UserSessionSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, summaries, summaries.size(), (ps, summary) -> {
+            ps.setLong(1, summary.getUserId());
+            if (summary.getUsername() != null) {
+                ps.setString(2, summary.getUsername());
+            } else {
+                ps.setNull(2, Types.VARCHAR);
+            }
+            ps.setString(3, summary.getSummaryQuestion());
+            ps.setString(4, summary.getSummaryAnswer());
+            ps.setTimestamp(5, toTimestamp(summary.getSessionStartAt()));
+            ps.setTimestamp(6, toTimestamp(summary.getSessionEndAt()));
+            ps.setTimestamp(7, toTimestamp(summary.getCreatedAt()));
+        });
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+}
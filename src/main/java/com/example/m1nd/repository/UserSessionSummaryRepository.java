@@ -7,30 +7,66 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * Выборки по дате — полуоткрытые диапазоны [начало дня, начало следующего дня),
+ * чтобы работали индексы по created_at (DATE(created_at) = :date их не использует)
+ */
 @Repository
 public interface UserSessionSummaryRepository extends JpaRepository<UserSessionSummary, Long> {
     
     /**
-     * Находит все сводки для пользователя за указанную дату
+     * Находит все сводки пользователя в диапазоне [from, to) — индекс idx_summaries_user_date
      */
     @Query("SELECT s FROM UserSessionSummary s WHERE s.userId = :userId " +
-           "AND DATE(s.createdAt) = :date ORDER BY s.createdAt DESC")
-    List<UserSessionSummary> findByUserIdAndDate(@Param("userId") Long userId, 
-                                                  @Param("date") LocalDate date);
+           "AND s.createdAt >= :from AND s.createdAt < :to ORDER BY s.createdAt DESC")
+    List<UserSessionSummary> findByUserIdAndCreatedAtRange(@Param("userId") Long userId,
+                                                           @Param("from") LocalDateTime from,
+                                                           @Param("to") LocalDateTime to);
     
     /**
-     * Находит всех уникальных пользователей, у которых есть сводки за указанную дату
+     * Последняя сводка пользователя — основа для следующей инкрементальной сводки
+     */
+    Optional<UserSessionSummary> findFirstByUserIdOrderByCreatedAtDesc(Long userId);
+    
+    /**
+     * Находит всех уникальных пользователей со сводками в диапазоне [from, to) —
+     * index-only scan по покрывающему idx_summaries_created_at_cover
      */
     @Query("SELECT DISTINCT s.userId, s.username FROM UserSessionSummary s " +
-           "WHERE DATE(s.createdAt) = :date ORDER BY s.username NULLS LAST, s.userId")
-    List<Object[]> findDistinctUsersByDate(@Param("date") LocalDate date);
+           "WHERE s.createdAt >= :from AND s.createdAt < :to ORDER BY s.username NULLS LAST, s.userId")
+    List<Object[]> findDistinctUsersByCreatedAtRange(@Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to);
     
     /**
-     * Находит все сводки за указанную дату
+     * Находит все сводки в диапазоне [from, to)
      */
-    @Query("SELECT s FROM UserSessionSummary s WHERE DATE(s.createdAt) = :date " +
+    @Query("SELECT s FROM UserSessionSummary s WHERE s.createdAt >= :from AND s.createdAt < :to " +
            "ORDER BY s.username NULLS LAST, s.createdAt DESC")
-    List<UserSessionSummary> findByDate(@Param("date") LocalDate date);
+    List<UserSessionSummary> findByCreatedAtRange(@Param("from") LocalDateTime from,
+                                                  @Param("to") LocalDateTime to);
+    
+    /**
+     * Находит все сводки для пользователя за указанную дату
+     */
+    default List<UserSessionSummary> findByUserIdAndDate(Long userId, LocalDate date) {
+        return findByUserIdAndCreatedAtRange(userId, date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+    
+    /**
+     * Находит всех уникальных пользователей, у которых есть сводки за указанную дату
+     */
+    default List<Object[]> findDistinctUsersByDate(LocalDate date) {
+        return findDistinctUsersByCreatedAtRange(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
+    
+    /**
+     * Находит все сводки за указанную дату
+     */
+    default List<UserSessionSummary> findByDate(LocalDate date) {
+        return findByCreatedAtRange(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
+    }
 }
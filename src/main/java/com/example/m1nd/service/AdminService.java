@@ -7,7 +7,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.annotation.PostConstruct;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -18,44 +17,17 @@ import java.util.Optional;
 public class AdminService {
     
     private final AdminRepository adminRepository;
-    
-    @PostConstruct
-    public void init() {
-        log.info("AdminService инициализирован. Используется БД (PostgreSQL)");
-        long count = adminRepository.count();
-        log.info("В БД загружено {} администраторов", count);
-        if (count == 0) {
-            log.warn("Список администраторов в БД пуст! Добавьте администраторов через команду /addadmin");
-        } else {
-            adminRepository.findAll().forEach(admin -> log.info("Админ в БД: {}", admin.getUsername()));
-        }
-    }
+    private final RoleRegistry roleRegistry;
     
     /**
-     * Проверяет, является ли пользователь администратором по username
+     * Проверяет, является ли пользователь администратором по username (без запроса к БД)
      */
     public boolean isAdmin(String username) {
         if (username == null || username.isEmpty()) {
             log.debug("Username пустой или null");
             return false;
         }
-        
-        // Убираем @ если есть
-        String cleanUsername = username.startsWith("@") ? username.substring(1) : username;
-        log.debug("Проверка админа для username: {} (очищенный: {})", username, cleanUsername);
-        
-        try {
-            // Ищем с @ и без @
-            boolean withAt = adminRepository.existsByUsername("@" + cleanUsername);
-            boolean withoutAt = adminRepository.existsByUsername(cleanUsername);
-            
-            boolean isAdmin = withAt || withoutAt;
-            log.info("Результат проверки админа в БД для {}: {}", cleanUsername, isAdmin);
-            return isAdmin;
-        } catch (Exception e) {
-            log.error("Ошибка при проверке администратора в БД", e);
-            return false;
-        }
+        return roleRegistry.isAdmin(username);
     }
     
     /**
@@ -73,10 +45,7 @@ public class AdminService {
         
         try {
             // Проверяем, не является ли уже администратором
-            boolean alreadyAdmin = adminRepository.existsByUsername("@" + cleanUsername) ||
-                                   adminRepository.existsByUsername(cleanUsername);
-            
-            if (alreadyAdmin) {
+            if (roleRegistry.isAdmin(cleanUsername)) {
                 log.info("Пользователь {} уже является администратором в БД", cleanUsername);
                 return false;
             }
@@ -88,6 +57,7 @@ public class AdminService {
             newAdmin.setAddedBy(addedBy != null ? addedBy : "system");
             
             adminRepository.save(newAdmin);
+            roleRegistry.refreshAdmins();
             
             log.info("Добавлен новый администратор в БД: {} (добавил: {})", cleanUsername, addedBy);
             return true;
@@ -117,15 +87,17 @@ public class AdminService {
         
         try {
             // Ищем с @ и без @
-            Optional<Admin> adminWithAt = adminRepository.findByUsername("@" + cleanUsername);
-            Optional<Admin> adminWithoutAt = adminRepository.findByUsername(cleanUsername);
+            Optional<Admin> adminWithAt = adminRepository.findFirstByUsernameIgnoreCase("@" + cleanUsername);
+            Optional<Admin> adminWithoutAt = adminRepository.findFirstByUsernameIgnoreCase(cleanUsername);
             
             if (adminWithAt.isPresent()) {
                 adminRepository.delete(adminWithAt.get());
+                roleRegistry.refreshAdmins();
                 log.info("Удален администратор из БД: {}", cleanUsername);
                 return true;
             } else if (adminWithoutAt.isPresent()) {
                 adminRepository.delete(adminWithoutAt.get());
+                roleRegistry.refreshAdmins();
                 log.info("Удален администратор из БД: {}", cleanUsername);
                 return true;
             }
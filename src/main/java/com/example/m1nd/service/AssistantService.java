@@ -21,13 +21,14 @@ public class AssistantService {
 
     private final AssistantRepository assistantRepository;
     private final UserRepository userRepository;
+    private final RoleRegistry roleRegistry;
     private final Random random = new Random();
 
+    /**
+     * Проверка роли по кэшу RoleRegistry — вызывается на каждое текстовое сообщение
+     */
     public boolean isAssistant(Long userId) {
-        if (userId == null) {
-            return false;
-        }
-        return assistantRepository.existsByTelegramUserIdAndActiveTrue(userId);
+        return roleRegistry.isAssistant(userId);
     }
 
     public List<Assistant> getActiveAssistants() {
@@ -51,12 +52,7 @@ public class AssistantService {
 
         String cleanUsername = username.startsWith("@") ? username.substring(1) : username;
 
-        Optional<User> userOpt = userRepository.findAll().stream()
-            .filter(u -> cleanUsername.equalsIgnoreCase(
-                u.getUsername() != null && u.getUsername().startsWith("@")
-                    ? u.getUsername().substring(1)
-                    : u.getUsername()))
-            .findFirst();
+        Optional<User> userOpt = userRepository.findByUsernameIgnoreCase(cleanUsername);
 
         if (userOpt.isEmpty()) {
             log.warn("Не найден пользователь с username {} в таблице users", cleanUsername);
@@ -79,6 +75,7 @@ public class AssistantService {
         assistant.setUpdatedAt(LocalDateTime.now());
 
         Assistant saved = assistantRepository.save(assistant);
+        roleRegistry.refreshAssistants();
         return Optional.of(saved);
     }
 
@@ -109,6 +106,7 @@ public class AssistantService {
         assistant.setActive(false);
         assistant.setUpdatedAt(LocalDateTime.now());
         assistantRepository.save(assistant);
+        roleRegistry.refreshAssistants();
         return true;
     }
 }
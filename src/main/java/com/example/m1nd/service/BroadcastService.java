@@ -0,0 +1,398 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.bot.TelegramBulkSender;
+import com.example.m1nd.repository.BroadcastJdbcRepository;
+import com.example.m1nd.repository.BroadcastJdbcRepository.Broadcast;
+import com.example.m1nd.repository.BroadcastJdbcRepository.BroadcastStatus;
+import com.example.m1nd.repository.BroadcastJdbcRepository.DeliveryStatus;
+import com.example.m1nd.repository.UserActivityJdbcRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рассылки администраторов всем пользователям.
+ * Получатели фиксируются в broadcast_deliveries и делятся на шарды по user_id; каждый шард
+ * отправляет свой поток через TelegramBulkSender, общий лимит которого шарды вместе и выбирают.
+ * Статусы доставки сохраняются пачками, поэтому рассылка после рестарта продолжается
+ * и не отправляет сообщение дважды (кроме последней несохранённой пачки).
+ * Получатели с ошибкой доставки после прохода возвращаются в очередь, пока не кончатся попытки;
+ * если не удалось сохранить статусы, рассылка останавливается и продолжается позже с последней сохранённой пачки.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BroadcastService {
+
+    public static final String STOP_CALLBACK_PREFIX = "broadcast_stop:";
+
+    private static final int SAVE_ATTEMPTS = 3;
+
+    private final BroadcastJdbcRepository broadcastRepository;
+    private final UserActivityJdbcRepository userActivityJdbcRepository;
+    private final TelegramBulkSender bulkSender;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.broadcast.shards:6}")
+    private int shards;
+
+    @Value("${app.broadcast.page-size:50}")
+    private int pageSize;
+
+    @Value("${app.broadcast.progress-interval-seconds:5}")
+    private int progressIntervalSeconds;
+
+    @Value("${app.broadcast.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.broadcast.retry-delay-seconds:60}")
+    private int retryDelaySeconds;
+
+    private final Map<Long, BroadcastRun> runs = new ConcurrentHashMap<>();
+
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "broadcast-shard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService progressTicker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "broadcast-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public long createDraft(String text, String createdBy, long adminChatId) {
+        return broadcastRepository.createDraft(text, createdBy, adminChatId);
+    }
+
+    public boolean cancelDraft(long broadcastId) {
+        return broadcastRepository.updateStatus(broadcastId, BroadcastStatus.DRAFT, BroadcastStatus.CANCELLED);
+    }
+
+    /**
+     * Фиксирует получателей и запускает рассылку
+     * @return число получателей или -1, если рассылка уже запущена или отменена
+     */
+    public int start(long broadcastId) {
+        Integer total = transactionTemplate.execute(status -> broadcastRepository.startDraft(broadcastId, shards));
+        if (total == null || total < 0) {
+            return -1;
+        }
+        broadcastRepository.findById(broadcastId).ifPresent(this::launch);
+        log.info("Запущена рассылка #{} на {} получателей", broadcastId, total);
+        return total;
+    }
+
+    /**
+     * Останавливает рассылку: шарды дописывают текущее сообщение и сохраняют прогресс
+     */
+    public boolean stop(long broadcastId) {
+        boolean stopped = broadcastRepository.updateStatus(broadcastId, BroadcastStatus.RUNNING, BroadcastStatus.CANCELLED);
+        BroadcastRun run = runs.get(broadcastId);
+        if (run != null) {
+            run.stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Продолжает рассылки, прерванные остановкой приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRunning() {
+        try {
+            for (Broadcast broadcast : broadcastRepository.findRunning()) {
+                log.info("Продолжаю рассылку #{}", broadcast.id());
+                launch(broadcast);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при возобновлении рассылок", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runs.values().forEach(run -> run.stopped = true);
+        progressTicker.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void launch(Broadcast broadcast) {
+        BroadcastRun run = new BroadcastRun(broadcast, broadcastRepository.countByStatus(broadcast.id()));
+        if (runs.putIfAbsent(broadcast.id(), run) != null) {
+            return;
+        }
+
+        if (broadcast.progressMessageId() == null) {
+            sendProgressMessage(run);
+        }
+        run.ticker = progressTicker.scheduleWithFixedDelay(
+            () -> updateProgress(run, false), progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        runPass(run);
+    }
+
+    /**
+     * Один проход шардов по ожидающим получателям. После прохода неудачные доставки
+     * возвращаются в очередь и через retryDelaySeconds идёт следующий проход
+     */
+    private void runPass(BroadcastRun run) {
+        long broadcastId = run.broadcast.id();
+        if (run.stopped) {
+            finish(run);
+            return;
+        }
+
+        List<CompletableFuture<Void>> shardRuns = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            int currentShard = shard;
+            shardRuns.add(CompletableFuture.runAsync(() -> runShard(run, currentShard), workers));
+        }
+
+        CompletableFuture.allOf(shardRuns.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Рассылка #{} прервана ошибкой, продолжу через {} с", broadcastId, retryDelaySeconds, error);
+                finish(run);
+                scheduleResume(broadcastId);
+                return;
+            }
+            if (run.stopped) {
+                finish(run);
+                return;
+            }
+            try {
+                int requeued = broadcastRepository.requeueFailed(broadcastId, maxAttempts);
+                if (requeued > 0) {
+                    run.failed.addAndGet(-requeued);
+                    log.info("Рассылка #{}: {} получателей не получили сообщение, повторю через {} с",
+                        broadcastId, requeued, retryDelaySeconds);
+                    progressTicker.schedule(() -> runPass(run), retryDelaySeconds, TimeUnit.SECONDS);
+                    return;
+                }
+                broadcastRepository.updateStatus(broadcastId, BroadcastStatus.RUNNING, BroadcastStatus.DONE);
+                log.info("Рассылка #{} завершена: отправлено {}, заблокировали {}, ошибок {}",
+                    broadcastId, run.sent.get(), run.blocked.get(), run.failed.get());
+                finish(run);
+            } catch (Exception e) {
+                log.error("Не удалось завершить проход рассылки #{}, продолжу через {} с", broadcastId, retryDelaySeconds, e);
+                finish(run);
+                scheduleResume(broadcastId);
+            }
+        });
+    }
+
+    private void finish(BroadcastRun run) {
+        run.ticker.cancel(false);
+        runs.remove(run.broadcast.id());
+        updateProgress(run, true);
+    }
+
+    /**
+     * Повторный запуск рассылки, прерванной ошибкой БД: продолжается с последней сохранённой пачки
+     */
+    private void scheduleResume(long broadcastId) {
+        progressTicker.schedule(() -> {
+            try {
+                broadcastRepository.findById(broadcastId)
+                    .filter(broadcast -> broadcast.status() == BroadcastStatus.RUNNING)
+                    .ifPresent(this::launch);
+            } catch (Exception e) {
+                log.error("Не удалось продолжить рассылку #{}, она продолжится после перезапуска", broadcastId, e);
+            }
+        }, retryDelaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void runShard(BroadcastRun run, int shard) {
+        long afterUserId = Long.MIN_VALUE;
+        while (!run.stopped) {
+            List<Long> page = broadcastRepository.findPendingPage(run.broadcast.id(), shard, afterUserId, pageSize);
+            if (page.isEmpty()) {
+                return;
+            }
+
+            List<Long> sent = new ArrayList<>();
+            List<Long> blocked = new ArrayList<>();
+            List<Long> failed = new ArrayList<>();
+            try {
+                for (Long userId : page) {
+                    if (run.stopped) {
+                        break;
+                    }
+                    SendMessage message = new SendMessage(userId.toString(), run.broadcast.text());
+                    switch (bulkSender.send(message)) {
+                        case SENT -> {
+                            sent.add(userId);
+                            run.sent.incrementAndGet();
+                        }
+                        case BLOCKED -> {
+                            blocked.add(userId);
+                            run.blocked.incrementAndGet();
+                        }
+                        case FAILED -> {
+                            failed.add(userId);
+                            run.failed.incrementAndGet();
+                        }
+                    }
+                    run.processedInThisRun.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                run.stopped = true;
+            } finally {
+                saveDeliveries(run, sent, blocked, failed);
+            }
+            afterUserId = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Сохраняет статусы пачки с несколькими попытками. Если сохранить так и не удалось, рассылка
+     * останавливается с ошибкой: продолжать отправку без сохранённого прогресса значит отправить её повторно
+     */
+    private void saveDeliveries(BroadcastRun run, List<Long> sent, List<Long> blocked, List<Long> failed) {
+        long broadcastId = run.broadcast.id();
+        LocalDateTime now = LocalDateTime.now();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    broadcastRepository.markDeliveries(broadcastId, sent, DeliveryStatus.SENT, now);
+                    broadcastRepository.markDeliveries(broadcastId, blocked, DeliveryStatus.BLOCKED, now);
+                    broadcastRepository.markDeliveries(broadcastId, failed, DeliveryStatus.FAILED, now);
+                    userActivityJdbcRepository.markBotBlocked(blocked, now);
+                });
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= SAVE_ATTEMPTS || !pause(attempt)) {
+                    run.stopped = true;
+                    throw e;
+                }
+                log.warn("Не удалось сохранить статусы доставки рассылки #{} (попытка {} из {}): {}",
+                    broadcastId, attempt, SAVE_ATTEMPTS, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean pause(int attempt) {
+        try {
+            Thread.sleep(attempt * 1000L);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void sendProgressMessage(BroadcastRun run) {
+        try {
+            SendMessage message = new SendMessage(String.valueOf(run.broadcast.adminChatId()), formatProgress(run, false));
+            message.setReplyMarkup(stopKeyboard(run.broadcast.id()));
+            Message sent = bulkSender.execute(message);
+            broadcastRepository.setProgressMessageId(run.broadcast.id(), sent.getMessageId());
+            run.progressMessageId = sent.getMessageId();
+        } catch (TelegramApiException e) {
+            log.warn("Не удалось отправить сообщение о прогрессе рассылки #{}: {}", run.broadcast.id(), e.getMessage());
+        }
+    }
+
+    private void updateProgress(BroadcastRun run, boolean finished) {
+        if (run.progressMessageId == null) {
+            return;
+        }
+        try {
+            EditMessageText edit = new EditMessageText();
+            edit.setChatId(String.valueOf(run.broadcast.adminChatId()));
+            edit.setMessageId(run.progressMessageId);
+            edit.setText(formatProgress(run, finished));
+            if (!finished) {
+                edit.setReplyMarkup(stopKeyboard(run.broadcast.id()));
+            }
+            bulkSender.execute(edit);
+        } catch (TelegramApiException e) {
+            // «message is not modified» и временные ошибки не мешают рассылке
+            log.debug("Не удалось обновить прогресс рассылки #{}: {}", run.broadcast.id(), e.getMessage());
+        }
+    }
+
+    private String formatProgress(BroadcastRun run, boolean finished) {
+        long sent = run.sent.get();
+        long blocked = run.blocked.get();
+        long failed = run.failed.get();
+        long processed = sent + blocked + failed;
+        long total = Math.max(run.broadcast.total(), processed);
+
+        double elapsedSeconds = Math.max(1, (System.nanoTime() - run.startedAtNanos) / 1_000_000_000d);
+        double rate = run.processedInThisRun.get() / elapsedSeconds;
+
+        StringBuilder sb = new StringBuilder();
+        String state = !finished ? "идёт" : run.stopped ? "остановлена" : "завершена";
+        sb.append("📣 Рассылка #").append(run.broadcast.id()).append(" ").append(state).append("\n\n");
+        sb.append("Обработано: ").append(processed).append(" из ").append(total);
+        if (total > 0) {
+            sb.append(String.format(" (%.0f%%)", 100.0 * processed / total));
+        }
+        sb.append("\n");
+        sb.append("✅ Доставлено: ").append(sent).append("\n");
+        sb.append("🚫 Заблокировали бота: ").append(blocked).append("\n");
+        sb.append("⚠️ Ошибок: ").append(failed).append("\n");
+        sb.append(String.format("⚡ Скорость: %.1f сообщ/с", rate));
+        if (!finished && rate > 0 && total > processed) {
+            long etaSeconds = (long) ((total - processed) / rate);
+            sb.append("\n⏱ Осталось ≈ ").append(Math.max(1, etaSeconds / 60)).append(" мин");
+        }
+        return sb.toString();
+    }
+
+    private static InlineKeyboardMarkup stopKeyboard(long broadcastId) {
+        InlineKeyboardButton stopButton = new InlineKeyboardButton();
+        stopButton.setText("⏹ Остановить");
+        stopButton.setCallbackData(STOP_CALLBACK_PREFIX + broadcastId);
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(List.of(List.of(stopButton)));
+        return markup;
+    }
+
+    private static final class BroadcastRun {
+        private final Broadcast broadcast;
+        private final AtomicLong sent;
+        private final AtomicLong blocked;
+        private final AtomicLong failed;
+        /** Обработано в этом запуске — для скорости (после рестарта счётчики начинаются не с нуля) */
+        private final AtomicLong processedInThisRun = new AtomicLong();
+        private final long startedAtNanos = System.nanoTime();
+        private volatile Integer progressMessageId;
+        private volatile ScheduledFuture<?> ticker;
+        private volatile boolean stopped;
+
+        private BroadcastRun(Broadcast broadcast, Map<DeliveryStatus, Long> counts) {
+            this.broadcast = broadcast;
+            this.sent = new AtomicLong(counts.get(DeliveryStatus.SENT));
+            this.blocked = new AtomicLong(counts.get(DeliveryStatus.BLOCKED));
+            this.failed = new AtomicLong(counts.get(DeliveryStatus.FAILED));
+            this.progressMessageId = broadcast.progressMessageId();
+        }
+    }
+}
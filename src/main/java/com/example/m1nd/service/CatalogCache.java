@@ -0,0 +1,144 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.model.FactTopic;
+import com.example.m1nd.model.Game;
+import com.example.m1nd.model.IdeaTopic;
+import com.example.m1nd.model.MotivationTopic;
+import com.example.m1nd.model.PaidService;
+import com.example.m1nd.repository.FactTopicRepository;
+import com.example.m1nd.repository.GameRepository;
+import com.example.m1nd.repository.IdeaTopicRepository;
+import com.example.m1nd.repository.MotivationTopicRepository;
+import com.example.m1nd.repository.PaidServiceRepository;
+import com.example.m1nd.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Кэш справочников меню (темы фактов, идей, мотивации, игры, задания, платные услуги).
+ * Хранит неизменяемый снимок с номером версии; любое изменение справочника через сервисы
+ * перечитывает его целиком и атомарно подменяет снимок. Клавиатуры строятся один раз на версию.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CatalogCache {
+
+    private final FactTopicRepository factTopicRepository;
+    private final IdeaTopicRepository ideaTopicRepository;
+    private final MotivationTopicRepository motivationTopicRepository;
+    private final GameRepository gameRepository;
+    private final TaskRepository taskRepository;
+    private final PaidServiceRepository paidServiceRepository;
+
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Snapshot snapshot = refresh();
+        log.info("Справочники загружены (версия {}): фактов {}, идей {}, мотивации {}, игр {}, заданий {}",
+            snapshot.version(), snapshot.facts().size(), snapshot.ideas().size(),
+            snapshot.motivations().size(), snapshot.games().size(), snapshot.taskIds().length);
+    }
+
+    /**
+     * Текущий снимок; при первом обращении до прогрева загружается синхронно
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = current.get();
+        return snapshot != null ? snapshot : refresh();
+    }
+
+    /**
+     * Перечитывает справочники и подменяет снимок. Из двух параллельных перезагрузок
+     * побеждает начатая позже, поэтому старые данные не затрут свежие.
+     */
+    public Snapshot refresh() {
+        long version = versions.incrementAndGet();
+        Snapshot loaded = new Snapshot(
+            version,
+            indexByCode(factTopicRepository.findAll(), FactTopic::getCode),
+            indexByCode(ideaTopicRepository.findAll(), IdeaTopic::getCode),
+            indexByCode(motivationTopicRepository.findAll(), MotivationTopic::getCode),
+            indexByCode(gameRepository.findAll(), Game::getCode),
+            taskRepository.findAllIds().stream().mapToLong(Long::longValue).toArray(),
+            indexByCode(paidServiceRepository.findAll(), PaidService::getCode),
+            new ConcurrentHashMap<>());
+        Snapshot installed = current.accumulateAndGet(loaded,
+            (prev, next) -> prev != null && prev.version() > next.version() ? prev : next);
+        log.debug("Снимок справочников обновлён до версии {}", installed.version());
+        return installed;
+    }
+
+    /**
+     * Перезагрузка после завершения текущей транзакции — чтобы снимок не увидел незакоммиченные данные
+     */
+    public void refreshAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+    }
+
+    private static <T> Map<String, T> indexByCode(List<T> items, Function<T, String> code) {
+        Map<String, T> byCode = new LinkedHashMap<>();
+        for (T item : items) {
+            byCode.put(code.apply(item), item);
+        }
+        return Collections.unmodifiableMap(byCode);
+    }
+
+    /**
+     * Неизменяемый снимок справочников. Сущности отсоединены от JPA-сессии и не должны меняться.
+     */
+    public record Snapshot(long version,
+                           Map<String, FactTopic> facts,
+                           Map<String, IdeaTopic> ideas,
+                           Map<String, MotivationTopic> motivations,
+                           Map<String, Game> games,
+                           long[] taskIds,
+                           Map<String, PaidService> paidServices,
+                           Map<String, InlineKeyboardMarkup> keyboards) {
+
+        /**
+         * Клавиатура, построенная по этому снимку один раз; новая версия начинает с пустого набора
+         */
+        public InlineKeyboardMarkup keyboard(String name, Function<Snapshot, InlineKeyboardMarkup> builder) {
+            return keyboards.computeIfAbsent(name, key -> builder.apply(this));
+        }
+
+        /**
+         * Случайный id задания за O(1) или пусто, если заданий нет
+         */
+        public Optional<Long> randomTaskId() {
+            if (taskIds.length == 0) {
+                return Optional.empty();
+            }
+            return Optional.of(taskIds[ThreadLocalRandom.current().nextInt(taskIds.length)]);
+        }
+    }
+}
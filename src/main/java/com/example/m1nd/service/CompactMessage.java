@@ -0,0 +1,131 @@
+package com.example.m1nd.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Компактное сообщение диалога в памяти: роль — байт, текст — UTF-8 (для старых длинных
+ * сообщений — сжатый deflate), время — миллисекунды эпохи. Вместо Map.of + String + LocalDateTime
+ * на сообщение остаются два объекта. Неизменяемо: сжатие создаёт новый экземпляр.
+ */
+public final class CompactMessage {
+
+    private static final String[] ROLES = {"user", "assistant", "system", "tool"};
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /** Заголовок объекта и поля + заголовок массива: оценка без учёта выравнивания JVM */
+    private static final int OBJECT_OVERHEAD = 40;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    private final long seq;
+    private final long createdAtMillis;
+    private final byte role;
+    private final boolean compressed;
+    private final byte[] content;
+
+    private CompactMessage(long seq, long createdAtMillis, byte role, boolean compressed, byte[] content) {
+        this.seq = seq;
+        this.createdAtMillis = createdAtMillis;
+        this.role = role;
+        this.compressed = compressed;
+        this.content = content;
+    }
+
+    public static CompactMessage of(long seq, String role, String content, LocalDateTime createdAt) {
+        return new CompactMessage(seq, createdAt.atZone(ZONE).toInstant().toEpochMilli(), encodeRole(role), false,
+            content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long seq() {
+        return seq;
+    }
+
+    public String role() {
+        return ROLES[role];
+    }
+
+    public String content() {
+        return new String(compressed ? inflate(content) : content, StandardCharsets.UTF_8);
+    }
+
+    public LocalDateTime createdAt() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAtMillis), ZONE);
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Оценка занимаемой памяти в байтах
+     */
+    public int retainedBytes() {
+        return OBJECT_OVERHEAD + ARRAY_OVERHEAD + ((content.length + 7) & ~7);
+    }
+
+    /**
+     * Сжатая копия, если текст не короче minBytes и сжатие действительно выигрывает; иначе this
+     */
+    public CompactMessage compressed(int minBytes) {
+        if (compressed || content.length < minBytes) {
+            return this;
+        }
+        byte[] deflated = deflate(content);
+        if (deflated.length >= content.length * 9 / 10) {
+            return this;
+        }
+        return new CompactMessage(seq, createdAtMillis, role, true, deflated);
+    }
+
+    private static byte encodeRole(String role) {
+        for (byte i = 0; i < ROLES.length; i++) {
+            if (ROLES[i].equals(role)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная роль сообщения: " + role);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Повреждённое сжатое сообщение диалога", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
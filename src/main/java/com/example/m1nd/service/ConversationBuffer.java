@@ -0,0 +1,83 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.util.SequencedRingBuffer;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Диалог одного пользователя в памяти. Сообщения — в кольцевом буфере без блокировок,
+ * системный промпт закреплён отдельно и не вытесняется. Сообщения старше keepUncompressed
+ * последних сжимаются на месте; размер диалога оценивается в байтах для общего бюджета памяти.
+ */
+final class ConversationBuffer {
+
+    /** Ссылки, атомики и кольцо самого диалога */
+    private static final int BASE_BYTES = 160;
+
+    final SequencedRingBuffer<CompactMessage> messages;
+    final AtomicLong summarizedSeq = new AtomicLong();
+    volatile String systemPrompt;
+    volatile String lastResponseId;
+    /** Диалог вытеснен из LRU: его размер больше не входит в общий бюджет. Под блокировкой LRU */
+    boolean evicted;
+
+    private final int keepUncompressed;
+    private final int compressMinBytes;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    ConversationBuffer(int capacity, int keepUncompressed, int compressMinBytes) {
+        this.messages = new SequencedRingBuffer<>(capacity, CompactMessage::seq);
+        this.keepUncompressed = keepUncompressed;
+        this.compressMinBytes = compressMinBytes;
+    }
+
+    /**
+     * Добавляет сообщение и сжимает то, что выпало из несжатого хвоста
+     * @return добавленное сообщение
+     */
+    CompactMessage append(String role, String content, LocalDateTime createdAt) {
+        CompactMessage message = messages.append(seq -> CompactMessage.of(seq, role, content, createdAt));
+        compress(message.seq() - keepUncompressed);
+        return message;
+    }
+
+    /**
+     * Восстанавливает диалог из хранилища; старые сообщения сразу кладутся сжатыми
+     */
+    void restore(long lastSeq, long clearedSeq, List<CompactMessage> stored) {
+        List<CompactMessage> restored = stored.stream()
+            .map(message -> message.seq() <= lastSeq - keepUncompressed ? message.compressed(compressMinBytes) : message)
+            .toList();
+        messages.restore(lastSeq, clearedSeq, restored);
+    }
+
+    /**
+     * Пересчитывает оценку размера
+     * @return изменение оценки относительно прошлого пересчёта
+     */
+    long remeasure() {
+        long bytes = BASE_BYTES + (systemPrompt != null ? 40 + systemPrompt.length() * 2L : 0);
+        for (CompactMessage message : messages.snapshot(0)) {
+            bytes += message.retainedBytes();
+        }
+        return bytes - estimatedBytes.getAndSet(bytes);
+    }
+
+    long estimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    private void compress(long seq) {
+        CompactMessage message = messages.get(seq);
+        if (message == null) {
+            return;
+        }
+        CompactMessage compressed = message.compressed(compressMinBytes);
+        if (compressed != message) {
+            // Если слот уже перезаписан, сжимать нечего — сообщение вытеснено
+            messages.replace(message, compressed);
+        }
+    }
+}
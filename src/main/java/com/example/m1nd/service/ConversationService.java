@@ -1,69 +1,279 @@
 package com.example.m1nd.service;
 
+import com.example.m1nd.repository.ConversationJdbcRepository;
+import com.example.m1nd.repository.ConversationJdbcRepository.ConversationState;
+import com.example.m1nd.repository.ConversationJdbcRepository.StoredMessage;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * История диалогов с LLM. В памяти — LRU горячих диалогов в компактном виде ({@link ConversationBuffer});
+ * их число ограничено max-hot, а суммарный оценочный размер — memory-budget-mb. При превышении
+ * вытесняются самые холодные. Холодный диалог загружается из БД при первом обращении, в том числе
+ * после рестарта. Запись в БД — отложенная, через {@link ConversationWriteBehind}, поэтому вытеснять
+ * можно любой диалог: недописанное подберётся из очереди записи при загрузке.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class ConversationService {
-    
-    // Храним историю диалогов для каждого пользователя
-    private final Map<Long, List<Map<String, String>>> conversations = new ConcurrentHashMap<>();
-    // Храним последний response ID для каждого пользователя (для YandexGPT Responses API контекста)
-    private final Map<Long, String> lastResponseIds = new ConcurrentHashMap<>();
+
     private static final int MAX_HISTORY_SIZE = 10;
-    
+
+    private final ConversationJdbcRepository conversationJdbcRepository;
+    private final ConversationWriteBehind writeBehind;
+
+    @Value("${app.conversation.max-hot:10000}")
+    private int maxHotConversations;
+
+    @Value("${app.conversation.memory-budget-mb:256}")
+    private long memoryBudgetMb;
+
+    @Value("${app.conversation.keep-uncompressed:2}")
+    private int keepUncompressed;
+
+    @Value("${app.conversation.compress-min-bytes:512}")
+    private int compressMinBytes;
+
+    // Горячие диалоги в порядке последнего обращения
+    private final LinkedHashMap<Long, ConversationBuffer> conversations = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder evictedByBudget = new LongAdder();
+    private final LongAdder loadedFromDb = new LongAdder();
+
     public void addMessage(Long userId, String role, String content) {
-        conversations.computeIfAbsent(userId, k -> new ArrayList<>())
-            .add(Map.of("role", role, "content", content));
-        
-        // Ограничиваем историю последними сообщениями
-        List<Map<String, String>> history = conversations.get(userId);
-        if (history.size() > MAX_HISTORY_SIZE) {
-            // Удаляем старые сообщения, оставляя системный промпт
-            int toRemove = history.size() - MAX_HISTORY_SIZE;
-            for (int i = 0; i < toRemove; i++) {
-                if (history.size() > 1 && !history.get(0).get("role").equals("system")) {
-                    history.remove(0);
-                }
-            }
-        }
+        ConversationBuffer conversation = conversation(userId);
+        CompactMessage message = conversation.append(role, content, LocalDateTime.now());
+        writeBehind.enqueue(new StoredMessage(userId, message.seq(), role, content, message.createdAt()));
+        remeasure(conversation);
     }
-    
+
+    /**
+     * Неизменяемый снимок истории для запроса к LLM: системный промпт (если есть) и последние сообщения
+     */
     public List<Map<String, String>> getHistory(Long userId) {
-        return conversations.getOrDefault(userId, new ArrayList<>());
+        ConversationBuffer conversation = conversation(userId);
+        String systemPrompt = conversation.systemPrompt;
+        List<CompactMessage> messages = conversation.messages.snapshot(0);
+        List<Map<String, String>> history = new ArrayList<>(messages.size() + 1);
+        if (systemPrompt != null) {
+            history.add(Map.of("role", "system", "content", systemPrompt));
+        }
+        for (CompactMessage message : messages) {
+            history.add(Map.of("role", message.role(), "content", message.content()));
+        }
+        return Collections.unmodifiableList(history);
+    }
+
+    /**
+     * Сообщения истории (без системного промпта) с номером больше afterSeq.
+     * Номера сквозные на пользователя, не сбрасываются при очистке и переживают рестарт
+     */
+    public List<HistoryMessage> getMessagesSince(Long userId, long afterSeq) {
+        List<HistoryMessage> result = new ArrayList<>();
+        for (CompactMessage message : conversation(userId).messages.snapshot(afterSeq)) {
+            result.add(new HistoryMessage(message.seq(), message.role(), message.content(), message.createdAt()));
+        }
+        return result;
     }
-    
+
     public void clearHistory(Long userId) {
-        conversations.remove(userId);
-        lastResponseIds.remove(userId);
+        ConversationBuffer conversation = conversation(userId);
+        conversation.messages.clear();
+        conversation.systemPrompt = null;
+        conversation.lastResponseId = null;
+        saveState(userId, conversation);
+        remeasure(conversation);
     }
-    
+
     /**
      * Сохраняет последний response ID для пользователя (для YandexGPT Responses API контекста)
      */
     public void setLastResponseId(Long userId, String responseId) {
         if (responseId != null && !responseId.isEmpty()) {
-            lastResponseIds.put(userId, responseId);
+            ConversationBuffer conversation = conversation(userId);
+            conversation.lastResponseId = responseId;
+            saveState(userId, conversation);
             log.debug("Сохранен response ID для пользователя {}: {}", userId, responseId);
         }
     }
-    
+
     /**
      * Получает последний response ID для пользователя (для YandexGPT Responses API контекста)
      */
     public String getLastResponseId(Long userId) {
-        return lastResponseIds.get(userId);
+        return conversation(userId).lastResponseId;
+    }
+
+    /**
+     * Номер последнего сообщения, уже свёрнутого в сводку
+     */
+    public long getSummarizedSeq(Long userId) {
+        return conversation(userId).summarizedSeq.get();
+    }
+
+    public void markSummarized(Long userId, long seq) {
+        ConversationBuffer conversation = conversation(userId);
+        if (conversation.summarizedSeq.accumulateAndGet(seq, Math::max) == seq) {
+            saveState(userId, conversation);
+        }
     }
-    
+
     public void initializeHistory(Long userId, String systemPrompt) {
-        List<Map<String, String>> history = conversations.computeIfAbsent(userId, k -> new ArrayList<>());
-        if (history.isEmpty() || !history.get(0).get("role").equals("system")) {
-            history.add(0, Map.of("role", "system", "content", systemPrompt));
+        ConversationBuffer conversation = conversation(userId);
+        if (conversation.systemPrompt == null) {
+            conversation.systemPrompt = systemPrompt;
         }
     }
-}
 
+    /**
+     * Текстовый отчёт о памяти под диалоги (для /stats)
+     */
+    public String formatMemoryMetrics() {
+        int hot;
+        synchronized (conversations) {
+            hot = conversations.size();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        return "🧠 Диалоги в памяти: " + hot + " из " + maxHotConversations
+            + ", ~" + toMb(totalBytes.get()) + " из " + memoryBudgetMb + " МБ"
+            + " (вытеснено по бюджету " + evictedByBudget.sum() + ", загружено из БД " + loadedFromDb.sum() + ")\n"
+            + "  • Куча JVM: " + heapUsedMb + " из " + runtime.maxMemory() / (1024 * 1024) + " МБ\n";
+    }
+
+    @Scheduled(fixedDelay = 5, initialDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void logMemoryMetrics() {
+        log.info(formatMemoryMetrics().trim());
+    }
+
+    private void saveState(Long userId, ConversationBuffer conversation) {
+        writeBehind.enqueue(new ConversationState(userId, conversation.lastResponseId,
+            conversation.summarizedSeq.get(), conversation.messages.clearedSeq()));
+    }
+
+    /**
+     * Диалог из LRU или, если его там нет, из БД вместе с ещё не записанными изменениями.
+     * Загрузка идёт без блокировки LRU; при гонке остаётся первый загруженный
+     */
+    private ConversationBuffer conversation(Long userId) {
+        synchronized (conversations) {
+            ConversationBuffer hot = conversations.get(userId);
+            if (hot != null) {
+                return hot;
+            }
+        }
+        ConversationBuffer loaded = load(userId);
+        synchronized (conversations) {
+            ConversationBuffer existing = conversations.putIfAbsent(userId, loaded);
+            if (existing != null) {
+                return existing;
+            }
+            totalBytes.addAndGet(loaded.remeasure());
+            evictOverLimits(loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Пересчитывает размер диалога в общем бюджете и вытесняет лишнее. Под блокировкой LRU, как и
+     * вытеснение: иначе прирост диалога, вытесненного между изменением и пересчётом, остался бы
+     * в бюджете навсегда. Изменения уже вытесненного диалога не учитываются
+     */
+    private void remeasure(ConversationBuffer conversation) {
+        synchronized (conversations) {
+            if (conversation.evicted) {
+                return;
+            }
+            totalBytes.addAndGet(conversation.remeasure());
+            if (totalBytes.get() > budgetBytes()) {
+                evictOverLimits(null);
+            }
+        }
+    }
+
+    /**
+     * Вытесняет самые холодные диалоги, пока их больше max-hot или суммарный размер выше бюджета.
+     * Чтобы не вытеснять по одному на каждое сообщение, по бюджету освобождается до 90%.
+     * Вызывать под блокировкой LRU
+     */
+    private void evictOverLimits(ConversationBuffer keep) {
+        long budget = budgetBytes();
+        long target = totalBytes.get() > budget ? budget * 9 / 10 : Long.MAX_VALUE;
+        Iterator<ConversationBuffer> coldest = conversations.values().iterator();
+        while (coldest.hasNext() && (conversations.size() > maxHotConversations || totalBytes.get() > target)) {
+            ConversationBuffer conversation = coldest.next();
+            if (conversation == keep) {
+                continue;
+            }
+            coldest.remove();
+            conversation.evicted = true;
+            totalBytes.addAndGet(-conversation.estimatedBytes());
+            if (target != Long.MAX_VALUE) {
+                evictedByBudget.increment();
+            }
+        }
+    }
+
+    private ConversationBuffer load(long userId) {
+        ConversationBuffer conversation = new ConversationBuffer(MAX_HISTORY_SIZE - 1, keepUncompressed, compressMinBytes);
+        ConversationState state = writeBehind.pendingState(userId)
+            .or(() -> conversationJdbcRepository.findState(userId))
+            .orElse(null);
+        long clearedSeq = 0;
+        if (state != null) {
+            conversation.lastResponseId = state.lastResponseId();
+            conversation.summarizedSeq.set(state.summarizedSeq());
+            clearedSeq = state.clearedSeq();
+        }
+
+        int capacity = conversation.messages.capacity();
+        TreeMap<Long, StoredMessage> messages = new TreeMap<>();
+        for (StoredMessage message : conversationJdbcRepository.findRecent(userId, clearedSeq, capacity)) {
+            messages.put(message.seq(), message);
+        }
+        // Сообщения старше срока хранения удаляются, а состояние остаётся: номера не должны пойти заново
+        // ниже границы сводки, иначе новые сообщения сочтутся уже учтёнными в ней
+        long lastSeq = Math.max(Math.max(clearedSeq, conversation.summarizedSeq.get()),
+            conversationJdbcRepository.findLastSeq(userId));
+        for (StoredMessage message : writeBehind.pendingMessages(userId)) {
+            lastSeq = Math.max(lastSeq, message.seq());
+            if (message.seq() > clearedSeq) {
+                messages.put(message.seq(), message);
+            }
+        }
+        while (messages.size() > capacity) {
+            messages.pollFirstEntry();
+        }
+        conversation.restore(lastSeq, clearedSeq, messages.values().stream()
+            .map(message -> CompactMessage.of(message.seq(), message.role(), message.content(), message.createdAt()))
+            .toList());
+
+        if (!messages.isEmpty()) {
+            loadedFromDb.increment();
+            log.debug("Диалог пользователя {} загружен из БД: {} сообщений", userId, messages.size());
+        }
+        return conversation;
+    }
+
+    private long budgetBytes() {
+        return memoryBudgetMb * 1024 * 1024;
+    }
+
+    private static String toMb(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024d * 1024d));
+    }
+
+    public record HistoryMessage(long seq, String role, String content, LocalDateTime createdAt) {
+    }
+}
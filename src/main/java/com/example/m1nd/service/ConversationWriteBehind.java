@@ -0,0 +1,209 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.ConversationJdbcRepository;
+import com.example.m1nd.repository.ConversationJdbcRepository.ConversationState;
+import com.example.m1nd.repository.ConversationJdbcRepository.StoredMessage;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отложенная запись истории диалогов: сообщения и изменения состояния копятся в памяти
+ * и раз в flush-interval уходят в БД пачкой. Путь запроса к LLM в БД не ходит.
+ * <p>
+ * Пока запись не ушла, загрузка диалога в память добирает её отсюда ({@link #pendingMessages},
+ * {@link #pendingState}). Если БД недоступна дольше, чем помещается в max-pending, старые
+ * сообщения отбрасываются — в памяти они при этом остаются.
+ * <p>
+ * Если пачка не записалась, сообщения пишутся по одному: сообщение, которое БД отвергает
+ * (например, с символом \u0000), отбрасывается после max-insert-attempts попыток и не держит остальные.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationWriteBehind {
+
+    private final ConversationJdbcRepository conversationJdbcRepository;
+
+    @Value("${app.conversation.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.conversation.max-pending:50000}")
+    private int maxPending;
+
+    @Value("${app.conversation.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${app.conversation.max-insert-attempts:5}")
+    private int maxInsertAttempts;
+
+    private final ConcurrentLinkedQueue<StoredMessage> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    /** Последнее состояние по пользователю: промежуточные значения записывать незачем */
+    private final Map<Long, ConversationState> states = new ConcurrentHashMap<>();
+    /** Пачка, которая пишется прямо сейчас: её уже нет в очереди, но ещё может не быть в БД */
+    private volatile Collection<StoredMessage> flushing = List.of();
+    /** Неудачные попытки записи сообщений, которые БД отвергла по отдельности */
+    private final Map<StoredMessage, Integer> failedAttempts = new ConcurrentHashMap<>();
+
+    public void enqueue(StoredMessage message) {
+        messages.add(message);
+        StoredMessage dropped;
+        if (pendingCount.incrementAndGet() > maxPending && (dropped = messages.poll()) != null) {
+            pendingCount.decrementAndGet();
+            failedAttempts.remove(dropped);
+            log.warn("Очередь записи диалогов переполнена ({}), самое старое сообщение отброшено", maxPending);
+        }
+    }
+
+    public void enqueue(ConversationState state) {
+        states.put(state.userId(), state);
+    }
+
+    public List<StoredMessage> pendingMessages(long userId) {
+        // Сначала очередь, потом пачка: сообщение попадает в пачку раньше, чем уходит из очереди,
+        // поэтому при таком порядке чтения оно не проскочит между ними (дубли загрузка убирает по seq)
+        List<StoredMessage> result = new ArrayList<>();
+        for (StoredMessage message : messages) {
+            if (message.userId() == userId) {
+                result.add(message);
+            }
+        }
+        for (StoredMessage message : flushing) {
+            if (message.userId() == userId) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    public Optional<ConversationState> pendingState(long userId) {
+        return Optional.ofNullable(states.get(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.conversation.flush-interval-ms:2000}")
+    public void flush() {
+        flushMessages();
+        flushStates();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Дописываю историю диалогов перед остановкой: {} сообщений", pendingCount.get());
+        flush();
+    }
+
+    @Scheduled(cron = "${app.conversation.retention-cron:0 15 4 * * ?}")
+    public void deleteExpired() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        try {
+            int deleted = conversationJdbcRepository.deleteOlderThan(LocalDateTime.now().minusDays(retentionDays));
+            log.info("Удалено сообщений диалогов старше {} дней: {}", retentionDays, deleted);
+        } catch (Exception e) {
+            log.error("Ошибка очистки старых сообщений диалогов", e);
+        }
+    }
+
+    private void flushMessages() {
+        while (true) {
+            Queue<StoredMessage> batch = new ConcurrentLinkedQueue<>();
+            flushing = batch;
+            int size = 0;
+            StoredMessage next;
+            while (size < batchSize && (next = messages.peek()) != null) {
+                batch.add(next);
+                if (messages.remove(next)) {
+                    pendingCount.decrementAndGet();
+                }
+                size++;
+            }
+            if (size == 0) {
+                flushing = List.of();
+                return;
+            }
+            List<StoredMessage> rows = new ArrayList<>(batch);
+            try {
+                conversationJdbcRepository.insertMessages(rows);
+                if (!failedAttempts.isEmpty()) {
+                    rows.forEach(failedAttempts::remove);
+                }
+            } catch (Exception e) {
+                log.warn("Пачка из {} сообщений диалогов не записалась, пишу по одному: {}", rows.size(), e.getMessage());
+                if (!insertOneByOne(rows)) {
+                    return;
+                }
+            } finally {
+                flushing = List.of();
+            }
+            if (size < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Запись по одному после неудачной пачки. Если БД недоступна, остаток возвращается в очередь
+     * без учёта попыток; отвергнутое БД сообщение повторяется до maxInsertAttempts раз
+     * @return false, если БД недоступна и сбрасывать дальше нет смысла
+     */
+    private boolean insertOneByOne(List<StoredMessage> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            StoredMessage message = rows.get(i);
+            try {
+                conversationJdbcRepository.insertMessages(List.of(message));
+                failedAttempts.remove(message);
+            } catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+                // Порядок в очереди не важен: ключ (user_id, seq), повтор не дублирует
+                log.error("БД недоступна, {} сообщений диалогов запишем позже", rows.size() - i, e);
+                rows.subList(i, rows.size()).forEach(this::enqueue);
+                return false;
+            } catch (Exception e) {
+                int attempts = failedAttempts.merge(message, 1, Integer::sum);
+                if (attempts >= maxInsertAttempts) {
+                    failedAttempts.remove(message);
+                    log.error("Сообщение {} пользователя {} не записалось за {} попыток и отброшено (в памяти осталось)",
+                        message.seq(), message.userId(), attempts, e);
+                } else {
+                    log.warn("Сообщение {} пользователя {} не записалось (попытка {} из {}): {}",
+                        message.seq(), message.userId(), attempts, maxInsertAttempts, e.getMessage());
+                    enqueue(message);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void flushStates() {
+        if (states.isEmpty()) {
+            return;
+        }
+        Map<Long, ConversationState> snapshot = new HashMap<>(states);
+        try {
+            conversationJdbcRepository.upsertStates(new ArrayList<>(snapshot.values()));
+        } catch (Exception e) {
+            log.error("Не удалось записать состояние {} диалогов, повторим позже", snapshot.size(), e);
+            return;
+        }
+        // Изменённые за время записи состояния остаются до следующего раза
+        snapshot.forEach(states::remove);
+    }
+}
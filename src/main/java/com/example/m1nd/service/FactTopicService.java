@@ -13,13 +13,14 @@ import java.util.Optional;
 public class FactTopicService {
 
     private final FactTopicRepository factTopicRepository;
+    private final CatalogCache catalogCache;
 
     public List<FactTopic> findAll() {
-        return factTopicRepository.findAll();
+        return List.copyOf(catalogCache.snapshot().facts().values());
     }
 
     public Optional<FactTopic> findByCode(String code) {
-        return factTopicRepository.findByCode(code);
+        return code == null ? Optional.empty() : Optional.ofNullable(catalogCache.snapshot().facts().get(code));
     }
 
     public FactTopic createFromTitle(String title, Long createdByUserId) {
@@ -49,11 +50,14 @@ public class FactTopicService {
         topic.setTitle(title);
         topic.setPrompt(prompt);
 
-        return factTopicRepository.save(topic);
+        FactTopic saved = factTopicRepository.save(topic);
+        catalogCache.refresh();
+        return saved;
     }
 
     public void deleteById(Long id) {
         factTopicRepository.deleteById(id);
+        catalogCache.refresh();
     }
 }
 
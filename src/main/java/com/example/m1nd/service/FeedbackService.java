@@ -7,17 +7,35 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.m1nd.util.CsvWriter;
 import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FeedbackService {
     
+    /** Курсор первой страницы: позже любого реального опроса */
+    private static final LocalDateTime NEWEST_CURSOR = LocalDateTime.of(9999, 12, 31, 0, 0);
+    
     private final FeedbackRepository feedbackRepository;
+    private final EntityManager entityManager;
     
     @PostConstruct
     public void init() {
@@ -60,10 +78,60 @@ public class FeedbackService {
     }
     
     /**
-     * Получает опросы за последние N дней
+     * Keyset-страница опросов, новые первыми
+     * @param cursorAt  created_at граничного опроса; null — первая страница
+     * @param cursorId  id граничного опроса
+     * @param older     true — опросы старше курсора, false — новее
+     */
+    public FeedbackPage findPage(LocalDateTime cursorAt, Long cursorId, boolean older, int size) {
+        if (cursorAt == null || cursorId == null) {
+            List<Feedback> rows = feedbackRepository.findOlderThan(NEWEST_CURSOR, Long.MAX_VALUE, size + 1);
+            return new FeedbackPage(head(rows, size), false, rows.size() > size);
+        }
+        if (older) {
+            List<Feedback> rows = feedbackRepository.findOlderThan(cursorAt, cursorId, size + 1);
+            return new FeedbackPage(head(rows, size), true, rows.size() > size);
+        }
+        List<Feedback> rows = feedbackRepository.findNewerThan(cursorAt, cursorId, size + 1);
+        List<Feedback> page = new ArrayList<>(head(rows, size));
+        Collections.reverse(page);
+        return new FeedbackPage(page, rows.size() > size, true);
+    }
+    
+    /**
+     * Выгружает все опросы в CSV, сжатый gzip. Строки идут курсором БД и сразу отсоединяются
+     * от контекста персистентности, так что память не растёт с числом опросов
+     * @return число выгруженных опросов
+     */
+    @Transactional(readOnly = true)
+    public long exportCsvGz(Path target) throws IOException {
+        long rows = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                 new GZIPOutputStream(Files.newOutputStream(target)), StandardCharsets.UTF_8));
+             Stream<Feedback> feedbacks = feedbackRepository.streamAllNewestFirst()) {
+            CsvWriter csv = new CsvWriter(writer);
+            csv.row("id", "feedback_id", "created_at", "user_id", "username", "first_name",
+                "rating", "was_useful", "comment", "question");
+            Iterator<Feedback> iterator = feedbacks.iterator();
+            while (iterator.hasNext()) {
+                Feedback f = iterator.next();
+                csv.row(f.getId(), f.getFeedbackId(), f.getCreatedAt(), f.getUserId(), f.getUsername(),
+                    f.getFirstName(), f.getRating(), f.getWasUseful(), f.getComment(), f.getQuestion());
+                entityManager.detach(f);
+                rows++;
+            }
+        }
+        log.info("Выгружено {} опросов в {}", rows, target);
+        return rows;
+    }
+    
+    private static <T> List<T> head(List<T> list, int size) {
+        return list.size() > size ? list.subList(0, size) : list;
+    }
+    
+    /**
+     * Страница опросов и признаки наличия соседних страниц
      */
-    public List<Feedback> getRecentFeedbacks(int days) {
-        LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
-        return feedbackRepository.findByCreatedAtAfterOrderByCreatedAtDesc(cutoff);
+    public record FeedbackPage(List<Feedback> items, boolean hasNewer, boolean hasOlder) {
     }
 }
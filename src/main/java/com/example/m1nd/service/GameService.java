@@ -13,13 +13,14 @@ import java.util.Optional;
 public class GameService {
 
     private final GameRepository gameRepository;
+    private final CatalogCache catalogCache;
 
     public List<Game> findAll() {
-        return gameRepository.findAll();
+        return List.copyOf(catalogCache.snapshot().games().values());
     }
 
     public Optional<Game> findByCode(String code) {
-        return gameRepository.findByCode(code);
+        return code == null ? Optional.empty() : Optional.ofNullable(catalogCache.snapshot().games().get(code));
     }
 
     public Game createFromTitle(String title, Long createdByUserId) {
@@ -44,10 +45,13 @@ public class GameService {
         game.setTitle(title);
         game.setPrompt("Дай контент для игры на тему: «" + title + "». Кратко.");
 
-        return gameRepository.save(game);
+        Game saved = gameRepository.save(game);
+        catalogCache.refresh();
+        return saved;
     }
 
     public void deleteById(Long id) {
         gameRepository.deleteById(id);
+        catalogCache.refresh();
     }
 }
@@ -13,13 +13,14 @@ import java.util.Optional;
 public class IdeaTopicService {
 
     private final IdeaTopicRepository ideaTopicRepository;
+    private final CatalogCache catalogCache;
 
     public List<IdeaTopic> findAll() {
-        return ideaTopicRepository.findAll();
+        return List.copyOf(catalogCache.snapshot().ideas().values());
     }
 
     public Optional<IdeaTopic> findByCode(String code) {
-        return ideaTopicRepository.findByCode(code);
+        return code == null ? Optional.empty() : Optional.ofNullable(catalogCache.snapshot().ideas().get(code));
     }
 
     public IdeaTopic createFromTitle(String title, Long createdByUserId) {
@@ -47,10 +48,13 @@ public class IdeaTopicService {
         topic.setTitle(title);
         topic.setPrompt(prompt);
 
-        return ideaTopicRepository.save(topic);
+        IdeaTopic saved = ideaTopicRepository.save(topic);
+        catalogCache.refresh();
+        return saved;
     }
 
     public void deleteById(Long id) {
         ideaTopicRepository.deleteById(id);
+        catalogCache.refresh();
     }
 }
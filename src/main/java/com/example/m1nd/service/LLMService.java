@@ -1,5 +1,10 @@
 package com.example.m1nd.service;
 
+import com.example.m1nd.service.llm.LlmAdmissionService;
+import com.example.m1nd.service.llm.LlmLane;
+import com.example.m1nd.service.llm.LlmOverloadedException;
+import com.example.m1nd.service.llm.ModelRoute;
+import com.example.m1nd.service.llm.ModelTier;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,6 +15,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
@@ -24,10 +30,15 @@ import java.util.concurrent.TimeoutException;
 @RequiredArgsConstructor
 public class LLMService {
     
+    private static final String YANDEXGPT_PROVIDER = "yandexgpt";
+    private static final String GROQ_PROVIDER = "groq";
+    
     private final WebClient.Builder webClientBuilder;
     private final ConversationService conversationService;
     private final PromptService promptService;
     private final com.example.m1nd.service.tools.ToolService toolService;
+    private final LlmAdmissionService admissionService;
+    private final Scheduler blockingScheduler;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     @Value("${llm.api.provider}")
@@ -111,19 +122,116 @@ public class LLMService {
     @Value("${llm.api.yandexgpt.max-tokens:2000}")
     private Integer yandexgptMaxTokens;
     
+    /**
+     * Получает ответ на вопрос пользователя.
+     * Запрос проходит через контроль нагрузки: при перегрузке возвращается LlmOverloadedException.
+     */
     public Mono<String> getAnswer(String question, Long userId) {
-        // Промпт теперь в агенте, но инициализируем историю для совместимости
-        conversationService.initializeHistory(userId, "");
+        return getAnswer(question, userId, LlmLane.INTERACTIVE);
+    }
+    
+    /**
+     * Получает ответ в указанной полосе приоритета (меню, фоновые задачи и т.п.)
+     */
+    public Mono<String> getAnswer(String question, Long userId, LlmLane lane) {
+        return admissionService.admit(YANDEXGPT_PROVIDER, lane, userId, () -> requestAnswer(question, userId));
+    }
+    
+    /**
+     * Генерирует контент по маршруту роутера моделей.
+     * FAST — разовый запрос к быстрой модели (Groq) без истории диалога, STRONG — обычный запрос к агенту.
+     * Если быстрая модель не настроена или не ответила, запрос уходит в основную модель.
+     */
+    public Mono<String> generate(String prompt, Long userId, ModelRoute route, LlmLane lane) {
+        if (route.getTier() == ModelTier.FAST && groqApiKey != null && !groqApiKey.isEmpty()) {
+            return admissionService.admit(GROQ_PROVIDER, lane, userId, () -> requestFastCompletion(prompt, route.getMaxTokens(), false))
+                .onErrorResume(error -> !(error instanceof LlmOverloadedException), error -> {
+                    log.warn("Быстрая модель не ответила ({}), используем основную", error.getMessage());
+                    // Это тот же запрос пользователя: лимит пользователя второй раз не списываем
+                    return admissionService.admitRetry(YANDEXGPT_PROVIDER, lane, userId, () -> requestAnswer(prompt, userId));
+                });
+        }
+        return getAnswer(prompt, userId, lane);
+    }
+    
+    /**
+     * Фоновая генерация пачки контента в JSON (банк загадок и т.п.), без истории диалога.
+     * Быстрая модель вызывается в JSON-режиме; если она не настроена или не ответила — агент сводок,
+     * у которого формат держится только промптом
+     */
+    public Mono<String> generateJson(String prompt, int maxTokens) {
+        if (groqApiKey != null && !groqApiKey.isEmpty()) {
+            return admissionService.admit(GROQ_PROVIDER, LlmLane.BACKGROUND, null, () -> requestFastCompletion(prompt, maxTokens, true))
+                .onErrorResume(error -> !(error instanceof LlmOverloadedException), error -> {
+                    log.warn("Быстрая модель не сгенерировала пачку ({}), используем агента сводок", error.getMessage());
+                    return summarizeConversation(prompt);
+                });
+        }
+        return summarizeConversation(prompt);
+    }
+    
+    /**
+     * Разовый запрос к быстрой модели: без истории диалога и с жёстким лимитом токенов
+     * @param json требовать от модели JSON-объект (response_format json_object)
+     */
+    private Mono<String> requestFastCompletion(String prompt, int maxTokens, boolean json) {
+        WebClient webClient = webClientBuilder.build();
         
-        // Добавляем вопрос пользователя в историю
-        conversationService.addMessage(userId, "user", question);
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", groqModel);
+        requestBody.put("messages", List.of(
+            Map.of("role", "system", "content", "Отвечай на русском языке, кратко и строго в запрошенном формате."),
+            Map.of("role", "user", "content", prompt)
+        ));
+        requestBody.put("temperature", groqTemperature);
+        requestBody.put("max_tokens", maxTokens);
+        if (json) {
+            requestBody.put("response_format", Map.of("type", "json_object"));
+        }
         
-        // Получаем историю диалога
-        List<Map<String, String>> history = conversationService.getHistory(userId);
+        log.debug("Запрос к быстрой модели {} (max_tokens: {})", groqModel, maxTokens);
         
-        // ВРЕМЕННО: Используем только YandexGPT Agent (остальные провайдеры закомментированы)
-        log.info("Начинаем запрос к LLM для пользователя {}. Провайдер: YandexGPT Agent (временно единственный)", userId);
-        return sendRequestToYandexGPT(history, userId);
+        return webClient.post()
+            .uri(groqUrl)
+            .header("Authorization", "Bearer " + groqApiKey)
+            .header("Content-Type", "application/json")
+            .bodyValue(requestBody)
+            .retrieve()
+            .bodyToMono(String.class)
+            .timeout(Duration.ofSeconds(20))
+            .map(responseBody -> {
+                try {
+                    JsonNode content = objectMapper.readTree(responseBody).path("choices").path(0).path("message").path("content");
+                    if (content.isMissingNode() || content.asText().isBlank()) {
+                        log.error("Пустой ответ от быстрой модели: {}", responseBody);
+                        throw new RuntimeException("Пустой ответ от быстрой модели");
+                    }
+                    return content.asText().trim();
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException("Ошибка при обработке ответа быстрой модели", e);
+                }
+            });
+    }
+    
+    private Mono<String> requestAnswer(String question, Long userId) {
+        // Разрешение может выдаваться из doFinally чужого запроса на event loop, а холодный диалог
+        // читается из БД — поэтому с историей работаем на blockingScheduler
+        return Mono.fromCallable(() -> {
+                // Промпт теперь в агенте, но инициализируем историю для совместимости
+                conversationService.initializeHistory(userId, "");
+
+                // Добавляем вопрос пользователя в историю
+                conversationService.addMessage(userId, "user", question);
+
+                // Получаем историю диалога
+                return conversationService.getHistory(userId);
+            })
+            .subscribeOn(blockingScheduler)
+            .flatMap(history -> {
+                // ВРЕМЕННО: Используем только YandexGPT Agent (остальные провайдеры закомментированы)
+                log.info("Начинаем запрос к LLM для пользователя {}. Провайдер: YandexGPT Agent (временно единственный)", userId);
+                return sendRequestToYandexGPT(history, userId);
+            });
         
         /* ВРЕМЕННО ЗАКОММЕНТИРОВАНО - вернуть при необходимости
         // Сначала пробуем DeepSeek, если ошибка - fallback на Groq
@@ -146,7 +254,8 @@ public class LLMService {
      * Получает ответ с поддержкой Function Calling (цикл обработки tool_calls)
      */
     private Mono<String> getAnswerWithFunctionCalling(List<Map<String, String>> history, Long userId, String providerType) {
-        return getAnswerWithTools(history, userId, providerType, 0, 5); // максимум 5 итераций
+        // Снимок истории неизменяемый: сообщения tool_calls копятся в локальной копии запроса
+        return getAnswerWithTools(new ArrayList<>(history), userId, providerType, 0, 5); // максимум 5 итераций
     }
     
     /**
@@ -645,6 +754,8 @@ public class LLMService {
                     log.warn("Повторная попытка запроса к YandexGPT Responses API (попытка {})", 
                         retrySignal.totalRetries() + 1))
             )
+            // Ответ пишется в историю, а вытесненный за время запроса диалог загружается из БД
+            .publishOn(blockingScheduler)
             .flatMap(response -> {
                 try {
                     return parseYandexGPTResponsesAPIResponse(response, userId);
@@ -672,6 +783,17 @@ public class LLMService {
      * Принимает готовый текст с инструкцией и историей вопросов/ответов
      */
     public Mono<String> summarizeConversation(String summarizationPrompt) {
+        return admissionService.admit(YANDEXGPT_PROVIDER, LlmLane.BACKGROUND, null, () -> requestSummary(summarizationPrompt));
+    }
+
+    /**
+     * Занят ли провайдер свёрток живыми запросами — фоновые пачки в это время лучше придержать
+     */
+    public boolean isSummaryProviderBusy() {
+        return admissionService.isBusy(YANDEXGPT_PROVIDER);
+    }
+    
+    private Mono<String> requestSummary(String summarizationPrompt) {
         WebClient webClient = webClientBuilder.build();
         
         if (yandexgptApiKey == null || yandexgptApiKey.isEmpty()) {
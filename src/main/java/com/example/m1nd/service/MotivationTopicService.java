@@ -13,13 +13,14 @@ import java.util.Optional;
 public class MotivationTopicService {
 
     private final MotivationTopicRepository motivationTopicRepository;
+    private final CatalogCache catalogCache;
 
     public List<MotivationTopic> findAll() {
-        return motivationTopicRepository.findAll();
+        return List.copyOf(catalogCache.snapshot().motivations().values());
     }
 
     public Optional<MotivationTopic> findByCode(String code) {
-        return motivationTopicRepository.findByCode(code);
+        return code == null ? Optional.empty() : Optional.ofNullable(catalogCache.snapshot().motivations().get(code));
     }
 
     public MotivationTopic createFromTitle(String title, Long createdByUserId) {
@@ -46,10 +47,13 @@ public class MotivationTopicService {
         topic.setTitle(title);
         topic.setPrompt(prompt);
 
-        return motivationTopicRepository.save(topic);
+        MotivationTopic saved = motivationTopicRepository.save(topic);
+        catalogCache.refresh();
+        return saved;
     }
 
     public void deleteById(Long id) {
         motivationTopicRepository.deleteById(id);
+        catalogCache.refresh();
     }
 }
@@ -17,6 +17,7 @@ public class PaidServiceService {
     public static final String BUSINESS_ASK_EXPERT_CODE = "business_ask_expert";
 
     private final PaidServiceRepository paidServiceRepository;
+    private final CatalogCache catalogCache;
 
     public List<PaidService> findActiveServices() {
         return paidServiceRepository.findByActiveTrue();
@@ -24,27 +25,38 @@ public class PaidServiceService {
 
     /**
      * Возвращает цену услуги в минимальных единицах (XTR), создавая услугу с дефолтной ценой при отсутствии.
+     * Цена берётся из кэша справочников; в БД идём только если услуги ещё нет или цена не задана.
      */
     @Transactional
     public int getPriceUnitsOrDefault(String code, String titleFallback, String descFallback, String currency, int defaultPriceUnits) {
-        PaidService service = paidServiceRepository.findByCode(code)
-            .orElseGet(() -> {
-                PaidService s = new PaidService();
-                s.setCode(code);
-                s.setTitle(titleFallback);
-                s.setDescription(descFallback);
-                s.setCurrency(currency);
-                s.setPriceUnits(defaultPriceUnits);
-                s.setActive(true);
-                return paidServiceRepository.save(s);
-            });
+        PaidService cached = catalogCache.snapshot().paidServices().get(code);
+        if (cached != null && cached.getPriceUnits() != null && cached.getPriceUnits() > 0) {
+            return cached.getPriceUnits();
+        }
 
-        if (service.getPriceUnits() == null || service.getPriceUnits() <= 0) {
+        PaidService service = paidServiceRepository.findByCode(code).orElse(null);
+        boolean changed = false;
+        if (service == null) {
+            service = new PaidService();
+            service.setCode(code);
+            service.setTitle(titleFallback);
+            service.setDescription(descFallback);
+            service.setCurrency(currency);
+            service.setPriceUnits(defaultPriceUnits);
+            service.setActive(true);
+            service = paidServiceRepository.save(service);
+            changed = true;
+        } else if (service.getPriceUnits() == null || service.getPriceUnits() <= 0) {
             service.setPriceUnits(defaultPriceUnits);
             service.setCurrency(currency);
             service = paidServiceRepository.save(service);
+            changed = true;
         }
 
+        // Перечитываем справочники, только если что-то записали: иначе промах кэша — не повод грузить всё заново
+        if (changed) {
+            catalogCache.refreshAfterCommit();
+        }
         return service.getPriceUnits();
     }
 
@@ -68,7 +80,9 @@ public class PaidServiceService {
         service.setPriceUnits(units);
         service.setCurrency(currency);
 
-        return paidServiceRepository.save(service);
+        PaidService saved = paidServiceRepository.save(service);
+        catalogCache.refreshAfterCommit();
+        return saved;
     }
 }
 
@@ -0,0 +1,134 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.PartitionJdbcRepository;
+import com.example.m1nd.repository.PartitionJdbcRepository.Partition;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Обслуживание помесячных секций user_session_summaries и feedbacks:
+ * заранее создаёт секции на ближайшие месяцы, а секции старше срока хранения
+ * отсоединяет, выгружает в &lt;archive-dir&gt;/&lt;секция&gt;.csv.gz и удаляет.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PartitionMaintenanceService {
+
+    private final PartitionJdbcRepository partitionJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.partitions.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${app.partitions.summaries-retention-months:12}")
+    private int summariesRetentionMonths;
+
+    @Value("${app.partitions.feedbacks-retention-months:24}")
+    private int feedbacksRetentionMonths;
+
+    @Value("${app.partitions.archive-dir:./archive}")
+    private String archiveDir;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (enabled) {
+            ensureUpcomingPartitions();
+        }
+    }
+
+    @Scheduled(cron = "${app.partitions.cron:0 30 3 * * ?}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        ensureUpcomingPartitions();
+        retentionByTable().forEach(this::applyRetention);
+    }
+
+    private Map<String, Integer> retentionByTable() {
+        return Map.of("user_session_summaries", summariesRetentionMonths, "feedbacks", feedbacksRetentionMonths);
+    }
+
+    /**
+     * Секции на текущий и следующие месяцы: без них вставка с новой датой упадёт
+     */
+    private void ensureUpcomingPartitions() {
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        for (String table : retentionByTable().keySet()) {
+            try {
+                for (int i = 0; i <= monthsAhead; i++) {
+                    partitionJdbcRepository.ensureMonthlyPartition(table, month.plusMonths(i));
+                }
+            } catch (Exception e) {
+                log.error("Не удалось создать секции для {} на {} мес. вперёд", table, monthsAhead, e);
+            }
+        }
+    }
+
+    /**
+     * Секция месяца M уходит в архив, когда M раньше (текущий месяц − срок хранения).
+     * Отсоединённая, но не удалённая после сбоя секция подхватывается при следующем запуске
+     */
+    private void applyRetention(String table, int retentionMonths) {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        LocalDate keepFrom = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+        for (Partition partition : partitionJdbcRepository.findPartitions(table)) {
+            if (!partition.month().isBefore(keepFrom)) {
+                continue;
+            }
+            try {
+                archiveAndDrop(partition);
+            } catch (Exception e) {
+                log.error("Ошибка архивации секции {}, повторим при следующем запуске", partition.name(), e);
+            }
+        }
+    }
+
+    private void archiveAndDrop(Partition partition) throws IOException {
+        if (partition.attached()) {
+            partitionJdbcRepository.detach(partition);
+            log.info("Секция {} отсоединена от {}", partition.name(), partition.parent());
+        }
+
+        Path dir = Path.of(archiveDir);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(partition.name() + ".csv.gz");
+        Path temp = dir.resolve(partition.name() + ".csv.gz.part");
+
+        long rows;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+            Long exported = transactionTemplate.execute(status -> partitionJdbcRepository.exportCsv(partition, writer));
+            rows = exported != null ? exported : 0;
+        }
+        // Файл появляется под итоговым именем только целиком записанным
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        partitionJdbcRepository.drop(partition);
+        log.info("Секция {} выгружена в {} ({} строк) и удалена", partition.name(), target, rows);
+    }
+}
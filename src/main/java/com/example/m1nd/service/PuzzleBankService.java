@@ -0,0 +1,325 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.PuzzleBankJdbcRepository;
+import com.example.m1nd.repository.PuzzleBankJdbcRepository.BankItem;
+import com.example.m1nd.repository.PuzzleBankJdbcRepository.NewItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Банк загадок, задач, тестов и вопросов викторины. Вопросы генерируются заранее пачками
+ * (один запрос к модели — batch-size вопросов в JSON), проверяются, дедуплицируются по хешу
+ * нормализованного текста и складываются в puzzle_bank. Пользователю выдаётся случайный вопрос,
+ * которого он ещё не видел (битовая маска в puzzle_seen), — это чтение по ключу вместо запроса к LLM.
+ * <p>
+ * Категория пополняется в фоне: по расписанию, пока в ней меньше target-size вопросов, и сразу,
+ * когда у пользователя остаётся не больше min-unseen непросмотренных. Если банк пуст или недоступен,
+ * вызывающий код генерирует вопрос по-старому.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PuzzleBankService {
+
+    public enum Category {
+        RIDDLE, LOGIC, PERSONALITY, IQ, QUIZ;
+
+        boolean hasOptions() {
+            return this == IQ || this == QUIZ;
+        }
+    }
+
+    private static final int MAX_QUESTION_LENGTH = 1000;
+    private static final int MAX_SHORT_ANSWER_LENGTH = 100;
+    private static final int MAX_TEXT_LENGTH = 1500;
+    private static final int RECENT_QUESTIONS_IN_PROMPT = 20;
+
+    private final PuzzleBankJdbcRepository puzzleBankRepository;
+    private final LLMService llmService;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.puzzle-bank.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.puzzle-bank.batch-size:8}")
+    private int batchSize;
+
+    @Value("${app.puzzle-bank.max-tokens:1600}")
+    private int maxTokens;
+
+    @Value("${app.puzzle-bank.min-unseen:5}")
+    private int minUnseen;
+
+    @Value("${app.puzzle-bank.target-size:200}")
+    private int targetSize;
+
+    /** Не больше одного пополнения категории за раз: номера seq выдаются подряд */
+    private final Map<Category, AtomicBoolean> refilling = new ConcurrentHashMap<>();
+
+    /**
+     * Следующий непросмотренный пользователем вопрос категории; пусто, если таких нет
+     * (тогда пополнение уже запущено) или банк недоступен
+     */
+    public Mono<Optional<BankItem>> next(Long userId, Category category) {
+        return nextSet(userId, category, 1).map(items -> items.stream().findFirst());
+    }
+
+    /**
+     * До count разных непросмотренных вопросов за одно обращение к БД — набор на всю сессию
+     * (IQ-тест, викторина). Вопросов может оказаться меньше, в том числе ни одного
+     */
+    public Mono<List<BankItem>> nextSet(Long userId, Category category, int count) {
+        if (!enabled) {
+            return Mono.just(List.of());
+        }
+        return Mono.fromCallable(() -> transactionTemplate.execute(status -> takeUnseen(userId, category, count)))
+            .subscribeOn(blockingScheduler)
+            .onErrorResume(error -> {
+                log.warn("Банк загадок недоступен ({}), вопросы {} будут сгенерированы напрямую", error.getMessage(), category);
+                return Mono.just(List.of());
+            });
+    }
+
+    @Scheduled(fixedDelayString = "${app.puzzle-bank.refill-interval-ms:600000}", initialDelay = 60_000)
+    public void topUp() {
+        if (!enabled) {
+            return;
+        }
+        for (Category category : Category.values()) {
+            try {
+                if (puzzleBankRepository.nextSeq(category.name()) < targetSize) {
+                    requestRefill(category);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось проверить размер банка {}: {}", category, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Выбирает и отмечает непросмотренные вопросы. Вызывать в транзакции: строка puzzle_seen
+     * заблокирована до её конца, поэтому два одновременных запроса не выдадут один и тот же вопрос
+     */
+    List<BankItem> takeUnseen(long userId, Category category, int count) {
+        BitSet seen = BitSet.valueOf(puzzleBankRepository.lockSeen(userId, category.name()));
+        int size = puzzleBankRepository.nextSeq(category.name());
+        int unseen = size - seen.get(0, size).cardinality();
+        int taken = Math.min(count, unseen);
+        if (unseen - taken <= minUnseen) {
+            requestRefill(category);
+        }
+        if (taken == 0) {
+            return List.of();
+        }
+
+        // Случайные из непросмотренных: каждый раз k-й свободный бит
+        List<Integer> seqs = new ArrayList<>(taken);
+        for (int n = 0; n < taken; n++) {
+            int skip = ThreadLocalRandom.current().nextInt(unseen - n);
+            int seq = seen.nextClearBit(0);
+            for (int i = 0; i < skip; i++) {
+                seq = seen.nextClearBit(seq + 1);
+            }
+            seen.set(seq);
+            seqs.add(seq);
+        }
+        puzzleBankRepository.updateSeen(userId, category.name(), seen.toByteArray());
+        List<BankItem> items = new ArrayList<>(puzzleBankRepository.findAll(category.name(), seqs));
+        Collections.shuffle(items);
+        return items;
+    }
+
+    private void requestRefill(Category category) {
+        AtomicBoolean flag = refilling.computeIfAbsent(category, key -> new AtomicBoolean());
+        if (!flag.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.fromCallable(() -> puzzleBankRepository.findRecentQuestions(category.name(), RECENT_QUESTIONS_IN_PROMPT))
+            .subscribeOn(blockingScheduler)
+            .flatMap(recent -> llmService.generateJson(buildBatchPrompt(category, recent), maxTokens))
+            .publishOn(blockingScheduler)
+            .map(response -> store(category, parseBatch(category, response)))
+            .doFinally(signal -> flag.set(false))
+            .subscribe(
+                added -> log.info("Банк {} пополнен: +{} вопросов", category, added),
+                error -> log.warn("Не удалось пополнить банк {}: {}", category, error.getMessage()));
+    }
+
+    private String buildBatchPrompt(Category category, List<String> recent) {
+        String kind = switch (category) {
+            case RIDDLE -> "коротких загадок";
+            case LOGIC -> "логических задач";
+            case PERSONALITY -> "коротких вопросов теста личности";
+            case IQ -> "вопросов мини IQ-теста";
+            case QUIZ -> "вопросов викторины на общую эрудицию";
+        };
+        String rules = switch (category) {
+            case RIDDLE -> "Ответ — одно слово или короткая фраза.";
+            case LOGIC -> "У задачи однозначный короткий ответ: число, слово или короткая фраза.";
+            case PERSONALITY -> "В answer — «идеальный» или примерный ответ, в explanation — краткая интерпретация.";
+            case IQ, QUIZ -> "Ровно 4 варианта ответа, ровно один правильный; в answer — его буква.";
+        };
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Сгенерируй ").append(batchSize).append(" разных ").append(kind).append(" на русском языке.\n");
+        prompt.append(rules).append("\n");
+        prompt.append("Ответь СТРОГО JSON-объектом без текста до и после:\n");
+        if (category.hasOptions()) {
+            prompt.append("{\"items\": [{\"question\": \"...\", \"options\": [\"вариант a\", \"вариант b\", \"вариант c\", \"вариант d\"], "
+                + "\"answer\": \"a|b|c|d\", \"explanation\": \"...\"}]}\n");
+        } else {
+            prompt.append("{\"items\": [{\"question\": \"...\", \"answer\": \"...\", \"explanation\": \"...\"}]}\n");
+        }
+        if (!recent.isEmpty()) {
+            prompt.append("\nНе повторяй эти вопросы:\n");
+            for (String question : recent) {
+                prompt.append("- ").append(question.length() > 150 ? question.substring(0, 150) + "…" : question).append("\n");
+            }
+        }
+        return prompt.toString();
+    }
+
+    /**
+     * Разбирает ответ модели. Принимается и объект {"items": [...]}, и голый массив;
+     * невалидные элементы отбрасываются поштучно
+     */
+    List<NewItem> parseBatch(Category category, String response) {
+        JsonNode items = readItems(response);
+        List<NewItem> result = new ArrayList<>();
+        int rejected = 0;
+        for (JsonNode node : items) {
+            NewItem item = toItem(category, node);
+            if (item != null) {
+                result.add(item);
+            } else {
+                rejected++;
+            }
+        }
+        if (rejected > 0) {
+            log.debug("Банк {}: отброшено {} невалидных вопросов из {}", category, rejected, items.size());
+        }
+        return result;
+    }
+
+    JsonNode readItems(String response) {
+        int objectStart = response.indexOf('{');
+        int arrayStart = response.indexOf('[');
+        try {
+            if (arrayStart >= 0 && (objectStart < 0 || arrayStart < objectStart)) {
+                JsonNode array = objectMapper.readTree(response.substring(arrayStart, response.lastIndexOf(']') + 1));
+                if (array.isArray()) {
+                    return array;
+                }
+            } else if (objectStart >= 0) {
+                JsonNode items = objectMapper.readTree(response.substring(objectStart, response.lastIndexOf('}') + 1)).path("items");
+                if (items.isArray()) {
+                    return items;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("ответ модели не JSON: " + e.getMessage());
+        }
+        throw new IllegalStateException("в ответе модели нет списка вопросов");
+    }
+
+    NewItem toItem(Category category, JsonNode node) {
+        String question = node.path("question").asText("").trim();
+        String answer = node.path("answer").asText("").trim();
+        String explanation = node.path("explanation").asText("").trim();
+        if (question.length() < 10 || question.length() > MAX_QUESTION_LENGTH
+            || answer.isEmpty() || explanation.length() > MAX_TEXT_LENGTH) {
+            return null;
+        }
+
+        String options = null;
+        if (category.hasOptions()) {
+            options = formatOptions(node.path("options"));
+            String letter = answer.toLowerCase(Locale.ROOT).replaceAll("[^a-d]", "");
+            if (options == null || letter.length() != 1) {
+                return null;
+            }
+            answer = letter;
+        } else if (category != Category.PERSONALITY && answer.length() > MAX_SHORT_ANSWER_LENGTH) {
+            // Длинный ответ не сравнить с ответом пользователя
+            return null;
+        } else if (answer.length() > MAX_TEXT_LENGTH) {
+            return null;
+        }
+        return new NewItem(question, options, answer, explanation.isEmpty() ? null : explanation, hash(question));
+    }
+
+    /**
+     * Варианты в строку «a) ...; b) ...; c) ...; d) ...» — как их показывает меню
+     */
+    private static String formatOptions(JsonNode options) {
+        if (options.isArray() && options.size() == 4) {
+            List<String> parts = new ArrayList<>();
+            char letter = 'a';
+            for (JsonNode option : options) {
+                String text = option.asText("").trim().replaceFirst("^[a-dA-D]\\)\\s*", "");
+                if (text.isEmpty()) {
+                    return null;
+                }
+                parts.add(letter++ + ") " + text);
+            }
+            return String.join("; ", parts);
+        }
+        String text = options.asText("").trim();
+        return text.contains("a)") && text.contains("b)") && text.contains("c)") && text.contains("d)") ? text : null;
+    }
+
+    int store(Category category, List<NewItem> parsed) {
+        // Дубли внутри пачки и уже лежащие в банке
+        Map<String, NewItem> unique = new LinkedHashMap<>();
+        for (NewItem item : parsed) {
+            unique.putIfAbsent(item.questionHash(), item);
+        }
+        Set<String> existing = puzzleBankRepository.findExistingHashes(category.name(), unique.keySet());
+        existing.forEach(unique::remove);
+        if (unique.isEmpty()) {
+            return 0;
+        }
+        return puzzleBankRepository.insertAll(category.name(), new ArrayList<>(unique.values()));
+    }
+
+    /**
+     * Хеш вопроса без учёта регистра, пунктуации, пробелов и «ё»
+     */
+    static String hash(String question) {
+        String normalized = question.toLowerCase(Locale.ROOT)
+            .replace('ё', 'е')
+            .replaceAll("[^\\p{L}\\p{N}]+", "");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
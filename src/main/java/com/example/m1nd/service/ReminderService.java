@@ -1,25 +1,51 @@
 package com.example.m1nd.service;
 
-import com.example.m1nd.bot.M1ndTelegramBot;
-import com.example.m1nd.model.User;
+import com.example.m1nd.bot.TelegramBulkSender;
+import com.example.m1nd.repository.ReminderCampaignJdbcRepository;
+import com.example.m1nd.repository.ReminderCampaignJdbcRepository.ReminderCampaign;
+import com.example.m1nd.repository.ReminderCampaignJdbcRepository.ReminderRecipient;
+import com.example.m1nd.repository.UserActivityJdbcRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Кампания напоминаний неактивным пользователям.
+ * Получатели читаются страницами по keyset-курсору (last_activity_at, user_id), отправка
+ * растягивается на окно app.reminder.send-window-minutes со случайными интервалами и идёт
+ * параллельно через TelegramBulkSender (он держит общий лимит Telegram).
+ * После каждой страницы время напоминания и курсор сохраняются в одной транзакции,
+ * поэтому после падения кампания продолжается с места остановки.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ReminderService {
     
-    private final UserService userService;
-    private final M1ndTelegramBot telegramBot;
+    private final ReminderCampaignJdbcRepository campaignRepository;
+    private final UserActivityJdbcRepository userActivityJdbcRepository;
+    private final TelegramBulkSender bulkSender;
+    private final TransactionTemplate transactionTemplate;
     
     @Value("${app.reminder.inactive-days:5}")
     private int inactiveDays;
@@ -27,6 +53,32 @@ public class ReminderService {
     @Value("${app.reminder.enabled:true}")
     private boolean reminderEnabled;
     
+    @Value("${app.reminder.repeat-days:3}")
+    private int repeatDays;
+    
+    @Value("${app.reminder.send-window-minutes:480}")
+    private int sendWindowMinutes;
+    
+    @Value("${app.reminder.page-size:200}")
+    private int pageSize;
+    
+    @Value("${app.reminder.concurrency:8}")
+    private int concurrency;
+    
+    private final AtomicBoolean campaignRunning = new AtomicBoolean();
+    
+    private final ExecutorService campaignExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-campaign");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final ExecutorService sendExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     // Красивые сообщения для напоминаний
     private static final String[] REMINDER_MESSAGES = {
         "✨ Привет! Давно не виделись. У меня есть новые идеи и ответы, которые могут быть полезны. Задай вопрос, и я помогу!",
@@ -42,8 +94,7 @@ public class ReminderService {
     };
     
     /**
-     * Проверяет неактивных пользователей и отправляет напоминания
-     * Запускается каждый день в 10:00 по времени сервера
+     * Запускает кампанию напоминаний (каждый день в 10:00 по времени сервера)
      */
     @Scheduled(cron = "${app.reminder.cron:0 0 10 * * ?}")
     public void sendRemindersToInactiveUsers() {
@@ -51,85 +102,161 @@ public class ReminderService {
             log.debug("Напоминания отключены");
             return;
         }
+        startCampaign();
+    }
+    
+    /**
+     * Продолжает кампанию, прерванную остановкой или падением приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedCampaign() {
+        if (!reminderEnabled) {
+            return;
+        }
+        try {
+            if (campaignRepository.findRunning().isPresent()) {
+                log.info("Найдена незавершённая кампания напоминаний, продолжаю");
+                startCampaign();
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при проверке незавершённой кампании напоминаний", e);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        campaignExecutor.shutdownNow();
+        sendExecutor.shutdownNow();
+    }
+    
+    private void startCampaign() {
+        if (!campaignRunning.compareAndSet(false, true)) {
+            log.info("Кампания напоминаний уже выполняется");
+            return;
+        }
+        campaignExecutor.execute(() -> {
+            try {
+                runCampaign();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Кампания напоминаний прервана, продолжится после перезапуска");
+            } catch (Exception e) {
+                log.error("Ошибка при отправке напоминаний", e);
+            } finally {
+                campaignRunning.set(false);
+            }
+        });
+    }
+    
+    private void runCampaign() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        ReminderCampaign campaign = campaignRepository.findRunning().orElse(null);
+        if (campaign == null) {
+            campaign = campaignRepository.create(
+                now,
+                now.plusMinutes(sendWindowMinutes),
+                now.minus(inactiveDays, ChronoUnit.DAYS),
+                now.minus(repeatDays, ChronoUnit.DAYS));
+            log.info("Запущена кампания напоминаний #{}", campaign.id());
+        } else {
+            log.info("Продолжаю кампанию напоминаний #{} (отправлено {})", campaign.id(), campaign.sent());
+        }
         
-        log.info("Запуск проверки неактивных пользователей для отправки напоминаний");
+        long remaining = campaignRepository.countRemaining(campaign);
+        log.info("Кампания #{}: {} получателей, окно отправки до {}", campaign.id(), remaining, campaign.windowEndsAt());
         
-        try {
-            List<User> allUsers = userService.getAllUsers();
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime cutoffDate = now.minus(inactiveDays, ChronoUnit.DAYS);
-            
-            int remindersSent = 0;
-            
-            for (User user : allUsers) {
-                // Пропускаем пользователей без lastActivityAt
-                if (user.getLastActivityAt() == null) {
-                    continue;
-                }
-                
-                // Проверяем, что пользователь неактивен более N дней
-                if (user.getLastActivityAt().isBefore(cutoffDate)) {
-                    // Проверяем, что напоминание не отправлялось недавно (не чаще раза в 3 дня)
-                    LocalDateTime lastReminder = user.getLastReminderSentAt();
-                    if (lastReminder == null || 
-                        lastReminder.isBefore(now.minus(3, ChronoUnit.DAYS))) {
-                        
-                        // Отправляем напоминание
-                        if (sendReminder(user)) {
-                            // Обновляем дату последнего напоминания
-                            updateLastReminderSentAt(user, now);
-                            remindersSent++;
-                            
-                            // Небольшая задержка между отправками, чтобы не перегружать API
-                            try {
-                                Thread.sleep(1000); // 1 секунда между сообщениями
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                log.warn("Прервана отправка напоминаний");
-                                break;
-                            }
-                        }
-                    }
-                }
+        while (true) {
+            List<ReminderRecipient> page = campaignRepository.findPage(campaign, pageSize);
+            if (page.isEmpty()) {
+                break;
             }
             
-            log.info("Отправлено {} напоминаний неактивным пользователям", remindersSent);
+            PageResult result = sendPage(page, pacingRate(campaign, remaining));
+            remaining = Math.max(0, remaining - page.size());
             
-        } catch (Exception e) {
-            log.error("Ошибка при отправке напоминаний", e);
+            ReminderCampaign advanced = campaign.advance(page.get(page.size() - 1),
+                result.sent.get(), result.blocked.get(), result.failed.get());
+            List<Long> reminded = List.copyOf(result.reminded);
+            List<Long> blocked = List.copyOf(result.blockedUsers);
+            LocalDateTime sentAt = LocalDateTime.now();
+            transactionTemplate.executeWithoutResult(status -> {
+                campaignRepository.markReminded(reminded, sentAt);
+                userActivityJdbcRepository.markBotBlocked(blocked, sentAt);
+                campaignRepository.saveProgress(advanced);
+            });
+            campaign = advanced;
         }
+        
+        campaignRepository.finish(campaign.id(), LocalDateTime.now());
+        log.info("Кампания напоминаний #{} завершена: отправлено {}, бот заблокирован {}, ошибок {}",
+            campaign.id(), campaign.sent(), campaign.blocked(), campaign.failed());
     }
     
     /**
-     * Отправляет напоминание пользователю
+     * Темп, при котором оставшиеся получатели равномерно распределятся до конца окна.
+     * Окно истекло — отправляем с максимальной скоростью (её ограничивает TelegramBulkSender)
      */
-    private boolean sendReminder(User user) {
-        try {
-            Long userId = user.getUserId();
-            String firstName = user.getFirstName() != null ? user.getFirstName() : "друг";
-            
-            // Выбираем случайное сообщение
-            String message = getRandomReminderMessage(firstName);
-            
-            // Отправляем через бота
-            telegramBot.sendReminderMessage(userId, message);
-            
-            log.info("Напоминание отправлено пользователю {} (userId: {})", 
-                user.getUsername() != null ? user.getUsername() : firstName, userId);
-            
-            return true;
-        } catch (Exception e) {
-            log.error("Ошибка при отправке напоминания пользователю {}", user.getUserId(), e);
-            return false;
+    private double pacingRate(ReminderCampaign campaign, long remaining) {
+        long secondsLeft = Duration.between(LocalDateTime.now(), campaign.windowEndsAt()).getSeconds();
+        if (secondsLeft <= 0 || remaining == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (double) remaining / secondsLeft;
+    }
+    
+    private PageResult sendPage(List<ReminderRecipient> page, double ratePerSecond) throws InterruptedException {
+        PageResult result = new PageResult();
+        Semaphore inFlight = new Semaphore(concurrency);
+        
+        for (ReminderRecipient recipient : page) {
+            pause(ratePerSecond);
+            inFlight.acquire();
+            sendExecutor.execute(() -> {
+                try {
+                    result.record(recipient.userId(), bulkSender.send(buildMessage(recipient)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.failed.incrementAndGet();
+                } catch (Exception e) {
+                    log.error("Ошибка при отправке напоминания пользователю {}", recipient.userId(), e);
+                    result.failed.incrementAndGet();
+                } finally {
+                    inFlight.release();
+                }
+            });
         }
+        // Дожидаемся отправки всей страницы перед сохранением курсора
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        return result;
+    }
+    
+    /**
+     * Случайная пауза между отправками (экспоненциальное распределение со средним 1/rate),
+     * чтобы напоминания приходили в разное время, а не пачками
+     */
+    private void pause(double ratePerSecond) throws InterruptedException {
+        if (Double.isInfinite(ratePerSecond)) {
+            return;
+        }
+        double meanMs = 1000d / ratePerSecond;
+        double delayMs = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanMs;
+        TimeUnit.MILLISECONDS.sleep((long) Math.min(delayMs, meanMs * 5));
+    }
+    
+    private SendMessage buildMessage(ReminderRecipient recipient) {
+        String firstName = recipient.firstName() != null ? recipient.firstName() : "друг";
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(recipient.userId()));
+        message.setText(getRandomReminderMessage(firstName));
+        return message;
     }
     
     /**
      * Получает случайное сообщение для напоминания
      */
     private String getRandomReminderMessage(String firstName) {
-        Random random = new Random();
-        String baseMessage = REMINDER_MESSAGES[random.nextInt(REMINDER_MESSAGES.length)];
+        String baseMessage = REMINDER_MESSAGES[ThreadLocalRandom.current().nextInt(REMINDER_MESSAGES.length)];
         
         // Персонализируем сообщение, если есть имя
         if (firstName != null && !firstName.isEmpty()) {
@@ -140,17 +267,28 @@ public class ReminderService {
         return baseMessage;
     }
     
-    /**
-     * Обновляет дату последнего отправленного напоминания
-     */
-    private void updateLastReminderSentAt(User user, LocalDateTime now) {
-        try {
-            user.setLastReminderSentAt(now);
-            // Обновляем пользователя через UserService
-            userService.updateUser(user);
-            log.debug("Обновлена дата последнего напоминания для пользователя {}", user.getUserId());
-        } catch (Exception e) {
-            log.error("Ошибка при обновлении даты последнего напоминания", e);
+    private static final class PageResult {
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger blocked = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        /** Кому больше не напоминать в этом цикле: доставлено или бот заблокирован */
+        private final ConcurrentLinkedQueue<Long> reminded = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Long> blockedUsers = new ConcurrentLinkedQueue<>();
+        
+        void record(long userId, TelegramBulkSender.Delivery delivery) {
+            switch (delivery) {
+                case SENT -> {
+                    sent.incrementAndGet();
+                    reminded.add(userId);
+                    log.debug("Напоминание отправлено пользователю {}", userId);
+                }
+                case BLOCKED -> {
+                    blocked.incrementAndGet();
+                    reminded.add(userId);
+                    blockedUsers.add(userId);
+                }
+                case FAILED -> failed.incrementAndGet();
+            }
         }
     }
 }
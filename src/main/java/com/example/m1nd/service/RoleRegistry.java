@@ -0,0 +1,110 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.model.Admin;
+import com.example.m1nd.model.Assistant;
+import com.example.m1nd.repository.AdminRepository;
+import com.example.m1nd.repository.AssistantRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Роли пользователей в памяти: username администраторов и id активных ассистентов.
+ * Проверки на каждое сообщение не ходят в БД; списки перечитываются целиком после
+ * добавления или удаления роли (их единицы, так что это дешевле точечных обновлений).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoleRegistry {
+
+    private final AdminRepository adminRepository;
+    private final AssistantRepository assistantRepository;
+
+    /** Нормализованные username администраторов (без @, в нижнем регистре) */
+    private volatile Set<String> adminUsernames = Set.of();
+
+    private volatile Set<Long> assistantUserIds = Set.of();
+
+    @PostConstruct
+    public void init() {
+        reloadAdmins();
+        reloadAssistants();
+        if (adminUsernames.isEmpty()) {
+            log.warn("Список администраторов в БД пуст! Добавьте администраторов через команду /addadmin");
+        } else {
+            log.info("Загружено администраторов: {} ({})", adminUsernames.size(), adminUsernames);
+        }
+        log.info("Загружено активных ассистентов: {}", assistantUserIds.size());
+    }
+
+    public boolean isAdmin(String username) {
+        String normalized = normalizeUsername(username);
+        return normalized != null && adminUsernames.contains(normalized);
+    }
+
+    public boolean isAssistant(Long userId) {
+        return userId != null && assistantUserIds.contains(userId);
+    }
+
+    /**
+     * Перечитывает администраторов после коммита текущей транзакции (или сразу, если её нет)
+     */
+    public void refreshAdmins() {
+        runAfterCommit(this::reloadAdmins);
+    }
+
+    public void refreshAssistants() {
+        runAfterCommit(this::reloadAssistants);
+    }
+
+    /**
+     * Username без @ и в нижнем регистре: Telegram не различает регистр имён
+     */
+    public static String normalizeUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        String clean = username.startsWith("@") ? username.substring(1) : username;
+        return clean.isBlank() ? null : clean.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void reloadAdmins() {
+        adminUsernames = adminRepository.findAll().stream()
+            .map(Admin::getUsername)
+            .map(RoleRegistry::normalizeUsername)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toUnmodifiableSet());
+        log.debug("Кэш администраторов обновлён: {}", adminUsernames.size());
+    }
+
+    private void reloadAssistants() {
+        assistantUserIds = assistantRepository.findByActiveTrue().stream()
+            .map(Assistant::getTelegramUserId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toUnmodifiableSet());
+        log.debug("Кэш ассистентов обновлён: {}", assistantUserIds.size());
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    // Перечитываем и после отката: кэш должен совпадать с БД в любом случае
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
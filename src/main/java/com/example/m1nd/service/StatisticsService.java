@@ -1,136 +1,99 @@
 package com.example.m1nd.service;
 
 import com.example.m1nd.model.User;
+import com.example.m1nd.repository.UserRepository;
+import com.example.m1nd.service.analytics.ActivityFeature;
+import com.example.m1nd.service.analytics.ActivityRollupService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class StatisticsService {
     
-    private final UserService userService;
+    private final UserRepository userRepository;
+    private final ActivityRollupService activityRollupService;
+    
+    @Value("${app.statistics.cache-ttl-seconds:30}")
+    private long cacheTtlSeconds;
+    
+    /** Последний отформатированный отчёт /stats и момент его устаревания (System.nanoTime) */
+    private String cachedReport;
+    private long cachedReportExpiresAt;
     
     /**
-     * Общая статистика бота
+     * Общая статистика бота (агрегаты считаются в БД)
      */
     public Statistics getOverallStatistics() {
-        List<User> users = userService.getAllUsers();
-        
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime todayStart = now.toLocalDate().atStartOfDay();
         LocalDateTime weekStart = now.minus(7, ChronoUnit.DAYS);
         LocalDateTime monthStart = now.minus(30, ChronoUnit.DAYS);
         
-        long totalUsers = users.size();
-        long newUsersToday = users.stream()
-            .filter(u -> u.getRegisteredAt() != null && u.getRegisteredAt().isAfter(todayStart))
-            .count();
-        
-        long activeUsersToday = users.stream()
-            .filter(u -> u.getLastActivityAt() != null && u.getLastActivityAt().isAfter(todayStart))
-            .count();
-        
-        long activeUsersWeek = users.stream()
-            .filter(u -> u.getLastActivityAt() != null && u.getLastActivityAt().isAfter(weekStart))
-            .count();
-        
-        long activeUsersMonth = users.stream()
-            .filter(u -> u.getLastActivityAt() != null && u.getLastActivityAt().isAfter(monthStart))
-            .count();
-        
-        long returningUsers = users.stream()
-            .filter(u -> Boolean.TRUE.equals(u.getIsReturningUser()))
-            .count();
-        
-        int totalQuestions = users.stream()
-            .mapToInt(u -> u.getQuestionsCount() != null ? u.getQuestionsCount() : 0)
-            .sum();
-        
-        int totalMessages = users.stream()
-            .mapToInt(u -> u.getTotalMessages() != null ? u.getTotalMessages() : 0)
-            .sum();
-        
-        int totalSessions = users.stream()
-            .mapToInt(u -> u.getSessionsCount() != null ? u.getSessionsCount() : 0)
-            .sum();
+        UserRepository.UserStatisticsView view = userRepository.aggregateStatistics(todayStart, weekStart, monthStart);
         
         return Statistics.builder()
-            .totalUsers(totalUsers)
-            .newUsersToday(newUsersToday)
-            .activeUsersToday(activeUsersToday)
-            .activeUsersWeek(activeUsersWeek)
-            .activeUsersMonth(activeUsersMonth)
-            .returningUsers(returningUsers)
-            .totalQuestions(totalQuestions)
-            .totalMessages(totalMessages)
-            .totalSessions(totalSessions)
+            .totalUsers(view.getTotalUsers())
+            .newUsersToday(view.getNewUsersToday())
+            .activeUsersToday(view.getActiveUsersToday())
+            .activeUsersWeek(view.getActiveUsersWeek())
+            .activeUsersMonth(view.getActiveUsersMonth())
+            .returningUsers(view.getReturningUsers())
+            .totalQuestions(view.getTotalQuestions())
+            .totalMessages(view.getTotalMessages())
+            .totalSessions(view.getTotalSessions())
             .build();
     }
     
     /**
-     * Статистика по дням (последние N дней)
+     * Уникальные активные пользователи по дням (последние N дней), от старых к новым.
+     * Берётся из дневных скетчей, поэтому учитывается каждый день активности, а не только последний
      */
     public Map<String, Long> getDailyStatistics(int days) {
-        List<User> users = userService.getAllUsers();
-        LocalDateTime now = LocalDateTime.now();
-        
-        return java.util.stream.IntStream.range(0, days)
-            .boxed()
-            .collect(Collectors.toMap(
-                i -> now.minus(i, ChronoUnit.DAYS).toLocalDate().toString(),
-                i -> {
-                    LocalDateTime dayStart = now.minus(i, ChronoUnit.DAYS).toLocalDate().atStartOfDay();
-                    LocalDateTime dayEnd = dayStart.plus(1, ChronoUnit.DAYS);
-                    
-                    return users.stream()
-                        .filter(u -> u.getLastActivityAt() != null 
-                            && u.getLastActivityAt().isAfter(dayStart)
-                            && u.getLastActivityAt().isBefore(dayEnd))
-                        .count();
-                }
-            ));
+        return activityRollupService.dailyUniqueUsers(ActivityFeature.ANY, days);
     }
     
     /**
      * Топ пользователей по активности
      */
     public List<User> getTopActiveUsers(int limit) {
-        return userService.getAllUsers().stream()
-            .sorted((u1, u2) -> {
-                int messages1 = u1.getTotalMessages() != null ? u1.getTotalMessages() : 0;
-                int messages2 = u2.getTotalMessages() != null ? u2.getTotalMessages() : 0;
-                return Integer.compare(messages2, messages1);
-            })
-            .limit(limit)
-            .collect(Collectors.toList());
+        return userRepository.findAllByOrderByTotalMessagesDesc(PageRequest.of(0, limit));
     }
     
     /**
      * Топ пользователей по количеству вопросов
      */
     public List<User> getTopUsersByQuestions(int limit) {
-        return userService.getAllUsers().stream()
-            .sorted((u1, u2) -> {
-                int q1 = u1.getQuestionsCount() != null ? u1.getQuestionsCount() : 0;
-                int q2 = u2.getQuestionsCount() != null ? u2.getQuestionsCount() : 0;
-                return Integer.compare(q2, q1);
-            })
-            .limit(limit)
-            .collect(Collectors.toList());
+        return userRepository.findAllByOrderByQuestionsCountDesc(PageRequest.of(0, limit));
+    }
+    
+    /**
+     * Отчёт для /stats. Кэшируется на app.statistics.cache-ttl-seconds,
+     * чтобы повторные команды админов не гоняли агрегаты по всей таблице
+     */
+    public synchronized String formatStatistics() {
+        long now = System.nanoTime();
+        if (cachedReport == null || now - cachedReportExpiresAt >= 0) {
+            cachedReport = buildStatisticsReport();
+            cachedReportExpiresAt = now + TimeUnit.SECONDS.toNanos(cacheTtlSeconds);
+        }
+        return cachedReport;
     }
     
     /**
      * Форматирует статистику для вывода
      */
-    public String formatStatistics() {
+    private String buildStatisticsReport() {
         Statistics stats = getOverallStatistics();
         
         StringBuilder sb = new StringBuilder();
@@ -156,6 +119,12 @@ public class StatisticsService {
             sb.append("  • Вопросов на пользователя: ").append(String.format("%.2f", avgQuestionsPerUser)).append("\n");
         }
         
+        try {
+            sb.append("\n").append(activityRollupService.formatReport());
+        } catch (Exception e) {
+            log.error("Ошибка при расчёте сводной активности", e);
+        }
+        
         return sb.toString();
     }
     
@@ -171,8 +140,8 @@ public class StatisticsService {
         private long activeUsersWeek;
         private long activeUsersMonth;
         private long returningUsers;
-        private int totalQuestions;
-        private int totalMessages;
-        private int totalSessions;
+        private long totalQuestions;
+        private long totalMessages;
+        private long totalSessions;
     }
 }
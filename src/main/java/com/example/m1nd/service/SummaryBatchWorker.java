@@ -0,0 +1,247 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.model.UserSessionSummary;
+import com.example.m1nd.repository.UserSessionSummaryJdbcRepository;
+import com.example.m1nd.service.SummaryService.SessionTranscript;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Фоновая пакетная свёртка сессий в сводки.
+ * <p>
+ * Завершённые сессии (снимок истории) ставятся в очередь; раз в flush-interval воркер упаковывает
+ * до batch-size сессий разных пользователей в один запрос к LLM с ответом в виде JSON-массива,
+ * разбирает его и проверяет каждую сессию отдельно. Невалидные сессии возвращаются в очередь,
+ * последняя попытка идёт отдельным запросом. Готовые сводки пишутся одним батчем.
+ * <p>
+ * Пока провайдер занят живыми запросами, пачки придерживаются — кроме сессий, ждущих дольше max-delay.
+ * Очередь хранится в памяти: как и прежние таймеры, она не переживает рестарт.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SummaryBatchWorker {
+
+    private static final int MAX_FIELD_LENGTH = 2000;
+
+    private final SummaryService summaryService;
+    private final LLMService llmService;
+    private final UserSessionSummaryJdbcRepository summaryJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final Scheduler blockingScheduler;
+
+    @Value("${app.summary.batch.size:8}")
+    private int batchSize;
+
+    @Value("${app.summary.batch.max-prompt-chars:24000}")
+    private int maxPromptChars;
+
+    @Value("${app.summary.batch.max-in-flight:2}")
+    private int maxInFlight;
+
+    @Value("${app.summary.batch.max-delay-minutes:30}")
+    private long maxDelayMinutes;
+
+    @Value("${app.summary.batch.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.summary.batch.max-queued:2000}")
+    private int maxQueued;
+
+    /** Сессии по пользователю в порядке постановки; повторная постановка заменяет снимок */
+    private final Map<Long, PendingSession> pending = new LinkedHashMap<>();
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(Math.max(1, maxInFlight));
+    }
+
+    /**
+     * Снимает текущую сессию пользователя и ставит её в очередь на свёртку
+     */
+    public void enqueue(Long userId, String username) {
+        summaryService.captureSession(userId, username).ifPresentOrElse(session -> {
+            synchronized (pending) {
+                PendingSession previous = pending.remove(userId);
+                if (previous == null && pending.size() >= maxQueued) {
+                    log.warn("Очередь свёрток переполнена ({}), сессия пользователя {} пропущена", maxQueued, userId);
+                    return;
+                }
+                long queuedAt = previous != null ? previous.queuedAt() : System.nanoTime();
+                pending.put(userId, new PendingSession(session, queuedAt, 0));
+            }
+            log.debug("Сессия пользователя {} поставлена в очередь свёртки", userId);
+        }, () -> log.info("Нет новых пар вопрос-ответ для сводки пользователя {}", userId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.summary.batch.flush-interval-ms:30000}")
+    public void flush() {
+        while (inFlight.tryAcquire()) {
+            List<PendingSession> batch = takeBatch(llmService.isSummaryProviderBusy());
+            if (batch.isEmpty()) {
+                inFlight.release();
+                return;
+            }
+            summarize(batch);
+        }
+    }
+
+    public int queued() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Берёт из головы очереди пачку в пределах batch-size и бюджета промпта.
+     * Сессия на последней попытке уходит одна. При занятом провайдере — только просроченные
+     */
+    private List<PendingSession> takeBatch(boolean providerBusy) {
+        long overdueBefore = System.nanoTime() - Duration.ofMinutes(maxDelayMinutes).toNanos();
+        List<PendingSession> batch = new ArrayList<>();
+        int promptChars = 0;
+        synchronized (pending) {
+            Iterator<PendingSession> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < batchSize) {
+                PendingSession next = it.next();
+                if (providerBusy && next.queuedAt() - overdueBefore > 0) {
+                    break;
+                }
+                boolean alone = next.attempts() >= maxAttempts - 1;
+                int chars = estimateChars(next.session());
+                if (!batch.isEmpty() && (alone || promptChars + chars > maxPromptChars)) {
+                    break;
+                }
+                it.remove();
+                batch.add(next);
+                promptChars += chars;
+                if (alone) {
+                    break;
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void summarize(List<PendingSession> batch) {
+        List<SessionTranscript> sessions = batch.stream().map(PendingSession::session).toList();
+        String prompt = summaryService.buildBatchSummarizationPrompt(sessions);
+        log.info("Свёртка пачки из {} сессий", batch.size());
+
+        llmService.summarizeConversation(prompt)
+            .publishOn(blockingScheduler)
+            .map(response -> {
+                Map<Integer, UserSessionSummary> parsed = parseBatchResponse(response, sessions);
+                List<UserSessionSummary> summaries = new ArrayList<>(parsed.values());
+                summaryJdbcRepository.insertAll(summaries);
+                for (int i = 0; i < batch.size(); i++) {
+                    UserSessionSummary saved = parsed.get(i + 1);
+                    if (saved != null) {
+                        summaryService.advanceWatermark(sessions.get(i), saved.getSummaryQuestion(), saved.getSummaryAnswer());
+                    }
+                }
+                List<PendingSession> failed = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!parsed.containsKey(i + 1)) {
+                        failed.add(batch.get(i));
+                    }
+                }
+                retry(failed, "невалидная сводка в ответе");
+                return summaries.size();
+            })
+            .onErrorResume(error -> {
+                log.error("Ошибка свёртки пачки из {} сессий", batch.size(), error);
+                retry(batch, error.getMessage());
+                return Mono.just(0);
+            })
+            .doFinally(signal -> inFlight.release())
+            .subscribe(saved -> log.info("Сохранено сводок: {} из {}", saved, batch.size()));
+    }
+
+    /**
+     * Разбирает JSON-массив ответа. Сессия принимается, только если её номер встречается один раз
+     * и вопрос с ответом непустые и разумной длины
+     * @return сводки по номеру сессии (с 1)
+     */
+    private Map<Integer, UserSessionSummary> parseBatchResponse(String response, List<SessionTranscript> sessions) {
+        Map<Integer, UserSessionSummary> result = new HashMap<>();
+        int start = response.indexOf('[');
+        int end = response.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            log.warn("В ответе свёртки нет JSON-массива: {}", response);
+            return result;
+        }
+        JsonNode items;
+        try {
+            items = objectMapper.readTree(response.substring(start, end + 1));
+        } catch (Exception e) {
+            log.warn("Не удалось разобрать JSON свёртки: {}", e.getMessage());
+            return result;
+        }
+
+        Map<Integer, Integer> seen = new HashMap<>();
+        for (JsonNode item : items) {
+            int number = item.path("session").asInt(-1);
+            seen.merge(number, 1, Integer::sum);
+        }
+        for (JsonNode item : items) {
+            int number = item.path("session").asInt(-1);
+            String question = item.path("question").asText("").trim();
+            String answer = item.path("answer").asText("").trim();
+            if (number < 1 || number > sessions.size() || seen.get(number) > 1
+                    || question.isEmpty() || answer.isEmpty()
+                    || question.length() > MAX_FIELD_LENGTH || answer.length() > MAX_FIELD_LENGTH) {
+                continue;
+            }
+            result.put(number, summaryService.toSummary(sessions.get(number - 1), question, answer));
+        }
+        return result;
+    }
+
+    private void retry(List<PendingSession> failed, String reason) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            for (PendingSession session : failed) {
+                Long userId = session.session().userId();
+                if (session.attempts() + 1 >= maxAttempts) {
+                    log.error("Сводка пользователя {} не создана за {} попыток: {}", userId, maxAttempts, reason);
+                } else if (!pending.containsKey(userId)) {
+                    // Более свежая сессия того же пользователя заменяет неудавшуюся
+                    pending.put(userId, new PendingSession(session.session(), session.queuedAt(), session.attempts() + 1));
+                }
+            }
+        }
+    }
+
+    private static int estimateChars(SessionTranscript session) {
+        int chars = 0;
+        for (SummaryService.QuestionAnswerPair pair : session.pairs()) {
+            chars += pair.question().length() + pair.answer().length() + 32;
+        }
+        return chars;
+    }
+
+    private record PendingSession(SessionTranscript session, long queuedAt, int attempts) {
+    }
+}
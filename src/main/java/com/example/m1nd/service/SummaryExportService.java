@@ -0,0 +1,319 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.bot.TelegramBulkSender;
+import com.example.m1nd.repository.ExportJobJdbcRepository;
+import com.example.m1nd.repository.ExportJobJdbcRepository.ExportJob;
+import com.example.m1nd.repository.ExportJobJdbcRepository.ExportStatus;
+import com.example.m1nd.repository.ExportJobJdbcRepository.SummaryExportRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка сводок сессий за период в NDJSON (gzip) с отправкой администратору документом.
+ * Данные читаются порциями по keyset-курсору (created_at, id); после каждой порции файл
+ * дописывается отдельным gzip-блоком, сбрасывается на диск, и в export_jobs сохраняется курсор
+ * с длиной файла. После сбоя или рестарта хвост обрезается до контрольной точки и выгрузка
+ * продолжается с того же места. Склеенные gzip-блоки читаются gunzip/zcat как один файл.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SummaryExportService {
+
+    public static final String RESUME_CALLBACK_PREFIX = "export_resume:";
+
+    private static final String KIND_SUMMARIES = "SUMMARIES";
+    /** Лимит Telegram на документ от бота — 50 МБ */
+    private static final long MAX_DOCUMENT_BYTES = 50L * 1024 * 1024;
+
+    private final ExportJobJdbcRepository exportJobRepository;
+    private final TelegramBulkSender bulkSender;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.export.dir:./exports}")
+    private String exportDir;
+
+    @Value("${app.export.chunk-rows:20000}")
+    private int chunkRows;
+
+    private final Set<Long> active = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "summary-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Запускает выгрузку сводок за [dateFrom, dateTo] (обе даты включительно)
+     * @return номер задания
+     */
+    public long startSummaryExport(LocalDate dateFrom, LocalDate dateTo, long adminChatId) throws IOException {
+        Path dir = Path.of(exportDir);
+        Files.createDirectories(dir);
+        ExportJob job = exportJobRepository.create(KIND_SUMMARIES, dateFrom, dateTo.plusDays(1), adminChatId,
+            dir.resolve("summaries-%d.ndjson.gz").toString());
+        log.info("Запущена выгрузка сводок #{} за {} — {}", job.id(), dateFrom, dateTo);
+        submit(job);
+        return job.id();
+    }
+
+    /**
+     * Продолжает упавшую выгрузку с последней контрольной точки
+     */
+    public boolean resume(long jobId) {
+        if (!exportJobRepository.updateStatus(jobId, ExportStatus.FAILED, ExportStatus.RUNNING, null)) {
+            return false;
+        }
+        exportJobRepository.findById(jobId).ifPresent(this::submit);
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRunning() {
+        try {
+            for (ExportJob job : exportJobRepository.findRunning()) {
+                log.info("Продолжаю выгрузку #{} с {} строк", job.id(), job.rowsWritten());
+                submit(job);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при возобновлении выгрузок", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Задание остаётся RUNNING и продолжится после рестарта
+        worker.shutdownNow();
+    }
+
+    private void submit(ExportJob job) {
+        if (active.add(job.id())) {
+            worker.execute(() -> {
+                try {
+                    run(job);
+                } finally {
+                    active.remove(job.id());
+                }
+            });
+        }
+    }
+
+    private void run(ExportJob initial) {
+        ExportJob job = initial;
+        try {
+            Path file = Path.of(job.filePath());
+            job = rewindToCheckpoint(job, file);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                ExportJob next = writeChunk(job, file);
+                long written = next.rowsWritten() - job.rowsWritten();
+                job = next;
+                if (written < chunkRows) {
+                    break;
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            deliver(job, file);
+            exportJobRepository.updateStatus(job.id(), ExportStatus.RUNNING, ExportStatus.DONE, null);
+            log.info("Выгрузка #{} завершена: {} строк", job.id(), job.rowsWritten());
+        } catch (Exception e) {
+            log.error("Ошибка выгрузки #{}", job.id(), e);
+            exportJobRepository.updateStatus(job.id(), ExportStatus.RUNNING, ExportStatus.FAILED, e.getMessage());
+            notifyFailure(job, e);
+        }
+    }
+
+    /**
+     * Обрезает недописанный после контрольной точки хвост; если файла нет — начинает заново
+     */
+    private ExportJob rewindToCheckpoint(ExportJob job, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            if (job.fileBytes() > 0) {
+                log.warn("Файл выгрузки #{} пропал, начинаю сначала", job.id());
+            }
+            return job.fileBytes() > 0 ? job.restart() : job;
+        }
+        if (Files.size(file) > job.fileBytes()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(job.fileBytes());
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Одна порция: отдельный gzip-блок в конце файла, fsync, затем контрольная точка в БД
+     */
+    private ExportJob writeChunk(ExportJob job, Path file) throws IOException {
+        SummaryExportRow[] last = new SummaryExportRow[1];
+        long[] rows = {0};
+        long bytes;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             GzipChunk chunk = new GzipChunk(channel, job.fileBytes())) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> exportJobRepository.streamSummaries(
+                    job.dateFrom(), job.dateTo(), job.cursorCreatedAt(), job.cursorId(), chunkRows, row -> {
+                        try {
+                            chunk.writeLine(objectMapper.writeValueAsString(row));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        last[0] = row;
+                        rows[0]++;
+                    }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (rows[0] == 0) {
+                return job;
+            }
+            chunk.finish();
+            channel.force(false);
+            bytes = channel.size();
+        }
+
+        ExportJob next = job.advance(last[0].createdAt(), last[0].id(), rows[0], bytes);
+        exportJobRepository.checkpoint(next);
+        return next;
+    }
+
+    private void deliver(ExportJob job, Path file) throws IOException, TelegramApiException {
+        String period = job.dateFrom() + " — " + job.dateTo().minusDays(1);
+        if (job.rowsWritten() == 0) {
+            Files.deleteIfExists(file);
+            bulkSender.execute(new SendMessage(String.valueOf(job.adminChatId()),
+                "📦 Выгрузка #" + job.id() + ": за " + period + " сводок нет."));
+            return;
+        }
+        if (Files.size(file) > MAX_DOCUMENT_BYTES) {
+            bulkSender.execute(new SendMessage(String.valueOf(job.adminChatId()),
+                "📦 Выгрузка #" + job.id() + " готова (" + job.rowsWritten() + " сводок), но больше 50 МБ " +
+                "и не пролезает в Telegram. Файл на сервере: " + file.toAbsolutePath()));
+            return;
+        }
+        SendDocument document = new SendDocument(String.valueOf(job.adminChatId()),
+            new InputFile(file.toFile(), "summaries-" + job.dateFrom() + "-" + job.dateTo().minusDays(1) + ".ndjson.gz"));
+        document.setCaption("📦 Сводки сессий за " + period + ": " + job.rowsWritten());
+        bulkSender.execute(document);
+        Files.deleteIfExists(file);
+    }
+
+    private void notifyFailure(ExportJob job, Exception error) {
+        InlineKeyboardButton resumeButton = new InlineKeyboardButton();
+        resumeButton.setText("🔁 Продолжить выгрузку");
+        resumeButton.setCallbackData(RESUME_CALLBACK_PREFIX + job.id());
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(List.of(List.of(resumeButton)));
+
+        SendMessage message = new SendMessage(String.valueOf(job.adminChatId()),
+            "❌ Выгрузка #" + job.id() + " прервалась на " + job.rowsWritten() + " строках: " + error.getMessage() +
+            "\n\nМожно продолжить с последней контрольной точки.");
+        message.setReplyMarkup(markup);
+        try {
+            bulkSender.execute(message);
+        } catch (TelegramApiException e) {
+            log.error("Не удалось сообщить об ошибке выгрузки #{}", job.id(), e);
+        }
+    }
+
+    /**
+     * gzip-блок порции. Поток открывается на первой строке, поэтому пустая порция (например, когда
+     * строк ровно N × chunk-rows) не оставляет в файле заголовок без окончания. Недописанный блок
+     * при закрытии обрезается до контрольной точки, Deflater освобождается в обоих случаях
+     */
+    private static final class GzipChunk implements Closeable {
+
+        private final FileChannel channel;
+        private final long checkpointBytes;
+        private ChunkGzipStream gzip;
+        private Writer writer;
+        private boolean finished;
+
+        private GzipChunk(FileChannel channel, long checkpointBytes) {
+            this.channel = channel;
+            this.checkpointBytes = checkpointBytes;
+        }
+
+        private void writeLine(String line) throws IOException {
+            if (writer == null) {
+                gzip = new ChunkGzipStream(Channels.newOutputStream(channel));
+                writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            }
+            writer.write(line);
+            writer.write('\n');
+        }
+
+        private void finish() throws IOException {
+            writer.flush();
+            gzip.finish();
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (gzip == null) {
+                return;
+            }
+            if (finished) {
+                gzip.close();
+            } else {
+                gzip.discard();
+                channel.truncate(checkpointBytes);
+            }
+        }
+    }
+
+    private static final class ChunkGzipStream extends GZIPOutputStream {
+
+        private ChunkGzipStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+        }
+
+        /**
+         * Освобождает Deflater, не дописывая блок
+         */
+        private void discard() {
+            def.end();
+        }
+    }
+}
@@ -4,15 +4,19 @@ import com.example.m1nd.model.UserSessionSummary;
 import com.example.m1nd.repository.UserSessionSummaryRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,45 +28,41 @@ public class SummaryService {
     private final ConversationService conversationService;
     private final LLMService llmService;
     private final UserSessionSummaryRepository summaryRepository;
+    private final Scheduler blockingScheduler;
+    
+    @Value("${app.summary.watermark-cache-size:10000}")
+    private int watermarkCacheSize;
+    
+    /**
+     * LRU-кэш водяных знаков. Вытеснять можно без потерь: знак восстанавливается из conversation_state
+     * и последней сохранённой сводки (сводка сохраняется раньше, чем сдвигается знак)
+     */
+    private final Map<Long, Watermark> watermarks = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Watermark> eldest) {
+            return size() > watermarkCacheSize;
+        }
+    };
     
     /**
-     * Создаёт сводку диалога пользователя и сохраняет в БД
-     *
+     * Создаёт сводку диалога пользователя и сохраняет в БД.
+     * Сводка инкрементальная: предыдущая сводка плюс только новые пары после водяного знака
      */
     @Transactional
     public Mono<String> createAndSaveSummary(Long userId, String username) {
         log.info("Начинаем создание сводки для пользователя {}", userId);
         
-        // Получаем историю диалога
-        List<Map<String, String>> history = conversationService.getHistory(userId);
-        
-        if (history == null || history.isEmpty()) {
-            log.warn("История диалога пуста для пользователя {}", userId);
-            return Mono.just("История диалога пуста. Нет данных для сводки.");
-        }
-        
-        // Извлекаем пары вопрос-ответ
-        List<QuestionAnswerPair> qaPairs = extractQuestionAnswerPairs(history);
-        
-        if (qaPairs.isEmpty()) {
-            log.warn("Не найдено пар вопрос-ответ для пользователя {}", userId);
-            return Mono.just("Не найдено вопросов и ответов для сводки.");
-        }
-        
-        // Ограничиваем количество пар (чтобы не переполнить контекст)
-        final List<QuestionAnswerPair> finalQaPairs;
-        if (qaPairs.size() > 20) {
-            finalQaPairs = qaPairs.subList(qaPairs.size() - 20, qaPairs.size());
-            log.info("Ограничили историю до последних 20 пар вопрос-ответ");
-        } else {
-            finalQaPairs = qaPairs;
+        Optional<SessionTranscript> captured = captureSession(userId, username);
+        if (captured.isEmpty()) {
+            log.warn("Нет новых пар вопрос-ответ для пользователя {}", userId);
+            return Mono.just("Нет новых вопросов и ответов с прошлой сводки.");
         }
-        
-        // Формируем промпт для свёртки
-        String summarizationPrompt = buildSummarizationPrompt(finalQaPairs);
+        SessionTranscript session = captured.get();
         
         // Отправляем в YandexGPT для свёртки
-        return llmService.summarizeConversation(summarizationPrompt)
+        return llmService.summarizeConversation(buildSummarizationPrompt(session))
+            // Сохранение в БД — блокирующая операция, выполняем её вне event loop
+            .publishOn(blockingScheduler)
             .flatMap(summaryText -> {
                 try {
                     // Парсим ответ: ищем "Вопрос:" и "Ответ:"
@@ -73,21 +73,8 @@ public class SummaryService {
                         return Mono.just("Ошибка: не удалось извлечь сводку из ответа агента.");
                     }
                     
-                    // Определяем временные границы сессии
-                    LocalDateTime sessionStart = finalQaPairs.get(0).timestamp;
-                    LocalDateTime sessionEnd = finalQaPairs.get(finalQaPairs.size() - 1).timestamp;
-                    
-                    // Сохраняем в БД
-                    UserSessionSummary summary = new UserSessionSummary();
-                    summary.setUserId(userId);
-                    summary.setUsername(username);
-                    summary.setSummaryQuestion(result.question);
-                    summary.setSummaryAnswer(result.answer);
-                    summary.setSessionStartAt(sessionStart);
-                    summary.setSessionEndAt(sessionEnd);
-                    summary.setCreatedAt(LocalDateTime.now());
-                    
-                    summaryRepository.save(summary);
+                    summaryRepository.save(toSummary(session, result.question, result.answer));
+                    advanceWatermark(session, result.question, result.answer);
                     
                     log.info("Сводка сохранена для пользователя {}: вопрос='{}', ответ='{}'", 
                         userId, result.question, result.answer);
@@ -105,24 +92,120 @@ public class SummaryService {
     }
     
     /**
-     * Извлекает пары вопрос-ответ из истории диалога
+     * Снимок для сводки: предыдущая сводка пользователя и пары вопрос-ответ, появившиеся после неё
+     * (не больше 20 последних). Снимается сразу, поэтому очередь не зависит от того, что станет
+     * с историей дальше. Пустой, если новых пар нет
+     */
+    public Optional<SessionTranscript> captureSession(Long userId, String username) {
+        Watermark watermark = watermarkOf(userId);
+        List<QuestionAnswerPair> qaPairs = extractQuestionAnswerPairs(
+            conversationService.getMessagesSince(userId, watermark.seq()));
+        if (qaPairs.isEmpty()) {
+            return Optional.empty();
+        }
+        if (qaPairs.size() > 20) {
+            qaPairs = qaPairs.subList(qaPairs.size() - 20, qaPairs.size());
+            log.info("Ограничили новые пары пользователя {} последними 20", userId);
+        }
+        return Optional.of(new SessionTranscript(userId, username, watermark.question(), watermark.answer(),
+            List.copyOf(qaPairs)));
+    }
+    
+    /**
+     * Сдвигает водяной знак после сохранения сводки: свёрнутые пары больше не попадут в промпт,
+     * а сама сводка станет основой следующей. Знак только растёт
+     */
+    public void advanceWatermark(SessionTranscript session, String question, String answer) {
+        Watermark next = new Watermark(session.lastSeq(), question, answer);
+        synchronized (watermarks) {
+            watermarks.merge(session.userId(), next, (current, candidate) -> candidate.seq() > current.seq() ? candidate : current);
+        }
+        conversationService.markSummarized(session.userId(), session.lastSeq());
+    }
+    
+    /**
+     * Водяной знак пользователя: номер хранится вместе с диалогом (conversation_state),
+     * текст основы — последняя сохранённая сводка
+     */
+    private Watermark watermarkOf(Long userId) {
+        synchronized (watermarks) {
+            Watermark watermark = watermarks.get(userId);
+            if (watermark != null) {
+                return watermark;
+            }
+        }
+        Watermark loaded = summaryRepository.findFirstByUserIdOrderByCreatedAtDesc(userId)
+            .map(summary -> new Watermark(conversationService.getSummarizedSeq(userId),
+                summary.getSummaryQuestion(), summary.getSummaryAnswer()))
+            .orElse(new Watermark(conversationService.getSummarizedSeq(userId), null, null));
+        synchronized (watermarks) {
+            Watermark existing = watermarks.putIfAbsent(userId, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+    
+    /**
+     * Промпт для свёртки нескольких независимых сессий одним запросом.
+     * Ответ — JSON-массив, сессии различаются по номеру (с 1, в порядке списка)
+     */
+    public String buildBatchSummarizationPrompt(List<SessionTranscript> sessions) {
+        StringBuilder prompt = new StringBuilder();
+
+        prompt.append("Ты — аналитик диалогов.\n\n");
+        prompt.append("Ниже ").append(sessions.size()).append(" независимых сессий разных пользователей. ");
+        prompt.append("В каждой — новые вопросы пользователя и ответы ассистента, ");
+        prompt.append("а у некоторых ещё и сводка предыдущего общения.\n\n");
+        prompt.append("Для КАЖДОЙ сессии отдельно:\n");
+        prompt.append("1) Сформулируй ОДИН общий/главный вопрос, который объединяет её вопросы.\n");
+        prompt.append("2) Сформулируй ОДИН общий/главный ответ, который обобщает её ответы.\n");
+        prompt.append("Если есть предыдущая сводка — обнови её с учётом новых вопросов, а не пиши заново.\n\n");
+        prompt.append("Не смешивай сессии между собой. Выведи строго JSON-массив без пояснений и без markdown:\n");
+        prompt.append("[{\"session\": <номер сессии>, \"question\": \"<краткий общий вопрос>\", ");
+        prompt.append("\"answer\": \"<краткий общий ответ>\"}]\n\n");
+
+        for (int i = 0; i < sessions.size(); i++) {
+            prompt.append("=== СЕССИЯ ").append(i + 1).append(" ===\n");
+            appendSession(prompt, sessions.get(i));
+        }
+
+        return prompt.toString();
+    }
+
+    /**
+     * Строка сводки по снимку сессии и свёрнутым вопросу/ответу; границы сессии — по новым парам
      */
-    private List<QuestionAnswerPair> extractQuestionAnswerPairs(List<Map<String, String>> history) {
+    public UserSessionSummary toSummary(SessionTranscript session, String question, String answer) {
+        UserSessionSummary summary = new UserSessionSummary();
+        summary.setUserId(session.userId());
+        summary.setUsername(session.username());
+        summary.setSummaryQuestion(question);
+        summary.setSummaryAnswer(answer);
+        summary.setSessionStartAt(session.pairs().get(0).timestamp());
+        summary.setSessionEndAt(session.pairs().get(session.pairs().size() - 1).timestamp());
+        summary.setCreatedAt(LocalDateTime.now());
+        return summary;
+    }
+
+    /**
+     * Извлекает пары вопрос-ответ из сообщений истории; номер пары — номер сообщения с ответом.
+     * Ответ без вопроса (вопрос уже свёрнут) и вопрос без ответа пропускаются
+     */
+    private List<QuestionAnswerPair> extractQuestionAnswerPairs(List<ConversationService.HistoryMessage> messages) {
         List<QuestionAnswerPair> pairs = new ArrayList<>();
         String currentQuestion = null;
         LocalDateTime questionTime = null;
         
-        for (Map<String, String> message : history) {
-            String role = message.get("role");
-            String content = message.get("content");
+        for (ConversationService.HistoryMessage message : messages) {
+            String role = message.role();
+            String content = message.content();
             
             if ("user".equals(role) && content != null && !content.trim().isEmpty()) {
                 // Сохраняем вопрос
                 currentQuestion = content.trim();
-                questionTime = LocalDateTime.now(); // В реальности можно брать из метаданных, если есть
+                questionTime = message.createdAt();
             } else if ("assistant".equals(role) && currentQuestion != null && content != null && !content.trim().isEmpty()) {
                 // Нашли ответ на вопрос
-                pairs.add(new QuestionAnswerPair(currentQuestion, content.trim(), questionTime));
+                pairs.add(new QuestionAnswerPair(message.seq(), currentQuestion, content.trim(), questionTime));
                 currentQuestion = null;
                 questionTime = null;
             }
@@ -132,30 +215,45 @@ public class SummaryService {
     }
     
     /**
-     * Формирует промпт для свёртки диалога
+     * Формирует промпт для свёртки диалога: предыдущая сводка (если есть) и только новые пары
      */
-    private String buildSummarizationPrompt(List<QuestionAnswerPair> qaPairs) {
+    private String buildSummarizationPrompt(SessionTranscript session) {
         StringBuilder prompt = new StringBuilder();
         
         prompt.append("Ты — аналитик диалогов.\n\n");
-        prompt.append("Ниже список вопросов пользователя и ответов ассистента.\n\n");
-        prompt.append("Твоя задача:\n");
+        if (session.previousQuestion() != null) {
+            prompt.append("Ниже сводка предыдущего общения и новые вопросы пользователя с ответами ассистента.\n\n");
+            prompt.append("Твоя задача — обновить сводку с учётом новых вопросов:\n");
+        } else {
+            prompt.append("Ниже список вопросов пользователя и ответов ассистента.\n\n");
+            prompt.append("Твоя задача:\n");
+        }
         prompt.append("1) Сформулировать ОДИН общий/главный вопрос, который объединяет эти вопросы.\n");
         prompt.append("2) Сформулировать ОДИН общий/главный ответ, который обобщает ответы.\n\n");
         prompt.append("Выведи строго в формате:\n");
         prompt.append("Вопрос: <краткий общий вопрос>\n");
         prompt.append("Ответ: <краткий общий ответ>\n\n");
         prompt.append("---\n\n");
-        
-        for (int i = 0; i < qaPairs.size(); i++) {
-            QuestionAnswerPair pair = qaPairs.get(i);
-            prompt.append("[").append(i + 1).append("] ВОПРОС: ").append(pair.question).append("\n");
-            prompt.append("    ОТВЕТ: ").append(pair.answer).append("\n\n");
-        }
+        appendSession(prompt, session);
         
         return prompt.toString();
     }
     
+    private static void appendSession(StringBuilder prompt, SessionTranscript session) {
+        if (session.previousQuestion() != null) {
+            prompt.append("ПРЕДЫДУЩАЯ СВОДКА:\n");
+            prompt.append("    Вопрос: ").append(session.previousQuestion()).append("\n");
+            prompt.append("    Ответ: ").append(session.previousAnswer()).append("\n\n");
+            prompt.append("НОВЫЕ ВОПРОСЫ:\n");
+        }
+        List<QuestionAnswerPair> pairs = session.pairs();
+        for (int i = 0; i < pairs.size(); i++) {
+            QuestionAnswerPair pair = pairs.get(i);
+            prompt.append("[").append(i + 1).append("] ВОПРОС: ").append(pair.question()).append("\n");
+            prompt.append("    ОТВЕТ: ").append(pair.answer()).append("\n\n");
+        }
+    }
+    
     /**
      * Парсит ответ от агента, извлекая общий вопрос и ответ
      */
@@ -218,17 +316,28 @@ public class SummaryService {
     }
     
     // Вспомогательные классы
-    private static class QuestionAnswerPair {
-        String question;
-        String answer;
-        LocalDateTime timestamp;
-        
-        QuestionAnswerPair(String question, String answer, LocalDateTime timestamp) {
-            this.question = question;
-            this.answer = answer;
-            this.timestamp = timestamp;
+    public record QuestionAnswerPair(long seq, String question, String answer, LocalDateTime timestamp) {
+    }
+
+    /**
+     * Снимок для сводки: предыдущая сводка (null, если её не было) и новые пары по возрастанию номера
+     */
+    public record SessionTranscript(Long userId,
+                                    String username,
+                                    String previousQuestion,
+                                    String previousAnswer,
+                                    List<QuestionAnswerPair> pairs) {
+
+        public long lastSeq() {
+            return pairs.get(pairs.size() - 1).seq();
         }
     }
+
+    /**
+     * Номер последнего свёрнутого сообщения и сводка, в которую оно вошло
+     */
+    private record Watermark(long seq, String question, String answer) {
+    }
     
     private static class SummaryResult {
         String question;
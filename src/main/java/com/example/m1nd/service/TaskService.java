@@ -8,26 +8,28 @@ import org.springframework.stereotype.Service;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 
 @Service
 @RequiredArgsConstructor
 public class TaskService {
 
     private final TaskRepository taskRepository;
-    private final Random random = new Random();
+    private final CatalogCache catalogCache;
 
     public List<Task> findAll() {
         return taskRepository.findAll();
     }
 
+    /**
+     * Случайное задание: id выбирается из кэша, из БД читается одна строка по ключу
+     */
     public Optional<Task> findRandom() {
-        List<Task> all = taskRepository.findAll();
-        if (all.isEmpty()) {
-            return Optional.empty();
+        Optional<Task> task = catalogCache.snapshot().randomTaskId().flatMap(taskRepository::findById);
+        if (task.isEmpty() && catalogCache.snapshot().taskIds().length > 0) {
+            // Задание удалили в обход кэша — перечитываем список и пробуем ещё раз
+            task = catalogCache.refresh().randomTaskId().flatMap(taskRepository::findById);
         }
-        int idx = random.nextInt(all.size());
-        return Optional.of(all.get(idx));
+        return task;
     }
 
     public Task createTask(String text, String type, Long createdBy) {
@@ -36,11 +38,14 @@ public class TaskService {
         task.setType(type);
         task.setCreatedBy(createdBy);
         task.setCreatedAt(OffsetDateTime.now());
-        return taskRepository.save(task);
+        Task saved = taskRepository.save(task);
+        catalogCache.refresh();
+        return saved;
     }
 
     public void deleteTask(Long id) {
         taskRepository.deleteById(id);
+        catalogCache.refresh();
     }
 }
 
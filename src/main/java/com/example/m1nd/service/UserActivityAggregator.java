@@ -0,0 +1,201 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.UserActivityJdbcRepository;
+import com.example.m1nd.repository.UserActivityJdbcRepository.ActivityDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Накопитель активности пользователей (write-behind).
+ * Сообщения, вопросы и время активности копятся в памяти и раз в несколько секунд
+ * записываются в БД одним пакетным upsert'ом вместо findByUserId + save на каждое сообщение.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserActivityAggregator {
+
+    private final UserActivityJdbcRepository userActivityJdbcRepository;
+
+    @Value("${app.activity.session-gap-minutes:30}")
+    private int sessionGapMinutes;
+
+    private final Map<Long, PendingActivity> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Записи, убранные из pending на прошлом сбросе. Поток, успевший взять запись до удаления,
+     * мог дописать в неё приращение — поэтому такие записи сбрасываются ещё раз.
+     */
+    private List<PendingActivity> retired = new ArrayList<>();
+
+    /**
+     * Любое взаимодействие пользователя с ботом
+     */
+    public void recordMessage(Long userId) {
+        PendingActivity activity = touch(userId);
+        activity.messages.increment();
+    }
+
+    /**
+     * Вопрос пользователя к LLM
+     */
+    public void recordQuestion(Long userId) {
+        PendingActivity activity = touch(userId);
+        activity.questions.increment();
+    }
+
+    /**
+     * /start: активность плюс актуальные данные профиля
+     */
+    public void recordProfile(Long userId, String username, String firstName, String lastName) {
+        PendingActivity activity = touch(userId);
+        activity.profile.set(new Profile(username, firstName, lastName));
+    }
+
+    private PendingActivity touch(Long userId) {
+        PendingActivity activity = pending.computeIfAbsent(userId, PendingActivity::new);
+        long now = System.currentTimeMillis();
+        activity.lastActivityMillis.accumulateAndGet(now, Math::max);
+        activity.windowStartMillis.compareAndSet(0, now);
+        return activity;
+    }
+
+    @Scheduled(fixedDelayString = "${app.activity.flush-interval-ms:5000}",
+               initialDelayString = "${app.activity.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Завершение работы: сбрасываю накопленную активность пользователей ({} в памяти)", pending.size());
+        flush();
+    }
+
+    /**
+     * Сбрасывает накопленную активность в БД. При ошибке приращения возвращаются в память
+     * и уйдут со следующим сбросом.
+     */
+    public synchronized void flush() {
+        List<ActivityDelta> deltas = new ArrayList<>();
+        List<PendingActivity> sources = new ArrayList<>();
+
+        for (PendingActivity activity : retired) {
+            ActivityDelta delta = activity.drain();
+            if (delta != null) {
+                deltas.add(delta);
+                sources.add(activity);
+            }
+        }
+        retired = new ArrayList<>();
+
+        for (PendingActivity activity : pending.values()) {
+            ActivityDelta delta = activity.drain();
+            if (delta != null) {
+                deltas.add(delta);
+                sources.add(activity);
+            } else if (pending.remove(activity.userId, activity)) {
+                // Пользователь молчал весь интервал — запись больше не нужна
+                retired.add(activity);
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            userActivityJdbcRepository.upsertActivity(deltas, sessionGapMinutes);
+            log.debug("Сброшена активность {} пользователей в БД", deltas.size());
+        } catch (Exception e) {
+            log.error("Ошибка при сбросе активности {} пользователей в БД, повторю при следующем сбросе",
+                deltas.size(), e);
+            for (int i = 0; i < deltas.size(); i++) {
+                restore(sources.get(i), deltas.get(i));
+            }
+        }
+    }
+
+    private void restore(PendingActivity source, ActivityDelta delta) {
+        PendingActivity activity = pending.computeIfAbsent(source.userId, PendingActivity::new);
+        activity.messages.add(delta.messages());
+        activity.questions.add(delta.questions());
+        long windowStart = toMillis(delta.firstActivityAt());
+        activity.windowStartMillis.accumulateAndGet(windowStart,
+            (current, restored) -> current == 0 ? restored : Math.min(current, restored));
+        activity.lastActivityMillis.accumulateAndGet(toMillis(delta.lastActivityAt()), Math::max);
+        if (delta.username() != null || delta.firstName() != null || delta.lastName() != null) {
+            activity.profile.compareAndSet(null, new Profile(delta.username(), delta.firstName(), delta.lastName()));
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private record Profile(String username, String firstName, String lastName) {
+    }
+
+    private static final class PendingActivity {
+        private final long userId;
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder questions = new LongAdder();
+        /** Первая активность с прошлого сброса (0 — активности не было), по ней в БД определяется новая сессия */
+        private final AtomicLong windowStartMillis = new AtomicLong();
+        private final AtomicLong lastActivityMillis = new AtomicLong();
+        private final AtomicReference<Profile> profile = new AtomicReference<>();
+
+        private PendingActivity(Long userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * Забирает приращения с прошлого сброса; null, если пользователь не проявлял активности
+         */
+        private ActivityDelta drain() {
+            // Писатель сначала отмечает окно, потом счётчики, а здесь порядок тот же:
+            // в худшем случае отметка окна без приращений переедет в следующий сброс
+            long windowStart = windowStartMillis.getAndSet(0);
+            long messageCount = messages.sumThenReset();
+            long questionCount = questions.sumThenReset();
+            Profile changedProfile = profile.getAndSet(null);
+
+            if (windowStart == 0 && messageCount == 0 && questionCount == 0 && changedProfile == null) {
+                return null;
+            }
+
+            long lastActivity = lastActivityMillis.get();
+            if (windowStart == 0) {
+                windowStart = lastActivity;
+            }
+            return new ActivityDelta(
+                userId,
+                changedProfile != null ? changedProfile.username() : null,
+                changedProfile != null ? changedProfile.firstName() : null,
+                changedProfile != null ? changedProfile.lastName() : null,
+                toLocalDateTime(windowStart),
+                toLocalDateTime(Math.max(windowStart, lastActivity)),
+                messageCount,
+                questionCount);
+        }
+    }
+}
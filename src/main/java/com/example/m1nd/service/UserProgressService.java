@@ -1,96 +1,100 @@
 package com.example.m1nd.service;
 
-import com.example.m1nd.model.UserProgress;
+import com.example.m1nd.model.UserProgressSnapshot;
 import com.example.m1nd.repository.UserProgressRepository;
+import com.example.m1nd.service.analytics.ActivityFeature;
+import com.example.m1nd.service.analytics.ActivityRollupService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class UserProgressService {
 
     private final UserProgressRepository userProgressRepository;
+    private final ActivityRollupService activityRollupService;
 
-    @Transactional
-    public UserProgress getOrCreate(Long userId) {
-        return userProgressRepository.findById(userId)
-            .orElseGet(() -> {
-                UserProgress p = new UserProgress();
-                p.setUserId(userId);
-                p.setRiddlesSolved(0);
-                p.setTasksCompleted(0);
-                p.setFactsViewed(0);
-                p.setIdeasViewed(0);
-                p.setMotivationsViewed(0);
-                p.setGamesPlayed(0);
-                return userProgressRepository.save(p);
-            });
-    }
+    @Value("${app.progress.cache-size:1000}")
+    private int cacheSize;
+
+    /** LRU-кэш прогресса для повторных открытий экрана; сбрасывается любым инкрементом пользователя */
+    private final Map<Long, UserProgressSnapshot> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserProgressSnapshot> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    /**
+     * Номер поколения кэша: чтение, начатое до инкремента, не должно положить в кэш старое значение
+     */
+    private long generation;
 
-    @Transactional
     public void incrementRiddlesSolved(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setRiddlesSolved(p.getRiddlesSolved() + 1);
-        userProgressRepository.save(p);
+        userProgressRepository.incrementRiddlesSolved(userId);
+        invalidate(userId);
+        activityRollupService.record(userId, ActivityFeature.PUZZLE);
     }
 
-    @Transactional
     public void incrementTasksCompleted(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setTasksCompleted(p.getTasksCompleted() + 1);
-        userProgressRepository.save(p);
+        userProgressRepository.incrementTasksCompleted(userId);
+        invalidate(userId);
     }
 
-    @Transactional
     public void incrementFactsViewed(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setFactsViewed(p.getFactsViewed() + 1);
-        userProgressRepository.save(p);
+        userProgressRepository.incrementFactsViewed(userId);
+        invalidate(userId);
+        activityRollupService.record(userId, ActivityFeature.FACT);
     }
 
-    @Transactional
     public void incrementIdeasViewed(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setIdeasViewed(p.getIdeasViewed() + 1);
-        userProgressRepository.save(p);
+        userProgressRepository.incrementIdeasViewed(userId);
+        invalidate(userId);
     }
 
-    @Transactional
     public void incrementMotivationsViewed(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setMotivationsViewed(p.getMotivationsViewed() + 1);
-        userProgressRepository.save(p);
+        userProgressRepository.incrementMotivationsViewed(userId);
+        invalidate(userId);
     }
 
-    @Transactional
     public void incrementGamesPlayed(Long userId) {
-        UserProgress p = getOrCreate(userId);
-        p.setGamesPlayed(p.getGamesPlayed() + 1);
-        userProgressRepository.save(p);
-    }
-
-    public int getRiddlesSolved(Long userId) {
-        return getOrCreate(userId).getRiddlesSolved();
-    }
-
-    public int getTasksCompleted(Long userId) {
-        return getOrCreate(userId).getTasksCompleted();
-    }
-
-    public int getFactsViewed(Long userId) {
-        return getOrCreate(userId).getFactsViewed();
-    }
-
-    public int getIdeasViewed(Long userId) {
-        return getOrCreate(userId).getIdeasViewed();
+        userProgressRepository.incrementGamesPlayed(userId);
+        invalidate(userId);
+        activityRollupService.record(userId, ActivityFeature.GAME);
     }
 
-    public int getMotivationsViewed(Long userId) {
-        return getOrCreate(userId).getMotivationsViewed();
+    /**
+     * Весь прогресс пользователя одним запросом (или из кэша)
+     */
+    public UserProgressSnapshot getProgress(Long userId) {
+        long readGeneration;
+        synchronized (cache) {
+            UserProgressSnapshot cached = cache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            readGeneration = generation;
+        }
+
+        UserProgressSnapshot snapshot = userProgressRepository.findSnapshotByUserId(userId)
+            .orElse(UserProgressSnapshot.EMPTY);
+
+        synchronized (cache) {
+            if (generation == readGeneration) {
+                cache.put(userId, snapshot);
+            }
+        }
+        return snapshot;
     }
 
-    public int getGamesPlayed(Long userId) {
-        return getOrCreate(userId).getGamesPlayed();
+    private void invalidate(Long userId) {
+        synchronized (cache) {
+            generation++;
+            cache.remove(userId);
+        }
     }
 }
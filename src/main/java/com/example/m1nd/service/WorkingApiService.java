@@ -1,5 +1,7 @@
 package com.example.m1nd.service;
 
+import com.example.m1nd.service.llm.LlmAdmissionService;
+import com.example.m1nd.service.llm.LlmOverloadedException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,13 +30,16 @@ public class WorkingApiService {
     private static final String DATA_PREFIX = "data: ";
     private static final String DONE_MARKER = "[DONE]";
     private static final String ANSI_ESCAPE_REGEX = "\u001B\\[[;\\d]*m";
+    private static final String PROVIDER_NAME = "gpt-chatbot";
     
     private final PromptService promptService;
+    private final LlmAdmissionService admissionService;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final WebClient client;
 
-    public WorkingApiService(PromptService promptService) {
+    public WorkingApiService(PromptService promptService, LlmAdmissionService admissionService) {
         this.promptService = promptService;
+        this.admissionService = admissionService;
         this.client = createWebClient();
     }
 
@@ -65,7 +70,16 @@ public class WorkingApiService {
                 .build();
     }
 
-    public Mono<String> getAnswer(String questionText) {
+    /**
+     * Получает ответ с учётом контроля нагрузки.
+     * Отказ по перегрузке пробрасывается как LlmOverloadedException, остальные ошибки превращаются в текст.
+     */
+    public Mono<String> getAnswer(String questionText, Long userId) {
+        return admissionService.admit(PROVIDER_NAME, userId, () -> requestAnswer(questionText))
+                .onErrorResume(error -> !(error instanceof LlmOverloadedException), this::handleError);
+    }
+    
+    private Mono<String> requestAnswer(String questionText) {
         String logQuestion = questionText.length() > 50 
             ? questionText.substring(0, 50) + "..." 
             : questionText;
@@ -116,8 +130,7 @@ public class WorkingApiService {
                             }
                             
                             return false;
-                        }))
-                .onErrorResume(this::handleError);
+                        }));
     }
     
     private Map<String, Object> buildRequestBody(String questionText) {
@@ -0,0 +1,35 @@
+package com.example.m1nd.service.analytics;
+
+/**
+ * Виды активности, по которым ведутся скетчи уникальных пользователей.
+ * Код хранится в user_activity_daily.feature — не переименовывать.
+ */
+public enum ActivityFeature {
+
+    /** Любое взаимодействие с ботом — основа для DAU/WAU/MAU и удержания */
+    ANY("any", "любая активность"),
+
+    QUESTION("question", "вопросы"),
+
+    FACT("fact", "факты"),
+
+    GAME("game", "игры"),
+
+    PUZZLE("puzzle", "загадки");
+
+    private final String code;
+    private final String title;
+
+    ActivityFeature(String code, String title) {
+        this.code = code;
+        this.title = title;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.m1nd.service.analytics;
+
+import com.example.m1nd.repository.UserActivityDailyJdbcRepository;
+import com.example.m1nd.repository.UserActivityDailyJdbcRepository.SketchRow;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.example.m1nd.repository.UserActivityDailyJdbcRepository.WHOLE_DAY;
+
+/**
+ * Инкрементальная сводка активности: скетчи HyperLogLog уникальных пользователей
+ * по дням, часам и видам активности. На пути сообщения — только обновление скетча в памяти,
+ * в user_activity_daily скетчи сливаются фоновым сбросом.
+ * DAU/WAU/MAU и удержание считаются слиянием дневных скетчей, без сканирования событий.
+ * Рассчитан на один экземпляр бота (как и long polling).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ActivityRollupService {
+
+    private static final int[] RETENTION_DAYS = {1, 3, 7};
+
+    private final UserActivityDailyJdbcRepository activityDailyRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.analytics.flush-interval-ms:60000}")
+    private long flushIntervalMs;
+
+    private final Map<BucketKey, PendingSketch> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Учитывает активность пользователя. Любой вид активности попадает и в общий скетч ANY
+     */
+    public void record(Long userId, ActivityFeature feature) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate day = now.toLocalDate();
+        int hour = now.getHour();
+
+        add(new BucketKey(day, WHOLE_DAY, feature), userId, true);
+        add(new BucketKey(day, hour, feature), userId, true);
+        if (feature != ActivityFeature.ANY) {
+            // Событие уже посчитано в своём виде, в ANY — только уникальный пользователь
+            add(new BucketKey(day, WHOLE_DAY, ActivityFeature.ANY), userId, false);
+            add(new BucketKey(day, hour, ActivityFeature.ANY), userId, false);
+        }
+    }
+
+    private void add(BucketKey key, long userId, boolean countEvent) {
+        PendingSketch sketch = pending.computeIfAbsent(key, k -> new PendingSketch());
+        sketch.add(userId);
+        if (countEvent) {
+            sketch.events.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.flush-interval-ms:60000}",
+               initialDelayString = "${app.analytics.flush-interval-ms:60000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Сливает накопленные скетчи с сохранёнными в БД. Повторное слияние того же скетча безопасно,
+     * поэтому при ошибке достаточно снова пометить корзины изменёнными
+     */
+    public synchronized void flush() {
+        Map<BucketKey, HyperLogLog> sketches = new HashMap<>();
+        Map<BucketKey, Long> events = new HashMap<>();
+        for (Map.Entry<BucketKey, PendingSketch> entry : pending.entrySet()) {
+            PendingSketch sketch = entry.getValue();
+            HyperLogLog snapshot = sketch.drain();
+            long eventCount = sketch.events.sumThenReset();
+            if (snapshot != null || eventCount > 0) {
+                sketches.put(entry.getKey(), snapshot != null ? snapshot : sketch.copy());
+                events.put(entry.getKey(), eventCount);
+            }
+        }
+
+        if (!sketches.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeMerged(sketches, events));
+                log.debug("Сброшено {} скетчей активности", sketches.size());
+            } catch (Exception e) {
+                log.error("Ошибка при сбросе скетчей активности, повторю при следующем сбросе", e);
+                sketches.keySet().forEach(key -> {
+                    PendingSketch sketch = pending.get(key);
+                    if (sketch != null) {
+                        sketch.markDirty();
+                        sketch.events.add(events.get(key));
+                    }
+                });
+                return;
+            }
+        }
+
+        evictFinishedBuckets();
+    }
+
+    private void writeMerged(Map<BucketKey, HyperLogLog> sketches, Map<BucketKey, Long> events) {
+        LocalDate fromDay = sketches.keySet().stream().map(BucketKey::day).min(LocalDate::compareTo).orElseThrow();
+        LocalDate toDay = sketches.keySet().stream().map(BucketKey::day).max(LocalDate::compareTo).orElseThrow();
+
+        Map<BucketKey, byte[]> stored = new HashMap<>();
+        for (SketchRow row : activityDailyRepository.findForUpdate(fromDay, toDay)) {
+            ActivityFeature feature = featureByCode(row.feature());
+            if (feature != null) {
+                stored.put(new BucketKey(row.day(), row.hour(), feature), row.sketch());
+            }
+        }
+
+        List<SketchRow> rows = new ArrayList<>(sketches.size());
+        for (Map.Entry<BucketKey, HyperLogLog> entry : sketches.entrySet()) {
+            BucketKey key = entry.getKey();
+            HyperLogLog merged = entry.getValue();
+            byte[] existing = stored.get(key);
+            if (existing != null) {
+                merged.merge(HyperLogLog.fromBytes(existing));
+            }
+            rows.add(new SketchRow(key.day(), key.hour(), key.feature().getCode(), merged.toBytes(), events.get(key)));
+        }
+        activityDailyRepository.upsert(rows);
+    }
+
+    /**
+     * Убирает из памяти корзины закончившихся часов и дней, которые уже сброшены в БД.
+     * Запас в два интервала сброса — для записей, начатых на границе часа
+     */
+    private void evictFinishedBuckets() {
+        LocalDateTime threshold = LocalDateTime.now().minusNanos(flushIntervalMs * 2 * 1_000_000);
+        pending.entrySet().removeIf(entry -> entry.getKey().end().isBefore(threshold) && entry.getValue().isClean());
+    }
+
+    /**
+     * Уникальные пользователи за каждый день диапазона (включительно)
+     */
+    public Map<LocalDate, HyperLogLog> loadDailySketches(ActivityFeature feature, LocalDate fromDay, LocalDate toDay) {
+        Map<LocalDate, HyperLogLog> result = new LinkedHashMap<>();
+        for (LocalDate day = fromDay; !day.isAfter(toDay); day = day.plusDays(1)) {
+            result.put(day, new HyperLogLog());
+        }
+        for (SketchRow row : activityDailyRepository.findSketches(feature.getCode(), WHOLE_DAY, fromDay, toDay)) {
+            result.get(row.day()).merge(HyperLogLog.fromBytes(row.sketch()));
+        }
+        pending.forEach((key, sketch) -> {
+            if (key.feature() == feature && key.hour() == WHOLE_DAY && result.containsKey(key.day())) {
+                result.get(key.day()).merge(sketch.copy());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Уникальные пользователи по часам дня (индекс — час 0-23)
+     */
+    public long[] hourlyUniqueUsers(ActivityFeature feature, LocalDate day) {
+        HyperLogLog[] hours = new HyperLogLog[24];
+        for (int hour = 0; hour < 24; hour++) {
+            hours[hour] = new HyperLogLog();
+        }
+        for (SketchRow row : activityDailyRepository.findHourlySketches(feature.getCode(), day)) {
+            hours[row.hour()].merge(HyperLogLog.fromBytes(row.sketch()));
+        }
+        pending.forEach((key, sketch) -> {
+            if (key.feature() == feature && key.day().equals(day) && key.hour() != WHOLE_DAY) {
+                hours[key.hour()].merge(sketch.copy());
+            }
+        });
+        long[] result = new long[24];
+        for (int hour = 0; hour < 24; hour++) {
+            result[hour] = hours[hour].estimate();
+        }
+        return result;
+    }
+
+    /**
+     * Уникальные пользователи за последние N дней, от старых к новым
+     */
+    public Map<String, Long> dailyUniqueUsers(ActivityFeature feature, int days) {
+        LocalDate today = LocalDate.now();
+        Map<String, Long> result = new LinkedHashMap<>();
+        loadDailySketches(feature, today.minusDays(days - 1L), today)
+            .forEach((day, sketch) -> result.put(day.toString(), sketch.estimate()));
+        return result;
+    }
+
+    /**
+     * Блок для /stats: DAU/WAU/MAU, разделы за сегодня, пиковый час и удержание
+     */
+    public String formatReport() {
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, HyperLogLog> month = loadDailySketches(ActivityFeature.ANY, today.minusDays(29), today);
+
+        HyperLogLog week = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        month.forEach((day, sketch) -> {
+            if (!day.isBefore(today.minusDays(6))) {
+                week.merge(sketch);
+            }
+            all.merge(sketch);
+        });
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("📈 Уникальные пользователи (оценка):\n");
+        sb.append("  • DAU: ").append(month.get(today).estimate()).append("\n");
+        sb.append("  • WAU: ").append(week.estimate()).append("\n");
+        sb.append("  • MAU: ").append(all.estimate()).append("\n");
+
+        sb.append("  • Сегодня по разделам: ");
+        List<String> parts = new ArrayList<>();
+        for (ActivityFeature feature : ActivityFeature.values()) {
+            if (feature != ActivityFeature.ANY) {
+                long users = loadDailySketches(feature, today, today).get(today).estimate();
+                parts.add(feature.getTitle() + " " + users);
+            }
+        }
+        sb.append(String.join(", ", parts)).append("\n");
+
+        long[] hourly = hourlyUniqueUsers(ActivityFeature.ANY, today);
+        int peakHour = 0;
+        for (int hour = 1; hour < hourly.length; hour++) {
+            if (hourly[hour] > hourly[peakHour]) {
+                peakHour = hour;
+            }
+        }
+        if (hourly[peakHour] > 0) {
+            sb.append("  • Пиковый час сегодня: ").append(String.format("%02d:00", peakHour))
+                .append(" (").append(hourly[peakHour]).append(")\n");
+        }
+
+        LocalDate cohortDay = today.minusDays(RETENTION_DAYS[RETENTION_DAYS.length - 1]);
+        HyperLogLog cohort = month.get(cohortDay);
+        long cohortSize = cohort.estimate();
+        if (cohortSize > 0) {
+            sb.append("\n🔁 Удержание активных за ").append(cohortDay).append(" (").append(cohortSize).append("):");
+            for (int offset : RETENTION_DAYS) {
+                HyperLogLog later = month.get(cohortDay.plusDays(offset));
+                sb.append(" D").append(offset).append(" ")
+                    .append(String.format("%.0f%%", 100.0 * intersection(cohort, later) / cohortSize));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * |A ∩ B| = |A| + |B| - |A ∪ B| (грубая оценка, на малых выборках возможна заметная погрешность)
+     */
+    private static long intersection(HyperLogLog a, HyperLogLog b) {
+        HyperLogLog union = a.copy();
+        union.merge(b);
+        long estimate = a.estimate() + b.estimate() - union.estimate();
+        return Math.max(0, Math.min(estimate, Math.min(a.estimate(), b.estimate())));
+    }
+
+    private static ActivityFeature featureByCode(String code) {
+        for (ActivityFeature feature : ActivityFeature.values()) {
+            if (feature.getCode().equals(code)) {
+                return feature;
+            }
+        }
+        return null;
+    }
+
+    private record BucketKey(LocalDate day, int hour, ActivityFeature feature) {
+        LocalDateTime end() {
+            return hour == WHOLE_DAY ? day.plusDays(1).atStartOfDay() : day.atTime(hour, 0).plusHours(1);
+        }
+    }
+
+    private static final class PendingSketch {
+        private final HyperLogLog sketch = new HyperLogLog();
+        private final LongAdder events = new LongAdder();
+        private boolean dirty;
+
+        synchronized void add(long userId) {
+            sketch.addUser(userId);
+            dirty = true;
+        }
+
+        /**
+         * Копия скетча, если он менялся с прошлого сброса, иначе null
+         */
+        synchronized HyperLogLog drain() {
+            if (!dirty) {
+                return null;
+            }
+            dirty = false;
+            return sketch.copy();
+        }
+
+        synchronized HyperLogLog copy() {
+            return sketch.copy();
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        synchronized boolean isClean() {
+            return !dirty && events.sum() == 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.m1nd.service.analytics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog для оценки числа уникальных пользователей (p = 12: 4096 регистров, погрешность ≈ 1,6%).
+ * Скетчи объединяются взятием максимума по регистрам, поэтому DAU за неделю или месяц —
+ * это слияние дневных скетчей, а повторное слияние того же скетча ничего не меняет.
+ * Не потокобезопасен: синхронизацию обеспечивает вызывающий код.
+ */
+public class HyperLogLog {
+
+    private static final int P = 12;
+    private static final int M = 1 << P;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    private static final byte FORMAT_DENSE = 0;
+    private static final byte FORMAT_SPARSE = 1;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[M];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void addUser(long userId) {
+        addHash(mix(userId));
+    }
+
+    void addHash(long hash) {
+        int index = (int) (hash >>> (64 - P));
+        int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(registers.clone());
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1d / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * M * M / sum;
+        if (estimate <= 2.5 * M && zeros > 0) {
+            // Поправка для малых значений (linear counting)
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Сериализация для БД: разреженный формат (индекс + значение), пока заполнено мало регистров,
+     * иначе плотный массив регистров
+     */
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (nonZero * 3 < M) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + nonZero * 3);
+            buffer.put(FORMAT_SPARSE);
+            for (int i = 0; i < M; i++) {
+                if (registers[i] != 0) {
+                    buffer.putShort((short) i);
+                    buffer.put(registers[i]);
+                }
+            }
+            return buffer.array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 + M);
+        buffer.put(FORMAT_DENSE);
+        buffer.put(registers);
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte format = buffer.get();
+        byte[] registers = new byte[M];
+        if (format == FORMAT_DENSE) {
+            buffer.get(registers);
+        } else if (format == FORMAT_SPARSE) {
+            while (buffer.remaining() >= 3) {
+                int index = buffer.getShort() & 0xFFFF;
+                registers[index] = buffer.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Неизвестный формат скетча: " + format);
+        }
+        return new HyperLogLog(registers);
+    }
+
+    /**
+     * Перемешивание битов id (финализатор SplitMix64): соседние id дают независимые хэши
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.m1nd.service.game;
+
+import com.example.m1nd.model.AnswerEvaluation;
+import com.example.m1nd.service.LLMService;
+import com.example.m1nd.service.llm.LlmLane;
+import com.example.m1nd.service.llm.ModelRoute;
+import com.example.m1nd.service.llm.ModelTier;
+import com.example.m1nd.service.llm.ModelTierRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка ответов в загадках, тестах и викторине без модели.
+ * Выбор варианта — по букве (или по тексту варианта), свободный ответ — по ограниченному
+ * расстоянию Левенштейна (опечатки) и пересечению слов (другая формулировка).
+ * Модель спрашивается только про свободные ответы, которые не удалось однозначно ни принять, ни отклонить.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerEvaluator {
+
+    /** Ниже этого балла ответ отклоняется сразу, от него до PASS_SCORE — спорный */
+    public static final int REVIEW_SCORE = 40;
+
+    private static final int TYPO_SCORE = 90;
+    private static final int MAX_TOKEN_SCORE = 85;
+    private static final int REVIEW_MAX_TOKENS = 80;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /** Вариант до следующей буквы со скобкой: модель разделяет их «;», «,» или просто пробелом */
+    private static final Pattern OPTION = Pattern.compile("([a-d])\\)\\s*(.*?)(?=[;,]?\\s*[a-d]\\)|$)");
+    private static final Set<String> STOP_WORDS = Set.of("это", "этот", "эта", "то", "ответ", "думаю", "наверное", "мне", "кажется");
+    /** Слова, с которых можно начать ответ буквой: «ответ b», «вариант b» */
+    private static final Set<String> CHOICE_PREFIXES = Set.of("ответ", "вариант");
+    /** Оговорки, которые меняют смысл близкого ответа: «не ключ», «ключ или замок» */
+    private static final Set<String> HEDGES = Set.of("не", "нет", "ни", "или", "либо");
+
+    private final LLMService llmService;
+    private final ModelTierRouter modelTierRouter;
+
+    @Value("${app.games.answer-review.enabled:true}")
+    private boolean reviewEnabled;
+
+    @Value("${app.games.answer-review.timeout-ms:8000}")
+    private long reviewTimeoutMs;
+
+    /**
+     * Ответ на вопрос с вариантами a–d: буквой (латиницей или а/б/в/г) либо текстом варианта
+     */
+    public AnswerEvaluation evaluateChoice(String answer, String correct, String options) {
+        String expected = choiceLetter(normalize(correct));
+        if (expected == null) {
+            return new AnswerEvaluation(0, null);
+        }
+        String normalized = normalize(answer);
+        String chosen = null;
+        // Сначала текст варианта: в «в лесу» предлог не должен сойти за букву
+        if (normalized.length() > 1 && options != null) {
+            chosen = matchOption(answer, options);
+        }
+        if (chosen == null) {
+            chosen = choiceLetter(normalized);
+        }
+        if (chosen == null) {
+            return new AnswerEvaluation(0, "Ответь буквой a, b, c или d.");
+        }
+        return new AnswerEvaluation(chosen.equals(expected) ? 100 : 0, null);
+    }
+
+    /**
+     * Свободный ответ: 100 — совпал, 90 — с опечаткой, до 85 — по пересечению слов.
+     * Оценка между {@link #REVIEW_SCORE} и {@link AnswerEvaluation#PASS_SCORE} — спорная, см. {@link #needsReview}
+     */
+    public AnswerEvaluation evaluateFreeText(String answer, String correct) {
+        String user = normalize(answer);
+        String expected = normalize(correct);
+        if (user.isEmpty() || expected.isEmpty()) {
+            return new AnswerEvaluation(0, null);
+        }
+        String userCompact = user.replace(" ", "");
+        String expectedCompact = expected.replace(" ", "");
+        if (userCompact.equals(expectedCompact)) {
+            return new AnswerEvaluation(100, null);
+        }
+        int limit = typoLimit(expectedCompact.length());
+        if (limit > 0 && boundedLevenshtein(userCompact, expectedCompact, limit) <= limit) {
+            return new AnswerEvaluation(TYPO_SCORE, "Засчитано, хотя в ответе опечатка.");
+        }
+
+        List<String> userTokens = tokens(user);
+        List<String> expectedTokens = tokens(expected);
+        if (userTokens.isEmpty() || expectedTokens.isEmpty()) {
+            return new AnswerEvaluation(0, null);
+        }
+        // Полнота — сколько слов правильного ответа названо, точность — сколько названного по делу
+        double coverage = (double) countMatching(expectedTokens, userTokens) / expectedTokens.size();
+        double precision = (double) countMatching(userTokens, expectedTokens) / userTokens.size();
+        int score = Math.min(MAX_TOKEN_SCORE, (int) Math.round(100 * (0.75 * coverage + 0.25 * precision)));
+        boolean hedged = userTokens.stream().anyMatch(token -> HEDGES.contains(token) && !expectedTokens.contains(token));
+        if (hedged && score >= AnswerEvaluation.PASS_SCORE) {
+            score = AnswerEvaluation.PASS_SCORE - 1;
+        }
+        if (score >= AnswerEvaluation.PASS_SCORE) {
+            return new AnswerEvaluation(score, "Засчитано: смысл тот же.");
+        }
+        return new AnswerEvaluation(score, score >= REVIEW_SCORE ? "Ответ близок к правильному." : null);
+    }
+
+    public boolean needsReview(AnswerEvaluation evaluation) {
+        return reviewEnabled && evaluation.getScore() >= REVIEW_SCORE && !evaluation.isPassed();
+    }
+
+    /**
+     * Спорный свободный ответ решает быстрая модель. Если она не ответила вовремя — остаётся локальная оценка
+     */
+    public Mono<AnswerEvaluation> review(String question, String correct, String answer, Long userId, AnswerEvaluation local) {
+        String prompt =
+            "Проверь ответ пользователя на загадку или задачу.\n" +
+                "Вопрос: " + question + "\n" +
+                "Правильный ответ: " + correct + "\n" +
+                "Ответ пользователя: " + answer + "\n" +
+                "Засчитай, если ответ верен по смыслу (синоним, другая форма слова, уточнение), " +
+                "и не засчитывай, если это другой ответ или несколько вариантов сразу.\n" +
+                "Формат ответа СТРОГО такой (без лишнего текста до и после):\n" +
+                "VERDICT: yes|no\n" +
+                "FEEDBACK: <одна короткая фраза для пользователя>";
+        ModelRoute route = modelTierRouter.route(ModelTierRouter.RequestKind.GENERATOR, prompt,
+            ModelTier.FAST.name(), REVIEW_MAX_TOKENS);
+
+        return Mono.defer(() -> llmService.generate(prompt, userId, route, LlmLane.MENU))
+            .timeout(Duration.ofMillis(reviewTimeoutMs))
+            .map(raw -> parseReview(raw, local))
+            .onErrorResume(error -> {
+                log.warn("Не удалось перепроверить ответ пользователя {} моделью: {}", userId, error.getMessage());
+                return Mono.just(local);
+            });
+    }
+
+    private static AnswerEvaluation parseReview(String raw, AnswerEvaluation local) {
+        Boolean accepted = null;
+        String feedback = null;
+        for (String line : raw != null ? raw.split("\\r?\\n") : new String[0]) {
+            String t = line.trim();
+            String upper = t.toUpperCase(Locale.ROOT);
+            if (upper.startsWith("VERDICT:")) {
+                String verdict = t.substring(8).trim().toLowerCase(Locale.ROOT);
+                if (verdict.startsWith("yes") || verdict.startsWith("да")) {
+                    accepted = true;
+                } else if (verdict.startsWith("no") || verdict.startsWith("нет")) {
+                    accepted = false;
+                }
+            } else if (upper.startsWith("FEEDBACK:")) {
+                feedback = t.substring(9).trim();
+            }
+        }
+        if (accepted == null) {
+            return local;
+        }
+        return accepted
+            ? new AnswerEvaluation(MAX_TOKEN_SCORE, feedback != null ? feedback : "Засчитано: смысл тот же.")
+            : new AnswerEvaluation(REVIEW_SCORE / 2, feedback);
+    }
+
+    /**
+     * Буква варианта из ответа: «b», «b)», «ответ b», «вариант b», а также русские а/б/в/г и похожая на c «с».
+     * Ответ должен состоять только из буквы: в «в лесу» или «а может 5» однобуквенное слово — не выбор варианта
+     */
+    private static String choiceLetter(String normalized) {
+        String[] tokens = normalized.split(" ");
+        boolean prefixed = tokens.length == 2 && CHOICE_PREFIXES.contains(tokens[0]);
+        if (tokens.length != 1 && !prefixed) {
+            return null;
+        }
+        String token = tokens[tokens.length - 1];
+        if (token.length() != 1) {
+            return null;
+        }
+        return switch (token.charAt(0)) {
+            case 'a', 'а' -> "a";
+            case 'b', 'б' -> "b";
+            case 'c', 'в', 'с' -> "c";
+            case 'd', 'г' -> "d";
+            default -> null;
+        };
+    }
+
+    /**
+     * Вариант, текст которого пользователь написал вместо буквы; только если такой вариант один
+     */
+    private String matchOption(String answer, String options) {
+        Map<String, String> byLetter = new LinkedHashMap<>();
+        Matcher matcher = OPTION.matcher(options.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            byLetter.putIfAbsent(matcher.group(1), matcher.group(2));
+        }
+        String matched = null;
+        for (Map.Entry<String, String> option : byLetter.entrySet()) {
+            if (evaluateFreeText(answer, option.getValue()).isPassed()) {
+                if (matched != null) {
+                    return null;
+                }
+                matched = option.getKey();
+            }
+        }
+        return matched;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        return NON_WORD.matcher(lower).replaceAll(" ").trim();
+    }
+
+    private static List<String> tokens(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalized.split(" ")) {
+            boolean meaningful = token.length() > 1 || (!token.isEmpty() && Character.isDigit(token.charAt(0)));
+            if (meaningful && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Сколько слов из what нашлось среди where с точностью до опечатки или окончания
+     */
+    private static int countMatching(List<String> what, List<String> where) {
+        int count = 0;
+        for (String token : what) {
+            int limit = typoLimit(token.length());
+            for (String candidate : where) {
+                if (boundedLevenshtein(token, candidate, limit) <= limit) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Сколько правок прощается слову такой длины: в коротких словах опечатка меняет смысл (кот — кит) */
+    private static int typoLimit(int length) {
+        return length < 4 ? 0 : Math.max(1, length / 5);
+    }
+
+    /**
+     * Расстояние Левенштейна, если оно не больше limit, иначе limit + 1: строка матрицы, в которой
+     * всё уже больше limit, обрывает подсчёт, так что длинные непохожие ответы сравниваются быстро
+     */
+    static int boundedLevenshtein(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+}
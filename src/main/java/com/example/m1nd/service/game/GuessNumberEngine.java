@@ -0,0 +1,44 @@
+package com.example.m1nd.service.game;
+
+import com.example.m1nd.model.AnswerEvaluation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * «Угадай число» целиком на месте: загадать число и проверить попытку можно без модели
+ */
+@Component
+public class GuessNumberEngine {
+
+    public static final int MIN = 1;
+    public static final int MAX = 10;
+
+    private static final List<String> INTROS = List.of(
+        "Я загадал число от " + MIN + " до " + MAX + ". Попробуй угадать.",
+        "Число от " + MIN + " до " + MAX + " загадано. Какое оно?",
+        "Загадал целое число от " + MIN + " до " + MAX + ". У тебя одна попытка!",
+        "Я задумал число от " + MIN + " до " + MAX + ". Напиши свой вариант.");
+
+    public Round start() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Round(random.nextInt(MIN, MAX + 1), INTROS.get(random.nextInt(INTROS.size())));
+    }
+
+    /**
+     * Очки за попытку: 100 за точное попадание, меньше — чем дальше от загаданного
+     */
+    public AnswerEvaluation check(int secret, int guessed) {
+        if (guessed == secret) {
+            return new AnswerEvaluation(100, "✅ Вы угадали! Загаданное число было " + secret + ".");
+        }
+        int distance = Math.abs(guessed - secret);
+        int score = Math.max(0, 50 - distance * 50 / (MAX - MIN));
+        String hint = distance == 1 ? " Совсем рядом!" : "";
+        return new AnswerEvaluation(score, "❌ Не угадали. Загаданное число было " + secret + "." + hint);
+    }
+
+    public record Round(int secret, String intro) {
+    }
+}
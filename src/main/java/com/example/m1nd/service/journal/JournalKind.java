@@ -0,0 +1,41 @@
+package com.example.m1nd.service.journal;
+
+/**
+ * Вид состояния в журнале. Код пишется в файл — менять существующие коды нельзя.
+ */
+public enum JournalKind {
+    /** Оплаченный, но ещё не заданный вопрос бизнесмену; за него заплачено, поэтому по возрасту не отбрасывается */
+    PAID_QUESTION(1, false),
+    /** Опрос после ответа: состояние ожидания, выбранная оценка, вопрос */
+    FEEDBACK_SURVEY(2, true),
+    /** Активная загадка или IQ-тест */
+    PUZZLE_SESSION(3, true),
+    /** Активная игра: «Угадай число» или викторина */
+    GAME_SESSION(4, true);
+
+    private final byte code;
+    private final boolean expiring;
+
+    JournalKind(int code, boolean expiring) {
+        this.code = (byte) code;
+        this.expiring = expiring;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    /** Отбрасывается ли состояние старше app.journal.max-age-hours при восстановлении */
+    public boolean expiring() {
+        return expiring;
+    }
+
+    public static JournalKind ofCode(byte code) {
+        for (JournalKind kind : values()) {
+            if (kind.code == code) {
+                return kind;
+            }
+        }
+        return null;
+    }
+}
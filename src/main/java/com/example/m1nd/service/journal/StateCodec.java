@@ -0,0 +1,113 @@
+package com.example.m1nd.service.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Простая бинарная запись состояния для журнала: int, nullable Integer и nullable String
+ * (длина + UTF-8). Порядок полей задаёт владелец состояния; при изменении формата он же
+ * отвечает за совместимость (проще всего — новое поле в конец).
+ */
+public final class StateCodec {
+
+    public static final byte[] EMPTY = new byte[0];
+
+    private StateCodec() {
+    }
+
+    public static Writer writer() {
+        return new Writer();
+    }
+
+    public static Reader reader(byte[] data) {
+        return new Reader(data);
+    }
+
+    public static final class Writer {
+
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        private Writer() {
+        }
+
+        public Writer putInt(int value) {
+            ensure(4);
+            ByteBuffer.wrap(buffer, size, 4).putInt(value);
+            size += 4;
+            return this;
+        }
+
+        public Writer putNullableInt(Integer value) {
+            putBoolean(value != null);
+            return value != null ? putInt(value) : this;
+        }
+
+        public Writer putBoolean(boolean value) {
+            ensure(1);
+            buffer[size++] = (byte) (value ? 1 : 0);
+            return this;
+        }
+
+        public Writer putString(String value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+            return this;
+        }
+
+        public byte[] toBytes() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Чтение в том же порядке. На повреждённых или старых данных бросает
+     * {@link java.nio.BufferUnderflowException} или {@link IllegalStateException}
+     */
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        private Reader(byte[] data) {
+            this.buffer = ByteBuffer.wrap(data);
+        }
+
+        public int getInt() {
+            return buffer.getInt();
+        }
+
+        public Integer getNullableInt() {
+            return getBoolean() ? buffer.getInt() : null;
+        }
+
+        public boolean getBoolean() {
+            return buffer.get() != 0;
+        }
+
+        public String getString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining()) {
+                throw new IllegalStateException("Длина строки больше записи: " + length);
+            }
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.example.m1nd.service.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Локальный журнал состояния сессий бота на случай рестарта или падения. Каждое изменение
+ * (положить/удалить значение по виду и пользователю) дописывается записью в отображённый в память
+ * файл-сегмент: [длина][CRC32C][операция, вид, пользователь, время, значение]. Запись — это копирование
+ * в память без системных вызовов; на диск сегмент сбрасывается раз в sync-interval.
+ * <p>
+ * Журнал разбит на поколения. При переходе на новое поколение (сегмент заполнен наполовину или
+ * целиком) текущее состояние пишется снимком snapshot-N.bin, после чего сегменты старше N удаляются.
+ * Восстановление — последний целый снимок плюс сегменты его поколения и новее; чтение сегмента
+ * останавливается на первой оборванной или битой записи. Всё укладывается в replay-budget-ms:
+ * что не успели прочитать, теряется, но старт бота не задерживается.
+ * <p>
+ * Если журнал недоступен (нет прав на каталог, диск), бот работает как раньше — только в памяти.
+ */
+@Slf4j
+@Component
+public class StateJournal {
+
+    private static final int LOG_MAGIC = 0x4D314A4C;      // "M1JL"
+    private static final int SNAPSHOT_MAGIC = 0x4D31534E; // "M1SN"
+    private static final int FORMAT_VERSION = 1;
+    /** magic, версия, поколение */
+    private static final int LOG_HEADER_BYTES = 16;
+    /** Длина и CRC записи */
+    private static final int RECORD_HEADER_BYTES = 8;
+    /** Операция, вид, пользователь, время */
+    private static final int RECORD_FIXED_BYTES = 18;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final Pattern LOG_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    @Value("${app.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.journal.dir:./data/journal}")
+    private String dir;
+
+    @Value("${app.journal.segment-mb:16}")
+    private int segmentMb;
+
+    @Value("${app.journal.replay-budget-ms:5000}")
+    private long replayBudgetMs;
+
+    @Value("${app.journal.max-age-hours:72}")
+    private long maxAgeHours;
+
+    private record Key(JournalKind kind, long userId) {
+    }
+
+    private record Entry(byte[] value, long updatedAt) {
+    }
+
+    /** Текущее состояние: из него пишутся снимки и отдаётся восстановленное владельцам */
+    private final Map<Key, Entry> state = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final ExecutorService snapshotWorker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "state-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Path directory;
+    /** Текущий сегмент и его поколение; меняются под writeLock */
+    private MappedByteBuffer segment;
+    private long generation;
+    private volatile boolean active;
+    private volatile boolean dirty;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Журнал состояния сессий выключен (app.journal.enabled=false)");
+            return;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            directory = Path.of(dir);
+            Files.createDirectories(directory);
+            Recovery recovery = recover();
+
+            synchronized (writeLock) {
+                generation = recovery.lastGeneration + 1;
+                openSegment();
+            }
+            // Сразу сворачиваем восстановленное в снимок: следующий старт прочитает один файл
+            writeSnapshot(generation, new HashMap<>(state));
+            deleteOlderThan(generation);
+            active = true;
+
+            log.info("Журнал состояния восстановлен за {} мс: {} записей (снимок поколения {}, сегментов {}, "
+                    + "битых хвостов {}, устаревших {}), поколение {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), state.size(),
+                recovery.snapshotGeneration, recovery.segments, recovery.tornTails, recovery.stale, generation);
+            if (recovery.outOfBudget) {
+                log.warn("Журнал состояния не уложился в {} мс: прочитано {} изменений, остальные потеряны",
+                    replayBudgetMs, recovery.records);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Журнал состояния недоступен ({}), сессии не переживут рестарт", dir, e);
+        }
+    }
+
+    /**
+     * Восстановленные значения вида kind по пользователям. Вызывать при старте владельца состояния
+     */
+    public Map<Long, byte[]> restored(JournalKind kind) {
+        Map<Long, byte[]> result = new HashMap<>();
+        state.forEach((key, entry) -> {
+            if (key.kind() == kind) {
+                result.put(key.userId(), entry.value());
+            }
+        });
+        return result;
+    }
+
+    public void put(JournalKind kind, long userId, byte[] value) {
+        append(OP_PUT, kind, userId, value);
+    }
+
+    public void remove(JournalKind kind, long userId) {
+        append(OP_REMOVE, kind, userId, StateCodec.EMPTY);
+    }
+
+    /**
+     * Сбрасывает сегмент на диск и, если он заполнен больше чем наполовину, переходит на новое поколение
+     */
+    @Scheduled(fixedDelayString = "${app.journal.sync-interval-ms:1000}")
+    public void sync() {
+        if (!active) {
+            return;
+        }
+        MappedByteBuffer current;
+        boolean halfFull;
+        synchronized (writeLock) {
+            current = segment;
+            halfFull = segment.position() > segment.capacity() / 2;
+        }
+        if (dirty) {
+            dirty = false;
+            current.force();
+        }
+        if (halfFull) {
+            synchronized (writeLock) {
+                if (segment == current) {
+                    rotate();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sync();
+        snapshotWorker.shutdown();
+        try {
+            if (!snapshotWorker.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Снимок журнала состояния не дописан за 10 с");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(byte op, JournalKind kind, long userId, byte[] value) {
+        if (!active) {
+            return;
+        }
+        if (RECORD_HEADER_BYTES + RECORD_FIXED_BYTES + value.length > segmentBytes() - LOG_HEADER_BYTES) {
+            log.warn("Состояние {} пользователя {} не помещается в сегмент журнала ({} байт), не сохраняется",
+                kind, userId, value.length);
+            op = OP_REMOVE;
+            value = StateCodec.EMPTY;
+        }
+        long now = System.currentTimeMillis();
+        int length = RECORD_FIXED_BYTES + value.length;
+        ByteBuffer payload = ByteBuffer.allocate(length)
+            .put(op).put(kind.code()).putLong(userId).putLong(now).put(value)
+            .flip();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        Key key = new Key(kind, userId);
+        synchronized (writeLock) {
+            if (!active) {
+                return;
+            }
+            if (RECORD_HEADER_BYTES + length > segment.remaining()) {
+                rotate();
+                if (!active) {
+                    return;
+                }
+            }
+            segment.putInt(length).putInt((int) crc.getValue()).put(payload);
+            if (op == OP_PUT) {
+                state.put(key, new Entry(value, now));
+            } else {
+                state.remove(key);
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Переход на новое поколение: новый сегмент и снимок состояния на момент перехода в фоне.
+     * Вызывать под writeLock
+     */
+    private void rotate() {
+        MappedByteBuffer previous = segment;
+        try {
+            generation++;
+            openSegment();
+        } catch (IOException e) {
+            active = false;
+            log.error("Не удалось открыть новый сегмент журнала состояния, журнал отключён до рестарта", e);
+            return;
+        }
+        long snapshotGeneration = generation;
+        Map<Key, Entry> copy = new HashMap<>(state);
+        snapshotWorker.execute(() -> {
+            try {
+                previous.force();
+                writeSnapshot(snapshotGeneration, copy);
+                deleteOlderThan(snapshotGeneration);
+                log.debug("Снимок журнала состояния поколения {}: {} записей", snapshotGeneration, copy.size());
+            } catch (IOException | RuntimeException e) {
+                // Старые сегменты не удалены, восстановление пойдёт по ним
+                log.error("Не удалось записать снимок журнала состояния поколения {}", snapshotGeneration, e);
+            }
+        });
+    }
+
+    /**
+     * Вызывать под writeLock
+     */
+    private void openSegment() throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile(generation), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes());
+        }
+        segment.putInt(LOG_MAGIC).putInt(FORMAT_VERSION).putLong(generation);
+    }
+
+    private Recovery recover() throws IOException {
+        Recovery recovery = new Recovery();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replayBudgetMs);
+
+        List<Long> snapshots = generations(SNAPSHOT_FILE);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path file = snapshotFile(snapshots.get(i));
+            try {
+                state.putAll(readSnapshot(file));
+                recovery.snapshotGeneration = snapshots.get(i);
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Снимок журнала состояния {} повреждён ({}), беру предыдущий", file.getFileName(), e.toString());
+            }
+        }
+        recovery.lastGeneration = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+
+        for (long segmentGeneration : generations(LOG_FILE)) {
+            recovery.lastGeneration = Math.max(recovery.lastGeneration, segmentGeneration);
+            if (segmentGeneration < recovery.snapshotGeneration || recovery.outOfBudget) {
+                continue;
+            }
+            replaySegment(logFile(segmentGeneration), deadline, recovery);
+            recovery.segments++;
+        }
+
+        long staleBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(maxAgeHours);
+        int before = state.size();
+        state.entrySet().removeIf(entry -> entry.getKey().kind().expiring() && entry.getValue().updatedAt() < staleBefore);
+        recovery.stale = before - state.size();
+        return recovery;
+    }
+
+    private void replaySegment(Path file, long deadline, Recovery recovery) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < LOG_HEADER_BYTES) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != LOG_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.warn("Сегмент журнала состояния {} в неизвестном формате, пропущен", file.getFileName());
+                return;
+            }
+            buffer.getLong();
+
+            CRC32C crc = new CRC32C();
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                if ((recovery.records & 1023) == 0 && System.nanoTime() > deadline) {
+                    recovery.outOfBudget = true;
+                    return;
+                }
+                int length = buffer.getInt();
+                if (length == 0) {
+                    // Дальше сегмент ещё не записывался
+                    return;
+                }
+                int expectedCrc = buffer.getInt();
+                if (length < RECORD_FIXED_BYTES || length > buffer.remaining()) {
+                    recovery.tornTails++;
+                    return;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    recovery.tornTails++;
+                    return;
+                }
+                buffer.position(buffer.position() + length);
+                apply(payload);
+                recovery.records++;
+            }
+        }
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte op = payload.get();
+        JournalKind kind = JournalKind.ofCode(payload.get());
+        long userId = payload.getLong();
+        long updatedAt = payload.getLong();
+        if (kind == null) {
+            return;
+        }
+        Key key = new Key(kind, userId);
+        if (op == OP_PUT) {
+            byte[] value = new byte[payload.remaining()];
+            payload.get(value);
+            state.put(key, new Entry(value, updatedAt));
+        } else {
+            state.remove(key);
+        }
+    }
+
+    /**
+     * Снимок пишется во временный файл, сбрасывается на диск и только потом переименовывается
+     */
+    private void writeSnapshot(long snapshotGeneration, Map<Key, Entry> entries) throws IOException {
+        Path target = snapshotFile(snapshotGeneration);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Channels.newOutputStream(channel), crc), 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getKey().kind().code());
+                out.writeLong(entry.getKey().userId());
+                out.writeLong(entry.getValue().updatedAt());
+                out.writeInt(entry.getValue().value().length);
+                out.write(entry.getValue().value());
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Map<Key, Entry> readSnapshot(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 24) {
+            throw new IOException("снимок короче заголовка");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt(data.length - 4) != (int) crc.getValue()) {
+            throw new IOException("не сходится CRC");
+        }
+        if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("неизвестный формат");
+        }
+        buffer.getLong();
+        int count = buffer.getInt();
+        Map<Key, Entry> entries = new HashMap<>(Math.max(16, count * 4 / 3));
+        for (int i = 0; i < count; i++) {
+            JournalKind kind = JournalKind.ofCode(buffer.get());
+            long userId = buffer.getLong();
+            long updatedAt = buffer.getLong();
+            byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            if (kind != null) {
+                entries.put(new Key(kind, userId), new Entry(value, updatedAt));
+            }
+        }
+        return entries;
+    }
+
+    private void deleteOlderThan(long keepGeneration) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                // Недописанные снимки (.tmp) удаляются вместе со своим поколением
+                String name = file.getFileName().toString().replaceFirst("\\.tmp$", "");
+                long fileGeneration = Math.max(generationOf(LOG_FILE, name), generationOf(SNAPSHOT_FILE, name));
+                if (fileGeneration >= 0 && fileGeneration < keepGeneration) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private List<Long> generations(Pattern pattern) throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                long fileGeneration = generationOf(pattern, file.getFileName().toString());
+                if (fileGeneration >= 0) {
+                    result.add(fileGeneration);
+                }
+            }
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    private static long generationOf(Pattern pattern, String name) {
+        Matcher matcher = pattern.matcher(name);
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private Path logFile(long fileGeneration) {
+        return directory.resolve(String.format("journal-%016d.log", fileGeneration));
+    }
+
+    private Path snapshotFile(long fileGeneration) {
+        return directory.resolve(String.format("snapshot-%016d.bin", fileGeneration));
+    }
+
+    private long segmentBytes() {
+        return (long) segmentMb * 1024 * 1024;
+    }
+
+    private static class Recovery {
+        long snapshotGeneration;
+        long lastGeneration;
+        int segments;
+        int records;
+        int tornTails;
+        int stale;
+        boolean outOfBudget;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.m1nd.service.llm;
+
+/**
+ * Адаптивный лимит параллельных запросов к провайдеру в стиле AIMD.
+ * Успешный быстрый ответ увеличивает лимит на 1/limit (≈ +1 за «окно»),
+ * медленный ответ или 429 уменьшают лимит мультипликативно.
+ * Не потокобезопасен сам по себе: вызывающий код держит блокировку.
+ */
+class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMs;
+    private final double backoffRatio;
+
+    private double limit;
+    /** Сглаженная задержка ответа (EWMA), используется для оценки времени ожидания */
+    private double smoothedLatencyMs;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                             long latencyThresholdMs, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.smoothedLatencyMs = latencyThresholdMs / 2d;
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    double getSmoothedLatencyMs() {
+        return smoothedLatencyMs;
+    }
+
+    /**
+     * Учитывает завершение запроса.
+     * @param latencyMs время выполнения запроса
+     * @param overloaded провайдер ответил 429 (или аналогичным сигналом перегрузки)
+     */
+    void onSample(long latencyMs, boolean overloaded) {
+        smoothedLatencyMs = smoothedLatencyMs * 0.8 + latencyMs * 0.2;
+
+        if (overloaded || latencyMs > latencyThresholdMs) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else {
+            limit = Math.min(maxLimit, limit + 1d / limit);
+        }
+    }
+}
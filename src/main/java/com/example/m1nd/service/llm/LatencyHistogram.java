@@ -0,0 +1,74 @@
+package com.example.m1nd.service.llm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с фиксированными границами корзин.
+ * Запись без блокировок, перцентили считаются по верхней границе корзины.
+ */
+class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = {
+        25, 50, 100, 250, 500, 1_000, 2_000, 3_000, 5_000, 8_000,
+        12_000, 20_000, 30_000, 45_000, 60_000, 90_000, 120_000, Long.MAX_VALUE
+    };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length);
+
+    void record(long latencyMs) {
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            if (latencyMs <= BOUNDS_MS[i]) {
+                counts.incrementAndGet(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Снимает накопленные значения и обнуляет гистограмму
+     */
+    Snapshot snapshotAndReset() {
+        long[] values = new long[BOUNDS_MS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(values);
+    }
+
+    static class Snapshot {
+        private final long[] values;
+        private final long total;
+
+        Snapshot(long[] values) {
+            this.values = values;
+            long sum = 0;
+            for (long v : values) {
+                sum += v;
+            }
+            this.total = sum;
+        }
+
+        long count() {
+            return total;
+        }
+
+        /**
+         * @param quantile от 0 до 1, например 0.99
+         * @return верхняя граница корзины в мс (для последней корзины — «> 120 с» как -1)
+         */
+        long percentile(double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < values.length; i++) {
+                seen += values[i];
+                if (seen >= rank) {
+                    return BOUNDS_MS[i] == Long.MAX_VALUE ? -1 : BOUNDS_MS[i];
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.example.m1nd.service.llm;
+
+import com.example.m1nd.util.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Контроль допуска запросов к LLM-провайдерам.
+ * <p>
+ * На каждого провайдера — адаптивный лимит параллельных запросов (AIMD) и очереди ожидания по полосам
+ * {@link LlmLane}. Между полосами — строгий приоритет, внутри полосы — справедливая очередь между
+ * пользователями (по виртуальному времени завершения), чтобы один активный пользователь не занимал всю ёмкость.
+ * Фоновая полоса получает только свободную ёмкость за вычетом резерва под интерактив.
+ * <p>
+ * На каждого пользователя — token bucket. Если запрос не может быть выполнен в разумное время,
+ * он сразу отклоняется с {@link LlmOverloadedException}, а не висит в очереди до таймаута.
+ */
+@Slf4j
+@Service
+public class LlmAdmissionService {
+
+    @Value("${llm.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.admission.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${llm.admission.max-queue-wait-seconds:20}")
+    private int maxQueueWaitSeconds;
+
+    @Value("${llm.admission.user-rate-per-minute:6}")
+    private double userRatePerMinute;
+
+    @Value("${llm.admission.user-burst:3}")
+    private int userBurst;
+
+    @Value("${llm.admission.limit.initial:8}")
+    private int initialLimit;
+
+    @Value("${llm.admission.limit.min:2}")
+    private int minLimit;
+
+    @Value("${llm.admission.limit.max:64}")
+    private int maxLimit;
+
+    @Value("${llm.admission.limit.latency-threshold-ms:30000}")
+    private long latencyThresholdMs;
+
+    @Value("${llm.admission.limit.backoff-ratio:0.7}")
+    private double backoffRatio;
+
+    @Value("${llm.admission.background.queue-capacity:500}")
+    private int backgroundQueueCapacity;
+
+    @Value("${llm.admission.background.max-queue-wait-seconds:900}")
+    private int backgroundMaxQueueWaitSeconds;
+
+    @Value("${llm.admission.background.reserved-share:0.25}")
+    private double backgroundReservedShare;
+
+    private final Map<String, ProviderGate> gates = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<LlmLane, LaneMetrics> laneMetrics = new EnumMap<>(LlmLane.class);
+
+    /** Отчёт по полосам за последний завершённый интервал */
+    private volatile String lastMetricsReport = "";
+
+    public LlmAdmissionService() {
+        for (LlmLane lane : LlmLane.values()) {
+            laneMetrics.put(lane, new LaneMetrics());
+        }
+    }
+
+    /**
+     * Выполняет вызов к провайдеру с учётом лимитов.
+     * @param provider имя провайдера (отдельный лимит и очередь на каждого)
+     * @param lane полоса приоритета
+     * @param userId пользователь, для которого выполняется запрос (null — без пользовательского лимита)
+     * @param call ленивый вызов провайдера
+     */
+    public <T> Mono<T> admit(String provider, LlmLane lane, Long userId, Supplier<Mono<T>> call) {
+        return admit(provider, lane, userId, true, call);
+    }
+
+    /**
+     * Повтор того же запроса пользователя у другого провайдера (например, после отказа быстрой модели).
+     * Токен пользователя уже списан при первой попытке, поэтому повторно он не берётся;
+     * лимит и очередь провайдера при этом действуют как обычно
+     */
+    public <T> Mono<T> admitRetry(String provider, LlmLane lane, Long userId, Supplier<Mono<T>> call) {
+        return admit(provider, lane, userId, false, call);
+    }
+
+    private <T> Mono<T> admit(String provider, LlmLane lane, Long userId, boolean chargeUser, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+
+        return Mono.defer(() -> {
+            LaneMetrics metrics = laneMetrics.get(lane);
+
+            if (chargeUser && userId != null && lane != LlmLane.BACKGROUND) {
+                TokenBucket bucket = userBuckets.computeIfAbsent(userId,
+                    id -> new TokenBucket(userBurst, userRatePerMinute / 60d));
+                long waitNanos = bucket.tryConsume();
+                if (waitNanos > 0) {
+                    long retryAfter = toSeconds(waitNanos);
+                    metrics.rejected.increment();
+                    log.info("Пользователь {} превысил лимит запросов к LLM, повтор через {} с", userId, retryAfter);
+                    return Mono.error(new LlmOverloadedException("Превышен лимит запросов пользователя", retryAfter));
+                }
+            }
+
+            ProviderGate gate = gates.computeIfAbsent(provider, ProviderGate::new);
+            long admittedAt = System.nanoTime();
+            return gate.acquire(lane, userId)
+                .doOnError(LlmOverloadedException.class, e -> metrics.rejected.increment())
+                .flatMap(permit -> {
+                    permit.markStarted();
+                    metrics.queueWait.record(TimeUnit.NANOSECONDS.toMillis(permit.startedAt - admittedAt));
+                    return Mono.defer(call)
+                        .doOnError(error -> {
+                            if (isOverloadSignal(error)) {
+                                permit.markOverloaded();
+                            }
+                        })
+                        .doFinally(signal -> {
+                            permit.release();
+                            metrics.total.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - admittedAt));
+                        });
+                });
+        });
+    }
+
+    /**
+     * Выполняет вызов в интерактивной полосе
+     */
+    public <T> Mono<T> admit(String provider, Long userId, Supplier<Mono<T>> call) {
+        return admit(provider, LlmLane.INTERACTIVE, userId, call);
+    }
+
+    /**
+     * Занят ли провайдер живыми запросами: кто-то ждёт в интерактивной или меню-полосе,
+     * либо фоновой полосе уже не осталось свободной ёмкости
+     */
+    public boolean isBusy(String provider) {
+        ProviderGate gate = gates.get(provider);
+        return gate != null && gate.isBusy();
+    }
+
+    /**
+     * Текстовый отчёт о задержках по полосам и текущих лимитах провайдеров
+     */
+    public String formatMetrics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("🚦 Нагрузка на LLM:\n");
+        gates.values().forEach(gate -> sb.append(gate.describe()).append("\n"));
+        if (!lastMetricsReport.isEmpty()) {
+            sb.append(lastMetricsReport);
+        } else {
+            sb.append("  • Задержки по полосам ещё не собраны\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Раз в 5 минут снимает гистограммы задержек по полосам, пишет их в лог и сохраняет для /stats
+     */
+    @Scheduled(fixedDelay = 5, initialDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void reportLaneMetrics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("  Задержки за 5 минут (p50 / p99, мс):\n");
+        for (LlmLane lane : LlmLane.values()) {
+            LaneMetrics metrics = laneMetrics.get(lane);
+            LatencyHistogram.Snapshot total = metrics.total.snapshotAndReset();
+            LatencyHistogram.Snapshot wait = metrics.queueWait.snapshotAndReset();
+            long rejected = metrics.rejected.sumThenReset();
+            sb.append("  • ").append(lane.getTitle()).append(": ")
+                .append(total.count()).append(" запр., всего ")
+                .append(formatMs(total.percentile(0.5))).append(" / ").append(formatMs(total.percentile(0.99)))
+                .append(", очередь ")
+                .append(formatMs(wait.percentile(0.5))).append(" / ").append(formatMs(wait.percentile(0.99)))
+                .append(", отказов ").append(rejected).append("\n");
+        }
+        lastMetricsReport = sb.toString();
+        log.info("Метрики полос LLM:\n{}", lastMetricsReport);
+    }
+
+    /**
+     * Убирает из памяти полностью восстановившиеся token bucket'ы неактивных пользователей
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void cleanupIdleBuckets() {
+        int before = userBuckets.size();
+        userBuckets.values().removeIf(TokenBucket::isFull);
+        log.debug("Очистка лимитов пользователей LLM: было {}, осталось {}", before, userBuckets.size());
+    }
+
+    private static String formatMs(long ms) {
+        return ms < 0 ? ">120000" : String.valueOf(ms);
+    }
+
+    private static boolean isOverloadSignal(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof WebClientResponseException ex && ex.getStatusCode().value() == 429) {
+                return true;
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return false;
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, (long) Math.ceil(nanos / 1_000_000_000d));
+    }
+
+    private static class LaneMetrics {
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LongAdder rejected = new LongAdder();
+    }
+
+    /**
+     * Лимит и очереди ожидания одного провайдера
+     */
+    private class ProviderGate {
+
+        private final String provider;
+        private final AdaptiveConcurrencyLimit limit;
+        private final Map<LlmLane, LaneQueue> queues = new EnumMap<>(LlmLane.class);
+        private int inFlight;
+        private long sequence;
+
+        ProviderGate(String provider) {
+            this.provider = provider;
+            this.limit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, latencyThresholdMs, backoffRatio);
+            for (LlmLane lane : LlmLane.values()) {
+                queues.put(lane, new LaneQueue());
+            }
+        }
+
+        Mono<Permit> acquire(LlmLane lane, Long userId) {
+            boolean background = lane == LlmLane.BACKGROUND;
+            int waitSeconds = background ? backgroundMaxQueueWaitSeconds : maxQueueWaitSeconds;
+
+            return Mono.<Permit>create(sink -> {
+                Waiter waiter = null;
+                long rejectRetryAfter = 0;
+                List<Waiter> toGrant;
+
+                synchronized (this) {
+                    if (isQueueFull(lane)) {
+                        rejectRetryAfter = estimateWaitSeconds(queuedAhead(lane) + 1);
+                        toGrant = List.of();
+                    } else {
+                        waiter = queues.get(lane).enqueue(sink, userId, sequence++);
+                        toGrant = dispatch();
+                    }
+                }
+
+                if (waiter == null) {
+                    log.warn("Очередь {} к провайдеру {} переполнена, запрос отклонён", lane, provider);
+                    sink.error(new LlmOverloadedException("Очередь к LLM переполнена", rejectRetryAfter));
+                    return;
+                }
+                Waiter queued = waiter;
+                sink.onCancel(() -> cancel(lane, queued));
+                grant(toGrant);
+            }).timeout(Duration.ofSeconds(waitSeconds), Mono.defer(() -> {
+                long retryAfter;
+                synchronized (this) {
+                    retryAfter = estimateWaitSeconds(queuedAhead(lane) + 1);
+                }
+                log.warn("Запрос полосы {} к провайдеру {} не дождался очереди за {} с", lane, provider, waitSeconds);
+                return Mono.error(new LlmOverloadedException("Превышено время ожидания в очереди к LLM", retryAfter));
+            }));
+        }
+
+        synchronized String describe() {
+            return "  • " + provider + ": выполняется " + inFlight + " из " + limit.getLimit()
+                + ", в очереди " + queues.get(LlmLane.INTERACTIVE).size()
+                + " / " + queues.get(LlmLane.MENU).size()
+                + " / " + queues.get(LlmLane.BACKGROUND).size();
+        }
+
+        synchronized boolean isBusy() {
+            return !queues.get(LlmLane.INTERACTIVE).isEmpty()
+                || !queues.get(LlmLane.MENU).isEmpty()
+                || inFlight >= backgroundCapacity();
+        }
+
+        private boolean isQueueFull(LlmLane lane) {
+            if (lane == LlmLane.BACKGROUND) {
+                return queues.get(lane).size() >= backgroundQueueCapacity;
+            }
+            return queues.get(LlmLane.INTERACTIVE).size() + queues.get(LlmLane.MENU).size() >= queueCapacity;
+        }
+
+        /**
+         * Сколько запросов будет запущено раньше нового запроса этой полосы
+         */
+        private int queuedAhead(LlmLane lane) {
+            int ahead = 0;
+            for (LlmLane other : LlmLane.values()) {
+                ahead += queues.get(other).size();
+                if (other == lane) {
+                    break;
+                }
+            }
+            return ahead;
+        }
+
+        /**
+         * Ёмкость, доступная фоновой полосе: лимит минус резерв под интерактивные запросы
+         */
+        private int backgroundCapacity() {
+            return Math.max(1, (int) Math.floor(limit.getLimit() * (1d - backgroundReservedShare)));
+        }
+
+        /**
+         * Выбирает запросы, которые можно запустить. Вызывается под блокировкой,
+         * сами разрешения выдаются вне её через {@link #grant(List)}.
+         */
+        private List<Waiter> dispatch() {
+            List<Waiter> toGrant = new ArrayList<>();
+            while (true) {
+                Waiter next = null;
+                for (LlmLane lane : LlmLane.values()) {
+                    LaneQueue queue = queues.get(lane);
+                    if (queue.isEmpty()) {
+                        continue;
+                    }
+                    int capacity = lane == LlmLane.BACKGROUND ? backgroundCapacity() : limit.getLimit();
+                    if (inFlight < capacity) {
+                        next = queue.poll();
+                    }
+                    // Строгий приоритет: низшие полосы не обгоняют ожидающие высшие
+                    break;
+                }
+                if (next == null) {
+                    return toGrant;
+                }
+                if (next.claimed.compareAndSet(false, true)) {
+                    inFlight++;
+                    next.permit = new Permit(this);
+                    toGrant.add(next);
+                }
+            }
+        }
+
+        private void grant(List<Waiter> toGrant) {
+            for (Waiter waiter : toGrant) {
+                waiter.sink.success(waiter.permit);
+            }
+        }
+
+        private void cancel(LlmLane lane, Waiter waiter) {
+            Permit granted;
+            // Под той же блокировкой, что и dispatch: там claimed и permit выставляются вместе,
+            // так что если захватить не удалось, разрешение уже точно создано
+            synchronized (this) {
+                if (waiter.claimed.compareAndSet(false, true)) {
+                    queues.get(lane).remove(waiter);
+                    return;
+                }
+                granted = waiter.permit;
+            }
+            // Разрешение уже выдано, но подписчик отменился — возвращаем его
+            granted.release();
+        }
+
+        private void onComplete(long latencyMs, boolean overloaded, boolean started) {
+            List<Waiter> toGrant;
+            synchronized (this) {
+                inFlight--;
+                if (started) {
+                    int before = limit.getLimit();
+                    limit.onSample(latencyMs, overloaded);
+                    if (before != limit.getLimit()) {
+                        log.info("Лимит параллельных запросов к {} изменён: {} -> {} (задержка {} мс, 429: {})",
+                            provider, before, limit.getLimit(), latencyMs, overloaded);
+                    }
+                }
+                toGrant = dispatch();
+            }
+            grant(toGrant);
+        }
+
+        /**
+         * Оценка времени ожидания: сколько «волн» запросов нужно пропустить перед нами
+         */
+        private long estimateWaitSeconds(int position) {
+            double waves = Math.ceil((double) position / Math.max(1, limit.getLimit()));
+            return Math.max(1, (long) Math.ceil(waves * limit.getSmoothedLatencyMs() / 1000d));
+        }
+    }
+
+    /**
+     * Справедливая очередь одной полосы: у каждого пользователя свой поток, запросы упорядочены
+     * по виртуальному времени завершения. Пользователь с длинной очередью получает теги всё дальше
+     * в будущем, и новый пользователь встаёт перед его хвостом.
+     */
+    private static class LaneQueue {
+
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.sequence));
+        private final Map<Long, Flow> flows = new HashMap<>();
+        private double virtualTime;
+
+        Waiter enqueue(MonoSink<Permit> sink, Long userId, long sequence) {
+            long flowKey = userId != null ? userId : 0L;
+            Flow flow = flows.computeIfAbsent(flowKey, key -> new Flow());
+            double start = Math.max(virtualTime, flow.lastFinish);
+            flow.lastFinish = start + 1d;
+            flow.queued++;
+
+            Waiter waiter = new Waiter(sink, flowKey, flow.lastFinish, sequence);
+            waiters.add(waiter);
+            return waiter;
+        }
+
+        Waiter poll() {
+            Waiter waiter = waiters.poll();
+            if (waiter != null) {
+                virtualTime = Math.max(virtualTime, waiter.finishTag - 1d);
+                release(waiter);
+            }
+            return waiter;
+        }
+
+        void remove(Waiter waiter) {
+            if (waiters.remove(waiter)) {
+                release(waiter);
+            }
+        }
+
+        boolean isEmpty() {
+            return waiters.isEmpty();
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        private void release(Waiter waiter) {
+            Flow flow = flows.get(waiter.flowKey);
+            if (flow != null && --flow.queued <= 0) {
+                flows.remove(waiter.flowKey);
+            }
+        }
+    }
+
+    private static class Flow {
+        /** Виртуальное время завершения последнего запроса пользователя */
+        private double lastFinish;
+        private int queued;
+    }
+
+    private static class Waiter {
+        private final MonoSink<Permit> sink;
+        private final long flowKey;
+        private final double finishTag;
+        private final long sequence;
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink, long flowKey, double finishTag, long sequence) {
+            this.sink = sink;
+            this.flowKey = flowKey;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Разрешение на один запрос. Освобождение идемпотентно.
+     */
+    private static class Permit {
+        private final ProviderGate gate;
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile boolean overloaded;
+        private volatile boolean started;
+
+        Permit(ProviderGate gate) {
+            this.gate = gate;
+        }
+
+        void markStarted() {
+            started = true;
+        }
+
+        void markOverloaded() {
+            overloaded = true;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                gate.onComplete(latencyMs, overloaded, started);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.m1nd.service.llm;
+
+/**
+ * Полосы приоритета запросов к LLM.
+ * Порядок объявления — строгий приоритет: пока есть ожидающие запросы более высокой полосы,
+ * запросы низших полос не запускаются.
+ */
+public enum LlmLane {
+
+    /** Вопросы пользователя в чате (и платные вопросы, если они пойдут через LLM) */
+    INTERACTIVE("интерактив"),
+
+    /** Контент меню: факты, идеи, мотивация, игры, головоломки */
+    MENU("меню"),
+
+    /** Фоновая работа: сводки, предзагрузка. Использует только свободную ёмкость */
+    BACKGROUND("фон");
+
+    private final String title;
+
+    LlmLane(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
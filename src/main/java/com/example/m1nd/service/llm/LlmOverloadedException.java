@@ -0,0 +1,19 @@
+package com.example.m1nd.service.llm;
+
+/**
+ * Запрос к LLM отклонён контролем нагрузки (лимит пользователя или переполнена очередь).
+ * Содержит подсказку, через сколько секунд имеет смысл повторить запрос.
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LlmOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
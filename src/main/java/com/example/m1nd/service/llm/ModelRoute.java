@@ -0,0 +1,28 @@
+package com.example.m1nd.service.llm;
+
+/**
+ * Решение роутера: какой уровень модели использовать и сколько токенов разрешить в ответе
+ */
+public class ModelRoute {
+
+    private final ModelTier tier;
+    private final int maxTokens;
+
+    public ModelRoute(ModelTier tier, int maxTokens) {
+        this.tier = tier;
+        this.maxTokens = maxTokens;
+    }
+
+    public ModelTier getTier() {
+        return tier;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    @Override
+    public String toString() {
+        return tier + "/" + maxTokens;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.m1nd.service.llm;
+
+/**
+ * Уровень модели для запроса
+ */
+public enum ModelTier {
+
+    /** Быстрая небольшая модель (Groq llama-3.1-8b) для коротких генераций меню */
+    FAST,
+
+    /** Основная модель (агент YandexGPT) для открытых вопросов пользователя */
+    STRONG;
+
+    /**
+     * Разбирает значение из БД (без учёта регистра). Неизвестные и пустые значения — null
+     */
+    public static ModelTier parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return ModelTier.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
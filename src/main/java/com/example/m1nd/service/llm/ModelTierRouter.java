@@ -0,0 +1,86 @@
+package com.example.m1nd.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Выбирает уровень модели и лимит токенов по типу и длине запроса.
+ * Короткие генерации меню идут в быструю модель с жёстким max_tokens, длинные — в основную.
+ * Открытые вопросы пользователя в чате роутер не проходят и всегда идут в основную модель.
+ * Настройки конкретной темы или игры (model_tier, max_tokens) имеют приоритет.
+ */
+@Slf4j
+@Service
+public class ModelTierRouter {
+
+    /** Лимит длины текстового сообщения Telegram */
+    private static final int TELEGRAM_MESSAGE_LIMIT = 4096;
+
+    public enum RequestKind {
+        /** Короткий контент меню: факт, идея, мотивация */
+        MENU_CONTENT,
+        /** Генератор для игр и головоломок со структурированным ответом */
+        GENERATOR
+    }
+
+    @Value("${llm.routing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.routing.fast-max-prompt-chars:1200}")
+    private int fastMaxPromptChars;
+
+    @Value("${llm.routing.chars-per-token:2.5}")
+    private double charsPerToken;
+
+    @Value("${llm.routing.menu-max-tokens:400}")
+    private int menuMaxTokens;
+
+    @Value("${llm.routing.generator-max-tokens:500}")
+    private int generatorMaxTokens;
+
+    /**
+     * @param kind тип запроса
+     * @param prompt текст промпта (его длина влияет на выбор уровня)
+     * @param tierOverride уровень из настроек темы/игры (может быть null)
+     * @param maxTokensOverride лимит токенов из настроек темы/игры (может быть null)
+     */
+    public ModelRoute route(RequestKind kind, String prompt, String tierOverride, Integer maxTokensOverride) {
+        ModelTier tier = ModelTier.parse(tierOverride);
+        if (tier == null) {
+            tier = defaultTier(prompt);
+        }
+
+        int maxTokens = maxTokensOverride != null && maxTokensOverride > 0
+            ? maxTokensOverride
+            : defaultMaxTokens(kind);
+        // Контент меню отправляется одним сообщением, длиннее лимита Telegram он быть не должен
+        maxTokens = Math.min(maxTokens, telegramTokenCap());
+
+        ModelRoute route = new ModelRoute(tier, maxTokens);
+        log.debug("Маршрут запроса {} (длина промпта {}): {}", kind, prompt != null ? prompt.length() : 0, route);
+        return route;
+    }
+
+    private ModelTier defaultTier(String prompt) {
+        if (!enabled) {
+            return ModelTier.STRONG;
+        }
+        int length = prompt != null ? prompt.length() : 0;
+        return length > fastMaxPromptChars ? ModelTier.STRONG : ModelTier.FAST;
+    }
+
+    private int defaultMaxTokens(RequestKind kind) {
+        return switch (kind) {
+            case MENU_CONTENT -> menuMaxTokens;
+            case GENERATOR -> generatorMaxTokens;
+        };
+    }
+
+    /**
+     * Максимум токенов, который ещё помещается в одно сообщение Telegram
+     */
+    private int telegramTokenCap() {
+        return (int) Math.floor(TELEGRAM_MESSAGE_LIMIT / Math.max(1d, charsPerToken));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.m1nd.util;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Результат, который начал вычисляться заранее: источник подписывается сразу при создании,
+ * а забрать результат можно позже через {@link #get()} — уже готовым или дождавшись.
+ * {@link #cancel()} отменяет подписку (для WebClient это обрыв запроса), ожидающие получают
+ * {@link CancellationException}.
+ */
+public final class Prefetched<T> {
+
+    private final Sinks.One<T> result = Sinks.one();
+    private final Disposable subscription;
+
+    private Prefetched(Mono<T> source) {
+        this.subscription = source.subscribe(
+            result::tryEmitValue,
+            result::tryEmitError,
+            result::tryEmitEmpty);
+    }
+
+    public static <T> Prefetched<T> start(Mono<T> source) {
+        return new Prefetched<>(source);
+    }
+
+    public Mono<T> get() {
+        return result.asMono();
+    }
+
+    public void cancel() {
+        subscription.dispose();
+        result.tryEmitError(new CancellationException("Предзагрузка отменена"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.m1nd.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кольцевой буфер фиксированной ёмкости без блокировок для последних элементов со сквозным номером.
+ * Запись O(1): писатель атомарно берёт следующий номер и кладёт элемент в слот номер % ёмкость,
+ * вытесняя самый старый. Слот меняется только CAS'ом на элемент с большим номером, поэтому медленный
+ * писатель не затрёт более новый элемент, успевший занять тот же слот. Чтение — неизменяемый снимок: непрерывный по номерам участок окна,
+ * обрывающийся на первом ещё не опубликованном элементе. Номер хранится в самом элементе,
+ * поэтому читатель отличает свой элемент от вытесненного или не дописанного.
+ */
+public class SequencedRingBuffer<T> {
+
+    private final int capacity;
+    private final AtomicReferenceArray<T> slots;
+    private final ToLongFunction<T> seqOf;
+    /** Номер последнего выданного элемента */
+    private final AtomicLong lastSeq = new AtomicLong();
+    /** Элементы с номером не больше этого считаются удалёнными */
+    private final AtomicLong clearedSeq = new AtomicLong();
+
+    public SequencedRingBuffer(int capacity, ToLongFunction<T> seqOf) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.seqOf = seqOf;
+    }
+
+    /**
+     * Восстанавливает состояние (например, из БД). Вызывать до того, как буфер станет виден другим потокам
+     */
+    public void restore(long lastSeq, long clearedSeq, List<T> items) {
+        this.lastSeq.set(lastSeq);
+        this.clearedSeq.set(clearedSeq);
+        for (T item : items) {
+            long seq = seqOf.applyAsLong(item);
+            if (seq > lastSeq - capacity && seq <= lastSeq) {
+                install(seq, item);
+            }
+        }
+    }
+
+    /**
+     * Добавляет элемент, созданный по выданному ему номеру
+     * @return добавленный элемент
+     */
+    public T append(LongFunction<T> factory) {
+        long seq = lastSeq.incrementAndGet();
+        T item = factory.apply(seq);
+        install(seq, item);
+        return item;
+    }
+
+    /**
+     * Снимок элементов с номером больше afterSeq, по возрастанию номера
+     */
+    public List<T> snapshot(long afterSeq) {
+        long last = lastSeq.get();
+        long from = Math.max(Math.max(afterSeq, clearedSeq.get()), last - capacity) + 1;
+        if (from > last) {
+            return List.of();
+        }
+        List<T> result = new ArrayList<>((int) (last - from + 1));
+        for (long seq = from; seq <= last; seq++) {
+            T item = slots.get(index(seq));
+            long itemSeq = item != null ? seqOf.applyAsLong(item) : Long.MIN_VALUE;
+            if (itemSeq == seq) {
+                result.add(item);
+            } else if (itemSeq < seq) {
+                // Номер выдан, но писатель ещё не положил элемент — дальше окно не непрерывно
+                break;
+            }
+            // itemSeq > seq: слот уже занят более новым элементом, этот вытеснен
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Элемент с этим номером, если он ещё в окне и опубликован
+     */
+    public T get(long seq) {
+        if (seq <= clearedSeq.get() || seq <= lastSeq.get() - capacity) {
+            return null;
+        }
+        T item = slots.get(index(seq));
+        return item != null && seqOf.applyAsLong(item) == seq ? item : null;
+    }
+
+    /**
+     * Заменяет элемент на равноценный с тем же номером (например, сжатый), если слот не успели перезаписать
+     */
+    public boolean replace(T expected, T replacement) {
+        if (seqOf.applyAsLong(expected) != seqOf.applyAsLong(replacement)) {
+            throw new IllegalArgumentException("replacement must keep the sequence number");
+        }
+        return slots.compareAndSet(index(seqOf.applyAsLong(expected)), expected, replacement);
+    }
+
+    /**
+     * Логически удаляет всё, что добавлено до этого момента; нумерация продолжается
+     * @return номер, до которого (включительно) удалено
+     */
+    public long clear() {
+        long last = lastSeq.get();
+        clearedSeq.accumulateAndGet(last, Math::max);
+        return last;
+    }
+
+    public long lastSeq() {
+        return lastSeq.get();
+    }
+
+    public long clearedSeq() {
+        return clearedSeq.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Кладёт элемент в слот, если там нет элемента с номером не меньше; иначе элемент уже вытеснен
+     */
+    private void install(long seq, T item) {
+        int index = index(seq);
+        while (true) {
+            T current = slots.get(index);
+            if (current != null && seqOf.applyAsLong(current) >= seq) {
+                return;
+            }
+            if (slots.compareAndSet(index, current, item)) {
+                return;
+            }
+        }
+    }
+
+    private int index(long seq) {
+        return (int) Math.floorMod(seq, (long) capacity);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.m1nd.util;
+
+/**
+ * Простой token bucket: ёмкость burst, пополнение rate токенов в секунду.
+ * Потокобезопасен, операции O(1).
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Пытается взять один токен.
+     * @return 0, если токен выдан, иначе сколько наносекунд ждать до появления токена
+     */
+    public synchronized long tryConsume() {
+        refill();
+        if (tokens >= 1d) {
+            tokens -= 1d;
+            return 0L;
+        }
+        return (long) Math.ceil((1d - tokens) / refillPerNano);
+    }
+
+    /**
+     * Полностью ли заполнено ведро (можно безопасно выкинуть из кэша)
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * refillPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
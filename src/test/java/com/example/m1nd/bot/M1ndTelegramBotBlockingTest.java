@@ -0,0 +1,170 @@
+package com.example.m1nd.bot;
+
+import com.example.m1nd.config.TelegramBotConfig;
+import com.example.m1nd.service.AdminService;
+import com.example.m1nd.service.AssistantService;
+import com.example.m1nd.service.BusinessQuestionService;
+import com.example.m1nd.service.FeedbackService;
+import com.example.m1nd.service.LLMService;
+import com.example.m1nd.service.PaidServiceService;
+import com.example.m1nd.service.SummaryBatchWorker;
+import com.example.m1nd.service.SummaryService;
+import com.example.m1nd.service.UserService;
+import com.example.m1nd.service.WorkingApiService;
+import com.example.m1nd.service.journal.StateJournal;
+import com.example.m1nd.service.llm.LlmOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Вопрос пользователя в чате: ответ LLM приходит на неблокирующем потоке, а отправка в Telegram
+ * и запись в БД должны уйти на blockingScheduler. Блокирующие зависимости здесь намеренно спят,
+ * чтобы BlockHound поймал их на неблокирующем потоке
+ */
+class M1ndTelegramBotBlockingTest {
+
+    private static final long CHAT_ID = 100L;
+    private static final long USER_ID = 200L;
+
+    private LLMService llmService;
+    private UserService userService;
+    private Scheduler blockingScheduler;
+    private M1ndTelegramBot bot;
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        llmService = mock(LLMService.class);
+        userService = mock(UserService.class);
+        AdminMenuService adminMenuService = mock(AdminMenuService.class);
+        MainMenuService mainMenuService = mock(MainMenuService.class);
+        when(adminMenuService.handleAdminText(any(), anyString())).thenReturn(AdminMenuService.AdminTextResult.notHandled());
+        when(mainMenuService.handlePuzzleAnswer(anyLong(), anyLong(), anyString()))
+            .thenReturn(MainMenuService.PuzzleAnswerResult.notHandled());
+        when(mainMenuService.handleGameAnswer(anyLong(), anyLong(), anyString()))
+            .thenReturn(MainMenuService.GameAnswerResult.notHandled());
+        doAnswer(invocation -> {
+            sleep();
+            return null;
+        }).when(userService).incrementQuestionsCount(anyLong());
+
+        blockingScheduler = Schedulers.newBoundedElastic(4, 100, "test-blocking-io");
+        bot = spy(new M1ndTelegramBot(
+            mock(TelegramBotConfig.class),
+            userService,
+            llmService,
+            mock(WorkingApiService.class),
+            mock(AdminService.class),
+            mock(AssistantService.class),
+            mock(BusinessQuestionService.class),
+            mock(PaidServiceService.class),
+            mock(FeedbackService.class),
+            mock(SummaryService.class),
+            mock(SummaryBatchWorker.class),
+            mainMenuService,
+            adminMenuService,
+            mock(StateJournal.class),
+            blockingScheduler));
+        ReflectionTestUtils.setField(bot, "useLlmService", true);
+        ReflectionTestUtils.setField(bot, "feedbackDelayMinutes", 10);
+        // Отправка в Telegram — сетевой вызов, имитируем его задержкой
+        doAnswer(invocation -> {
+            sleep();
+            return null;
+        }).when(bot).execute(any(SendMessage.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Запланированные опросы и сводки тесту не нужны, ждать их при остановке незачем
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(bot, "scheduler")).shutdownNow();
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void answerIsSentAndCountedOffEventLoop() throws Exception {
+        when(llmService.getAnswer(anyString(), eq(USER_ID)))
+            .thenReturn(Mono.just("Ответ модели").delayElement(Duration.ofMillis(5)));
+
+        bot.onUpdateReceived(question("Как дела?"));
+
+        verify(userService, timeout(2000)).incrementQuestionsCount(USER_ID);
+        assertTrue(sentTexts().contains("Ответ модели"));
+    }
+
+    @Test
+    void overloadErrorIsReportedOffEventLoop() throws Exception {
+        when(llmService.getAnswer(anyString(), eq(USER_ID)))
+            .thenReturn(Mono.<String>error(new LlmOverloadedException("перегрузка", 7)).delaySubscription(Duration.ofMillis(5)));
+
+        bot.onUpdateReceived(question("Как дела?"));
+
+        verify(bot, timeout(2000).times(2)).execute(any(SendMessage.class));
+        assertTrue(sentTexts().stream().anyMatch(text -> text.contains("через 7 с")));
+    }
+
+    private List<String> sentTexts() throws Exception {
+        ArgumentCaptor<SendMessage> sent = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, atLeast(1)).execute(sent.capture());
+        return sent.getAllValues().stream().map(SendMessage::getText).toList();
+    }
+
+    private static Update question(String text) {
+        Chat chat = new Chat();
+        chat.setId(CHAT_ID);
+        chat.setType("private");
+        User user = new User();
+        user.setId(USER_ID);
+        user.setFirstName("Test");
+        user.setIsBot(false);
+        Message message = new Message();
+        message.setChat(chat);
+        message.setFrom(user);
+        message.setText(text);
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.m1nd.bot;
+
+import com.example.m1nd.model.AnswerEvaluation;
+import com.example.m1nd.model.Task;
+import com.example.m1nd.service.CatalogCache;
+import com.example.m1nd.service.FactTopicService;
+import com.example.m1nd.service.GameService;
+import com.example.m1nd.service.IdeaTopicService;
+import com.example.m1nd.service.LLMService;
+import com.example.m1nd.service.MotivationTopicService;
+import com.example.m1nd.service.PuzzleBankService;
+import com.example.m1nd.service.TaskService;
+import com.example.m1nd.service.UserProgressService;
+import com.example.m1nd.service.game.AnswerEvaluator;
+import com.example.m1nd.service.game.GuessNumberEngine;
+import com.example.m1nd.service.journal.StateJournal;
+import com.example.m1nd.service.llm.ModelRoute;
+import com.example.m1nd.service.llm.ModelTier;
+import com.example.m1nd.service.llm.ModelTierRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.User;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверяет, что блокирующие вызовы (JPA, Thread.sleep) в обработчиках меню не выполняются
+ * на неблокирующих потоках. Ответ LLM эмулируется через delayElement — он приходит на потоке
+ * parallel, который BlockHound считает неблокирующим так же, как event loop reactor-netty.
+ */
+class MainMenuServiceBlockingTest {
+
+    private static final long USER_ID = 42L;
+    private static final long CHAT_ID = 4242L;
+
+    private LLMService llmService;
+    private TaskService taskService;
+    private UserProgressService userProgressService;
+    private AnswerEvaluator answerEvaluator;
+    private Scheduler blockingScheduler;
+    private MainMenuService mainMenuService;
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        llmService = mock(LLMService.class);
+        taskService = mock(TaskService.class);
+        userProgressService = mock(UserProgressService.class);
+        answerEvaluator = mock(AnswerEvaluator.class);
+        ModelTierRouter router = mock(ModelTierRouter.class);
+        PuzzleBankService puzzleBankService = mock(PuzzleBankService.class);
+        when(puzzleBankService.next(anyLong(), any())).thenReturn(Mono.just(Optional.empty()));
+        when(puzzleBankService.nextSet(anyLong(), any(), anyInt())).thenReturn(Mono.just(List.of()));
+        when(router.route(any(), anyString(), any(), any())).thenReturn(new ModelRoute(ModelTier.FAST, 100));
+
+        blockingScheduler = Schedulers.newBoundedElastic(4, 100, "test-blocking-io");
+        mainMenuService = new MainMenuService(
+            llmService,
+            mock(FactTopicService.class),
+            mock(IdeaTopicService.class),
+            mock(MotivationTopicService.class),
+            mock(GameService.class),
+            taskService,
+            mock(CatalogCache.class),
+            puzzleBankService,
+            answerEvaluator,
+            new GuessNumberEngine(),
+            userProgressService,
+            router,
+            mock(StateJournal.class),
+            blockingScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void blockHoundDetectsBlockingOnNonBlockingThread() {
+        Mono<Long> blocking = Mono.delay(Duration.ofMillis(1))
+            .doOnNext(tick -> sleep());
+
+        RuntimeException error = assertThrows(RuntimeException.class, blocking::block);
+        assertInstanceOf(BlockingOperationError.class, error.getCause() != null ? error.getCause() : error);
+    }
+
+    @Test
+    void factProgressIsUpdatedOffEventLoop() {
+        when(llmService.generate(anyString(), eq(USER_ID), any(), any()))
+            .thenReturn(Mono.just("Интересный факт").delayElement(Duration.ofMillis(5)));
+        doAnswer(invocation -> {
+            sleep();
+            return null;
+        }).when(userProgressService).incrementFactsViewed(anyLong());
+
+        MainMenuService.MainMenuResult result = mainMenuService.handleCallback(callback("facts_space")).block();
+
+        assertEquals("Интересный факт", result.getMessages().get(0).getText());
+    }
+
+    @Test
+    void dailyTaskLookupRunsOffEventLoop() {
+        Task task = new Task();
+        task.setText("Сделать зарядку");
+        when(taskService.findRandom()).thenAnswer(invocation -> {
+            sleep();
+            return Optional.of(task);
+        });
+
+        MainMenuService.MainMenuResult result = Mono.defer(() -> mainMenuService.handleCallback(callback("main_daily_tasks")))
+            .subscribeOn(Schedulers.parallel())
+            .block();
+
+        assertTrue(result.getMessages().get(0).getText().contains("Сделать зарядку"));
+    }
+
+    @Test
+    void riddleSessionEndsAfterAnswer() {
+        when(llmService.generate(anyString(), eq(USER_ID), any(), any()))
+            .thenReturn(Mono.just("QUESTION: Зимой и летом одним цветом?\nANSWER: ёлка\nEXPLANATION: хвоя"));
+        when(answerEvaluator.evaluateFreeText(anyString(), anyString())).thenReturn(new AnswerEvaluation(100, null));
+        mainMenuService.handleCallback(callback("puzzle_riddle")).block();
+
+        MainMenuService.PuzzleAnswerResult answered = mainMenuService.handlePuzzleAnswer(CHAT_ID, USER_ID, "ёлка");
+        assertTrue(answered.isHandled());
+        answered.getMessages().block();
+
+        assertFalse(mainMenuService.handlePuzzleAnswer(CHAT_ID, USER_ID, "а как дела?").isHandled(),
+            "после ответа сообщения снова идут модели, а не к старой загадке");
+    }
+
+    private static CallbackQuery callback(String data) {
+        Chat chat = new Chat();
+        chat.setId(CHAT_ID);
+        chat.setType("private");
+
+        Message message = new Message();
+        message.setChat(chat);
+
+        User user = new User();
+        user.setId(USER_ID);
+        user.setFirstName("Test");
+        user.setIsBot(false);
+
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setData(data);
+        callbackQuery.setMessage(message);
+        callbackQuery.setFrom(user);
+        return callbackQuery;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.m1nd.bot;
+
+import com.example.m1nd.bot.MainMenuService.ParsedPuzzle;
+import com.example.m1nd.bot.MainMenuService.QuestionPipeline;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Вопросы сессии: сначала из банка, затем из предзагрузки; отмена сессии обрывает предзагрузку,
+ * в том числе когда совпадает с выдачей вопроса
+ */
+class QuestionPipelineTest {
+
+    private static ParsedPuzzle puzzle(String question) {
+        ParsedPuzzle puzzle = new ParsedPuzzle();
+        puzzle.question = question;
+        return puzzle;
+    }
+
+    /** Генератор, который считает, сколько вопросов начал и сколько из них оборвали */
+    private static final class CountingGenerator implements IntFunction<Mono<ParsedPuzzle>> {
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger cancelled = new AtomicInteger();
+        private final List<Integer> requested = new ArrayList<>();
+        private volatile boolean hang;
+
+        @Override
+        public synchronized Mono<ParsedPuzzle> apply(int number) {
+            requested.add(number);
+            Mono<ParsedPuzzle> source = hang ? Mono.never() : Mono.just(puzzle("сгенерирован " + number));
+            return source
+                .doOnSubscribe(subscription -> started.incrementAndGet())
+                .doOnCancel(cancelled::incrementAndGet);
+        }
+    }
+
+    @Test
+    void bankQuestionsGoFirstThenPrefetchedOnes() {
+        CountingGenerator generator = new CountingGenerator();
+        QuestionPipeline pipeline = new QuestionPipeline(List.of(puzzle("из банка 1"), puzzle("из банка 2")));
+
+        assertEquals("из банка 1", pipeline.take(1, 4, generator, generator).block().question);
+        assertTrue(generator.requested.isEmpty(), "пока в очереди есть вопросы, ничего не генерируется");
+        assertEquals("из банка 2", pipeline.take(2, 4, generator, generator).block().question);
+        assertEquals(List.of(3), generator.requested, "очередь кончилась — следующий вопрос генерируется заранее");
+
+        assertEquals("сгенерирован 3", pipeline.take(3, 4, generator, generator).block().question);
+        assertEquals("сгенерирован 4", pipeline.take(4, 4, generator, generator).block().question);
+        assertEquals(List.of(3, 4), generator.requested, "после последнего вопроса предзагрузки нет");
+    }
+
+    @Test
+    void onlyLookaheadGeneratesAhead() {
+        CountingGenerator waited = new CountingGenerator();
+        CountingGenerator ahead = new CountingGenerator();
+        QuestionPipeline pipeline = new QuestionPipeline(List.of());
+
+        assertEquals("сгенерирован 1", pipeline.take(1, 3, waited, ahead).block().question);
+        assertEquals(List.of(1), waited.requested);
+        assertEquals(List.of(2), ahead.requested, "заготовка наперёд идёт своим генератором");
+
+        assertEquals("сгенерирован 2", pipeline.take(2, 3, waited, ahead).block().question);
+        assertEquals(List.of(1), waited.requested);
+        assertEquals(List.of(2, 3), ahead.requested);
+    }
+
+    @Test
+    void failedPrefetchIsRegeneratedOnTake() {
+        AtomicInteger calls = new AtomicInteger();
+        QuestionPipeline pipeline = new QuestionPipeline(List.of(puzzle("из банка")));
+        IntFunction<Mono<ParsedPuzzle>> generator = number -> calls.incrementAndGet() == 1
+            ? Mono.error(new IllegalStateException("модель недоступна"))
+            : Mono.just(puzzle("сгенерирован " + number));
+
+        pipeline.take(1, 2, generator, generator).block();
+
+        assertEquals("сгенерирован 2", pipeline.take(2, 2, generator, generator).block().question);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void cancelStopsRunningPrefetch() {
+        CountingGenerator generator = new CountingGenerator();
+        generator.hang = true;
+        QuestionPipeline pipeline = new QuestionPipeline(List.of(puzzle("из банка")));
+
+        pipeline.take(1, 3, generator, generator).block();
+        assertEquals(1, generator.started.get());
+
+        pipeline.cancel();
+
+        assertEquals(1, generator.cancelled.get());
+    }
+
+    @Test
+    void questionArrivingAfterCancelStartsNoPrefetch() {
+        CountingGenerator generator = new CountingGenerator();
+        Sinks.One<ParsedPuzzle> current = Sinks.one();
+        QuestionPipeline pipeline = new QuestionPipeline(List.of());
+
+        pipeline.take(1, 3, number -> current.asMono(), generator).subscribe();
+        pipeline.cancel();
+        current.tryEmitValue(puzzle("опоздавший"));
+
+        assertEquals(0, generator.started.get());
+    }
+
+    /**
+     * Выдача вопроса и отмена сессии на разных потоках: каждая начатая предзагрузка должна быть оборвана
+     */
+    @Test
+    void cancelRacingWithTakeLeaksNoPrefetch() throws Exception {
+        CountingGenerator generator = new CountingGenerator();
+        generator.hang = true;
+        for (int i = 0; i < 2000; i++) {
+            QuestionPipeline pipeline = new QuestionPipeline(List.of());
+            Sinks.One<ParsedPuzzle> current = Sinks.one();
+            pipeline.take(1, 3, number -> current.asMono(), generator).subscribe();
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread emitter = new Thread(() -> {
+                await(barrier);
+                current.tryEmitValue(puzzle("текущий"));
+            });
+            emitter.start();
+            await(barrier);
+            pipeline.cancel();
+            emitter.join();
+        }
+
+        assertEquals(generator.started.get(), generator.cancelled.get(),
+            "начато " + generator.started.get() + ", оборвано " + generator.cancelled.get());
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
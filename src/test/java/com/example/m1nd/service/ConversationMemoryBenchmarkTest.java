@@ -0,0 +1,147 @@
+package com.example.m1nd.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Память под диалоги: занятая куча на 10 тысяч диалогов в прежнем виде (список Map role/content)
+ * и в {@link ConversationBuffer}, а также оценка размера, по которой считается бюджет памяти.
+ * Куча замеряется после GC — разница между видами в разы больше погрешности замера
+ */
+class ConversationMemoryBenchmarkTest {
+
+    private static final int MESSAGES = 9;
+    private static final int CONVERSATIONS = 10_000;
+    private static final String[] WORDS = ("время работа отдых учёба неделя час сон план задача цель привычка день "
+        + "утро вечер спорт книга проект команда встреча отпуск выгорание энергия фокус перерыв список приоритет "
+        + "обязательно можно стоит лучше сначала потом иногда всегда честно заранее спокойно постепенно").split(" ");
+
+    private static final String SYSTEM_PROMPT = "Ты — дружелюбный помощник в Telegram-боте. Отвечай кратко и по делу.";
+    private static final String QUESTION = "Подскажи, пожалуйста, как лучше распределить время между работой, учёбой и отдыхом, "
+        + "чтобы не выгорать?";
+    private static final String ANSWER = ("Хороший вопрос. Начни с того, чтобы честно посчитать, сколько часов уходит на каждое "
+        + "занятие за неделю. Потом выдели обязательные блоки: сон, работу и занятия. Отдых тоже планируй заранее, "
+        + "а не по остаточному принципу. ").repeat(3);
+
+    @Test
+    void estimateCoversMessagesAndIsStable() {
+        LocalDateTime now = LocalDateTime.now();
+        ConversationBuffer conversation = new ConversationBuffer(MESSAGES, 2, 512);
+        conversation.systemPrompt = SYSTEM_PROMPT;
+        for (int m = 0; m < MESSAGES; m++) {
+            conversation.append(m % 2 == 0 ? "user" : "assistant", m % 2 == 0 ? QUESTION : ANSWER, now);
+        }
+
+        long estimated = conversation.remeasure();
+        long retained = conversation.messages.snapshot(0).stream().mapToLong(CompactMessage::retainedBytes).sum();
+
+        assertEquals(estimated, conversation.estimatedBytes());
+        assertEquals(0, conversation.remeasure(), "без изменений пересчёт ничего не добавляет");
+        assertTrue(retained < estimated);
+    }
+
+    /** Текст из случайных слов: повторяется не дословно, как и настоящая переписка */
+    private static String text(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            text.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.append('.').toString();
+    }
+
+    private static String message(Random random, int m) {
+        return m % 2 == 0 ? text(random, 15) : text(random, 110);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            memory.gc();
+            Thread.sleep(20);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    @Test
+    void tenThousandConversationsTakeLessHeap() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+
+        long before = usedHeapAfterGc();
+        List<List<Map<String, String>>> plain = new ArrayList<>(CONVERSATIONS);
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            Random random = new Random(c);
+            List<Map<String, String>> history = new ArrayList<>();
+            history.add(Map.of("role", "system", "content", new String(SYSTEM_PROMPT)));
+            for (int m = 0; m < MESSAGES; m++) {
+                history.add(Map.of("role", m % 2 == 0 ? "user" : "assistant", "content", message(random, m)));
+            }
+            plain.add(history);
+        }
+        long plainHeap = usedHeapAfterGc() - before;
+        Reference.reachabilityFence(plain);
+        plain = null;
+
+        before = usedHeapAfterGc();
+        List<ConversationBuffer> compact = new ArrayList<>(CONVERSATIONS);
+        long estimated = 0;
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            Random random = new Random(c);
+            ConversationBuffer conversation = new ConversationBuffer(MESSAGES, 2, 512);
+            conversation.systemPrompt = new String(SYSTEM_PROMPT);
+            for (int m = 0; m < MESSAGES; m++) {
+                conversation.append(m % 2 == 0 ? "user" : "assistant", message(random, m), now);
+            }
+            estimated += conversation.remeasure();
+            compact.add(conversation);
+        }
+        long compactHeap = usedHeapAfterGc() - before;
+        Reference.reachabilityFence(compact);
+
+        String report = "куча на " + CONVERSATIONS + " диалогов: было " + plainHeap / 1024 + " КБ, стало "
+            + compactHeap / 1024 + " КБ, оценка " + estimated / 1024 + " КБ";
+        assertTrue(compactHeap < plainHeap * 3 / 4, report);
+        assertTrue(estimated > compactHeap / 2 && estimated < compactHeap * 2, "оценка далека от кучи: " + report);
+    }
+
+    @Test
+    void compressionShrinksRetainedBytes() {
+        CompactMessage plain = CompactMessage.of(1, "assistant", ANSWER, LocalDateTime.now());
+        CompactMessage compressed = plain.compressed(512);
+
+        assertTrue(compressed.isCompressed());
+        assertTrue(compressed.retainedBytes() < plain.retainedBytes() / 2);
+        CompactMessage question = CompactMessage.of(2, "user", QUESTION, LocalDateTime.now());
+        assertSame(question, question.compressed(512), "короткий вопрос не сжимается");
+    }
+
+    @Test
+    void compressedMessagesRoundTrip() {
+        ConversationBuffer conversation = new ConversationBuffer(MESSAGES, 2, 512);
+        for (int m = 0; m < 4; m++) {
+            conversation.append("assistant", ANSWER, LocalDateTime.now());
+        }
+
+        List<CompactMessage> messages = conversation.messages.snapshot(0);
+        assertTrue(messages.get(0).isCompressed());
+        assertFalse(messages.get(3).isCompressed());
+        for (CompactMessage message : messages) {
+            assertEquals(ANSWER, message.content());
+            assertEquals("assistant", message.role());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.ConversationJdbcRepository;
+import com.example.m1nd.repository.ConversationJdbcRepository.ConversationState;
+import com.example.m1nd.repository.ConversationJdbcRepository.StoredMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Учёт памяти под диалоги: общий размер всегда равен сумме оценок диалогов, оставшихся в LRU
+ */
+class ConversationServiceTest {
+
+    private ConversationWriteBehind writeBehind;
+    private ConversationJdbcRepository repository;
+    private ConversationService service;
+
+    @BeforeEach
+    void setUp() {
+        writeBehind = mock(ConversationWriteBehind.class);
+        repository = mock(ConversationJdbcRepository.class);
+        service = new ConversationService(repository, writeBehind);
+        ReflectionTestUtils.setField(service, "maxHotConversations", 1);
+        ReflectionTestUtils.setField(service, "memoryBudgetMb", 256L);
+        ReflectionTestUtils.setField(service, "keepUncompressed", 2);
+        ReflectionTestUtils.setField(service, "compressMinBytes", 512);
+    }
+
+    private long totalBytes() {
+        return ((AtomicLong) ReflectionTestUtils.getField(service, "totalBytes")).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private long hotBytes() {
+        Map<Long, ConversationBuffer> hot = (Map<Long, ConversationBuffer>) ReflectionTestUtils.getField(service, "conversations");
+        synchronized (hot) {
+            return hot.values().stream().mapToLong(ConversationBuffer::estimatedBytes).sum();
+        }
+    }
+
+    @Test
+    void growthOfConversationEvictedMidMessageIsNotCounted() {
+        service.addMessage(1L, "user", "первый вопрос");
+        AtomicBoolean evictOnEnqueue = new AtomicBoolean(true);
+        // Пока сообщение пользователя 1 ставится в очередь записи, приходит пользователь 2 и вытесняет его (max-hot = 1)
+        doAnswer(invocation -> {
+            if (evictOnEnqueue.getAndSet(false)) {
+                service.getHistory(2L);
+            }
+            return null;
+        }).when(writeBehind).enqueue(any(StoredMessage.class));
+
+        service.addMessage(1L, "assistant", "длинный ответ ".repeat(200));
+
+        assertEquals(hotBytes(), totalBytes());
+    }
+
+    @Test
+    void clearAndEvictionKeepTotalInSync() {
+        service.addMessage(1L, "user", "вопрос ".repeat(100));
+        service.clearHistory(1L);
+        service.addMessage(2L, "user", "другой вопрос");
+        service.addMessage(1L, "user", "снова");
+
+        assertEquals(hotBytes(), totalBytes());
+    }
+
+    @Test
+    void seqContinuesAfterSummaryWhenAllMessagesExpired() {
+        // Сообщения удалены по сроку хранения, состояние со сводкой до 40 осталось
+        when(repository.findState(1L)).thenReturn(Optional.of(new ConversationState(1L, null, 40, 0)));
+        when(writeBehind.pendingState(1L)).thenReturn(Optional.empty());
+
+        service.addMessage(1L, "user", "снова здесь");
+
+        List<ConversationService.HistoryMessage> unsummarized = service.getMessagesSince(1L, service.getSummarizedSeq(1L));
+        assertEquals(1, unsummarized.size());
+        assertEquals(41, unsummarized.get(0).seq());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.ConversationJdbcRepository;
+import com.example.m1nd.repository.ConversationJdbcRepository.StoredMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Сообщение, которое БД отвергает, не должно навсегда держать пачку в очереди
+ */
+class ConversationWriteBehindTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private ConversationJdbcRepository repository;
+    private ConversationWriteBehind writeBehind;
+    private final List<StoredMessage> written = new ArrayList<>();
+    private boolean databaseDown;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ConversationJdbcRepository.class);
+        doAnswer(invocation -> {
+            List<StoredMessage> rows = invocation.getArgument(0);
+            if (databaseDown) {
+                throw new QueryTimeoutException("нет соединения");
+            }
+            if (rows.stream().anyMatch(row -> row.content().indexOf('\u0000') >= 0)) {
+                throw new DataIntegrityViolationException("invalid byte sequence for encoding \"UTF8\": 0x00");
+            }
+            written.addAll(rows);
+            return null;
+        }).when(repository).insertMessages(anyList());
+
+        writeBehind = new ConversationWriteBehind(repository);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 100);
+        ReflectionTestUtils.setField(writeBehind, "maxPending", 1000);
+        ReflectionTestUtils.setField(writeBehind, "maxInsertAttempts", MAX_ATTEMPTS);
+    }
+
+    private static StoredMessage message(long seq, String content) {
+        return new StoredMessage(1L, seq, "user", content, LocalDateTime.now());
+    }
+
+    @Test
+    void badRowIsWrittenAroundAndDroppedAfterMaxAttempts() {
+        writeBehind.enqueue(message(1, "привет"));
+        writeBehind.enqueue(message(2, "битое\u0000сообщение"));
+        writeBehind.enqueue(message(3, "как дела"));
+
+        writeBehind.flush();
+
+        assertEquals(List.of(1L, 3L), written.stream().map(StoredMessage::seq).toList());
+        assertEquals(List.of(2L), writeBehind.pendingMessages(1L).stream().map(StoredMessage::seq).toList());
+
+        for (int i = 1; i < MAX_ATTEMPTS; i++) {
+            writeBehind.flush();
+        }
+
+        assertTrue(writeBehind.pendingMessages(1L).isEmpty(), "после последней попытки сообщение отброшено");
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    void outageKeepsMessagesWithoutSpendingAttempts() {
+        writeBehind.enqueue(message(1, "битое\u0000"));
+        writeBehind.enqueue(message(2, "привет"));
+        databaseDown = true;
+
+        for (int i = 0; i < MAX_ATTEMPTS * 2; i++) {
+            writeBehind.flush();
+        }
+
+        assertEquals(2, writeBehind.pendingMessages(1L).size());
+
+        databaseDown = false;
+        writeBehind.flush();
+
+        assertEquals(List.of(2L), written.stream().map(StoredMessage::seq).toList());
+        assertEquals(List.of(1L), writeBehind.pendingMessages(1L).stream().map(StoredMessage::seq).toList());
+    }
+}
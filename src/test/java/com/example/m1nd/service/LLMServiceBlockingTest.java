@@ -0,0 +1,77 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.service.llm.LlmAdmissionService;
+import com.example.m1nd.service.llm.LlmLane;
+import com.example.m1nd.service.tools.ToolService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Разрешение на запрос может выдаваться на event loop (из doFinally соседнего запроса), а холодный
+ * диалог читается из БД. Чтение истории здесь намеренно спит, чтобы BlockHound поймал его на неблокирующем потоке
+ */
+class LLMServiceBlockingTest {
+
+    private static final long USER_ID = 7L;
+
+    private ConversationService conversationService;
+    private Scheduler blockingScheduler;
+    private LLMService llmService;
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        conversationService = mock(ConversationService.class);
+        when(conversationService.getHistory(anyLong())).thenAnswer(invocation -> {
+            Thread.sleep(1);
+            return List.of();
+        });
+        LlmAdmissionService admissionService = mock(LlmAdmissionService.class);
+        when(admissionService.admit(anyString(), any(LlmLane.class), any(), any())).thenAnswer(invocation ->
+            invocation.<Supplier<Mono<String>>>getArgument(3).get());
+
+        blockingScheduler = Schedulers.newBoundedElastic(2, 100, "test-blocking-io");
+        llmService = new LLMService(mock(WebClient.Builder.class), conversationService, mock(PromptService.class),
+            mock(ToolService.class), admissionService, blockingScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingScheduler.dispose();
+    }
+
+    @Test
+    void historyIsReadOffEventLoopWhenPermitIsGrantedThere() {
+        // Ключ API не настроен: запрос завершается ошибкой сразу после чтения истории
+        RuntimeException error = assertThrows(RuntimeException.class, () -> Mono.defer(() -> llmService.getAnswer("вопрос", USER_ID))
+            .subscribeOn(Schedulers.parallel())
+            .block());
+
+        assertTrue(error.getMessage().contains("ключ не настроен"), error.toString());
+        verify(conversationService).addMessage(USER_ID, "user", "вопрос");
+    }
+}
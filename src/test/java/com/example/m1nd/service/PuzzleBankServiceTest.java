@@ -0,0 +1,164 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.repository.PuzzleBankJdbcRepository;
+import com.example.m1nd.repository.PuzzleBankJdbcRepository.BankItem;
+import com.example.m1nd.repository.PuzzleBankJdbcRepository.NewItem;
+import com.example.m1nd.service.PuzzleBankService.Category;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Разбор пачки от модели, валидация и дедупликация вопросов, выдача непросмотренных
+ */
+class PuzzleBankServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PuzzleBankJdbcRepository repository;
+    private PuzzleBankService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PuzzleBankJdbcRepository.class);
+        LLMService llmService = mock(LLMService.class);
+        when(llmService.generateJson(anyString(), anyInt())).thenReturn(Mono.empty());
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+            invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        service = new PuzzleBankService(repository, llmService, objectMapper, Schedulers.immediate(), transactionTemplate);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "batchSize", 8);
+        ReflectionTestUtils.setField(service, "minUnseen", 0);
+    }
+
+    private JsonNode json(String text) throws Exception {
+        return objectMapper.readTree(text);
+    }
+
+    @Test
+    void readItemsAcceptsObjectOrArrayInsideText() {
+        assertEquals(2, service.readItems("Вот пачка: {\"items\": [{\"question\": \"a\"}, {\"question\": \"b\"}]} Удачи!").size());
+        assertEquals(1, service.readItems("```json\n[{\"question\": \"a\"}]\n```").size());
+        assertThrows(IllegalStateException.class, () -> service.readItems("{\"questions\": []}"));
+        assertThrows(IllegalStateException.class, () -> service.readItems("{\"items\": [ оборвано"));
+        assertThrows(IllegalStateException.class, () -> service.readItems("не получилось"));
+    }
+
+    @Test
+    void toItemValidatesFreeTextAnswers() throws Exception {
+        NewItem riddle = service.toItem(Category.RIDDLE,
+            json("{\"question\": \"  Зимой и летом одним цветом?  \", \"answer\": \" Ёлка \", \"explanation\": \"\"}"));
+
+        assertEquals("Зимой и летом одним цветом?", riddle.question());
+        assertEquals("Ёлка", riddle.answer());
+        assertNull(riddle.explanation());
+        assertNull(riddle.options());
+        assertEquals(PuzzleBankService.hash(riddle.question()), riddle.questionHash());
+
+        assertNull(service.toItem(Category.RIDDLE, json("{\"question\": \"Коротко\", \"answer\": \"да\"}")));
+        assertNull(service.toItem(Category.RIDDLE, json("{\"question\": \"Загадка без ответа\", \"answer\": \"\"}")));
+        String longAnswer = "очень длинный ответ ".repeat(10);
+        assertNull(service.toItem(Category.LOGIC, json("{\"question\": \"Сколько будет дважды два?\", \"answer\": \"" + longAnswer + "\"}")));
+        assertEquals(longAnswer.trim(), service.toItem(Category.PERSONALITY,
+            json("{\"question\": \"Как вы проводите выходные?\", \"answer\": \"" + longAnswer + "\"}")).answer());
+    }
+
+    @Test
+    void toItemFormatsOptionsAndNormalizesLetter() throws Exception {
+        NewItem quiz = service.toItem(Category.QUIZ, json(
+            "{\"question\": \"Столица Австралии?\", \"options\": [\"a) Сидней\", \"Канберра\", \"Мельбурн\", \"D) Перт\"], "
+                + "\"answer\": \"B)\", \"explanation\": \"Канберра\"}"));
+
+        assertEquals("a) Сидней; b) Канберра; c) Мельбурн; d) Перт", quiz.options());
+        assertEquals("b", quiz.answer());
+
+        assertNull(service.toItem(Category.QUIZ, json(
+            "{\"question\": \"Столица Австралии?\", \"options\": [\"Сидней\", \"Канберра\", \"Мельбурн\"], \"answer\": \"b\"}")));
+        assertNull(service.toItem(Category.QUIZ, json(
+            "{\"question\": \"Столица Австралии?\", \"options\": [\"Сидней\", \"Канберра\", \"Мельбурн\", \"Перт\"], \"answer\": \"e\"}")));
+        assertNull(service.toItem(Category.IQ, json(
+            "{\"question\": \"Продолжите ряд 2, 4, 8\", \"options\": [\"16\", \"\", \"12\", \"10\"], \"answer\": \"a\"}")));
+    }
+
+    @Test
+    void hashIgnoresCasePunctuationSpacesAndYo() {
+        String hash = PuzzleBankService.hash("Что растёт вниз головой?");
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, PuzzleBankService.hash("что растет   вниз головой"));
+        assertNotEquals(hash, PuzzleBankService.hash("Что растёт вверх головой?"));
+    }
+
+    @Test
+    void parseBatchDropsInvalidItemsOneByOne() {
+        List<NewItem> items = service.parseBatch(Category.RIDDLE, "{\"items\": ["
+            + "{\"question\": \"Не лает, не кусает, а в дом не пускает?\", \"answer\": \"замок\"},"
+            + "{\"question\": \"?\", \"answer\": \"ничего\"},"
+            + "{\"question\": \"Без окон, без дверей, полна горница людей?\", \"answer\": \"огурец\"}]}");
+
+        assertEquals(List.of("замок", "огурец"), items.stream().map(NewItem::answer).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storeDropsDuplicatesWithinBatchAndBank() {
+        NewItem first = new NewItem("Вопрос один?", null, "да", null, PuzzleBankService.hash("Вопрос один?"));
+        NewItem sameAsFirst = new NewItem("вопрос ОДИН", null, "нет", null, PuzzleBankService.hash("вопрос ОДИН"));
+        NewItem inBank = new NewItem("Вопрос два?", null, "да", null, PuzzleBankService.hash("Вопрос два?"));
+        when(repository.findExistingHashes(eq("RIDDLE"), anyCollection())).thenReturn(Set.of(inBank.questionHash()));
+        when(repository.insertAll(eq("RIDDLE"), any())).thenReturn(1);
+
+        assertEquals(1, service.store(Category.RIDDLE, List.of(first, sameAsFirst, inBank)));
+
+        ArgumentCaptor<List<NewItem>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(repository).insertAll(eq("RIDDLE"), inserted.capture());
+        assertEquals(List.of(first), inserted.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nextSetTakesOnlyUnseenAndMarksThemUnderLock() {
+        BitSet seen = new BitSet();
+        seen.set(0);
+        seen.set(2);
+        when(repository.lockSeen(5L, "IQ")).thenReturn(seen.toByteArray());
+        when(repository.nextSeq("IQ")).thenReturn(4);
+        when(repository.findAll(eq("IQ"), anyCollection())).thenAnswer(invocation -> ((Collection<Integer>) invocation.getArgument(1))
+            .stream().map(seq -> new BankItem("IQ", seq, "q" + seq, null, "a", null)).toList());
+
+        List<BankItem> items = service.nextSet(5L, Category.IQ, 5).block();
+
+        assertEquals(Set.of(1, 3), Set.copyOf(items.stream().map(BankItem::seq).toList()));
+        ArgumentCaptor<byte[]> saved = ArgumentCaptor.forClass(byte[].class);
+        verify(repository).updateSeen(eq(5L), eq("IQ"), saved.capture());
+        assertEquals(4, BitSet.valueOf(saved.getValue()).cardinality());
+        assertTrue(service.nextSet(5L, Category.IQ, 1).block().size() <= 1);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.m1nd.service;
+
+import com.example.m1nd.bot.TelegramBulkSender;
+import com.example.m1nd.repository.ExportJobJdbcRepository;
+import com.example.m1nd.repository.ExportJobJdbcRepository.ExportJob;
+import com.example.m1nd.repository.ExportJobJdbcRepository.ExportStatus;
+import com.example.m1nd.repository.ExportJobJdbcRepository.SummaryExportRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Выгрузка порциями: файл из склеенных gzip-блоков должен читаться целиком,
+ * в том числе когда последняя порция пустая
+ */
+class SummaryExportServiceTest {
+
+    private static final int CHUNK_ROWS = 3;
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    private ExportJobJdbcRepository repository;
+    private TelegramBulkSender bulkSender;
+    private SummaryExportService service;
+    private final AtomicReference<byte[]> delivered = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = mock(ExportJobJdbcRepository.class);
+        bulkSender = mock(TelegramBulkSender.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(repository.updateStatus(anyLong(), any(), any(), any())).thenReturn(true);
+        // Файл удаляется после отправки, поэтому содержимое снимается в момент отправки
+        when(bulkSender.execute(any(SendDocument.class))).thenAnswer(invocation -> {
+            SendDocument document = invocation.getArgument(0);
+            delivered.set(Files.readAllBytes(document.getDocument().getNewMediaFile().toPath()));
+            return null;
+        });
+
+        service = new SummaryExportService(repository, bulkSender, transactionTemplate,
+            new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(service, "chunkRows", CHUNK_ROWS);
+    }
+
+    private void givenSummaries(int total) {
+        doAnswer(invocation -> {
+            long afterId = invocation.getArgument(3);
+            int limit = invocation.getArgument(4);
+            Consumer<SummaryExportRow> consumer = invocation.getArgument(5);
+            for (long id = afterId + 1; id <= Math.min(total, afterId + limit); id++) {
+                consumer.accept(new SummaryExportRow(id, CREATED_AT, id, "user" + id, "Имя", null,
+                    CREATED_AT, CREATED_AT, "вопрос " + id, "ответ"));
+            }
+            return null;
+        }).when(repository).streamSummaries(any(), any(), any(), anyLong(), anyInt(), any());
+    }
+
+    private ExportJob newJob() {
+        return new ExportJob(1L, "SUMMARIES", ExportStatus.RUNNING, LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 2),
+            10L, dir.resolve("summaries-1.ndjson.gz").toString(), 0L, ExportJobJdbcRepository.CURSOR_START, 0L, 0L);
+    }
+
+    private static List<String> gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+
+    @Test
+    void exactMultipleOfChunkLeavesNoDanglingGzipHeader() throws Exception {
+        givenSummaries(2 * CHUNK_ROWS);
+        AtomicLong checkpointBytes = new AtomicLong();
+        doAnswer(invocation -> {
+            checkpointBytes.set(invocation.<ExportJob>getArgument(0).fileBytes());
+            return null;
+        }).when(repository).checkpoint(any());
+
+        ReflectionTestUtils.invokeMethod(service, "run", newJob());
+
+        verify(repository, times(2)).checkpoint(any());
+        verify(repository).updateStatus(1L, ExportStatus.RUNNING, ExportStatus.DONE, null);
+        assertEquals(checkpointBytes.get(), delivered.get().length, "пустая порция ничего не дописала в файл");
+        List<String> lines = gunzip(delivered.get());
+        assertEquals(2 * CHUNK_ROWS, lines.size());
+        assertFalse(Files.exists(dir.resolve("summaries-1.ndjson.gz")));
+    }
+
+    @Test
+    void partialLastChunkIsReadAsOneFile() throws Exception {
+        givenSummaries(2 * CHUNK_ROWS + 1);
+
+        ReflectionTestUtils.invokeMethod(service, "run", newJob());
+
+        ArgumentCaptor<ExportJob> checkpoints = ArgumentCaptor.forClass(ExportJob.class);
+        verify(repository, times(3)).checkpoint(checkpoints.capture());
+        assertEquals(2 * CHUNK_ROWS + 1, checkpoints.getValue().rowsWritten());
+        List<String> lines = gunzip(delivered.get());
+        assertEquals(2 * CHUNK_ROWS + 1, lines.size());
+        assertEquals(1L, new ObjectMapper().readTree(lines.get(0)).get("id").asLong());
+        verify(repository).updateStatus(eq(1L), eq(ExportStatus.RUNNING), eq(ExportStatus.DONE), any());
+    }
+}
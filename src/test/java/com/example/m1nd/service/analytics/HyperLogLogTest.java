@@ -0,0 +1,93 @@
+package com.example.m1nd.service.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Оценка уникальных пользователей: погрешность на известном числе id, слияние и сериализация
+ */
+class HyperLogLogTest {
+
+    /** Три стандартные ошибки для p = 12 (1,04 / √4096 ≈ 1,6%) */
+    private static final double MAX_RELATIVE_ERROR = 0.05;
+
+    private static HyperLogLog sketchOf(long fromId, long toId) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long id = fromId; id < toId; id++) {
+            sketch.addUser(id);
+        }
+        return sketch;
+    }
+
+    private static void assertClose(long expected, long estimate) {
+        double error = Math.abs(estimate - expected) / (double) expected;
+        assertTrue(error <= MAX_RELATIVE_ERROR, "ожидалось ≈" + expected + ", оценка " + estimate);
+    }
+
+    @Test
+    void estimateStaysWithinErrorBounds() {
+        assertEquals(0, new HyperLogLog().estimate());
+        assertClose(100, sketchOf(0, 100).estimate());
+        assertClose(5_000, sketchOf(0, 5_000).estimate());
+        assertClose(200_000, sketchOf(1_000_000, 1_200_000).estimate());
+    }
+
+    @Test
+    void repeatedUsersAreCountedOnce() {
+        HyperLogLog sketch = sketchOf(0, 1_000);
+        long before = sketch.estimate();
+
+        for (int round = 0; round < 5; round++) {
+            for (long id = 0; id < 1_000; id++) {
+                sketch.addUser(id);
+            }
+        }
+
+        assertEquals(before, sketch.estimate());
+    }
+
+    @Test
+    void mergeEstimatesUnionOfOverlappingSketches() {
+        HyperLogLog monday = sketchOf(0, 30_000);
+        HyperLogLog tuesday = sketchOf(20_000, 50_000);
+
+        HyperLogLog week = monday.copy();
+        week.merge(tuesday);
+
+        assertClose(50_000, week.estimate());
+        assertClose(30_000, monday.estimate());
+        assertEquals(sketchOf(0, 50_000).estimate(), week.estimate(), "слияние равно скетчу по объединению");
+    }
+
+    @Test
+    void mergeIsIdempotentAndCommutative() {
+        HyperLogLog a = sketchOf(0, 10_000);
+        HyperLogLog b = sketchOf(5_000, 15_000);
+
+        HyperLogLog ab = a.copy();
+        ab.merge(b);
+        HyperLogLog ba = b.copy();
+        ba.merge(a);
+        long once = ab.estimate();
+        ab.merge(b);
+
+        assertEquals(once, ab.estimate());
+        assertArrayEquals(ab.toBytes(), ba.toBytes());
+    }
+
+    @Test
+    void serializationRoundTripsSparseAndDense() {
+        HyperLogLog sparse = sketchOf(0, 50);
+        HyperLogLog dense = sketchOf(0, 100_000);
+
+        byte[] sparseBytes = sparse.toBytes();
+        byte[] denseBytes = dense.toBytes();
+
+        assertTrue(sparseBytes.length < denseBytes.length, "малый скетч хранится разреженно");
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparseBytes).estimate());
+        assertArrayEquals(denseBytes, HyperLogLog.fromBytes(denseBytes).toBytes());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.m1nd.service.game;
+
+import com.example.m1nd.model.AnswerEvaluation;
+import com.example.m1nd.service.LLMService;
+import com.example.m1nd.service.llm.ModelTierRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Локальная проверка ответов: что принимается сразу, что отклоняется и что уходит на перепроверку моделью
+ */
+class AnswerEvaluatorTest {
+
+    private final AnswerEvaluator evaluator = newEvaluator();
+
+    private static AnswerEvaluator newEvaluator() {
+        AnswerEvaluator evaluator = new AnswerEvaluator(mock(LLMService.class), mock(ModelTierRouter.class));
+        ReflectionTestUtils.setField(evaluator, "reviewEnabled", true);
+        return evaluator;
+    }
+
+    @Test
+    void freeTextAcceptsCaseTyposAndWordForms() {
+        assertEquals(100, evaluator.evaluateFreeText("  Ёлка! ", "елка").getScore());
+        assertTrue(evaluator.evaluateFreeText("зантик", "зонтик").isPassed());
+        assertTrue(evaluator.evaluateFreeText("это тенью", "тень").isPassed());
+        assertTrue(evaluator.evaluateFreeText("Думаю, эхо", "Эхо").isPassed());
+    }
+
+    @Test
+    void freeTextRejectsOtherShortWordsWithoutReview() {
+        AnswerEvaluation evaluation = evaluator.evaluateFreeText("кит", "кот");
+
+        assertFalse(evaluation.isPassed());
+        assertFalse(evaluator.needsReview(evaluation));
+        assertFalse(evaluator.needsReview(evaluator.evaluateFreeText("солнце", "луна")));
+    }
+
+    @Test
+    void partialOrHedgedAnswersGoToReview() {
+        AnswerEvaluation partial = evaluator.evaluateFreeText("тень", "тень человека");
+        AnswerEvaluation hedged = evaluator.evaluateFreeText("ключ или замок", "ключ");
+
+        assertFalse(partial.isPassed());
+        assertTrue(evaluator.needsReview(partial));
+        assertFalse(hedged.isPassed());
+        assertTrue(evaluator.needsReview(hedged));
+    }
+
+    @Test
+    void choiceAcceptsLetterInAnyFormAndOptionText() {
+        String options = "a) 12; b) 15; c) в лесу; d) 21";
+
+        assertTrue(evaluator.evaluateChoice("B)", "b", options).isPassed());
+        assertTrue(evaluator.evaluateChoice("ответ б", "b", options).isPassed());
+        assertTrue(evaluator.evaluateChoice("в лесу", "c", options).isPassed());
+        assertTrue(evaluator.evaluateChoice("15", "b", options).isPassed());
+        assertFalse(evaluator.evaluateChoice("a", "b", options).isPassed());
+        assertTrue(evaluator.evaluateChoice("двенадцать", "a", null).hasFeedback());
+    }
+
+    @Test
+    void choiceLetterMustBeTheWholeAnswer() {
+        // Как в IQ-тесте: вариантов текстом нет, сверяется только буква
+        assertTrue(evaluator.evaluateChoice("вариант г", "d", null).isPassed());
+        assertTrue(evaluator.evaluateChoice("Ответ: c", "c", null).isPassed());
+        assertFalse(evaluator.evaluateChoice("в лесу", "c", null).isPassed());
+        assertTrue(evaluator.evaluateChoice("в лесу", "c", null).hasFeedback());
+        assertFalse(evaluator.evaluateChoice("с собакой", "c", null).isPassed());
+        assertFalse(evaluator.evaluateChoice("а может 5", "a", null).isPassed());
+        assertFalse(evaluator.evaluateChoice("думаю b или c", "b", null).isPassed());
+    }
+
+    @Test
+    void choiceParsesOptionsWithoutSemicolons() {
+        String spaced = "a) 12 b) 15 c) в лесу d) 21";
+        String commas = "a) ёлка, b) сосна, c) в лесу, d) дуб";
+
+        assertTrue(evaluator.evaluateChoice("в лесу", "c", spaced).isPassed());
+        assertTrue(evaluator.evaluateChoice("15", "b", spaced).isPassed());
+        assertFalse(evaluator.evaluateChoice("12", "b", spaced).isPassed());
+        assertTrue(evaluator.evaluateChoice("сосна", "b", commas).isPassed());
+        assertTrue(evaluator.evaluateChoice("дуб", "d", commas).isPassed());
+    }
+
+    @Test
+    void boundedLevenshteinStopsAtLimit() {
+        assertEquals(1, AnswerEvaluator.boundedLevenshtein("зонтик", "зантик", 2));
+        assertEquals(2, AnswerEvaluator.boundedLevenshtein("абвгд", "вгдеж", 1));
+        assertEquals(3, AnswerEvaluator.boundedLevenshtein("короткий", "совсем другой ответ", 2));
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.m1nd.service.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Журнал на временном каталоге: запись, рестарт и восстановление после порчи файлов.
+ * «Падение» — это новый экземпляр журнала без shutdown(): отображённый сегмент виден ему через page cache
+ */
+class StateJournalTest {
+
+    /** magic, версия, поколение */
+    private static final int LOG_HEADER_BYTES = 16;
+    /** Длина, CRC, операция, вид, пользователь, время */
+    private static final int RECORD_OVERHEAD = 8 + 18;
+
+    @TempDir
+    Path dir;
+
+    private final List<StateJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(StateJournal::shutdown);
+    }
+
+    private StateJournal open(long maxAgeHours) {
+        StateJournal journal = new StateJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentMb", 1);
+        ReflectionTestUtils.setField(journal, "replayBudgetMs", 5000L);
+        ReflectionTestUtils.setField(journal, "maxAgeHours", maxAgeHours);
+        journal.init();
+        opened.add(journal);
+        return journal;
+    }
+
+    private StateJournal open() {
+        return open(72);
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = files("journal-");
+        return segments.get(segments.size() - 1);
+    }
+
+    private static void overwrite(Path file, long position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+
+    private static byte[] bytes(int size, int fill) {
+        byte[] value = new byte[size];
+        Arrays.fill(value, (byte) fill);
+        return value;
+    }
+
+    @Test
+    void putAndRemoveSurviveRestart() {
+        StateJournal journal = open();
+        journal.put(JournalKind.PAID_QUESTION, 1L, new byte[]{1, 2});
+        journal.put(JournalKind.FEEDBACK_SURVEY, 2L, new byte[]{3});
+        journal.put(JournalKind.PAID_QUESTION, 3L, new byte[]{4});
+        journal.remove(JournalKind.PAID_QUESTION, 3L);
+        journal.put(JournalKind.PAID_QUESTION, 1L, new byte[]{9});
+
+        StateJournal restarted = open();
+
+        Map<Long, byte[]> paid = restarted.restored(JournalKind.PAID_QUESTION);
+        assertEquals(1, paid.size());
+        assertArrayEquals(new byte[]{9}, paid.get(1L));
+        assertArrayEquals(new byte[]{3}, restarted.restored(JournalKind.FEEDBACK_SURVEY).get(2L));
+        assertTrue(restarted.restored(JournalKind.GAME_SESSION).isEmpty());
+    }
+
+    @Test
+    void replayStopsAtRecordWithBadCrc() throws IOException {
+        StateJournal journal = open();
+        for (long userId = 1; userId <= 4; userId++) {
+            journal.put(JournalKind.PUZZLE_SESSION, userId, new byte[]{(byte) userId});
+        }
+        journal.shutdown();
+
+        // Третья запись: портим байт внутри её данных, CRC перестаёт сходиться
+        long third = LOG_HEADER_BYTES + 2L * (RECORD_OVERHEAD + 1);
+        overwrite(lastSegment(), third + 8 + 2, new byte[]{(byte) 0xFF});
+
+        assertEquals(Map.of(1L, 1, 2L, 2), firstBytes(open().restored(JournalKind.PUZZLE_SESSION)));
+    }
+
+    @Test
+    void replayStopsAtTornTail() throws IOException {
+        StateJournal journal = open();
+        for (long userId = 1; userId <= 3; userId++) {
+            journal.put(JournalKind.PUZZLE_SESSION, userId, new byte[]{(byte) userId});
+        }
+        journal.shutdown();
+
+        // Длина второй записи указывает за конец сегмента — запись оборвана
+        long second = LOG_HEADER_BYTES + RECORD_OVERHEAD + 1;
+        overwrite(lastSegment(), second, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array());
+
+        assertEquals(Map.of(1L, 1), firstBytes(open().restored(JournalKind.PUZZLE_SESSION)));
+    }
+
+    @Test
+    void rotationWritesSnapshotAndRestartReadsIt() throws IOException {
+        StateJournal journal = open();
+        List<Path> initialSegments = files("journal-");
+        int users = 15;
+        for (long userId = 1; userId <= users; userId++) {
+            // 15 × 100 КБ не помещаются в сегмент на 1 МБ — журнал переходит на новое поколение
+            journal.put(JournalKind.GAME_SESSION, userId, bytes(100 * 1024, (int) userId));
+        }
+        journal.sync();
+        journal.shutdown();
+
+        assertTrue(Files.notExists(initialSegments.get(0)), "сегменты до снимка удалены");
+        assertEquals(1, files("snapshot-").size());
+
+        Map<Long, byte[]> restored = open().restored(JournalKind.GAME_SESSION);
+        assertEquals(users, restored.size());
+        for (long userId = 1; userId <= users; userId++) {
+            assertArrayEquals(bytes(100 * 1024, (int) userId), restored.get(userId));
+        }
+    }
+
+    @Test
+    void corruptNewestSnapshotFallsBackToPrevious() throws IOException {
+        open().put(JournalKind.PAID_QUESTION, 1L, new byte[]{1});
+        StateJournal second = open();
+        second.put(JournalKind.PAID_QUESTION, 2L, new byte[]{2});
+        second.shutdown();
+
+        // Снимок следующего поколения, оборванный посередине
+        Path snapshot = files("snapshot-").get(0);
+        String name = snapshot.getFileName().toString();
+        long generation = Long.parseLong(name.substring("snapshot-".length(), name.length() - ".bin".length()));
+        Path broken = dir.resolve(String.format("snapshot-%016d.bin", generation + 1));
+        byte[] data = Files.readAllBytes(snapshot);
+        Files.write(broken, Arrays.copyOf(data, data.length - 3));
+
+        Map<Long, byte[]> restored = open().restored(JournalKind.PAID_QUESTION);
+
+        assertEquals(Map.of(1L, 1, 2L, 2), firstBytes(restored));
+    }
+
+    @Test
+    void staleEntriesAreDroppedOnRecovery() throws Exception {
+        StateJournal journal = open();
+        journal.put(JournalKind.FEEDBACK_SURVEY, 1L, new byte[]{1});
+        journal.shutdown();
+        Thread.sleep(5);
+
+        assertTrue(open(0).restored(JournalKind.FEEDBACK_SURVEY).isEmpty());
+        assertTrue(open().restored(JournalKind.FEEDBACK_SURVEY).isEmpty(), "отброшенное не возвращается со снимком");
+    }
+
+    @Test
+    void paidQuestionSurvivesRecoveryAtAnyAge() throws Exception {
+        StateJournal journal = open();
+        journal.put(JournalKind.PAID_QUESTION, 1L, new byte[]{7});
+        journal.put(JournalKind.PUZZLE_SESSION, 1L, new byte[]{1});
+        journal.shutdown();
+        Thread.sleep(5);
+
+        StateJournal recovered = open(0);
+
+        assertEquals(Map.of(1L, 7), firstBytes(recovered.restored(JournalKind.PAID_QUESTION)), "оплаченный вопрос не сгорает");
+        assertTrue(recovered.restored(JournalKind.PUZZLE_SESSION).isEmpty());
+    }
+
+    @Test
+    void disabledJournalKeepsNothing() {
+        StateJournal journal = new StateJournal();
+        ReflectionTestUtils.setField(journal, "enabled", false);
+        journal.init();
+
+        journal.put(JournalKind.PAID_QUESTION, 1L, new byte[]{1});
+        journal.sync();
+
+        assertTrue(journal.restored(JournalKind.PAID_QUESTION).isEmpty());
+    }
+
+    private static Map<Long, Integer> firstBytes(Map<Long, byte[]> restored) {
+        Map<Long, Integer> result = new HashMap<>();
+        restored.forEach((userId, value) -> result.put(userId, (int) value[0]));
+        return result;
+    }
+}
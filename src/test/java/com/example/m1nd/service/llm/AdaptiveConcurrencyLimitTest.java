@@ -0,0 +1,62 @@
+package com.example.m1nd.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    void fastResponsesGrowLimitByAboutOnePerWindow() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 64, 1000, 0.5);
+
+        for (int i = 0; i < 4; i++) {
+            limit.onSample(100, false);
+        }
+
+        assertEquals(4, limit.getLimit(), "за неполное окно лимит не растёт больше чем на единицу");
+        for (int i = 0; i < 8; i++) {
+            limit.onSample(100, false);
+        }
+        assertTrue(limit.getLimit() >= 5 && limit.getLimit() <= 6);
+    }
+
+    @Test
+    void overloadAndSlowResponsesBackOffMultiplicatively() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(16, 1, 64, 1000, 0.5);
+
+        limit.onSample(100, true);
+        assertEquals(8, limit.getLimit());
+
+        limit.onSample(5000, false);
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(100, 2, 10, 1000, 0.5);
+        assertEquals(10, limit.getLimit());
+
+        for (int i = 0; i < 1000; i++) {
+            limit.onSample(10, false);
+        }
+        assertEquals(10, limit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(10, true);
+        }
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void smoothedLatencyFollowsSamples() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 64, 1000, 0.5);
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(200, false);
+        }
+
+        assertEquals(200, limit.getSmoothedLatencyMs(), 1);
+    }
+}
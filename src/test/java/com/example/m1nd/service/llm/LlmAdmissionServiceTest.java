@@ -0,0 +1,151 @@
+package com.example.m1nd.service.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Допуск, очередь, отмена и освобождение разрешений. Лимит провайдера фиксирован (min = max),
+ * чтобы занятость проверялась по отчёту «выполняется N из 1»
+ */
+class LlmAdmissionServiceTest {
+
+    private static final String PROVIDER = "test";
+
+    private static LlmAdmissionService newService(int limit, int userBurst) {
+        LlmAdmissionService service = new LlmAdmissionService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(service, "maxQueueWaitSeconds", 20);
+        ReflectionTestUtils.setField(service, "userRatePerMinute", 6d);
+        ReflectionTestUtils.setField(service, "userBurst", userBurst);
+        ReflectionTestUtils.setField(service, "initialLimit", limit);
+        ReflectionTestUtils.setField(service, "minLimit", limit);
+        ReflectionTestUtils.setField(service, "maxLimit", limit);
+        ReflectionTestUtils.setField(service, "latencyThresholdMs", 30_000L);
+        ReflectionTestUtils.setField(service, "backoffRatio", 0.7);
+        ReflectionTestUtils.setField(service, "backgroundQueueCapacity", 1000);
+        ReflectionTestUtils.setField(service, "backgroundMaxQueueWaitSeconds", 20);
+        ReflectionTestUtils.setField(service, "backgroundReservedShare", 0d);
+        return service;
+    }
+
+    private static boolean idle(LlmAdmissionService service) {
+        return service.formatMetrics().contains("выполняется 0 из");
+    }
+
+    @Test
+    void userOverBurstIsRejectedWithRetryHint() {
+        LlmAdmissionService service = newService(4, 1);
+
+        assertEquals("ok", service.admit(PROVIDER, 1L, () -> Mono.just("ok")).block());
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> service.admit(PROVIDER, 1L, () -> Mono.just("ok")).block());
+
+        LlmOverloadedException overloaded = assertInstanceOf(LlmOverloadedException.class, error);
+        assertTrue(overloaded.getRetryAfterSeconds() >= 1);
+        assertEquals("ok", service.admit(PROVIDER, 2L, () -> Mono.just("ok")).block(), "лимит у каждого пользователя свой");
+    }
+
+    @Test
+    void retryAtAnotherProviderDoesNotChargeUserAgain() {
+        LlmAdmissionService service = newService(4, 1);
+
+        assertEquals("ok", service.admit(PROVIDER, 1L, () -> Mono.just("ok")).block());
+
+        assertEquals("fallback", service.admitRetry("other", LlmLane.INTERACTIVE, 1L, () -> Mono.just("fallback")).block());
+    }
+
+    @Test
+    void queuedRequestStartsWhenRunningOneReleases() {
+        LlmAdmissionService service = newService(1, 10);
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger secondStarted = new AtomicInteger();
+
+        Mono<String> running = service.admit(PROVIDER, null, first::asMono).cache();
+        running.subscribe();
+        Mono<String> queued = service.admit(PROVIDER, null, () -> {
+            secondStarted.incrementAndGet();
+            return Mono.just("second");
+        }).cache();
+        queued.subscribe();
+
+        assertEquals(0, secondStarted.get());
+        assertTrue(service.isBusy(PROVIDER));
+
+        first.tryEmitValue("first");
+
+        assertEquals("second", queued.block(Duration.ofSeconds(1)));
+        assertEquals(1, secondStarted.get());
+        assertTrue(idle(service));
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueueWithoutTakingSlot() {
+        LlmAdmissionService service = newService(1, 10);
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger cancelledStarted = new AtomicInteger();
+
+        service.admit(PROVIDER, null, first::asMono).subscribe();
+        Disposable waiting = service.admit(PROVIDER, null, () -> {
+            cancelledStarted.incrementAndGet();
+            return Mono.just("never");
+        }).subscribe();
+        waiting.dispose();
+
+        first.tryEmitValue("first");
+
+        assertEquals(0, cancelledStarted.get());
+        assertTrue(idle(service));
+        assertEquals("next", service.admit(PROVIDER, null, () -> Mono.just("next")).block(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void cancellingRunningRequestReleasesPermit() {
+        LlmAdmissionService service = newService(1, 10);
+
+        Disposable running = service.admit(PROVIDER, null, Mono::<String>never).subscribe();
+        assertFalse(idle(service));
+
+        running.dispose();
+
+        assertTrue(idle(service));
+        assertEquals("next", service.admit(PROVIDER, null, () -> Mono.just("next")).block(Duration.ofSeconds(1)));
+    }
+
+    /**
+     * Отмены по таймауту вперемешку с освобождениями: ни одно разрешение не должно потеряться,
+     * иначе ёмкость провайдера постепенно утекает
+     */
+    @Test
+    void timeoutsRacingWithDispatchDoNotLeakSlots() {
+        LlmAdmissionService service = newService(2, 1_000_000);
+        List<Mono<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            calls.add(service.admit(PROVIDER, null,
+                    () -> Mono.just("ok").delayElement(Duration.ofNanos(50_000), Schedulers.parallel()))
+                .subscribeOn(Schedulers.parallel())
+                .timeout(Duration.ofNanos(20_000 + (i % 7) * 20_000L), Schedulers.parallel())
+                .onErrorReturn("timeout"));
+        }
+
+        Mono.when(calls).block(Duration.ofSeconds(30));
+
+        assertTrue(idle(service), service.formatMetrics());
+        assertEquals("next", service.admit(PROVIDER, null, () -> Mono.just("next")).block(Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.m1nd.service.llm;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ModelTierRouterTest {
+
+    private static ModelTierRouter newRouter(boolean enabled) {
+        ModelTierRouter router = new ModelTierRouter();
+        ReflectionTestUtils.setField(router, "enabled", enabled);
+        ReflectionTestUtils.setField(router, "fastMaxPromptChars", 100);
+        ReflectionTestUtils.setField(router, "charsPerToken", 2.5);
+        ReflectionTestUtils.setField(router, "menuMaxTokens", 400);
+        ReflectionTestUtils.setField(router, "generatorMaxTokens", 500);
+        return router;
+    }
+
+    @Test
+    void shortPromptGoesToFastModelWithKindLimit() {
+        ModelTierRouter router = newRouter(true);
+
+        ModelRoute menu = router.route(ModelTierRouter.RequestKind.MENU_CONTENT, "Факт о космосе", null, null);
+        ModelRoute generator = router.route(ModelTierRouter.RequestKind.GENERATOR, "Загадка", null, null);
+
+        assertEquals(ModelTier.FAST, menu.getTier());
+        assertEquals(400, menu.getMaxTokens());
+        assertEquals(ModelTier.FAST, generator.getTier());
+        assertEquals(500, generator.getMaxTokens());
+    }
+
+    @Test
+    void longPromptOrDisabledRoutingGoesToStrongModel() {
+        String longPrompt = "а".repeat(101);
+
+        assertEquals(ModelTier.STRONG,
+            newRouter(true).route(ModelTierRouter.RequestKind.MENU_CONTENT, longPrompt, null, null).getTier());
+        assertEquals(ModelTier.STRONG,
+            newRouter(false).route(ModelTierRouter.RequestKind.MENU_CONTENT, "коротко", null, null).getTier());
+    }
+
+    @Test
+    void topicSettingsOverrideDefaults() {
+        ModelTierRouter router = newRouter(true);
+
+        ModelRoute route = router.route(ModelTierRouter.RequestKind.GENERATOR, "коротко", "strong", 250);
+
+        assertEquals(ModelTier.STRONG, route.getTier());
+        assertEquals(250, route.getMaxTokens());
+        assertEquals(ModelTier.FAST,
+            router.route(ModelTierRouter.RequestKind.GENERATOR, "коротко", "неизвестно", null).getTier());
+    }
+
+    @Test
+    void maxTokensAreCappedByTelegramMessageLimit() {
+        ModelRoute route = newRouter(true).route(ModelTierRouter.RequestKind.MENU_CONTENT, "коротко", null, 100_000);
+
+        assertEquals(1638, route.getMaxTokens());
+    }
+}
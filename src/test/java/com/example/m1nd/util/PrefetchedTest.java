@@ -0,0 +1,66 @@
+package com.example.m1nd.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefetchedTest {
+
+    @Test
+    void sourceIsSubscribedOnceAtStart() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Prefetched<String> prefetched = Prefetched.start(Mono.fromSupplier(() -> {
+            subscriptions.incrementAndGet();
+            return "готово";
+        }));
+
+        assertEquals(1, subscriptions.get(), "источник запускается сразу, а не при get()");
+        assertEquals("готово", prefetched.get().block());
+        assertEquals("готово", prefetched.get().block());
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    void getWaitsForLateResultAndPassesErrorsAndEmpty() {
+        Sinks.One<String> late = Sinks.one();
+        Prefetched<String> prefetched = Prefetched.start(late.asMono());
+        Mono<String> result = prefetched.get().cache();
+        result.subscribe();
+
+        late.tryEmitValue("позже");
+
+        assertEquals("позже", result.block());
+        assertThrows(IllegalStateException.class,
+            () -> Prefetched.start(Mono.<String>error(new IllegalStateException("сбой"))).get().block());
+        assertNull(Prefetched.start(Mono.<String>empty()).get().block());
+    }
+
+    @Test
+    void cancelDisposesSourceAndFailsWaiters() {
+        AtomicBoolean disposed = new AtomicBoolean();
+        Prefetched<String> prefetched = Prefetched.start(Mono.<String>never().doOnCancel(() -> disposed.set(true)));
+
+        prefetched.cancel();
+
+        assertTrue(disposed.get());
+        assertThrows(CancellationException.class, () -> prefetched.get().block());
+    }
+
+    @Test
+    void cancelAfterResultKeepsResult() {
+        Prefetched<String> prefetched = Prefetched.start(Mono.just("готово"));
+
+        prefetched.cancel();
+
+        assertEquals("готово", prefetched.get().block());
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.m1nd.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Буфер под конкурентной нагрузкой: писатели добавляют, читатели непрерывно снимают снимки
+ * (в духе jcstress: инварианты проверяются на каждом наблюдении, а не только в конце).
+ */
+class SequencedRingBufferTest {
+
+    private static final int CAPACITY = 9;
+
+    private record Item(long seq, int writer) {
+    }
+
+    @Test
+    void appendEvictsOldestAndSnapshotIsOrdered() {
+        SequencedRingBuffer<Item> ring = new SequencedRingBuffer<>(CAPACITY, Item::seq);
+        for (int i = 0; i < 20; i++) {
+            ring.append(seq -> new Item(seq, 0));
+        }
+
+        List<Item> snapshot = ring.snapshot(0);
+        assertEquals(CAPACITY, snapshot.size());
+        assertEquals(12, snapshot.get(0).seq());
+        assertEquals(20, snapshot.get(CAPACITY - 1).seq());
+        assertEquals(List.of(19L, 20L), ring.snapshot(18).stream().map(Item::seq).toList());
+    }
+
+    /**
+     * Писатель получил номер, но задержался до записи в слот: за это время слот занял элемент
+     * на круг новее, и запоздавший элемент не должен его затереть
+     */
+    @Test
+    void slowWriterDoesNotOverwriteNewerItem() throws Exception {
+        SequencedRingBuffer<Item> ring = new SequencedRingBuffer<>(2, Item::seq);
+        CountDownLatch numbered = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Item> slow = pool.submit(() -> ring.append(seq -> {
+                numbered.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Item(seq, 1);
+            }));
+            assertTrue(numbered.await(5, TimeUnit.SECONDS));
+            ring.append(seq -> new Item(seq, 0));
+            Item newer = ring.append(seq -> new Item(seq, 0));
+
+            proceed.countDown();
+            assertEquals(1, slow.get(5, TimeUnit.SECONDS).seq());
+
+            assertEquals(newer, ring.get(3));
+            assertEquals(List.of(2L, 3L), ring.snapshot(0).stream().map(Item::seq).toList());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void clearHidesOlderItemsButKeepsNumbering() {
+        SequencedRingBuffer<Item> ring = new SequencedRingBuffer<>(CAPACITY, Item::seq);
+        ring.append(seq -> new Item(seq, 0));
+        ring.append(seq -> new Item(seq, 0));
+
+        assertEquals(2, ring.clear());
+        assertTrue(ring.snapshot(0).isEmpty());
+
+        Item next = ring.append(seq -> new Item(seq, 0));
+        assertEquals(3, next.seq());
+        assertEquals(List.of(next), ring.snapshot(0));
+    }
+
+    @Test
+    void restoreKeepsOnlyTheWindow() {
+        SequencedRingBuffer<Item> ring = new SequencedRingBuffer<>(CAPACITY, Item::seq);
+        List<Item> stored = new ArrayList<>();
+        for (long seq = 1; seq <= 15; seq++) {
+            stored.add(new Item(seq, 0));
+        }
+        ring.restore(15, 3, stored);
+
+        List<Item> snapshot = ring.snapshot(0);
+        assertEquals(7, snapshot.get(0).seq());
+        assertEquals(15, snapshot.get(snapshot.size() - 1).seq());
+        assertEquals(16, ring.append(seq -> new Item(seq, 0)).seq());
+    }
+
+    @Test
+    void concurrentWritersAndReadersSeeConsistentWindows() throws Exception {
+        int writers = 8;
+        int readers = 4;
+        int appendsPerWriter = 200_000;
+        SequencedRingBuffer<Item> ring = new SequencedRingBuffer<>(CAPACITY, Item::seq);
+        Set<Long> issued = ConcurrentHashMap.newKeySet();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong observedSnapshots = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers + readers);
+        try {
+            List<Future<?>> writerTasks = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                writerTasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < appendsPerWriter; i++) {
+                        Item item = ring.append(seq -> new Item(seq, writer));
+                        if (i % 1000 == 0) {
+                            issued.add(item.seq());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> readerTasks = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                readerTasks.add(pool.submit(() -> {
+                    start.await();
+                    long previousFirst = 0;
+                    while (writing.get()) {
+                        List<Item> snapshot = ring.snapshot(0);
+                        assertTrue(snapshot.size() <= CAPACITY, "снимок больше ёмкости: " + snapshot.size());
+                        for (int i = 1; i < snapshot.size(); i++) {
+                            assertEquals(snapshot.get(i - 1).seq() + 1, snapshot.get(i).seq(), "разрыв в снимке");
+                        }
+                        if (!snapshot.isEmpty()) {
+                            assertTrue(snapshot.get(0).seq() >= previousFirst, "окно поехало назад");
+                            previousFirst = snapshot.get(0).seq();
+                        }
+                        observedSnapshots.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : writerTasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<?> task : readerTasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+
+            long total = (long) writers * appendsPerWriter;
+            assertEquals(total, ring.lastSeq());
+            assertEquals(writers * (appendsPerWriter / 1000), issued.size(), "номера выданы дважды");
+
+            List<Item> last = ring.snapshot(0);
+            assertEquals(CAPACITY, last.size());
+            assertEquals(total, last.get(CAPACITY - 1).seq());
+            assertTrue(observedSnapshots.get() > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.m1nd.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsAvailableImmediatelyThenCallerMustWait() {
+        TokenBucket bucket = new TokenBucket(3, 1d / 60);
+
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+
+        long waitNanos = bucket.tryConsume();
+        assertTrue(waitNanos > TimeUnit.SECONDS.toNanos(55) && waitNanos <= TimeUnit.SECONDS.toNanos(60),
+            "до следующего токена около минуты, получено " + waitNanos);
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    void tokensRefillOverTimeUpToCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(2, 1000);
+        bucket.tryConsume();
+        bucket.tryConsume();
+
+        Thread.sleep(20);
+
+        assertTrue(bucket.isFull());
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+        assertTrue(bucket.tryConsume() > 0, "ёмкость не растёт выше burst");
+    }
+}